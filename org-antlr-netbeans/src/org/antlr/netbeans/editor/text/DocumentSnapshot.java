@@ -24,6 +24,16 @@ public interface DocumentSnapshot {
 
     public @NonNull String getText();
 
+    /**
+     * Copies the characters in the range {@code [srcBegin, srcEnd)} into
+     * {@code dst}, starting at index {@code dstBegin}.
+     *
+     * @throws IndexOutOfBoundsException
+     *      if the source range is not within the snapshot, or
+     *      {@code dst} is too small to hold the result
+     */
+    public void getChars(int srcBegin, int srcEnd, @NonNull char[] dst, int dstBegin);
+
     public int getLineCount();
 
     public @NonNull Iterable<DocumentSnapshotLine> getLines();
@@ -20,7 +20,7 @@ import org.openide.util.Parameters;
  *
  * @author Sam Harwell
  */
-public class LineTextCache {
+public class LineTextCache implements SnapshotTextStore {
 
     private static int MaximumBlockLength = 64;
 
@@ -74,14 +74,111 @@ public class LineTextCache {
         this._lineCount = lineCount;
     }
 
+    @Override
     public int getLength() {
         return _length;
     }
 
+    @Override
     public int getLineCount() {
         return _lineCount;
     }
 
+    @Override
+    public char charAt(int index) {
+        int block = getBlockFromPosition(index);
+        int line = getLineNumberFromPosition(index);
+        int lineStart = getLineStart(block, line);
+        String lineText = getLineText(block, line);
+        return lineText.charAt(index - lineStart);
+    }
+
+    @Override
+    public int getLineStart(int lineNumber) {
+        return getLineStart(getBlockFromLineNumber(lineNumber), lineNumber);
+    }
+
+    @Override
+    public String getLineText(int lineNumber) {
+        return getLineText(getBlockFromLineNumber(lineNumber), lineNumber);
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder, int start, int end) {
+        if (end == start) {
+            return;
+        }
+
+        int startBlock = getBlockFromPosition(start);
+        int startLine = getBlockLineFromPosition(startBlock, start);
+        int startColumn = start - getLineStart(startBlock, _blockLineOffsets.get(startBlock) + startLine);
+
+        int endBlock = getBlockFromPosition(end - 1);
+        int endLine = getBlockLineFromPosition(endBlock, end - 1);
+        int endColumn = (end - 1) - getLineStart(endBlock, _blockLineOffsets.get(endBlock) + endLine);
+
+        for (int block = startBlock; block <= endBlock; block++) {
+            List<String> blockData = _lineData.get(block);
+            for (int line = (block == startBlock) ? startLine : 0; line < ((block == endBlock) ? endLine + 1 : blockData.size()); line++) {
+                int lineStart = 0;
+                int lineEnd = blockData.get(line).length();
+                if (block == startBlock && line == startLine) {
+                    lineStart = startColumn;
+                }
+
+                if (block == endBlock && line == endLine) {
+                    lineEnd = endColumn + 1;
+                }
+
+                builder.append(blockData.get(line), lineStart, lineEnd);
+            }
+        }
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destBegin) {
+        if (start < 0 || end > getLength() || end < start) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (destBegin < 0 || destBegin + (end - start) > dest.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (end == start) {
+            return;
+        }
+
+        int startBlock = getBlockFromPosition(start);
+        int startLine = getBlockLineFromPosition(startBlock, start);
+        int startColumn = start - getLineStart(startBlock, _blockLineOffsets.get(startBlock) + startLine);
+
+        int endBlock = getBlockFromPosition(end - 1);
+        int endLine = getBlockLineFromPosition(endBlock, end - 1);
+        int endColumn = (end - 1) - getLineStart(endBlock, _blockLineOffsets.get(endBlock) + endLine);
+
+        int destIndex = destBegin;
+        for (int block = startBlock; block <= endBlock; block++) {
+            List<String> blockData = _lineData.get(block);
+            for (int line = (block == startBlock) ? startLine : 0; line < ((block == endBlock) ? endLine + 1 : blockData.size()); line++) {
+                int lineStart = 0;
+                int lineEnd = blockData.get(line).length();
+                if (block == startBlock && line == startLine) {
+                    lineStart = startColumn;
+                }
+
+                if (block == endBlock && line == endLine) {
+                    lineEnd = endColumn + 1;
+                }
+
+                blockData.get(line).getChars(lineStart, lineEnd, dest, destIndex);
+                destIndex += lineEnd - lineStart;
+            }
+        }
+
+        assert destIndex == destBegin + (end - start);
+    }
+
     public @NonNull ArrayList<ArrayList<String>> getLineData() {
         return _lineData;
     }
@@ -125,12 +222,14 @@ public class LineTextCache {
         return blockLine;
     }
 
+    @Override
     public int getLineNumberFromPosition(int position) {
         int block = getBlockFromPosition(position);
         int blockLine = getBlockLineFromPosition(block, position);
         return blockLine + _blockLineOffsets.get(block);
     }
 
+    @Override
     public @NonNull LineTextCache applyChanges(@NonNull NormalizedDocumentChangeCollection changes) {
         int delta = 0;
         int lineDelta = 0;
@@ -9,7 +9,6 @@
 package org.antlr.netbeans.editor.text.impl;
 
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 import org.antlr.netbeans.editor.text.DocumentSnapshot;
 import org.antlr.netbeans.editor.text.DocumentSnapshotLine;
@@ -115,12 +114,7 @@ public class NbDocumentSnapshot implements DocumentSnapshot {
             throw new IndexOutOfBoundsException();
         }
 
-        LineTextCache lineData = getVersion().getLineData();
-        int block = lineData.getBlockFromPosition(index);
-        int line = lineData.getLineNumberFromPosition(index);
-        int lineStart = lineData.getLineStart(block, line);
-        String lineText = lineData.getLineText(block, line);
-        return lineText.charAt(index - lineStart);
+        return getVersion().getLineData().charAt(index);
     }
 
     @Override
@@ -133,6 +127,12 @@ public class NbDocumentSnapshot implements DocumentSnapshot {
         return subSequence(0, length()).toString();
     }
 
+    @Override
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        Parameters.notNull("dst", dst);
+        getVersion().getLineData().getChars(srcBegin, srcEnd, dst, dstBegin);
+    }
+
     @Override
     public String toString() {
         String content = "???";
@@ -247,35 +247,7 @@ public class NbDocumentSnapshot implements DocumentSnapshot {
             }
 
             StringBuilder builder = new StringBuilder(length());
-            LineTextCache data = snapshot.textVersion.getLineData();
-
-            int startBlock = data.getBlockFromPosition(start);
-            int startLine = data.getBlockLineFromPosition(startBlock, start);
-            int startColumn = start - data.getLineStart(startBlock, data.getBlockLineOffsets().get(startBlock) + startLine);
-
-            int endBlock = end == start ? startBlock : data.getBlockFromPosition(end - 1);
-            int endLine = end == start ? startLine : data.getBlockLineFromPosition(endBlock, end - 1);
-            int endColumn = end == start ? startColumn : (end - 1) - data.getLineStart(endBlock, data.getBlockLineOffsets().get(endBlock) + endLine);
-
-            for (int block = startBlock; block <= endBlock; block++) {
-                List<String> blockData = data.getLineData().get(block);
-                for (int line = (block == startBlock) ? startLine : 0; line < ((block == endBlock) ? endLine + 1 : blockData.size()); line++) {
-                    @SuppressWarnings("LocalVariableHidesMemberVariable")
-                    int start = 0;
-                    @SuppressWarnings("LocalVariableHidesMemberVariable")
-                    int end = blockData.get(line).length();
-                    if (block == startBlock && line == startLine) {
-                        start = startColumn;
-                    }
-
-                    if (block == endBlock && line == endLine) {
-                        end = endColumn + 1;
-                    }
-
-                    builder.append(blockData.get(line).substring(start, end));
-                }
-            }
-
+            snapshot.textVersion.getLineData().appendTo(builder, start, end);
             return builder.toString();
         }
     }
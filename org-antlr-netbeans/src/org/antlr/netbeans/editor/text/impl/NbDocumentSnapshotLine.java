@@ -39,12 +39,10 @@ class NbDocumentSnapshotLine implements DocumentSnapshotLine {
         this.snapshot = snapshot;
         this.lineNumber = lineNumber;
 
-        LineTextCache lineData = snapshot.getVersion().getLineData();
-        int block = lineData.getBlockFromLineNumber(lineNumber);
-
-        int lineStart = lineData.getLineStart(block, lineNumber);
+        SnapshotTextStore lineData = snapshot.getVersion().getLineData();
+        int lineStart = lineData.getLineStart(lineNumber);
         this.start = new SnapshotPosition(snapshot, lineStart);
-        this.textIncludingLineBreak = lineData.getLineText(block, lineNumber);
+        this.textIncludingLineBreak = lineData.getLineText(lineNumber);
 
         if (textIncludingLineBreak.length() > 0) {
             char lastChar = textIncludingLineBreak.charAt(textIncludingLineBreak.length() - 1);
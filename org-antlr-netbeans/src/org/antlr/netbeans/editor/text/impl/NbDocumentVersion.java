@@ -29,7 +29,7 @@ public class NbDocumentVersion implements DocumentVersion {
     private final NbVersionedDocument textBuffer;
     private final int versionNumber;
     @NonNull
-    private final LineTextCache lineData;
+    private final SnapshotTextStore lineData;
 
     private NbDocumentSnapshot snapshot;
 
@@ -37,7 +37,7 @@ public class NbDocumentVersion implements DocumentVersion {
     private NormalizedDocumentChangeCollection changes;
     private NbDocumentVersion next;
 
-    public NbDocumentVersion(@NonNull NbVersionedDocument textBuffer, int versionNumber, @NonNull LineTextCache lineData) {
+    public NbDocumentVersion(@NonNull NbVersionedDocument textBuffer, int versionNumber, @NonNull SnapshotTextStore lineData) {
         Parameters.notNull("textBuffer", textBuffer);
         Parameters.notNull("lineData", lineData);
 
@@ -75,7 +75,7 @@ public class NbDocumentVersion implements DocumentVersion {
         }
     }
 
-    @NonNull LineTextCache getLineData() {
+    @NonNull SnapshotTextStore getLineData() {
         return lineData;
     }
 
@@ -158,7 +158,7 @@ public class NbDocumentVersion implements DocumentVersion {
                 throw new IllegalStateException();
             }
 
-            LineTextCache nextLineData = lineData.applyChanges(changes);
+            SnapshotTextStore nextLineData = lineData.applyChanges(changes);
             NbDocumentVersion nextVersion = new NbDocumentVersion(textBuffer, versionNumber + 1, nextLineData);
             this.changes = changes;
             this.next = nextVersion;
@@ -13,8 +13,8 @@ import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.nio.charset.Charset;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.event.DocumentEvent;
@@ -41,13 +41,23 @@ public class NbVersionedDocument implements VersionedDocument {
 
     private static final WeakReference<NbDocumentVersion> NullVersion = new WeakReference<>(null);
 
+    /**
+     * Stands in for a {@code null} property key, which the
+     * {@link ConcurrentHashMap} holding the properties does not accept.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    // -J-Dorg.antlr.netbeans.editor.text.impl.NbVersionedDocument.textStore=rope
+    private static final String TEXT_STORE_PROPERTY = NbVersionedDocument.class.getName() + ".textStore";
+    private static final boolean USE_TEXT_ROPE = "rope".equals(System.getProperty(TEXT_STORE_PROPERTY));
+
     @NullAllowed
     private final BaseDocument document;
     @NullAllowed
     private final FileObject fileObject;
 
     @NonNull
-    private final Map<Object, Object> properties = new HashMap<>();
+    private final Map<Object, Object> properties = new ConcurrentHashMap<>();
 
     @NonNull
     private NbNormalizedDocumentChangeCollection pendingChanges = new NbNormalizedDocumentChangeCollection();
@@ -101,16 +111,28 @@ public class NbVersionedDocument implements VersionedDocument {
 
     @Override
     public Object getProperty(Object key) {
-        synchronized (properties) {
-            return properties.get(key);
-        }
+        return properties.get(maskNull(key));
     }
 
     @Override
     public Object putProperty(Object key, Object value) {
-        synchronized (properties) {
-            return properties.put(key, value);
+        if (value == null) {
+            return properties.remove(maskNull(key));
+        }
+
+        return properties.put(maskNull(key), value);
+    }
+
+    private static @NonNull Object maskNull(@NullAllowed Object key) {
+        return key != null ? key : NULL_KEY;
+    }
+
+    private static @NonNull SnapshotTextStore createTextStore(@NonNull String text) {
+        if (USE_TEXT_ROPE) {
+            return new TextRope(text);
         }
+
+        return new LineTextCache(text);
     }
 
     private @NonNull NbDocumentVersion applyChanges() {
@@ -132,7 +154,7 @@ public class NbVersionedDocument implements VersionedDocument {
                     text = fileObject.asText();
                 }
 
-                version = new NbDocumentVersion(this, latestVersionNumber + 1, new LineTextCache(text));
+                version = new NbDocumentVersion(this, latestVersionNumber + 1, createTextStore(text));
                 latestVersion = new SoftReference<>(version);
                 latestVersionNumber = version.getVersionNumber();
                 pendingChanges = new NbNormalizedDocumentChangeCollection();
@@ -154,7 +176,7 @@ public class NbVersionedDocument implements VersionedDocument {
 
                 if (version == null) {
                     try {
-                        version = new NbDocumentVersion(this, latestVersionNumber + 1, new LineTextCache(document.getText(0, document.getLength())));
+                        version = new NbDocumentVersion(this, latestVersionNumber + 1, createTextStore(document.getText(0, document.getLength())));
                     } catch (BadLocationException ex) {
                         LOGGER.log(Level.WARNING, "An exception occurred while tracking versioned document changes.", ex);
                         throw new IllegalStateException("Shouldn't be reachable.", ex);
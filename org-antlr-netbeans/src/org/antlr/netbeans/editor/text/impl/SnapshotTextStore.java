@@ -0,0 +1,51 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.editor.text.impl;
+
+import org.antlr.netbeans.editor.text.NormalizedDocumentChangeCollection;
+import org.netbeans.api.annotations.common.NonNull;
+
+/**
+ * The immutable text of a single {@link NbDocumentVersion}.
+ *
+ * <p>Lines are terminated by {@code '\n'}, and the text of a line includes its
+ * line break.</p>
+ *
+ * @author Sam Harwell
+ */
+interface SnapshotTextStore {
+
+    int getLength();
+
+    int getLineCount();
+
+    char charAt(int index);
+
+    int getLineNumberFromPosition(int position);
+
+    int getLineStart(int lineNumber);
+
+    @NonNull
+    String getLineText(int lineNumber);
+
+    /**
+     * Appends the characters in the range {@code [start, end)} to {@code builder}.
+     */
+    void appendTo(@NonNull StringBuilder builder, int start, int end);
+
+    /**
+     * Copies the characters in the range {@code [start, end)} into {@code dest},
+     * starting at index {@code destBegin}.
+     */
+    void getChars(int start, int end, @NonNull char[] dest, int destBegin);
+
+    @NonNull
+    SnapshotTextStore applyChanges(@NonNull NormalizedDocumentChangeCollection changes);
+
+}
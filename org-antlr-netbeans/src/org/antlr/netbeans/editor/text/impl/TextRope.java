@@ -0,0 +1,530 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.editor.text.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.antlr.netbeans.editor.text.DocumentChange;
+import org.antlr.netbeans.editor.text.NormalizedDocumentChangeCollection;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * A persistent rope implementation of {@link SnapshotTextStore}.
+ *
+ * <p>The text is held in a binary tree of immutable chunks. Each node records
+ * the length and number of line breaks beneath it, so random access by offset
+ * or line number is O(log n). Applying changes only rebuilds the path to each
+ * edited chunk, and the remaining subtrees are shared with the previous
+ * version. The most recently accessed chunk is remembered, so sequential
+ * {@link #charAt} calls are O(1) amortized.</p>
+ *
+ * <p>Edits leave short leaves behind and deepen the tree along the edited
+ * paths. After every {@link #RebalanceInterval} changes, or sooner if the tree
+ * grows deeper than {@link #MaximumDepth}, adjacent short leaves are merged
+ * and the tree is rebuilt balanced.</p>
+ *
+ * @author Sam Harwell
+ */
+public class TextRope implements SnapshotTextStore {
+
+    private static final int MaximumLeafLength = 2048;
+    private static final int MaximumDepth = 48;
+    private static final int RebalanceInterval = 1024;
+
+    @NonNull
+    private final Node _root;
+
+    /**
+     * The number of changes applied since the tree was last rebalanced.
+     */
+    private final int _changesSinceRebalance;
+
+    private volatile LeafPosition _lastLeaf;
+
+    public TextRope(@NonNull String data) {
+        Parameters.notNull("data", data);
+        this._root = build(data, 0, data.length());
+        this._changesSinceRebalance = 0;
+    }
+
+    private TextRope(@NonNull Node root, int changesSinceRebalance) {
+        this._root = root;
+        this._changesSinceRebalance = changesSinceRebalance;
+    }
+
+    @Override
+    public int getLength() {
+        return _root.length;
+    }
+
+    /**
+     * Gets the depth of the tree holding the text, for testing.
+     */
+    int getDepth() {
+        return _root.depth;
+    }
+
+    @Override
+    public int getLineCount() {
+        return _root.lineBreaks + 1;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= getLength()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        LeafPosition position = _lastLeaf;
+        if (position == null || index < position.start || index >= position.start + position.leaf.length) {
+            position = findLeaf(index);
+            _lastLeaf = position;
+        }
+
+        return position.leaf.text.charAt(index - position.start);
+    }
+
+    @Override
+    public int getLineNumberFromPosition(int position) {
+        if (position < 0 || position > getLength()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        LeafPosition cached = _lastLeaf;
+        if (cached != null && position >= cached.start && position < cached.start + cached.leaf.length) {
+            return cached.lineBreaks + getLineIndex(cached.leaf, position - cached.start);
+        }
+
+        int lineNumber = 0;
+        Node node = _root;
+        while (node instanceof Concat) {
+            Concat concat = (Concat)node;
+            if (position < concat.left.length) {
+                node = concat.left;
+            } else {
+                lineNumber += concat.left.lineBreaks;
+                position -= concat.left.length;
+                node = concat.right;
+            }
+        }
+
+        return lineNumber + getLineIndex((Leaf)node, position);
+    }
+
+    /**
+     * Gets the number of line breaks in {@code leaf} before {@code offset}.
+     */
+    private static int getLineIndex(@NonNull Leaf leaf, int offset) {
+        int index = Arrays.binarySearch(leaf.breaks, offset);
+        // a line break belongs to the line it terminates
+        return index >= 0 ? index : -(index + 1);
+    }
+
+    @Override
+    public int getLineStart(int lineNumber) {
+        if (lineNumber < 0 || lineNumber >= getLineCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (lineNumber == 0) {
+            return 0;
+        }
+
+        return findLineBreak(lineNumber - 1) + 1;
+    }
+
+    @Override
+    public String getLineText(int lineNumber) {
+        if (lineNumber < 0 || lineNumber >= getLineCount()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        // find the leaf holding the line break before the line, which usually holds the whole line
+        LeafPosition position;
+        int start;
+        if (lineNumber == 0) {
+            position = findLeaf(0);
+            start = 0;
+        } else {
+            position = findLineBreakLeaf(lineNumber - 1);
+            start = position.start + position.leaf.breaks[lineNumber - 1 - position.lineBreaks] + 1;
+        }
+
+        int end;
+        int endBreak = lineNumber - position.lineBreaks;
+        if (lineNumber == getLineCount() - 1) {
+            end = getLength();
+        } else if (endBreak < position.leaf.breaks.length) {
+            end = position.start + position.leaf.breaks[endBreak] + 1;
+        } else {
+            end = findLineBreak(lineNumber) + 1;
+        }
+
+        if (start == end) {
+            return "";
+        }
+
+        if (end <= position.start + position.leaf.length) {
+            return position.leaf.text.substring(start - position.start, end - position.start);
+        }
+
+        char[] chars = new char[end - start];
+        getChars(_root, start, end, chars, 0);
+        return new String(chars);
+    }
+
+    @Override
+    public void appendTo(StringBuilder builder, int start, int end) {
+        if (start < 0 || end > getLength() || end < start) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        appendTo(_root, builder, start, end);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destBegin) {
+        if (start < 0 || end > getLength() || end < start) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (destBegin < 0 || destBegin + (end - start) > dest.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        getChars(_root, start, end, dest, destBegin);
+    }
+
+    @Override
+    public @NonNull TextRope applyChanges(@NonNull NormalizedDocumentChangeCollection changes) {
+        Parameters.notNull("changes", changes);
+
+        // apply the changes from last to first so the old offsets remain valid
+        Node root = _root;
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            DocumentChange change = changes.get(i);
+            Node prefix = slice(root, 0, change.getOldOffset());
+            Node suffix = slice(root, change.getOldEnd(), root.length);
+            String newText = change.getNewText();
+            Node inserted = build(newText, 0, newText.length());
+            root = concat(concat(prefix, inserted), suffix);
+        }
+
+        int changesSinceRebalance = _changesSinceRebalance + changes.size();
+        if (root.depth > MaximumDepth || changesSinceRebalance >= RebalanceInterval) {
+            root = rebalance(root);
+            changesSinceRebalance = 0;
+        }
+
+        return new TextRope(root, changesSinceRebalance);
+    }
+
+    private @NonNull LeafPosition findLeaf(int index) {
+        int start = 0;
+        int lineBreaks = 0;
+        Node node = _root;
+        while (node instanceof Concat) {
+            Concat concat = (Concat)node;
+            if (index < start + concat.left.length) {
+                node = concat.left;
+            } else {
+                start += concat.left.length;
+                lineBreaks += concat.left.lineBreaks;
+                node = concat.right;
+            }
+        }
+
+        return new LeafPosition((Leaf)node, start, lineBreaks);
+    }
+
+    /**
+     * Gets the leaf holding the line break at zero-based index
+     * {@code lineBreak}.
+     */
+    private @NonNull LeafPosition findLineBreakLeaf(int lineBreak) {
+        int start = 0;
+        int lineBreaks = 0;
+        Node node = _root;
+        while (node instanceof Concat) {
+            Concat concat = (Concat)node;
+            if (lineBreak < lineBreaks + concat.left.lineBreaks) {
+                node = concat.left;
+            } else {
+                start += concat.left.length;
+                lineBreaks += concat.left.lineBreaks;
+                node = concat.right;
+            }
+        }
+
+        return new LeafPosition((Leaf)node, start, lineBreaks);
+    }
+
+    /**
+     * Gets the offset of the line break at zero-based index {@code lineBreak}.
+     */
+    private int findLineBreak(int lineBreak) {
+        int offset = 0;
+        Node node = _root;
+        while (node instanceof Concat) {
+            Concat concat = (Concat)node;
+            if (lineBreak < concat.left.lineBreaks) {
+                node = concat.left;
+            } else {
+                lineBreak -= concat.left.lineBreaks;
+                offset += concat.left.length;
+                node = concat.right;
+            }
+        }
+
+        return offset + ((Leaf)node).breaks[lineBreak];
+    }
+
+    private static void appendTo(Node node, StringBuilder builder, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+
+        if (node instanceof Leaf) {
+            builder.append(((Leaf)node).text, start, end);
+            return;
+        }
+
+        Concat concat = (Concat)node;
+        int leftLength = concat.left.length;
+        if (start < leftLength) {
+            appendTo(concat.left, builder, start, Math.min(end, leftLength));
+        }
+
+        if (end > leftLength) {
+            appendTo(concat.right, builder, Math.max(start, leftLength) - leftLength, end - leftLength);
+        }
+    }
+
+    private static void getChars(Node node, int start, int end, char[] dest, int destBegin) {
+        if (start >= end) {
+            return;
+        }
+
+        if (node instanceof Leaf) {
+            ((Leaf)node).text.getChars(start, end, dest, destBegin);
+            return;
+        }
+
+        Concat concat = (Concat)node;
+        int leftLength = concat.left.length;
+        if (start < leftLength) {
+            getChars(concat.left, start, Math.min(end, leftLength), dest, destBegin);
+        }
+
+        if (end > leftLength) {
+            int rightStart = Math.max(start, leftLength);
+            getChars(concat.right, rightStart - leftLength, end - leftLength, dest, destBegin + (rightStart - start));
+        }
+    }
+
+    private static @NonNull Node build(@NonNull String text, int start, int end) {
+        int length = end - start;
+        if (length <= MaximumLeafLength) {
+            return new Leaf(text.substring(start, end));
+        }
+
+        // split on a chunk boundary so the leaves stay full
+        int leaves = (length + MaximumLeafLength - 1) / MaximumLeafLength;
+        int middle = start + (leaves / 2) * MaximumLeafLength;
+        return new Concat(build(text, start, middle), build(text, middle, end));
+    }
+
+    private static @NonNull Node slice(@NonNull Node node, int start, int end) {
+        if (start == 0 && end == node.length) {
+            return node;
+        }
+
+        if (node instanceof Leaf) {
+            return new Leaf(((Leaf)node).text.substring(start, end));
+        }
+
+        Concat concat = (Concat)node;
+        int leftLength = concat.left.length;
+        if (end <= leftLength) {
+            return slice(concat.left, start, end);
+        } else if (start >= leftLength) {
+            return slice(concat.right, start - leftLength, end - leftLength);
+        }
+
+        return concat(slice(concat.left, start, leftLength), slice(concat.right, 0, end - leftLength));
+    }
+
+    private static @NonNull Node concat(@NonNull Node left, @NonNull Node right) {
+        if (left.length == 0) {
+            return right;
+        } else if (right.length == 0) {
+            return left;
+        }
+
+        if (right instanceof Leaf) {
+            if (left instanceof Leaf && left.length + right.length <= MaximumLeafLength) {
+                return new Leaf(((Leaf)left).text + ((Leaf)right).text);
+            }
+
+            // merge small edits into the trailing leaf of the left subtree
+            if (left instanceof Concat) {
+                Concat leftConcat = (Concat)left;
+                if (leftConcat.right instanceof Leaf && leftConcat.right.length + right.length <= MaximumLeafLength) {
+                    return new Concat(leftConcat.left, new Leaf(((Leaf)leftConcat.right).text + ((Leaf)right).text));
+                }
+            }
+        } else if (left instanceof Leaf) {
+            Concat rightConcat = (Concat)right;
+            if (rightConcat.left instanceof Leaf && left.length + rightConcat.left.length <= MaximumLeafLength) {
+                return new Concat(new Leaf(((Leaf)left).text + ((Leaf)rightConcat.left).text), rightConcat.right);
+            }
+        }
+
+        return new Concat(left, right);
+    }
+
+    private static @NonNull Node rebalance(@NonNull Node root) {
+        List<Leaf> leaves = new ArrayList<>();
+        collectLeaves(root, leaves);
+
+        // merge runs of adjacent leaves which fit in a single leaf
+        List<Leaf> merged = new ArrayList<>(leaves.size());
+        int runStart = 0;
+        int runLength = 0;
+        for (int i = 0; i <= leaves.size(); i++) {
+            if (i < leaves.size() && runLength + leaves.get(i).length <= MaximumLeafLength) {
+                runLength += leaves.get(i).length;
+                continue;
+            }
+
+            if (i - runStart == 1) {
+                merged.add(leaves.get(runStart));
+            } else if (i > runStart) {
+                StringBuilder builder = new StringBuilder(runLength);
+                for (int j = runStart; j < i; j++) {
+                    builder.append(leaves.get(j).text);
+                }
+
+                merged.add(new Leaf(builder.toString()));
+            }
+
+            if (i < leaves.size()) {
+                runStart = i;
+                runLength = leaves.get(i).length;
+            }
+        }
+
+        return buildBalanced(merged, 0, merged.size());
+    }
+
+    private static void collectLeaves(Node node, List<Leaf> leaves) {
+        if (node instanceof Leaf) {
+            leaves.add((Leaf)node);
+            return;
+        }
+
+        Concat concat = (Concat)node;
+        collectLeaves(concat.left, leaves);
+        collectLeaves(concat.right, leaves);
+    }
+
+    private static Node buildBalanced(List<Leaf> leaves, int start, int end) {
+        if (end - start == 1) {
+            return leaves.get(start);
+        }
+
+        int middle = (start + end) >>> 1;
+        return new Concat(buildBalanced(leaves, start, middle), buildBalanced(leaves, middle, end));
+    }
+
+    private static abstract class Node {
+        protected final int length;
+        protected final int lineBreaks;
+        protected final int depth;
+
+        protected Node(int length, int lineBreaks, int depth) {
+            this.length = length;
+            this.lineBreaks = lineBreaks;
+            this.depth = depth;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private static final int[] EMPTY_BREAKS = new int[0];
+
+        @NonNull
+        private final String text;
+        /** The offsets of the {@code '\n'} characters in {@link #text}. */
+        @NonNull
+        private final int[] breaks;
+
+        public Leaf(@NonNull String text) {
+            this(text, findBreaks(text));
+        }
+
+        private Leaf(@NonNull String text, @NonNull int[] breaks) {
+            super(text.length(), breaks.length, 0);
+            this.text = text;
+            this.breaks = breaks;
+        }
+
+        private static int[] findBreaks(String text) {
+            int count = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    count++;
+                }
+            }
+
+            if (count == 0) {
+                return EMPTY_BREAKS;
+            }
+
+            int[] breaks = new int[count];
+            int index = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    breaks[index++] = i;
+                }
+            }
+
+            return breaks;
+        }
+    }
+
+    private static final class Concat extends Node {
+        @NonNull
+        private final Node left;
+        @NonNull
+        private final Node right;
+
+        public Concat(@NonNull Node left, @NonNull Node right) {
+            super(left.length + right.length, left.lineBreaks + right.lineBreaks, Math.max(left.depth, right.depth) + 1);
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class LeafPosition {
+        @NonNull
+        private final Leaf leaf;
+        private final int start;
+        /** The number of line breaks before {@link #leaf}. */
+        private final int lineBreaks;
+
+        public LeafPosition(@NonNull Leaf leaf, int start, int lineBreaks) {
+            this.leaf = leaf;
+            this.start = start;
+            this.lineBreaks = lineBreaks;
+        }
+    }
+
+}
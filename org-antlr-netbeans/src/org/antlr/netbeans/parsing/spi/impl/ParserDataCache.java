@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.text.JTextComponent;
+import org.antlr.netbeans.parsing.spi.ParserData;
+import org.antlr.netbeans.parsing.spi.ParserDataDefinition;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+import org.netbeans.api.annotations.common.NullAllowed;
+
+/**
+ * The cached parser data for a single document.
+ *
+ * <p>Reads never block. Updates are published with compare-and-set, and data
+ * for an older snapshot never replaces data for a newer snapshot. Data for
+ * component-specific definitions is held in a small copy-on-write table which
+ * only weakly references the components.</p>
+ *
+ * @author Sam Harwell
+ */
+final class ParserDataCache {
+    private static final ComponentEntry[] EMPTY_ENTRIES = new ComponentEntry[0];
+
+    private final ConcurrentMap<ParserDataDefinition<?>, ParserData<?>> documentData =
+        new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ParserDataDefinition<?>, AtomicReference<ComponentEntry[]>> componentData =
+        new ConcurrentHashMap<>();
+
+    @CheckForNull
+    public ParserData<?> get(@NonNull ParserDataDefinition<?> definition, @NullAllowed JTextComponent component) {
+        if (!definition.isComponentSpecific()) {
+            return documentData.get(definition);
+        }
+
+        AtomicReference<ComponentEntry[]> entries = componentData.get(definition);
+        if (entries == null) {
+            return null;
+        }
+
+        for (ComponentEntry entry : entries.get()) {
+            if (entry.component.get() == component) {
+                return entry.data;
+            }
+        }
+
+        return null;
+    }
+
+    public boolean remove(@NonNull ParserDataDefinition<?> definition) {
+        if (!definition.isComponentSpecific()) {
+            return documentData.remove(definition) != null;
+        }
+
+        AtomicReference<ComponentEntry[]> entries = componentData.remove(definition);
+        return entries != null && entries.get().length > 0;
+    }
+
+    /**
+     * Publishes {@code data} unless the cache already holds the same data or
+     * data for a newer snapshot.
+     *
+     * @return {@code true} if the cache was updated, otherwise {@code false}.
+     */
+    public boolean update(@NonNull ParserDataDefinition<?> definition, @NullAllowed JTextComponent component, @NonNull ParserData<?> data) {
+        if (!definition.isComponentSpecific()) {
+            while (true) {
+                ParserData<?> previousData = documentData.get(definition);
+                if (!shouldReplace(previousData, data)) {
+                    return false;
+                }
+
+                if (previousData == null) {
+                    if (documentData.putIfAbsent(definition, data) == null) {
+                        return true;
+                    }
+                } else if (documentData.replace(definition, previousData, data)) {
+                    return true;
+                }
+            }
+        }
+
+        AtomicReference<ComponentEntry[]> entries = componentData.get(definition);
+        if (entries == null) {
+            AtomicReference<ComponentEntry[]> created = new AtomicReference<>(EMPTY_ENTRIES);
+            entries = componentData.putIfAbsent(definition, created);
+            if (entries == null) {
+                entries = created;
+            }
+        }
+
+        while (true) {
+            ComponentEntry[] previousEntries = entries.get();
+            ParserData<?> previousData = null;
+            for (ComponentEntry entry : previousEntries) {
+                if (entry.component.get() == component) {
+                    previousData = entry.data;
+                    break;
+                }
+            }
+
+            if (!shouldReplace(previousData, data)) {
+                return false;
+            }
+
+            // copy the live entries for other components, then append the new entry
+            ComponentEntry[] updatedEntries = new ComponentEntry[previousEntries.length + 1];
+            int count = 0;
+            for (ComponentEntry entry : previousEntries) {
+                JTextComponent entryComponent = entry.component.get();
+                if (entryComponent != null && entryComponent != component) {
+                    updatedEntries[count++] = entry;
+                }
+            }
+
+            updatedEntries[count++] = new ComponentEntry(component, data);
+            if (count < updatedEntries.length) {
+                ComponentEntry[] trimmed = new ComponentEntry[count];
+                System.arraycopy(updatedEntries, 0, trimmed, 0, count);
+                updatedEntries = trimmed;
+            }
+
+            if (entries.compareAndSet(previousEntries, updatedEntries)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean shouldReplace(@NullAllowed ParserData<?> previousData, @NonNull ParserData<?> data) {
+        if (previousData == data || (previousData != null && previousData.equals(data))) {
+            return false;
+        }
+
+        // don't replace new data with old
+        return previousData == null
+            || previousData.getSnapshot().getVersion().getVersionNumber() <= data.getSnapshot().getVersion().getVersionNumber();
+    }
+
+    private static final class ComponentEntry {
+        private final WeakReference<JTextComponent> component;
+        private final ParserData<?> data;
+
+        public ComponentEntry(JTextComponent component, ParserData<?> data) {
+            this.component = new WeakReference<>(component);
+            this.data = data;
+        }
+    }
+
+}
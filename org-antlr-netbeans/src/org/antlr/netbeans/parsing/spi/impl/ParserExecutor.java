@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.antlr.netbeans.editor.text.VersionedDocument;
+import org.netbeans.api.annotations.common.NonNull;
+import org.netbeans.api.annotations.common.NullAllowed;
+
+/**
+ * The scheduling backend used by {@link ParserTaskManagerImpl} to run parser
+ * tasks.
+ *
+ * @author Sam Harwell
+ */
+interface ParserExecutor {
+
+    /**
+     * Schedules a callable for execution.
+     *
+     * @param callable The callable to execute.
+     * @param document The document the callable operates on, or {@code null}
+     * if the callable is not associated with a particular document.
+     * @param priority The priority of the task. Lower values are executed
+     * first.
+     * @param delay The delay before the task is eligible to execute.
+     * @param timeUnit The time unit of {@code delay}.
+     * @return A future representing the pending result of the task.
+     */
+    @NonNull
+    <T> ScheduledFuture<T> schedule(@NonNull Callable<T> callable, @NullAllowed VersionedDocument document, int priority, long delay, @NonNull TimeUnit timeUnit);
+
+    /**
+     * Determines if the current thread is owned by this executor.
+     */
+    boolean isExecutorThread();
+
+}
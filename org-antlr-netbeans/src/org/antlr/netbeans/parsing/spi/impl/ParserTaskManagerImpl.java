@@ -13,25 +13,28 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.RejectedExecutionHandler;
-import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.JTextComponent;
 import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.SnapshotPosition;
 import org.antlr.netbeans.editor.text.VersionedDocument;
 import org.antlr.netbeans.parsing.spi.ParseContext;
 import org.antlr.netbeans.parsing.spi.ParserData;
@@ -46,6 +49,7 @@ import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.netbeans.parsing.spi.ParserTaskProvider;
 import org.antlr.netbeans.parsing.spi.ParserTaskScheduler;
 import org.netbeans.api.annotations.common.NonNull;
+import org.netbeans.api.annotations.common.NullAllowed;
 import org.netbeans.api.editor.mimelookup.MimeLookup;
 import org.netbeans.lib.editor.util.ListenerList;
 import org.openide.filesystems.FileObject;
@@ -69,8 +73,20 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
     private static final Long DEFAULT_DELAY = 500L;
     private static final TimeUnit DEFAULT_TIMEUNIT = TimeUnit.MILLISECONDS;
 
-    private static final int HIGH_THREAD_PRIORITY_VALUE = Thread.NORM_PRIORITY;
-    private static final int LOW_THREAD_PRIORITY_VALUE = Thread.NORM_PRIORITY - 2;
+    static final int HIGH_THREAD_PRIORITY_VALUE = Thread.NORM_PRIORITY;
+    static final int LOW_THREAD_PRIORITY_VALUE = Thread.NORM_PRIORITY - 2;
+
+    // -J-Dorg.antlr.netbeans.parsing.spi.impl.ParserTaskManagerImpl.executor=scheduled
+    private static final String EXECUTOR_PROPERTY = ParserTaskManagerImpl.class.getName() + ".executor";
+    private static final String EXECUTOR_SCHEDULED = "scheduled";
+    private static final String EXECUTOR_WORK_STEALING = "workstealing";
+
+    // -J-Dorg.antlr.netbeans.parsing.spi.impl.ParserTaskManagerImpl.threads=8
+    private static final String THREADS_PROPERTY = ParserTaskManagerImpl.class.getName() + ".threads";
+    // -J-Dorg.antlr.netbeans.parsing.spi.impl.ParserTaskManagerImpl.highPriorityThreads=2
+    private static final String HIGH_PRIORITY_THREADS_PROPERTY = ParserTaskManagerImpl.class.getName() + ".highPriorityThreads";
+    // -J-Dorg.antlr.netbeans.parsing.spi.impl.ParserTaskManagerImpl.documentThreads=2
+    private static final String DOCUMENT_THREADS_PROPERTY = ParserTaskManagerImpl.class.getName() + ".documentThreads";
 
     private final ListenerList<ParserDataListener<Object>> globalListeners = new ListenerList<>();
 
@@ -80,21 +96,37 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
     private final Map<String, Collection<? extends ParserTaskProvider>> taskProviders =
         new HashMap<>();
 
-    private static final String COMPONENT_PROPERTIES_KEY = ParserTaskManagerImpl.class.getName() + "-comp-properties";
-    private static final String DOCUMENT_PROPERTIES_KEY = ParserTaskManagerImpl.class.getName() + "-properties";
+    private static final String DATA_CACHE_KEY = ParserTaskManagerImpl.class.getName() + "-data-cache";
 
-    private final RejectionHandler rejectionHandler;
-    private final ScheduledThreadPoolExecutor highPriorityExecutor;
-    private final ScheduledThreadPoolExecutor lowPriorityExecutor;
+    private final ParserExecutor highPriorityExecutor;
+    private final ParserExecutor lowPriorityExecutor;
+
+    private final ParserTaskStatistics statistics = new ParserTaskStatistics();
+    private final Map<UpdateKey, UpdateCallable<?>> pendingUpdates = new HashMap<>();
 
     public ParserTaskManagerImpl() {
-        rejectionHandler = new RejectionHandler();
+        int threads = Math.max(2, Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+        int highPriorityPoolSize = Math.max(1, Integer.getInteger(HIGH_PRIORITY_THREADS_PROPERTY, Math.max(2, threads / 4)));
+        int lowPriorityPoolSize = Math.max(2, threads - highPriorityPoolSize);
+
+        String executor = System.getProperty(EXECUTOR_PROPERTY, EXECUTOR_WORK_STEALING);
+        if (EXECUTOR_SCHEDULED.equals(executor)) {
+            highPriorityExecutor = new ScheduledParserExecutor(highPriorityPoolSize, HIGH_THREAD_PRIORITY_VALUE);
+            lowPriorityExecutor = new ScheduledParserExecutor(lowPriorityPoolSize, LOW_THREAD_PRIORITY_VALUE);
+        } else {
+            if (!EXECUTOR_WORK_STEALING.equals(executor)) {
+                LOGGER.log(Level.WARNING, "Unknown parser executor \"{0}\", using \"{1}\".", new Object[] { executor, EXECUTOR_WORK_STEALING });
+            }
 
-        int highPriorityPoolSize = 2;
-        highPriorityExecutor = new PriorityInsertionScheduledThreadPoolExecutor(highPriorityPoolSize, new ParserThreadFactory(HIGH_THREAD_PRIORITY_VALUE), rejectionHandler);
+            int documentThreads = Math.max(1, Integer.getInteger(DOCUMENT_THREADS_PROPERTY, Math.max(2, lowPriorityPoolSize / 4)));
+            highPriorityExecutor = new WorkStealingParserExecutor(highPriorityPoolSize, Math.min(documentThreads, highPriorityPoolSize), HIGH_THREAD_PRIORITY_VALUE);
+            lowPriorityExecutor = new WorkStealingParserExecutor(lowPriorityPoolSize, Math.min(documentThreads, lowPriorityPoolSize), LOW_THREAD_PRIORITY_VALUE);
+        }
 
-        int lowPriorityPoolSize = 2;//Math.max(2, Runtime.getRuntime().availableProcessors());
-        lowPriorityExecutor = new PriorityInsertionScheduledThreadPoolExecutor(lowPriorityPoolSize, new ParserThreadFactory(LOW_THREAD_PRIORITY_VALUE), rejectionHandler);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            Object[] args = { executor, highPriorityPoolSize, lowPriorityPoolSize };
+            LOGGER.log(Level.FINE, "Using {0} parser executor with {1} foreground and {2} background threads.", args);
+        }
     }
 
     @Override
@@ -124,7 +156,7 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
 
     @Override
     public Future<ParserData<?>>[] getData(DocumentSnapshot snapshot, JTextComponent component, Collection<? extends ParserDataDefinition<?>> definitions) {
-        return getData(snapshot, definitions, EnumSet.noneOf(ParserDataOptions.class));
+        return getData(snapshot, component, definitions, EnumSet.noneOf(ParserDataOptions.class));
     }
 
     @Override
@@ -133,28 +165,14 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         Parameters.notNull("definition", definition);
         Parameters.notNull("options", options);
 
-        @SuppressWarnings("unchecked")
-        ParserData<T> cachedData = getCachedData(snapshot.getVersionedDocument(), component, definition);
-        boolean useCached = options.contains(ParserDataOptions.NO_UPDATE);
-        boolean allowStale = options.contains(ParserDataOptions.ALLOW_STALE);
-        if (!useCached && cachedData != null) {
-            if (allowStale) {
-                useCached = true;
-            } else if (cachedData.getSnapshot().equals(snapshot)) {
-                useCached = true;
-            }
-        }
-
-        if (useCached) {
-            if (!allowStale && cachedData != null && !cachedData.getSnapshot().equals(snapshot)) {
-                cachedData = null;
-            }
-
-            return new CompletedFuture<>(cachedData, null);
+        Future<ParserData<T>> cachedFuture = getCachedFuture(snapshot, component, definition, options);
+        if (cachedFuture != null) {
+            return cachedFuture;
         }
 
         ParseContext context = new ParseContext(ParserTaskScheduler.MANUAL_TASK_SCHEDULER, snapshot, component);
         Callable<ParserData<T>> callable = createCallable(context, definition);
+        statistics.taskSubmitted();
         if (options.contains(ParserDataOptions.SYNCHRONOUS) || isParserThread()) {
             try {
                 return new CompletedFuture<>(callable.call(), null);
@@ -165,7 +183,7 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         }
 
         callable = decorateCallable(callable);
-        return lowPriorityExecutor.schedule(callable, 0, TimeUnit.NANOSECONDS);
+        return schedule(lowPriorityExecutor, callable, 0, TimeUnit.NANOSECONDS);
     }
 
     @Override
@@ -174,13 +192,71 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         Parameters.notNull("definitions", definitions);
         Parameters.notNull("options", options);
 
-        throw new UnsupportedOperationException("Not supported yet.");
-//        List<ParserData<?>> data = new ArrayList<ParserData<?>>();
-//        for (ParserDataDefinition<?> definition : definitions) {
-//            data.add(getData(snapshot, definition, options));
-//        }
-//
-//        return data.toArray(new ParserData<?>[0]);
+        List<ParserDataDefinition<?>> definitionList = new ArrayList<>(definitions);
+        @SuppressWarnings("unchecked")
+        Future<ParserData<?>>[] result = (Future<ParserData<?>>[])new Future<?>[definitionList.size()];
+
+        // group the definitions which need an update by the provider which computes them
+        Map<ParserTaskProvider, Map<ParserDataDefinition<?>, ResultFuture<ParserData<?>>>> batches = new LinkedHashMap<>();
+        for (int i = 0; i < result.length; i++) {
+            ParserDataDefinition<?> definition = definitionList.get(i);
+            Parameters.notNull("definition", definition);
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Future<ParserData<?>> cachedFuture = (Future<ParserData<?>>)(Future)getCachedFuture(snapshot, component, definition, options);
+            if (cachedFuture != null) {
+                result[i] = cachedFuture;
+                continue;
+            }
+
+            ParserTaskProvider provider = getTaskProvider(snapshot.getVersionedDocument(), definition);
+            if (provider == null) {
+                LOGGER.log(Level.WARNING, "No provider found for parser data \"{0}\".", definition.getName());
+                result[i] = new CompletedFuture<ParserData<?>>(null, null);
+                continue;
+            }
+
+            Map<ParserDataDefinition<?>, ResultFuture<ParserData<?>>> batch = batches.get(provider);
+            if (batch == null) {
+                batch = new LinkedHashMap<>();
+                batches.put(provider, batch);
+            }
+
+            ResultFuture<ParserData<?>> future = batch.get(definition);
+            if (future == null) {
+                future = new ResultFuture<>();
+                batch.put(definition, future);
+            }
+
+            result[i] = future;
+        }
+
+        if (batches.isEmpty()) {
+            return result;
+        }
+
+        ParseContext context = new ParseContext(ParserTaskScheduler.MANUAL_TASK_SCHEDULER, snapshot, component);
+        boolean synchronous = options.contains(ParserDataOptions.SYNCHRONOUS) || isParserThread();
+        for (Map.Entry<ParserTaskProvider, Map<ParserDataDefinition<?>, ResultFuture<ParserData<?>>>> entry : batches.entrySet()) {
+            UpdateBatchCallable callable = new UpdateBatchCallable(this, context, entry.getKey(), entry.getValue());
+            statistics.taskSubmitted();
+            if (synchronous) {
+                try {
+                    callable.call();
+                } catch (Exception ex) {
+                    LOGGER.log(Level.WARNING, "An exception occurred while handling a parse request.", ex);
+                }
+            } else {
+                try {
+                    callable.setFuture(schedule(lowPriorityExecutor, callable, 0, TimeUnit.NANOSECONDS));
+                } catch (RejectedExecutionException ex) {
+                    LOGGER.log(Level.WARNING, "A parse request was rejected by the executor.", ex);
+                    callable.rejected(ex);
+                }
+            }
+        }
+
+        return result;
     }
 
     @Override
@@ -234,9 +310,9 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
 
     @Override
     public <T> ScheduledFuture<ParserData<T>> scheduleData(ParseContext context, ParserDataDefinition<T> data, long delay, TimeUnit timeUnit) {
-        Callable<ParserData<T>> callable = createCallable(context, data);
-        callable = decorateCallable(callable);
-        return lowPriorityExecutor.schedule(callable, delay, timeUnit);
+        UpdateDataCallable<T> callable = new UpdateDataCallable<>(this, context, data);
+        ParserTaskProvider provider = getTaskProvider(context.getDocument(), data);
+        return scheduleUpdate(callable, provider, delay, timeUnit);
     }
 
     @Override
@@ -266,9 +342,8 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
 
     @Override
     public ScheduledFuture<Collection<? extends ParserData<?>>> scheduleTask(@NonNull ParseContext context, @NonNull ParserTaskProvider provider, long delay, @NonNull TimeUnit timeUnit) {
-        Callable<Collection<? extends ParserData<?>>> callable = createCallable(context, provider);
-        callable = decorateCallable(callable);
-        return lowPriorityExecutor.schedule(callable, delay, timeUnit);
+        UpdateTaskCallable callable = new UpdateTaskCallable(this, context, provider);
+        return scheduleUpdate(callable, provider, delay, timeUnit);
     }
 
     @Override
@@ -290,7 +365,7 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         Parameters.notNull("callable", callable);
 
         callable = decorateCallable(callable);
-        return lowPriorityExecutor.schedule(callable, 0, TimeUnit.MILLISECONDS);
+        return schedule(lowPriorityExecutor, callable, 0, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -298,7 +373,15 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         Parameters.notNull("callable", callable);
 
         callable = decorateCallable(callable);
-        return highPriorityExecutor.schedule(callable, 0, TimeUnit.MILLISECONDS);
+        return schedule(highPriorityExecutor, callable, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the counters describing the update tasks scheduled by this manager.
+     */
+    @NonNull
+    public ParserTaskStatistics getStatistics() {
+        return statistics;
     }
 
     protected <T> Callable<T> decorateCallable(@NonNull final Callable<T> callable) {
@@ -372,8 +455,25 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         }
     }
 
-    private static boolean isParserThread() {
-        return Thread.currentThread() instanceof ParserThread;
+    private boolean isParserThread() {
+        return lowPriorityExecutor.isExecutorThread() || highPriorityExecutor.isExecutorThread();
+    }
+
+    private <T> ScheduledFuture<T> schedule(ParserExecutor executor, Callable<T> callable, long delay, TimeUnit timeUnit) {
+        int priority = PRIORITY_INITIAL;
+        if (delay <= 0) {
+            priority += PRIORITY_IMMEDIATE_OFFSET;
+        }
+
+        VersionedDocument document = null;
+        if (callable instanceof UpdateCallable<?>) {
+            document = ((UpdateCallable<?>)callable).context.getDocument();
+            if (document.getDocument() != null) {
+                priority += PRIORITY_FOREGROUND_OFFSET;
+            }
+        }
+
+        return executor.schedule(callable, document, priority, delay, timeUnit);
     }
 
     private <T> Callable<ParserData<T>> createCallable(ParseContext context, ParserDataDefinition<T> data) {
@@ -381,9 +481,71 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         return callable;
     }
 
-    private Callable<Collection<? extends ParserData<?>>> createCallable(ParseContext context, ParserTaskProvider provider) {
-        Callable<Collection<? extends ParserData<?>>> callable = new UpdateTaskCallable(this, context, provider);
-        return callable;
+    /**
+     * Schedules an update which may be coalesced with other pending updates for
+     * the same document and task provider. If a pending update has not started
+     * and would produce results for the same or an older snapshot, it is
+     * superseded: the new update takes over the data it was requested to
+     * compute, and callers waiting on the pending update receive that data
+     * from the new update once it completes.
+     */
+    private <T> ScheduledFuture<T> scheduleUpdate(UpdateCallable<T> callable, @NullAllowed ParserTaskProvider provider, long delay, TimeUnit timeUnit) {
+        statistics.taskSubmitted();
+        if (provider != null) {
+            UpdateKey key = new UpdateKey(callable.context.getDocument(), provider, callable.context.getComponent());
+            synchronized (pendingUpdates) {
+                boolean register = true;
+                UpdateCallable<?> previous = pendingUpdates.get(key);
+                if (previous != null) {
+                    if (previous.supersede(callable)) {
+                        statistics.taskCoalesced();
+                        if (LOGGER.isLoggable(Level.FINE)) {
+                            LOGGER.log(Level.FINE, "Coalesced pending update for task \"{0}\" ({1}).", new Object[] { provider.getDefinition().getName(), statistics });
+                        }
+                    } else if (previous.isPending()) {
+                        // the pending update already targets a newer snapshot
+                        register = false;
+                    }
+                }
+
+                if (register) {
+                    callable.key = key;
+                    pendingUpdates.put(key, callable);
+                }
+            }
+        }
+
+        ScheduledFuture<T> future = schedule(lowPriorityExecutor, callable, delay, timeUnit);
+        callable.setFuture(future);
+        return new TrackedScheduledFuture<>(future, callable);
+    }
+
+    private boolean beginUpdate(UpdateCallable<?> callable) {
+        if (!callable.start()) {
+            return false;
+        }
+
+        removePendingUpdate(callable);
+        statistics.taskExecuted();
+        return true;
+    }
+
+    private void cancelledUpdate(UpdateCallable<?> callable) {
+        removePendingUpdate(callable);
+        callable.cancelled();
+        statistics.taskCancelled();
+    }
+
+    private void removePendingUpdate(UpdateCallable<?> callable) {
+        if (callable.key == null) {
+            return;
+        }
+
+        synchronized (pendingUpdates) {
+            if (pendingUpdates.get(callable.key) == callable) {
+                pendingUpdates.remove(callable.key);
+            }
+        }
     }
 
     private <T> void fireDataChanged(ParserDataDefinition<T> definition, ParserData<T> data) {
@@ -437,190 +599,354 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         }
     }
 
+    /**
+     * Gets a completed future for {@code definition} if the request can be
+     * satisfied from the cache according to {@code options}, otherwise
+     * {@code null}.
+     */
+    private <T> Future<ParserData<T>> getCachedFuture(DocumentSnapshot snapshot, JTextComponent component, ParserDataDefinition<T> definition, Collection<ParserDataOptions> options) {
+        ParserData<T> cachedData = getCachedData(snapshot.getVersionedDocument(), component, definition);
+        boolean useCached = options.contains(ParserDataOptions.NO_UPDATE);
+        boolean allowStale = options.contains(ParserDataOptions.ALLOW_STALE);
+        if (!useCached && cachedData != null) {
+            if (allowStale) {
+                useCached = true;
+            } else if (isCurrent(cachedData, snapshot, component, null)) {
+                useCached = true;
+            }
+        }
+
+        if (!useCached) {
+            return null;
+        }
+
+        if (!allowStale && cachedData != null && !isCurrent(cachedData, snapshot, component, null)) {
+            cachedData = null;
+        }
+
+        return new CompletedFuture<>(cachedData, null);
+    }
+
     @SuppressWarnings("unchecked")
-    private synchronized <T> ParserData<T> getCachedData(VersionedDocument versionedDocument, JTextComponent component, ParserDataDefinition<T> definition) {
+    private <T> ParserData<T> getCachedData(VersionedDocument versionedDocument, JTextComponent component, ParserDataDefinition<T> definition) {
         if (!definition.isCacheable()) {
             return null;
         } else if (component == null && definition.isComponentSpecific()) {
             return null;
         }
 
-        if (definition.isComponentSpecific()) {
-            Map<ParserDataDefinition<?>, Map<JTextComponent, ParserData<?>>> documentProperties = (Map<ParserDataDefinition<?>, Map<JTextComponent, ParserData<?>>>)versionedDocument.getProperty(COMPONENT_PROPERTIES_KEY);
-            if (documentProperties != null) {
-                Map<JTextComponent, ParserData<?>> componentProperties = documentProperties.get(definition);
-                if (componentProperties != null) {
-                    return (ParserData<T>)componentProperties.get(component);
-                }
-            }
-        } else {
-            Map<ParserDataDefinition<?>, ParserData<?>> documentProperties = (Map<ParserDataDefinition<?>, ParserData<?>>)versionedDocument.getProperty(DOCUMENT_PROPERTIES_KEY);
-            if (documentProperties != null) {
-                return (ParserData<T>)documentProperties.get(definition);
-            }
+        ParserDataCache cache = getDataCache(versionedDocument, false);
+        if (cache == null) {
+            return null;
         }
 
-        return null;
+        return (ParserData<T>)cache.get(definition, component);
     }
 
-    private synchronized boolean clearCachedData(VersionedDocument versionedDocument, ParserDataDefinition<?> definition) {
-        if (definition.isComponentSpecific()) {
-            Map<?, ?> componentProperties = (Map<?, ?>)versionedDocument.getProperty(COMPONENT_PROPERTIES_KEY);
-            if (componentProperties != null) {
-                return componentProperties.remove(definition) != null;
-            }
-        } else {
-            Map<?, ?> documentProperties = (Map<?, ?>)versionedDocument.getProperty(DOCUMENT_PROPERTIES_KEY);
-            if (documentProperties != null) {
-                return documentProperties.remove(definition) != null;
-            }
+    /**
+     * Determines if cached {@code data} can satisfy a request for
+     * {@code snapshot}. When the request is made for a {@code component}, data
+     * from a cursor-sensitive task is only current for the caret position it
+     * was computed for, which is {@code position} when the request has one,
+     * otherwise the caret of {@code component}. Requests without a component
+     * have no caret, so the snapshot alone decides.
+     */
+    private static boolean isCurrent(@NullAllowed ParserData<?> data, @NonNull DocumentSnapshot snapshot, @NullAllowed JTextComponent component, @NullAllowed SnapshotPosition position) {
+        if (data == null || !data.getSnapshot().equals(snapshot)) {
+            return false;
+        }
+
+        if (component == null || !ParserTaskScheduler.CURSOR_SENSITIVE_TASK_SCHEDULER.equals(data.getDefinition().getScheduler())) {
+            return true;
+        }
+
+        SnapshotPosition dataPosition = data.getContext().getPosition();
+        if (position != null) {
+            return position.equals(dataPosition);
+        }
+
+        return dataPosition != null && dataPosition.getOffset() == component.getCaretPosition();
+    }
+
+    private boolean clearCachedData(VersionedDocument versionedDocument, ParserDataDefinition<?> definition) {
+        ParserDataCache cache = getDataCache(versionedDocument, false);
+        if (cache == null) {
+            return false;
         }
 
-        return false;
+        return cache.remove(definition);
     }
 
-    private synchronized boolean updateCachedData(ParseContext context, ParserDataDefinition<?> definition, ParserData<?> data) {
+    private boolean updateCachedData(ParseContext context, ParserDataDefinition<?> definition, ParserData<?> data) {
         if (data == null) {
             return false;
         } else if (definition.isComponentSpecific() && data.getContext().getComponent() == null) {
             return false;
         }
 
-        VersionedDocument versionedDocument = context.getDocument();
+        ParserDataCache cache = getDataCache(context.getDocument(), true);
+        assert cache != null;
+        return cache.update(definition, data.getContext().getComponent(), data);
+    }
 
-        if (definition.isComponentSpecific()) {
-            ComponentPropertiesMap documentProperties = (ComponentPropertiesMap)versionedDocument.getProperty(COMPONENT_PROPERTIES_KEY);
-            if (documentProperties == null) {
-                documentProperties = new ComponentPropertiesMap();
-                versionedDocument.putProperty(COMPONENT_PROPERTIES_KEY, documentProperties);
-            }
+    private ParserDataCache getDataCache(VersionedDocument versionedDocument, boolean create) {
+        ParserDataCache cache = (ParserDataCache)versionedDocument.getProperty(DATA_CACHE_KEY);
+        if (cache != null || !create) {
+            return cache;
+        }
 
-            ComponentDataMap componentProperties = (ComponentDataMap)documentProperties.get(definition);
-            if (componentProperties == null) {
-                componentProperties = new ComponentDataMap();
+        // only the first publish for a document takes this lock
+        synchronized (this) {
+            cache = (ParserDataCache)versionedDocument.getProperty(DATA_CACHE_KEY);
+            if (cache == null) {
+                cache = new ParserDataCache();
+                versionedDocument.putProperty(DATA_CACHE_KEY, cache);
             }
 
-            ParserData<?> previousData = componentProperties.get(data.getContext().getComponent());
-            //ParserData<?> previousData = previousDataRef != null ? 
-            if (previousData == data || (previousData != null && previousData.equals(data))) {
-                return false;
-            }
-            else if (previousData != null && !isCurrentNewer(context, previousData, data)) {
-                // don't replace new data with old
-                return false;
-            }
+            return cache;
+        }
+    }
 
-            componentProperties.put(data.getContext().getComponent(), data);
-            return true;
-        } else {
-            DocumentPropertiesMap documentProperties = (DocumentPropertiesMap)versionedDocument.getProperty(DOCUMENT_PROPERTIES_KEY);
-            if (documentProperties == null) {
-                documentProperties = new DocumentPropertiesMap();
-                versionedDocument.putProperty(DOCUMENT_PROPERTIES_KEY, documentProperties);
-            }
+    private static abstract class UpdateCallable<Result> implements Callable<Result> {
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_RUNNING = 1;
+        private static final int STATE_SUPERSEDED = 2;
+        private static final int STATE_CANCELLED = 3;
 
-            ParserData<?> previousData = documentProperties.get(definition);
-            if (previousData == data || (previousData != null && previousData.equals(data))) {
-                return false;
-            }
-            else if (previousData != null && !isCurrentNewer(context, previousData, data)) {
-                // don't replace new data with old
-                return false;
-            }
+        protected final ParserTaskManagerImpl outer;
+        protected final ParseContext context;
 
-            documentProperties.put(definition, data);
-            return true;
-        }
-    }
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+        private volatile Future<?> future;
+        private UpdateKey key;
 
-    private static boolean isCurrentNewer(ParseContext context, ParserData<?> original, ParserData<?> current) {
-        if (original.getSnapshot().getVersion().getVersionNumber() > current.getSnapshot().getVersion().getVersionNumber()) {
-            return false;
+        /**
+         * Released when the update completes, fails, is cancelled, or is
+         * superseded.
+         */
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile UpdateCallable<?> successor;
+        private volatile Collection<? extends ParserData<?>> results;
+        private volatile Throwable failure;
+        private volatile boolean cancelled;
+
+        protected UpdateCallable(ParserTaskManagerImpl outer, ParseContext context) {
+            this.outer = outer;
+            this.context = context;
         }
 
-        return true;
-    }
+        @Override
+        public final Result call() throws Exception {
+            if (!outer.beginUpdate(this)) {
+                return getSupersededResult(Collections.<ParserData<?>>emptyList());
+            }
 
-    private static class ComponentPropertiesMap extends HashMap<ParserDataDefinition<?>, Map<JTextComponent, ParserData<?>>> {
-    }
+            try {
+                return callImpl();
+            } catch (Exception | Error ex) {
+                failure = ex;
+                LOGGER.log(Level.WARNING, Bundle.taskFailedException(), ex);
+                throw ex;
+            } finally {
+                completed.countDown();
+            }
+        }
 
-    private static class ComponentDataMap extends WeakHashMap<JTextComponent, ParserData<?>> {
-    }
+        protected abstract Result callImpl() throws Exception;
 
-    private static class DocumentPropertiesMap extends HashMap<ParserDataDefinition<?>, ParserData<?>> {
-    }
+        /**
+         * Gets the result of this update from the results of the update which
+         * superseded it.
+         */
+        protected abstract Result getSupersededResult(@NonNull Collection<? extends ParserData<?>> results);
+
+        /**
+         * Sets all of the results reported by the task, which are used to
+         * complete the updates superseded by this one.
+         */
+        protected final void setResults(@NonNull Collection<? extends ParserData<?>> results) {
+            this.results = results;
+        }
 
-    private static class RejectionHandler implements RejectedExecutionHandler {
+        @NonNull
+        protected abstract Collection<? extends ParserDataDefinition<?>> getRequestedData();
 
-        @Override
-        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-            throw new UnsupportedOperationException("Not supported yet.");
+        protected void addRequestedData(@NonNull Collection<? extends ParserDataDefinition<?>> data) {
         }
 
-    }
+        public boolean isPending() {
+            return state.get() == STATE_PENDING;
+        }
 
-    private static class ParserThread extends Thread {
+        public boolean isSuperseded() {
+            return state.get() == STATE_SUPERSEDED;
+        }
 
-        public ParserThread(Runnable target) {
-            super(target);
+        private void cancelled() {
+            cancelled = true;
+            onCancelled();
+            completed.countDown();
         }
 
-    }
+        /**
+         * Called when this update is cancelled before it runs.
+         */
+        protected void onCancelled() {
+        }
 
-    private static class ParserThreadFactory implements ThreadFactory {
-        private final int priority;
-        private int threadCount;
+        /**
+         * Determines if the update which finally computes the results of this
+         * superseded update has completed.
+         */
+        private boolean isSuccessorDone() {
+            UpdateCallable<?> current = successor;
+            while (current != null && current.completed.getCount() == 0) {
+                if (!current.isSuperseded()) {
+                    return true;
+                }
 
-        public ParserThreadFactory(int priority) {
-            if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
-                throw new IllegalArgumentException("Invalid thread priority.");
+                current = current.successor;
             }
 
-            this.priority = priority;
+            return false;
         }
 
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread thread = new ParserThread(r);
-            thread.setPriority(priority);
+        /**
+         * Waits for the update which finally computes the results of this
+         * superseded update, following the chain of superseding updates.
+         */
+        @NonNull
+        private Collection<? extends ParserData<?>> getSuccessorResults(boolean timed, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+            assert isSuperseded();
+            long deadline = timed ? System.nanoTime() + unit.toNanos(timeout) : 0;
+            UpdateCallable<?> current = successor;
+            while (true) {
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (!current.completed.await(remaining, TimeUnit.NANOSECONDS)) {
+                        throw new TimeoutException();
+                    }
+                } else {
+                    current.completed.await();
+                }
+
+                if (current.isSuperseded()) {
+                    current = current.successor;
+                    continue;
+                }
 
-            String priorityName = priority >= HIGH_THREAD_PRIORITY_VALUE ? "Foreground" : "Background";
-            String name = String.format("Parse (%s) #%d", priorityName, ++threadCount);
-            thread.setName(name);
+                if (current.cancelled) {
+                    throw new CancellationException();
+                } else if (current.failure != null) {
+                    throw new ExecutionException(current.failure);
+                }
+
+                Collection<? extends ParserData<?>> currentResults = current.results;
+                if (currentResults == null) {
+                    return Collections.emptyList();
+                }
 
-            return thread;
+                return currentResults;
+            }
         }
-    }
 
-    private static abstract class UpdateCallable<Result> implements Callable<Result> {
-        protected final ParserTaskManagerImpl outer;
-        protected final ParseContext context;
+        private boolean start() {
+            return state.compareAndSet(STATE_PENDING, STATE_RUNNING);
+        }
 
-        protected UpdateCallable(ParserTaskManagerImpl outer, ParseContext context) {
-            this.outer = outer;
-            this.context = context;
+        /**
+         * Cancels this update if it has not started yet.
+         */
+        protected final boolean cancelIfPending() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+
+            Future<?> pending = future;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+
+            outer.cancelledUpdate(this);
+            return true;
         }
 
-        @Override
-        public final Result call() throws Exception {
-            try {
-                return callImpl();
-            } catch (Exception | Error ex) {
-                LOGGER.log(Level.WARNING, Bundle.taskFailedException(), ex);
-                throw ex;
+        protected final void setFuture(Future<?> future) {
+            this.future = future;
+            int currentState = state.get();
+            if (currentState == STATE_SUPERSEDED || currentState == STATE_CANCELLED) {
+                future.cancel(false);
             }
         }
 
-        protected abstract Result callImpl() throws Exception;
+        /**
+         * Marks this update as superseded by {@code newer} if it has not started
+         * yet and {@code newer} will compute the same or a newer snapshot.
+         */
+        private boolean supersede(UpdateCallable<?> newer) {
+            DocumentSnapshot snapshot = context.getSnapshot();
+            DocumentSnapshot newerSnapshot = newer.context.getSnapshot();
+            if (newerSnapshot != null) {
+                // a null snapshot means the update will use the current snapshot when it runs
+                if (snapshot == null || newerSnapshot.getVersion().getVersionNumber() < snapshot.getVersion().getVersionNumber()) {
+                    return false;
+                }
+            }
+
+            // the successor is visible to any thread which sees the superseded state
+            successor = newer;
+            if (!state.compareAndSet(STATE_PENDING, STATE_SUPERSEDED)) {
+                successor = null;
+                return false;
+            }
+
+            newer.addRequestedData(getRequestedData());
+
+            // the task no longer needs to run; callers of the TrackedScheduledFuture
+            // wait for the successor instead of observing the cancellation
+            Future<?> pending = future;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+
+            completed.countDown();
+            return true;
+        }
 
     }
 
     private static class UpdateDataCallable<T> extends UpdateCallable<ParserData<T>> {
         private final ParserDataDefinition<T> data;
+        private final Set<ParserDataDefinition<?>> requestedData = new HashSet<>();
 
         public UpdateDataCallable(ParserTaskManagerImpl outer, ParseContext context, ParserDataDefinition<T> data) {
             super(outer, context);
             this.data = data;
+            this.requestedData.add(data);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected ParserData<T> getSupersededResult(Collection<? extends ParserData<?>> results) {
+            for (ParserData<?> result : results) {
+                if (result.getDefinition().equals(data)) {
+                    return (ParserData<T>)result;
+                }
+            }
+
+            return null;
+        }
+
+        @Override
+        protected Collection<? extends ParserDataDefinition<?>> getRequestedData() {
+            return requestedData;
+        }
+
+        @Override
+        protected void addRequestedData(Collection<? extends ParserDataDefinition<?>> data) {
+            requestedData.addAll(data);
         }
 
         @Override
@@ -634,7 +960,8 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
 
             if (data.isCacheable()) {
                 ParserData<T> cachedData = outer.getCachedData(context.getDocument(), context.getComponent(), data);
-                if (cachedData != null && cachedData.getSnapshot().equals(snapshot)) {
+                if (isCurrent(cachedData, snapshot, context.getComponent(), context.getPosition()) && isCached(snapshot, requestedData)) {
+                    setResults(getCachedData(requestedData));
                     return cachedData;
                 }
             }
@@ -659,7 +986,8 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
             }
 
             ResultAggregator handler = new ResultAggregator(outer, context);
-            task.parse(outer, context, snapshot, Collections.<ParserDataDefinition<?>>singleton(data), handler);
+            task.parse(outer, context, snapshot, requestedData, handler);
+            setResults(handler.getResults());
 
             for (ParserData<?> result : handler.getUpdatedResults()) {
                 outer.fireDataChanged((ParserDataDefinition)result.getDefinition(), result);
@@ -673,6 +1001,33 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
 
             return null;
         }
+
+        private boolean isCached(DocumentSnapshot snapshot, Collection<? extends ParserDataDefinition<?>> definitions) {
+            for (ParserDataDefinition<?> definition : definitions) {
+                if (!definition.isCacheable()) {
+                    return false;
+                }
+
+                ParserData<?> cachedData = outer.getCachedData(context.getDocument(), context.getComponent(), definition);
+                if (!isCurrent(cachedData, snapshot, context.getComponent(), context.getPosition())) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private List<ParserData<?>> getCachedData(Collection<? extends ParserDataDefinition<?>> definitions) {
+            List<ParserData<?>> cachedData = new ArrayList<>();
+            for (ParserDataDefinition<?> definition : definitions) {
+                ParserData<?> data = outer.getCachedData(context.getDocument(), context.getComponent(), definition);
+                if (data != null) {
+                    cachedData.add(data);
+                }
+            }
+
+            return cachedData;
+        }
     }
 
     private static class UpdateTaskCallable extends UpdateCallable<Collection<? extends ParserData<?>>> {
@@ -683,6 +1038,16 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
             this.provider = provider;
         }
 
+        @Override
+        protected Collection<? extends ParserData<?>> getSupersededResult(Collection<? extends ParserData<?>> results) {
+            return results;
+        }
+
+        @Override
+        protected Collection<? extends ParserDataDefinition<?>> getRequestedData() {
+            return provider.getDefinition().getOutputs();
+        }
+
         @Override
         @SuppressWarnings("unchecked")
         protected Collection<? extends ParserData<?>> callImpl() throws Exception {
@@ -709,6 +1074,7 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
 
             ResultAggregator handler = new ResultAggregator(outer, context);
             task.parse(outer, context, snapshot, provider.getDefinition().getOutputs(), handler);
+            setResults(handler.getResults());
 
             for (ParserData<?> result : handler.getUpdatedResults()) {
                 outer.fireDataChanged((ParserDataDefinition)result.getDefinition(), result);
@@ -718,6 +1084,238 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         }
     }
 
+    /**
+     * Runs a single task for a group of data definitions produced by the same
+     * provider, completing the future for each definition as soon as its result
+     * is reported by the task.
+     */
+    private static class UpdateBatchCallable extends UpdateCallable<Collection<? extends ParserData<?>>> {
+        private final ParserTaskProvider provider;
+        private final Map<ParserDataDefinition<?>, ResultFuture<ParserData<?>>> futures;
+
+        public UpdateBatchCallable(ParserTaskManagerImpl outer, ParseContext context, ParserTaskProvider provider, Map<ParserDataDefinition<?>, ResultFuture<ParserData<?>>> futures) {
+            super(outer, context);
+            this.provider = provider;
+            this.futures = futures;
+
+            Runnable cancellationHook = new Runnable() {
+                @Override
+                public void run() {
+                    resultCancelled();
+                }
+            };
+
+            for (ResultFuture<ParserData<?>> future : futures.values()) {
+                future.setCancellationHook(cancellationHook);
+            }
+        }
+
+        /**
+         * Completes the futures of a batch which the executor refused to run.
+         */
+        public void rejected(@NonNull RejectedExecutionException ex) {
+            for (ResultFuture<ParserData<?>> future : futures.values()) {
+                future.setException(ex);
+            }
+        }
+
+        @Override
+        protected void onCancelled() {
+            for (ResultFuture<ParserData<?>> future : futures.values()) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Cancels the task once every caller has cancelled the future it was
+         * waiting on, as long as the task has not started yet.
+         */
+        private void resultCancelled() {
+            for (ResultFuture<ParserData<?>> future : futures.values()) {
+                if (!future.isCancelled()) {
+                    return;
+                }
+            }
+
+            cancelIfPending();
+        }
+
+        @Override
+        protected Collection<? extends ParserData<?>> getSupersededResult(Collection<? extends ParserData<?>> results) {
+            return results;
+        }
+
+        @Override
+        protected Collection<? extends ParserDataDefinition<?>> getRequestedData() {
+            return futures.keySet();
+        }
+
+        @Override
+        protected Collection<? extends ParserData<?>> callImpl() throws Exception {
+            try {
+                return parse();
+            } catch (Exception | Error ex) {
+                for (ResultFuture<ParserData<?>> future : futures.values()) {
+                    future.setException(ex);
+                }
+
+                throw ex;
+            } finally {
+                // definitions the task did not produce complete with null, matching getData for a single definition
+                for (ResultFuture<ParserData<?>> future : futures.values()) {
+                    future.set(null);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<? extends ParserData<?>> parse() throws Exception {
+            VersionedDocument document = context.getDocument();
+            DocumentSnapshot snapshot = context.getSnapshot();
+            assert snapshot != null;
+
+            // another request may have computed some of the data since the batch was created
+            Set<ParserDataDefinition<?>> requestedData = new HashSet<>();
+            for (Map.Entry<ParserDataDefinition<?>, ResultFuture<ParserData<?>>> entry : futures.entrySet()) {
+                ParserData<?> cachedData = outer.getCachedData(document, context.getComponent(), entry.getKey());
+                if (isCurrent(cachedData, snapshot, context.getComponent(), context.getPosition())) {
+                    entry.getValue().set(cachedData);
+                } else {
+                    requestedData.add(entry.getKey());
+                }
+            }
+
+            if (requestedData.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            final ParserTask task = provider.createTask(document);
+
+            if (LOGGER.isLoggable(Level.FINE)) {
+                String messageFormat = "{0}: Updating data {1} with task \"{2}\" for {3}#{4}";
+                FileObject fileObject = document.getFileObject();
+                String path = fileObject != null ? fileObject.getPath() : "";
+                LOGGER.log(Level.FINE, messageFormat, new Object[] { Thread.currentThread().getName(), requestedData, task.getDefinition().getName(), path, snapshot.getVersion().getVersionNumber() });
+            }
+
+            ResultAggregator handler = new ResultAggregator(outer, context) {
+                @Override
+                public void addResult(ParserData<?> result) {
+                    super.addResult(result);
+                    ResultFuture<ParserData<?>> future = futures.get(result.getDefinition());
+                    if (future != null) {
+                        future.set(result);
+                    }
+                }
+            };
+
+            task.parse(outer, context, snapshot, requestedData, handler);
+            setResults(handler.getResults());
+
+            for (ParserData<?> result : handler.getUpdatedResults()) {
+                outer.fireDataChanged((ParserDataDefinition)result.getDefinition(), result);
+            }
+
+            return handler.getResults();
+        }
+    }
+
+    /**
+     * A future which is completed explicitly by the task computing its value.
+     * Only the first value, exception, or cancellation of the future is kept.
+     * Cancelling the future does not stop the task by itself, since the task
+     * may be computing other results at the same time; the cancellation hook
+     * lets the task decide.
+     */
+    private static final class ResultFuture<V> implements Future<V> {
+        private final AtomicBoolean completing = new AtomicBoolean();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile V value;
+        private volatile Throwable exception;
+        private volatile boolean cancelled;
+        private volatile Runnable cancellationHook;
+
+        /**
+         * Sets a callback which runs after the future is cancelled.
+         */
+        public void setCancellationHook(@NullAllowed Runnable cancellationHook) {
+            this.cancellationHook = cancellationHook;
+        }
+
+        public boolean set(V v) {
+            if (!completing.compareAndSet(false, true)) {
+                return false;
+            }
+
+            value = v;
+            done.countDown();
+            return true;
+        }
+
+        public boolean setException(@NonNull Throwable t) {
+            Parameters.notNull("t", t);
+            if (!completing.compareAndSet(false, true)) {
+                return false;
+            }
+
+            exception = t;
+            done.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!completing.compareAndSet(false, true)) {
+                return false;
+            }
+
+            cancelled = true;
+            done.countDown();
+
+            Runnable hook = cancellationHook;
+            if (hook != null) {
+                hook.run();
+            }
+
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+
+            return getResult();
+        }
+
+        private V getResult() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            } else if (exception != null) {
+                throw new ExecutionException(exception);
+            }
+
+            return value;
+        }
+    }
+
     private static class ResultAggregator implements ParserResultHandler {
         private final List<ParserData<?>> results = new ArrayList<>();
         private final List<ParserData<?>> updatedResults = new ArrayList<>();
@@ -755,116 +1353,126 @@ public class ParserTaskManagerImpl implements ParserTaskManager {
         }
     }
 
-    private static class PriorityInsertionScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
+    private static final class UpdateKey {
+        private final VersionedDocument document;
+        private final ParserTaskProvider provider;
+        private final JTextComponent component;
 
-        public PriorityInsertionScheduledThreadPoolExecutor(int corePoolSize, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
-            super(corePoolSize, threadFactory, handler);
+        public UpdateKey(@NonNull VersionedDocument document, @NonNull ParserTaskProvider provider, @NullAllowed JTextComponent component) {
+            this.document = document;
+            this.provider = provider;
+            this.component = component;
         }
 
         @Override
-        protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
-            int priority = PRIORITY_INITIAL;
-            if (task.getDelay(DEFAULT_TIMEUNIT) <= 0) {
-                priority += PRIORITY_IMMEDIATE_OFFSET;
-            }
-
-            if (callable instanceof UpdateCallable<?>) {
-                UpdateCallable<?> updateCallable = (UpdateCallable<?>)callable;
-                if (updateCallable.context.getDocument().getDocument() != null) {
-                    priority += PRIORITY_FOREGROUND_OFFSET;
-                }
+        public boolean equals(Object obj) {
+            if (!(obj instanceof UpdateKey)) {
+                return false;
             }
 
-            return new PriorityInsertionRunnableScheduledFuture<>(task, priority);
+            UpdateKey other = (UpdateKey)obj;
+            return this.document.equals(other.document)
+                && this.provider.equals(other.provider)
+                && this.component == other.component;
         }
 
         @Override
-        protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
-            int priority = PRIORITY_INITIAL;
-            if (task.getDelay(DEFAULT_TIMEUNIT) <= 0) {
-                priority += PRIORITY_IMMEDIATE_OFFSET;
-            }
-
-            if (runnable instanceof UpdateCallable<?>) {
-                UpdateCallable<?> updateCallable = (UpdateCallable<?>)runnable;
-                if (updateCallable.context.getDocument().getDocument() != null) {
-                    priority += PRIORITY_FOREGROUND_OFFSET;
-                }
-            }
-
-            return new PriorityInsertionRunnableScheduledFuture<>(task, priority);
+        public int hashCode() {
+            int hash = 7;
+            hash = 79 * hash + this.document.hashCode();
+            hash = 79 * hash + this.provider.hashCode();
+            hash = 79 * hash + System.identityHashCode(this.component);
+            return hash;
         }
-
     }
 
-    private static final int PRIORITY_INITIAL = 2;
-    private static final int PRIORITY_IMMEDIATE_OFFSET = -1;
-    private static final int PRIORITY_FOREGROUND_OFFSET = -2;
-
-    private static class PriorityInsertionRunnableScheduledFuture<V> implements RunnableScheduledFuture<V> {
-        private final RunnableScheduledFuture<V> wrappedTask;
-        private final int priority;
-
-        public PriorityInsertionRunnableScheduledFuture(@NonNull RunnableScheduledFuture<V> wrappedTask, int priority) {
-            Parameters.notNull("wrappedTask", wrappedTask);
-            this.wrappedTask = wrappedTask;
-            this.priority = priority;
+    /**
+     * The future returned for an update scheduled by {@link #scheduleUpdate}.
+     * If the update is superseded before it runs, the future completes with
+     * the corresponding results of the update which superseded it.
+     */
+    private static final class TrackedScheduledFuture<V> implements ScheduledFuture<V> {
+        private final ScheduledFuture<V> wrappedFuture;
+        private final UpdateCallable<V> callable;
+
+        public TrackedScheduledFuture(@NonNull ScheduledFuture<V> wrappedFuture, @NonNull UpdateCallable<V> callable) {
+            this.wrappedFuture = wrappedFuture;
+            this.callable = callable;
         }
 
         @Override
-        public boolean isPeriodic() {
-            return wrappedTask.isPeriodic();
-        }
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (callable.isSuperseded()) {
+                // the work belongs to the successor, which may have other callers
+                return false;
+            }
 
-        @Override
-        public void run() {
-            wrappedTask.run();
-        }
+            boolean cancelled = wrappedFuture.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                callable.outer.cancelledUpdate(callable);
+            }
 
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            return wrappedTask.cancel(mayInterruptIfRunning);
+            return cancelled;
         }
 
         @Override
         public boolean isCancelled() {
-            return wrappedTask.isCancelled();
+            return !callable.isSuperseded() && wrappedFuture.isCancelled();
         }
 
         @Override
         public boolean isDone() {
-            return wrappedTask.isDone();
+            if (callable.isSuperseded()) {
+                return callable.isSuccessorDone();
+            }
+
+            return wrappedFuture.isDone();
         }
 
         @Override
         public V get() throws InterruptedException, ExecutionException {
-            return wrappedTask.get();
+            try {
+                return get(false, 0, null);
+            } catch (TimeoutException ex) {
+                throw new IllegalStateException(ex);
+            }
         }
 
         @Override
         public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            return wrappedTask.get(timeout, unit);
+            return get(true, timeout, unit);
+        }
+
+        private V get(boolean timed, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            long startTime = System.nanoTime();
+            try {
+                V result = timed ? wrappedFuture.get(timeout, unit) : wrappedFuture.get();
+                if (!callable.isSuperseded()) {
+                    return result;
+                }
+            } catch (CancellationException ex) {
+                if (!callable.isSuperseded()) {
+                    throw ex;
+                }
+            }
+
+            long remaining = timed ? unit.toNanos(timeout) - (System.nanoTime() - startTime) : 0;
+            return callable.getSupersededResult(callable.getSuccessorResults(timed, remaining, TimeUnit.NANOSECONDS));
         }
 
         @Override
         public long getDelay(TimeUnit unit) {
-            return wrappedTask.getDelay(unit);
+            return wrappedFuture.getDelay(unit);
         }
 
         @Override
         public int compareTo(Delayed o) {
-            if (o instanceof PriorityInsertionRunnableScheduledFuture<?>) {
-                PriorityInsertionRunnableScheduledFuture<?> other = (PriorityInsertionRunnableScheduledFuture<?>)o;
-                if (this.priority != other.priority) {
-                    return this.priority - other.priority;
-                }
-
-                return wrappedTask.compareTo(((PriorityInsertionRunnableScheduledFuture<?>)o).wrappedTask);
-            }
-
-            return -1;
+            return wrappedFuture.compareTo(o);
         }
-
     }
 
+    static final int PRIORITY_INITIAL = 2;
+    static final int PRIORITY_IMMEDIATE_OFFSET = -1;
+    static final int PRIORITY_FOREGROUND_OFFSET = -2;
+
 }
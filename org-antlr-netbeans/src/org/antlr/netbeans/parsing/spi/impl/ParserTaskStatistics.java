@@ -0,0 +1,75 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the scheduled update work handled by {@link ParserTaskManagerImpl}.
+ *
+ * @author Sam Harwell
+ */
+public class ParserTaskStatistics {
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+
+    /**
+     * Gets the number of update tasks submitted to the task manager.
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * Gets the number of pending update tasks which were replaced by a newer
+     * request for the same document and task provider before they started.
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Gets the number of pending update tasks which were cancelled by a caller
+     * before they started.
+     */
+    public long getCancelledCount() {
+        return cancelled.get();
+    }
+
+    /**
+     * Gets the number of update tasks which actually executed.
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    void taskSubmitted() {
+        submitted.incrementAndGet();
+    }
+
+    void taskCoalesced() {
+        coalesced.incrementAndGet();
+    }
+
+    void taskCancelled() {
+        cancelled.incrementAndGet();
+    }
+
+    void taskExecuted() {
+        executed.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("submitted=%d, coalesced=%d, cancelled=%d, executed=%d",
+            getSubmittedCount(), getCoalescedCount(), getCancelledCount(), getExecutedCount());
+    }
+}
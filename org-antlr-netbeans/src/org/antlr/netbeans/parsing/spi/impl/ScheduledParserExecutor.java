@@ -0,0 +1,213 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.antlr.netbeans.editor.text.VersionedDocument;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * A {@link ParserExecutor} backed by a fixed-size {@link ScheduledThreadPoolExecutor}
+ * which orders pending tasks by priority.
+ *
+ * @author Sam Harwell
+ */
+class ScheduledParserExecutor implements ParserExecutor {
+    private final PriorityInsertionScheduledThreadPoolExecutor executor;
+
+    public ScheduledParserExecutor(int poolSize, int threadPriority) {
+        this.executor = new PriorityInsertionScheduledThreadPoolExecutor(poolSize, new ParserThreadFactory(threadPriority), new RejectionHandler());
+    }
+
+    @Override
+    public <T> ScheduledFuture<T> schedule(Callable<T> callable, VersionedDocument document, int priority, long delay, TimeUnit timeUnit) {
+        return executor.schedule(new PrioritizedCallable<>(callable, priority), delay, timeUnit);
+    }
+
+    @Override
+    public boolean isExecutorThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ParserThread && ((ParserThread)thread).executor == this;
+    }
+
+    private static class RejectionHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown()) {
+                throw new RejectedExecutionException("The parser executor rejected a task.");
+            }
+
+            // tasks submitted during shutdown are cancelled so callers waiting
+            // on the returned future are released
+            if (r instanceof Future<?>) {
+                ((Future<?>)r).cancel(false);
+            }
+        }
+
+    }
+
+    private static class PrioritizedCallable<T> implements Callable<T> {
+        private final Callable<T> callable;
+        private final int priority;
+
+        public PrioritizedCallable(Callable<T> callable, int priority) {
+            this.callable = callable;
+            this.priority = priority;
+        }
+
+        @Override
+        public T call() throws Exception {
+            return callable.call();
+        }
+    }
+
+    private static class ParserThread extends Thread {
+        private final ScheduledParserExecutor executor;
+
+        public ParserThread(ScheduledParserExecutor executor, Runnable target) {
+            super(target);
+            this.executor = executor;
+        }
+
+    }
+
+    private class ParserThreadFactory implements ThreadFactory {
+        private final int priority;
+        private int threadCount;
+
+        public ParserThreadFactory(int priority) {
+            if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
+                throw new IllegalArgumentException("Invalid thread priority.");
+            }
+
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new ParserThread(ScheduledParserExecutor.this, r);
+            thread.setPriority(priority);
+
+            String priorityName = priority >= ParserTaskManagerImpl.HIGH_THREAD_PRIORITY_VALUE ? "Foreground" : "Background";
+            String name = String.format("Parse (%s) #%d", priorityName, ++threadCount);
+            thread.setName(name);
+
+            return thread;
+        }
+    }
+
+    private static class PriorityInsertionScheduledThreadPoolExecutor extends ScheduledThreadPoolExecutor {
+
+        public PriorityInsertionScheduledThreadPoolExecutor(int corePoolSize, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+            super(corePoolSize, threadFactory, handler);
+        }
+
+        @Override
+        protected <V> RunnableScheduledFuture<V> decorateTask(Callable<V> callable, RunnableScheduledFuture<V> task) {
+            int priority = ParserTaskManagerImpl.PRIORITY_INITIAL;
+            if (callable instanceof PrioritizedCallable<?>) {
+                priority = ((PrioritizedCallable<?>)callable).priority;
+            }
+
+            return new PriorityInsertionRunnableScheduledFuture<>(task, priority);
+        }
+
+        @Override
+        protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
+            int priority = ParserTaskManagerImpl.PRIORITY_INITIAL;
+            if (task.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                priority += ParserTaskManagerImpl.PRIORITY_IMMEDIATE_OFFSET;
+            }
+
+            return new PriorityInsertionRunnableScheduledFuture<>(task, priority);
+        }
+
+    }
+
+    private static class PriorityInsertionRunnableScheduledFuture<V> implements RunnableScheduledFuture<V> {
+        private final RunnableScheduledFuture<V> wrappedTask;
+        private final int priority;
+
+        public PriorityInsertionRunnableScheduledFuture(@NonNull RunnableScheduledFuture<V> wrappedTask, int priority) {
+            Parameters.notNull("wrappedTask", wrappedTask);
+            this.wrappedTask = wrappedTask;
+            this.priority = priority;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return wrappedTask.isPeriodic();
+        }
+
+        @Override
+        public void run() {
+            wrappedTask.run();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return wrappedTask.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return wrappedTask.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return wrappedTask.isDone();
+        }
+
+        @Override
+        public V get() throws InterruptedException, ExecutionException {
+            return wrappedTask.get();
+        }
+
+        @Override
+        public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return wrappedTask.get(timeout, unit);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return wrappedTask.getDelay(unit);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            if (o instanceof PriorityInsertionRunnableScheduledFuture<?>) {
+                PriorityInsertionRunnableScheduledFuture<?> other = (PriorityInsertionRunnableScheduledFuture<?>)o;
+                if (this.priority != other.priority) {
+                    return this.priority - other.priority;
+                }
+
+                return wrappedTask.compareTo(((PriorityInsertionRunnableScheduledFuture<?>)o).wrappedTask);
+            }
+
+            return -1;
+        }
+
+    }
+
+}
@@ -0,0 +1,315 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.antlr.netbeans.editor.text.VersionedDocument;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * A {@link ParserExecutor} which runs tasks on a work-stealing {@link ForkJoinPool}.
+ *
+ * <p>Tasks which are ready to run are held in a single queue ordered by
+ * priority, so the most important task for any document is always the next one
+ * to start. Each document may occupy at most {@code maxDocumentThreads} workers
+ * at a time; a task for a document which has reached that limit is passed over
+ * until one of the document's running tasks completes. Delayed tasks are held
+ * by a single timer thread until they become ready.</p>
+ *
+ * @author Sam Harwell
+ */
+class WorkStealingParserExecutor implements ParserExecutor {
+    private static final Object NO_DOCUMENT = new Object();
+
+    private final ForkJoinPool pool;
+    private final ScheduledThreadPoolExecutor timer;
+    private final int parallelism;
+    private final int maxDocumentThreads;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The tasks which are ready to run, ordered by priority. Guarded by
+     * {@link #readyTasks}.
+     */
+    private final NavigableSet<ParserFutureTask<?>> readyTasks = new TreeSet<>();
+    /**
+     * The number of running tasks for each document. Guarded by
+     * {@link #readyTasks}.
+     */
+    private final Map<Object, Integer> activeDocumentTasks = new HashMap<>();
+    /**
+     * The number of workers submitted to {@link #pool}. Guarded by
+     * {@link #readyTasks}.
+     */
+    private int activeWorkers;
+
+    public WorkStealingParserExecutor(int parallelism, int maxDocumentThreads, int threadPriority) {
+        if (parallelism <= 0 || maxDocumentThreads <= 0) {
+            throw new IllegalArgumentException("The pool must allow at least one thread.");
+        }
+
+        this.pool = new ForkJoinPool(parallelism, new ParserWorkerThreadFactory(threadPriority), null, true);
+        this.timer = new ScheduledThreadPoolExecutor(1, new TimerThreadFactory(threadPriority));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.parallelism = parallelism;
+        this.maxDocumentThreads = maxDocumentThreads;
+    }
+
+    @Override
+    public <T> ScheduledFuture<T> schedule(Callable<T> callable, VersionedDocument document, int priority, long delay, TimeUnit timeUnit) {
+        Parameters.notNull("callable", callable);
+        Parameters.notNull("timeUnit", timeUnit);
+
+        Object key = document != null ? document : NO_DOCUMENT;
+        long triggerTime = System.nanoTime() + Math.max(0, timeUnit.toNanos(delay));
+        final ParserFutureTask<T> task = new ParserFutureTask<>(callable, key, priority, triggerTime, sequence.getAndIncrement());
+        if (delay <= 0) {
+            dispatch(task);
+        } else {
+            task.timerFuture = timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch(task);
+                }
+            }, delay, timeUnit);
+        }
+
+        return task;
+    }
+
+    @Override
+    public boolean isExecutorThread() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ParserWorkerThread && ((ParserWorkerThread)thread).getPool() == pool;
+    }
+
+    private void dispatch(@NonNull ParserFutureTask<?> task) {
+        if (task.isDone()) {
+            return;
+        }
+
+        boolean startWorker = false;
+        synchronized (readyTasks) {
+            readyTasks.add(task);
+            if (activeWorkers < parallelism) {
+                activeWorkers++;
+                startWorker = true;
+            }
+        }
+
+        if (startWorker) {
+            pool.execute(new Worker());
+        }
+    }
+
+    /**
+     * Removes the highest priority task whose document is below the worker
+     * limit from {@link #readyTasks}, and marks its document as running it.
+     *
+     * @return The task to run, or {@code null} if no task can run now.
+     */
+    private ParserFutureTask<?> takeTask() {
+        assert Thread.holdsLock(readyTasks);
+        for (Iterator<ParserFutureTask<?>> it = readyTasks.iterator(); it.hasNext(); ) {
+            ParserFutureTask<?> task = it.next();
+            if (task.isDone()) {
+                it.remove();
+                continue;
+            }
+
+            Integer active = activeDocumentTasks.get(task.key);
+            int count = active != null ? active : 0;
+            if (count >= maxDocumentThreads) {
+                continue;
+            }
+
+            it.remove();
+            activeDocumentTasks.put(task.key, count + 1);
+            return task;
+        }
+
+        return null;
+    }
+
+    private void completeTask(ParserFutureTask<?> task) {
+        assert Thread.holdsLock(readyTasks);
+        int count = activeDocumentTasks.get(task.key) - 1;
+        if (count == 0) {
+            activeDocumentTasks.remove(task.key);
+        } else {
+            activeDocumentTasks.put(task.key, count);
+        }
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            ParserFutureTask<?> task;
+            synchronized (readyTasks) {
+                task = takeTask();
+                if (task == null) {
+                    activeWorkers--;
+                    return;
+                }
+            }
+
+            try {
+                task.run();
+            } finally {
+                boolean resubmit;
+                synchronized (readyTasks) {
+                    completeTask(task);
+                    resubmit = !readyTasks.isEmpty();
+                    if (!resubmit) {
+                        activeWorkers--;
+                    }
+                }
+
+                if (resubmit) {
+                    // return to the pool between tasks so the worker does not
+                    // hold its thread while blocked tasks are waiting
+                    pool.execute(this);
+                }
+            }
+        }
+    }
+
+    private static final class ParserFutureTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        private final Object key;
+        private final int priority;
+        private final long triggerTime;
+        private final long sequenceNumber;
+        private volatile ScheduledFuture<?> timerFuture;
+
+        public ParserFutureTask(Callable<V> callable, Object key, int priority, long triggerTime, long sequenceNumber) {
+            super(callable);
+            this.key = key;
+            this.priority = priority;
+            this.triggerTime = triggerTime;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return false;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(triggerTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            ScheduledFuture<?> pending = timerFuture;
+            if (cancelled && pending != null) {
+                pending.cancel(false);
+            }
+
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            if (o == this) {
+                return 0;
+            }
+
+            if (o instanceof ParserFutureTask<?>) {
+                ParserFutureTask<?> other = (ParserFutureTask<?>)o;
+                if (this.priority != other.priority) {
+                    return this.priority < other.priority ? -1 : 1;
+                }
+
+                long diff = this.triggerTime - other.triggerTime;
+                if (diff != 0) {
+                    return diff < 0 ? -1 : 1;
+                }
+
+                return this.sequenceNumber < other.sequenceNumber ? -1 : 1;
+            }
+
+            long diff = getDelay(TimeUnit.NANOSECONDS) - o.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    private static final class ParserWorkerThread extends ForkJoinWorkerThread {
+
+        public ParserWorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+
+    }
+
+    private static final class ParserWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final int priority;
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        public ParserWorkerThreadFactory(int priority) {
+            if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
+                throw new IllegalArgumentException("Invalid thread priority.");
+            }
+
+            this.priority = priority;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = new ParserWorkerThread(pool);
+            thread.setPriority(priority);
+
+            String priorityName = priority >= ParserTaskManagerImpl.HIGH_THREAD_PRIORITY_VALUE ? "Foreground" : "Background";
+            String name = String.format("Parse (%s) #%d", priorityName, threadCount.incrementAndGet());
+            thread.setName(name);
+
+            return thread;
+        }
+    }
+
+    private static final class TimerThreadFactory implements ThreadFactory {
+        private final int priority;
+
+        public TimerThreadFactory(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+
+            String priorityName = priority >= ParserTaskManagerImpl.HIGH_THREAD_PRIORITY_VALUE ? "Foreground" : "Background";
+            thread.setName(String.format("Parse (%s) Timer", priorityName));
+            return thread;
+        }
+    }
+
+}
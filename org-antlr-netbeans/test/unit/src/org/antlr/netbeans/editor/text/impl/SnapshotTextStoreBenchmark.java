@@ -0,0 +1,208 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.editor.text.impl;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the {@link LineTextCache} and {@link TextRope} text stores for the
+ * operations performed while the user types in a large document: creating a
+ * new snapshot for each keystroke, then reading the new snapshot for the lexer,
+ * highlighters, and parser tasks.
+ * <p>
+ * Each read is measured on the store produced by the edits, so the cost of any
+ * fragmentation the edits leave behind is included. The reads are:
+ * <ul>
+ * <li>sequential {@code charAt} over a window of the text, as a lexer reads
+ * it</li>
+ * <li>random {@code charAt}</li>
+ * <li>{@code getLineText} and {@code getLineNumberFromPosition} for random
+ * lines and offsets</li>
+ * <li>{@code subSequence}, which copies a short random range of the text
+ * with {@code appendTo}</li>
+ * <li>{@code getText}, which copies the whole text with {@code getChars}</li>
+ * </ul>
+ * Every measurement is preceded by warm-up rounds which are not reported.
+ * <p>
+ * Usage: {@code SnapshotTextStoreBenchmark [sizesInMB] [edits] [iterations]},
+ * where {@code sizesInMB} is a comma separated list such as {@code 1,50}.
+ *
+ * @author Sam Harwell
+ */
+public final class SnapshotTextStoreBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int READ_COUNT = 100000;
+    private static final int SEQUENTIAL_WINDOW = 1 << 20;
+    private static final int SUBSEQUENCE_LENGTH = 256;
+
+    /**
+     * Holds the result of the reads so they are not optimized away.
+     */
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        String[] sizes = (args.length > 0 ? args[0] : "1,50").split(",");
+        int editCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        for (String size : sizes) {
+            String text = createText(Integer.parseInt(size.trim()) << 20);
+            LineTextCache lineTextCache = new LineTextCache(text);
+            System.out.format("%s MB: %d characters, %d lines, %d edits%n", size.trim(), text.length(), lineTextCache.getLineCount(), editCount);
+            measure("LineTextCache", lineTextCache, editCount, iterations);
+            lineTextCache = null;
+            measure("TextRope", new TextRope(text), editCount, iterations);
+        }
+    }
+
+    private static String createText(int length) {
+        StringBuilder builder = new StringBuilder(length + 64);
+        for (int i = 0; builder.length() < length; i++) {
+            builder.append("    rule").append(i).append(" : ID ('+' rule").append(i + 1).append(")* ;\n");
+        }
+
+        return builder.toString();
+    }
+
+    private static void measure(String name, SnapshotTextStore store, int editCount, int iterations) {
+        SnapshotTextStore edited = null;
+        long[] editTimes = new long[iterations];
+        for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+            long startTime = System.nanoTime();
+            edited = edit(store, editCount, new Random(i));
+            if (i >= 0) {
+                editTimes[i] = System.nanoTime() - startTime;
+            }
+        }
+
+        report(name, "applyChanges", editTimes, editCount);
+
+        final SnapshotTextStore current = edited;
+        final int length = current.getLength();
+        final int window = Math.min(SEQUENTIAL_WINDOW, length);
+        report(name, "sequential charAt", measure(iterations, new Reader() {
+            @Override
+            public long read(Random random) {
+                long checksum = 0;
+                int start = random.nextInt(length - window + 1);
+                for (int i = start; i < start + window; i++) {
+                    checksum += current.charAt(i);
+                }
+
+                return checksum;
+            }
+        }), window);
+
+        report(name, "random charAt", measure(iterations, new Reader() {
+            @Override
+            public long read(Random random) {
+                long checksum = 0;
+                for (int i = 0; i < READ_COUNT; i++) {
+                    checksum += current.charAt(random.nextInt(length));
+                }
+
+                return checksum;
+            }
+        }), READ_COUNT);
+
+        report(name, "getLineText", measure(iterations, new Reader() {
+            @Override
+            public long read(Random random) {
+                long checksum = 0;
+                int lineCount = current.getLineCount();
+                for (int i = 0; i < READ_COUNT; i++) {
+                    checksum += current.getLineText(random.nextInt(lineCount)).length();
+                }
+
+                return checksum;
+            }
+        }), READ_COUNT);
+
+        report(name, "getLineNumber", measure(iterations, new Reader() {
+            @Override
+            public long read(Random random) {
+                long checksum = 0;
+                for (int i = 0; i < READ_COUNT; i++) {
+                    checksum += current.getLineNumberFromPosition(random.nextInt(length));
+                }
+
+                return checksum;
+            }
+        }), READ_COUNT);
+
+        report(name, "subSequence", measure(iterations, new Reader() {
+            @Override
+            public long read(Random random) {
+                long checksum = 0;
+                StringBuilder builder = new StringBuilder(SUBSEQUENCE_LENGTH);
+                for (int i = 0; i < READ_COUNT; i++) {
+                    int start = random.nextInt(length - SUBSEQUENCE_LENGTH);
+                    builder.setLength(0);
+                    current.appendTo(builder, start, start + SUBSEQUENCE_LENGTH);
+                    checksum += builder.charAt(SUBSEQUENCE_LENGTH - 1);
+                }
+
+                return checksum;
+            }
+        }), READ_COUNT);
+
+        report(name, "getText", measure(iterations, new Reader() {
+            @Override
+            public long read(Random random) {
+                char[] chars = new char[length];
+                current.getChars(0, length, chars, 0);
+                return chars[random.nextInt(length)];
+            }
+        }), 1);
+    }
+
+    private static SnapshotTextStore edit(SnapshotTextStore store, int editCount, Random random) {
+        SnapshotTextStore current = store;
+        int offset = random.nextInt(store.getLength());
+        for (int j = 0; j < editCount; j++) {
+            // type characters at one location, inserting a line break now and then
+            String newText = j % 40 == 39 ? "\n" : "x";
+            NbNormalizedDocumentChangeCollection changes = new NbNormalizedDocumentChangeCollection();
+            changes.add(new NbDocumentChange(offset, "", offset, newText));
+            current = current.applyChanges(changes);
+            offset++;
+        }
+
+        return current;
+    }
+
+    private static long[] measure(int iterations, Reader reader) {
+        long[] times = new long[iterations];
+        for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+            long startTime = System.nanoTime();
+            sink += reader.read(new Random(i));
+            if (i >= 0) {
+                times[i] = System.nanoTime() - startTime;
+            }
+        }
+
+        return times;
+    }
+
+    private static void report(String store, String operation, long[] times, int operations) {
+        Arrays.sort(times);
+        double median = times[times.length / 2];
+        System.out.format("  %-14s %-18s median %9.2fms  min %9.2fms  (%8.1fns/op)%n",
+            store, operation, median / 1e6, times[0] / 1e6, median / operations);
+    }
+
+    private interface Reader {
+        long read(Random random);
+    }
+
+    private SnapshotTextStoreBenchmark() {
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.editor.text.impl;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class TextRopeTest {
+
+    @Test
+    public void testEmpty() {
+        TextRope rope = new TextRope("");
+        assertEquals(0, rope.getLength());
+        assertEquals(1, rope.getLineCount());
+        assertEquals("", rope.getLineText(0));
+        assertEquals(0, rope.getLineNumberFromPosition(0));
+    }
+
+    @Test
+    public void testLargeText() {
+        // spans several leaves, with lines crossing the leaf boundaries
+        String text = createText(new Random(0), 20000);
+        assertText(text, new TextRope(text));
+    }
+
+    @Test
+    public void testInsertDelete() {
+        String text = createText(new Random(1), 10000);
+        TextRope rope = new TextRope(text);
+
+        TextRope inserted = rope.applyChanges(changes(new NbDocumentChange(5000, "", 5000, "abc\ndef\n")));
+        String insertedText = text.substring(0, 5000) + "abc\ndef\n" + text.substring(5000);
+        assertText(insertedText, inserted);
+
+        TextRope deleted = inserted.applyChanges(changes(new NbDocumentChange(100, insertedText.substring(100, 7000), 100, "")));
+        assertText(insertedText.substring(0, 100) + insertedText.substring(7000), deleted);
+
+        // the previous versions are unchanged
+        assertText(text, rope);
+        assertText(insertedText, inserted);
+    }
+
+    @Test
+    public void testMultipleChanges() {
+        // the changes are reported in order, each relative to the text after the previous change
+        String text = createText(new Random(2), 6000);
+        String expected = text;
+        NbNormalizedDocumentChangeCollection changes = new NbNormalizedDocumentChangeCollection();
+        int[][] edits = { { 5000, 5500 }, { 3000, 3000 }, { 10, 20 } };
+        String[] newTexts = { "y", "\n\n\n", "x\n" };
+        for (int i = 0; i < edits.length; i++) {
+            int start = edits[i][0];
+            int end = edits[i][1];
+            changes.add(new NbDocumentChange(start, expected.substring(start, end), start, newTexts[i]));
+            expected = expected.substring(0, start) + newTexts[i] + expected.substring(end);
+        }
+
+        assertEquals(3, changes.size());
+        assertText(expected, new TextRope(text).applyChanges(changes));
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(3);
+        String text = createText(random, 5000);
+        TextRope rope = new TextRope(text);
+
+        // enough single-character edits to force the rope to rebalance
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(text.length() + 1);
+            int end = Math.min(text.length(), start + random.nextInt(8));
+            String newText = createText(random, random.nextInt(4));
+            rope = rope.applyChanges(changes(new NbDocumentChange(start, text.substring(start, end), start, newText)));
+            text = text.substring(0, start) + newText + text.substring(end);
+
+            if (i % 100 == 0) {
+                assertText(text, rope);
+            }
+        }
+
+        assertText(text, rope);
+    }
+
+    @Test
+    public void testPeriodicRebalance() {
+        Random random = new Random(4);
+        String text = createText(random, 100000);
+        TextRope rope = new TextRope(text);
+
+        // scattered edits split leaves without making the tree deep enough to force a rebalance
+        for (int i = 0; i < 1024; i++) {
+            int start = random.nextInt(text.length());
+            rope = rope.applyChanges(changes(new NbDocumentChange(start, text.substring(start, start + 1), start, "")));
+            text = text.substring(0, start) + text.substring(start + 1);
+        }
+
+        assertText(text, rope);
+        assertTrue("depth: " + rope.getDepth(), rope.getDepth() <= new TextRope(text).getDepth() + 1);
+    }
+
+    private static NbNormalizedDocumentChangeCollection changes(NbDocumentChange change) {
+        NbNormalizedDocumentChangeCollection changes = new NbNormalizedDocumentChangeCollection();
+        changes.add(change);
+        return changes;
+    }
+
+    private static void assertText(String expected, TextRope rope) {
+        assertEquals(expected.length(), rope.getLength());
+
+        char[] chars = new char[expected.length()];
+        rope.getChars(0, expected.length(), chars, 0);
+        assertEquals(expected, new String(chars));
+
+        StringBuilder builder = new StringBuilder();
+        rope.appendTo(builder, 0, expected.length());
+        assertEquals(expected, builder.toString());
+
+        for (int i = 0; i < expected.length(); i += 7) {
+            assertEquals(expected.charAt(i), rope.charAt(i));
+        }
+
+        // each line keeps its line break, and a final line break is followed by an empty line
+        String[] lines = expected.split("(?<=\n)", -1);
+        int lineCount = lines.length;
+        assertEquals(lineCount, rope.getLineCount());
+        int lineStart = 0;
+        for (int line = 0; line < lineCount; line++) {
+            assertEquals(lineStart, rope.getLineStart(line));
+            assertEquals(lines[line], rope.getLineText(line));
+            assertEquals(line, rope.getLineNumberFromPosition(lineStart));
+            if (!lines[line].isEmpty()) {
+                assertEquals(line, rope.getLineNumberFromPosition(lineStart + lines[line].length() - 1));
+            }
+
+            lineStart += lines[line].length();
+        }
+    }
+
+    private static String createText(Random random, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(random.nextInt(40) == 0 ? '\n' : (char)('a' + random.nextInt(26)));
+        }
+
+        return builder.toString();
+    }
+}
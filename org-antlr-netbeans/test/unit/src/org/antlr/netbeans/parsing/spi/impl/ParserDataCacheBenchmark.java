@@ -0,0 +1,265 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.DocumentVersion;
+import org.antlr.netbeans.parsing.spi.ParseContext;
+import org.antlr.netbeans.parsing.spi.ParserData;
+import org.antlr.netbeans.parsing.spi.ParserDataDefinition;
+
+/**
+ * Measures parser data cache reads while one thread keeps publishing new data,
+ * the access pattern of the highlighters, taggers and navigators of an open
+ * editor while the user types.
+ * <p>
+ * The per-document {@link ParserDataCache} is compared to the previous cache,
+ * a map guarded by the monitor of the task manager.
+ * <p>
+ * Usage: {@code ParserDataCacheBenchmark [readers] [milliseconds] [iterations]}
+ *
+ * @author Sam Harwell
+ */
+public final class ParserDataCacheBenchmark {
+
+    private static final int DEFINITION_COUNT = 16;
+
+    /**
+     * Holds the result of the reads so they are not optimized away.
+     */
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int readerCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int milliseconds = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        List<ParserDataDefinition<?>> definitions = new ArrayList<>();
+        for (int i = 0; i < DEFINITION_COUNT; i++) {
+            definitions.add(new ParserDataDefinition<>("Definition" + i, Object.class, false, true, null));
+        }
+
+        System.out.format("%d readers, 1 writer, %d processors%n", readerCount, Runtime.getRuntime().availableProcessors());
+        measure("synchronized map", new SynchronizedCache(), definitions, readerCount, milliseconds, iterations);
+        measure("ParserDataCache", new ConcurrentCache(), definitions, readerCount, milliseconds, iterations);
+    }
+
+    private static void measure(String name, Cache cache, List<ParserDataDefinition<?>> definitions, int readerCount, int milliseconds, int iterations) throws InterruptedException {
+        // warm up
+        run(cache, definitions, readerCount, milliseconds);
+
+        long[] reads = new long[iterations];
+        long[] writes = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long[] result = run(cache, definitions, readerCount, milliseconds);
+            reads[i] = result[0] * 1000 / milliseconds;
+            writes[i] = result[1] * 1000 / milliseconds;
+        }
+
+        Arrays.sort(reads);
+        Arrays.sort(writes);
+        System.out.format("%-20s reads/s min %12d  median %12d  max %12d   writes/s median %10d%n", name, reads[0], reads[iterations / 2], reads[iterations - 1], writes[iterations / 2]);
+    }
+
+    private static long[] run(final Cache cache, final List<ParserDataDefinition<?>> definitions, int readerCount, int milliseconds) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final long[] deadline = new long[1];
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < readerCount; i++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    long count = 0;
+                    long checksum = 0;
+                    while (System.nanoTime() < deadline[0]) {
+                        for (int j = 0; j < definitions.size(); j++) {
+                            ParserData<?> data = cache.get(definitions.get(j));
+                            if (data != null) {
+                                checksum += data.getSnapshot().getVersion().getVersionNumber();
+                            }
+                        }
+
+                        count += definitions.size();
+                    }
+
+                    reads.addAndGet(count);
+                    sink += checksum;
+                }
+            }));
+        }
+
+        threads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                int version = 0;
+                long count = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    DocumentSnapshot snapshot = createSnapshot(++version);
+                    for (ParserDataDefinition<?> definition : definitions) {
+                        cache.update(definition, new Data(definition, snapshot));
+                        count++;
+                    }
+                }
+
+                writes.addAndGet(count);
+            }
+        }));
+
+        deadline[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(milliseconds);
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return new long[] { reads.get(), writes.get() };
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DocumentSnapshot createSnapshot(final int versionNumber) {
+        final DocumentVersion version = (DocumentVersion)Proxy.newProxyInstance(DocumentVersion.class.getClassLoader(), new Class<?>[] { DocumentVersion.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                case "getVersionNumber":
+                    return versionNumber;
+
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+
+                case "equals":
+                    return proxy == args[0];
+
+                default:
+                    return null;
+                }
+            }
+        });
+
+        return (DocumentSnapshot)Proxy.newProxyInstance(DocumentSnapshot.class.getClassLoader(), new Class<?>[] { DocumentSnapshot.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                case "getVersion":
+                    return version;
+
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+
+                case "equals":
+                    return proxy == args[0];
+
+                default:
+                    return null;
+                }
+            }
+        });
+    }
+
+    private interface Cache {
+        ParserData<?> get(ParserDataDefinition<?> definition);
+
+        void update(ParserDataDefinition<?> definition, ParserData<?> data);
+    }
+
+    /**
+     * The cache before {@link ParserDataCache}: every read and update takes
+     * the monitor of the task manager.
+     */
+    private static final class SynchronizedCache implements Cache {
+        private final Map<ParserDataDefinition<?>, ParserData<?>> data = new HashMap<>();
+
+        @Override
+        public synchronized ParserData<?> get(ParserDataDefinition<?> definition) {
+            return data.get(definition);
+        }
+
+        @Override
+        public synchronized void update(ParserDataDefinition<?> definition, ParserData<?> updatedData) {
+            ParserData<?> previous = data.get(definition);
+            if (previous == null || previous.getSnapshot().getVersion().getVersionNumber() <= updatedData.getSnapshot().getVersion().getVersionNumber()) {
+                data.put(definition, updatedData);
+            }
+        }
+    }
+
+    private static final class ConcurrentCache implements Cache {
+        private final ParserDataCache cache = new ParserDataCache();
+
+        @Override
+        public ParserData<?> get(ParserDataDefinition<?> definition) {
+            return cache.get(definition, null);
+        }
+
+        @Override
+        public void update(ParserDataDefinition<?> definition, ParserData<?> data) {
+            cache.update(definition, null, data);
+        }
+    }
+
+    private static final class Data implements ParserData<Object> {
+        private final ParserDataDefinition<?> definition;
+        private final DocumentSnapshot snapshot;
+
+        public Data(ParserDataDefinition<?> definition, DocumentSnapshot snapshot) {
+            this.definition = definition;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public ParseContext getContext() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ParserDataDefinition<Object> getDefinition() {
+            return (ParserDataDefinition<Object>)definition;
+        }
+
+        @Override
+        public DocumentSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        @Override
+        public Object getData() {
+            return null;
+        }
+    }
+
+    private ParserDataCacheBenchmark() {
+    }
+}
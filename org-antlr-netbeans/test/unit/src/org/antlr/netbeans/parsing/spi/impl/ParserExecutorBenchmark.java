@@ -0,0 +1,165 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.antlr.netbeans.editor.text.VersionedDocument;
+
+/**
+ * Measures the time until every parser data definition of a set of open
+ * grammars is fresh, using the previous fixed 2-thread executor and the
+ * work-stealing executor.
+ * <p>
+ * Each synthetic grammar runs the task graph of the grammar editor: the lexer
+ * tokens feed the reference parse, which feeds the semantic analyzer,
+ * navigator, reference anchors and code model tasks. Each task scans the text
+ * of its grammar, so the cost of a task grows with the size of the grammar.
+ * <p>
+ * Usage: {@code ParserExecutorBenchmark [documents] [rules] [iterations]}
+ *
+ * @author Sam Harwell
+ */
+public final class ParserExecutorBenchmark {
+
+    private static final int DEPENDENT_TASKS = 4;
+
+    /**
+     * Holds the result of the scans so they are not optimized away.
+     */
+    private static volatile int sink;
+
+    public static void main(String[] args) throws Exception {
+        int documentCount = args.length > 0 ? Integer.parseInt(args[0]) : 48;
+        int ruleCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        List<VersionedDocument> documents = new ArrayList<>();
+        List<String> grammars = new ArrayList<>();
+        for (int i = 0; i < documentCount; i++) {
+            documents.add(WorkStealingParserExecutorTest.createDocument());
+            grammars.add(createGrammar(i, ruleCount));
+        }
+
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        int highPriorityThreads = Math.max(2, threads / 4);
+        int lowPriorityThreads = Math.max(2, threads - highPriorityThreads);
+        int documentThreads = Math.min(lowPriorityThreads, Math.max(2, lowPriorityThreads / 4));
+
+        System.out.format("%d grammars, %d rules each, %d processors%n", documentCount, ruleCount, Runtime.getRuntime().availableProcessors());
+        measure("scheduled (2 threads)", new ScheduledParserExecutor(2, Thread.NORM_PRIORITY), documents, grammars, iterations);
+        measure("work-stealing (" + lowPriorityThreads + " threads)", new WorkStealingParserExecutor(lowPriorityThreads, documentThreads, Thread.NORM_PRIORITY), documents, grammars, iterations);
+        System.exit(0);
+    }
+
+    private static void measure(String name, ParserExecutor executor, List<VersionedDocument> documents, List<String> grammars, int iterations) throws InterruptedException {
+        // warm up
+        for (int i = 0; i < Math.max(2, iterations / 2); i++) {
+            run(executor, documents, grammars);
+        }
+
+        long[] times = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            times[i] = run(executor, documents, grammars);
+        }
+
+        Arrays.sort(times);
+        System.out.format("%-32s min %8.2fms  median %8.2fms  max %8.2fms%n", name, times[0] / 1e6, times[iterations / 2] / 1e6, times[iterations - 1] / 1e6);
+    }
+
+    private static long run(final ParserExecutor executor, List<VersionedDocument> documents, List<String> grammars) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(documents.size() * (2 + DEPENDENT_TASKS));
+        final AtomicInteger checksum = new AtomicInteger();
+        long startTime = System.nanoTime();
+        for (int i = 0; i < documents.size(); i++) {
+            final VersionedDocument document = documents.get(i);
+            final String grammar = grammars.get(i);
+            executor.schedule(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    // lexer tokens
+                    checksum.addAndGet(scan(grammar, 1));
+                    done.countDown();
+                    executor.schedule(new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            // reference parse tree
+                            checksum.addAndGet(scan(grammar, 3));
+                            done.countDown();
+                            for (int j = 0; j < DEPENDENT_TASKS; j++) {
+                                executor.schedule(new Callable<Void>() {
+                                    @Override
+                                    public Void call() {
+                                        checksum.addAndGet(scan(grammar, 2));
+                                        done.countDown();
+                                        return null;
+                                    }
+                                }, document, ParserTaskManagerImpl.PRIORITY_INITIAL + 1, 0, TimeUnit.MILLISECONDS);
+                            }
+
+                            return null;
+                        }
+                    }, document, ParserTaskManagerImpl.PRIORITY_INITIAL, 0, TimeUnit.MILLISECONDS);
+                    return null;
+                }
+            }, document, ParserTaskManagerImpl.PRIORITY_INITIAL, 0, TimeUnit.MILLISECONDS);
+        }
+
+        if (!done.await(10, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("The benchmark did not complete.");
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+        sink = checksum.get();
+        return elapsed;
+    }
+
+    /**
+     * Counts the identifiers in {@code text} {@code passes} times.
+     */
+    private static int scan(String text, int passes) {
+        int count = 0;
+        for (int pass = 0; pass < passes; pass++) {
+            boolean inIdentifier = false;
+            for (int i = 0; i < text.length(); i++) {
+                boolean identifierPart = Character.isJavaIdentifierPart(text.charAt(i));
+                if (identifierPart && !inIdentifier) {
+                    count++;
+                }
+
+                inIdentifier = identifierPart;
+            }
+        }
+
+        return count;
+    }
+
+    private static String createGrammar(int index, int ruleCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("grammar G").append(index).append(";\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            builder.append("rule").append(i).append("\n");
+            builder.append("    :   rule").append((i + 1) % ruleCount).append(" ID? ('+' expr").append(i).append(")*\n");
+            builder.append("    |   '(' rule").append((i + 7) % ruleCount).append(" ')' # Alt").append(i).append("\n");
+            builder.append("    ;\n\n");
+        }
+
+        builder.append("ID : [a-zA-Z_]+ ;\n");
+        builder.append("WS : [ \\t\\r\\n]+ -> skip ;\n");
+        return builder.toString();
+    }
+
+    private ParserExecutorBenchmark() {
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.netbeans.parsing.spi.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.antlr.netbeans.editor.text.VersionedDocument;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class WorkStealingParserExecutorTest {
+
+    @Test
+    public void testPriorityIsOrderedAcrossDocuments() throws Exception {
+        WorkStealingParserExecutor executor = new WorkStealingParserExecutor(1, 1, Thread.NORM_PRIORITY);
+        VersionedDocument blockedDocument = createDocument();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = executor.schedule(new BlockingCallable(started, release), blockedDocument, 0, 0, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // background work for several documents is queued before the
+        // foreground task for another document
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.schedule(new RecordingCallable(order, "background" + i), createDocument(), 10, 0, TimeUnit.MILLISECONDS));
+        }
+
+        futures.add(executor.schedule(new RecordingCallable(order, "foreground"), createDocument(), 1, 0, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals("foreground", order.get(0));
+        assertEquals("background0", order.get(1));
+        assertEquals("background3", order.get(4));
+    }
+
+    @Test
+    public void testDocumentThreadLimit() throws Exception {
+        WorkStealingParserExecutor executor = new WorkStealingParserExecutor(2, 1, Thread.NORM_PRIORITY);
+        VersionedDocument document = createDocument();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = executor.schedule(new BlockingCallable(started, release), document, 0, 0, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // the second task for the same document waits for the first even
+        // though a worker is available, and does not block other documents
+        final AtomicInteger sameDocumentRuns = new AtomicInteger();
+        Future<?> sameDocument = executor.schedule(new Callable<Void>() {
+            @Override
+            public Void call() {
+                sameDocumentRuns.incrementAndGet();
+                return null;
+            }
+        }, document, 0, 0, TimeUnit.MILLISECONDS);
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        executor.schedule(new RecordingCallable(order, "other"), createDocument(), 5, 0, TimeUnit.MILLISECONDS).get(10, TimeUnit.SECONDS);
+        assertEquals(0, sameDocumentRuns.get());
+        assertFalse(sameDocument.isDone());
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        sameDocument.get(10, TimeUnit.SECONDS);
+        assertEquals(1, sameDocumentRuns.get());
+    }
+
+    @Test
+    public void testDelayedTask() throws Exception {
+        WorkStealingParserExecutor executor = new WorkStealingParserExecutor(1, 1, Thread.NORM_PRIORITY);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Future<?> delayed = executor.schedule(new RecordingCallable(order, "delayed"), createDocument(), 0, 100, TimeUnit.MILLISECONDS);
+        Future<?> immediate = executor.schedule(new RecordingCallable(order, "immediate"), createDocument(), 10, 0, TimeUnit.MILLISECONDS);
+        delayed.get(10, TimeUnit.SECONDS);
+        immediate.get(10, TimeUnit.SECONDS);
+        assertEquals("immediate", order.get(0));
+        assertEquals("delayed", order.get(1));
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        WorkStealingParserExecutor executor = new WorkStealingParserExecutor(1, 1, Thread.NORM_PRIORITY);
+        VersionedDocument document = createDocument();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocker = executor.schedule(new BlockingCallable(started, release), document, 0, 0, TimeUnit.MILLISECONDS);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Future<?> cancelled = executor.schedule(new RecordingCallable(order, "cancelled"), document, 0, 0, TimeUnit.MILLISECONDS);
+        Future<?> next = executor.schedule(new RecordingCallable(order, "next"), document, 1, 0, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel(false));
+
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        next.get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("next"), order);
+    }
+
+    static VersionedDocument createDocument() {
+        return (VersionedDocument)Proxy.newProxyInstance(VersionedDocument.class.getClassLoader(), new Class<?>[] { VersionedDocument.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+
+                case "equals":
+                    return proxy == args[0];
+
+                case "toString":
+                    return "Document@" + Integer.toHexString(System.identityHashCode(proxy));
+
+                default:
+                    return null;
+                }
+            }
+        });
+    }
+
+    private static final class BlockingCallable implements Callable<Void> {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        public BlockingCallable(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            started.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        }
+    }
+
+    private static final class RecordingCallable implements Callable<Void> {
+        private final List<String> order;
+        private final String name;
+
+        public RecordingCallable(List<String> order, String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        @Override
+        public Void call() {
+            order.add(name);
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import org.antlr.netbeans.parsing.spi.ParserDataOptions;
 import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.netbeans.parsing.spi.ParserTaskScheduler;
 import org.antlr.v4.runtime.Token;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
 import org.antlr.works.editor.grammar.codemodel.FileModel;
 import org.antlr.works.editor.grammar.experimental.CurrentRuleContextData;
 import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.GrammarSpecContext;
@@ -47,6 +48,7 @@ public class GrammarParserDataDefinitions {
 
     public static final ParserDataDefinition<List<Anchor>> DYNAMIC_ANCHOR_POINTS = new DynamicAnchorPointsDataDefinition();
     public static final ParserDataDefinition<Tagger<TokenTag<Token>>> LEXER_TOKENS = new LexerTokensDataDefinition();
+    public static final ParserDataDefinition<TaggerTokenBuffer> LEXER_TOKEN_BUFFER = new LexerTokenBufferDataDefinition();
     public static final ParserDataDefinition<CurrentRuleContextData> CURRENT_RULE_CONTEXT = new CurrentRuleContextDataDefinition();
     public static final ParserDataDefinition<FileModel> FILE_MODEL = new FileModelDataDefinition();
 
@@ -109,6 +111,11 @@ public class GrammarParserDataDefinitions {
         return LEXER_TOKENS;
     }
 
+    @MimeRegistration(mimeType=GrammarEditorKit.GRAMMAR_MIME_TYPE, service=ParserDataDefinition.class)
+    public static ParserDataDefinition<TaggerTokenBuffer> getLexerTokenBufferDataDefinition() {
+        return LEXER_TOKEN_BUFFER;
+    }
+
     @MimeRegistration(mimeType=GrammarEditorKit.GRAMMAR_MIME_TYPE, service=ParserDataDefinition.class)
     public static ParserDataDefinition<CurrentRuleContextData> getCurrentRuleContextDataDefinition() {
         return CURRENT_RULE_CONTEXT;
@@ -175,6 +182,14 @@ public class GrammarParserDataDefinitions {
 
     }
 
+    private static final class LexerTokenBufferDataDefinition extends ParserDataDefinition<TaggerTokenBuffer> {
+
+        public LexerTokenBufferDataDefinition() {
+            super("Grammar Lexer Token Buffer", TaggerTokenBuffer.class, false, true, ParserTaskScheduler.CONTENT_SENSITIVE_TASK_SCHEDULER);
+        }
+
+    }
+
     private static final class CurrentRuleContextDataDefinition extends ParserDataDefinition<CurrentRuleContextData> {
 
         public CurrentRuleContextDataDefinition() {
@@ -0,0 +1,57 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.actions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * Holds the class loaders of recently compiled recognizers, keyed by the
+ * fingerprint of the grammars and code generation target they were compiled
+ * from. The least recently used entry is dropped when the cache is full.
+ *
+ * @author Sam Harwell
+ */
+final class CompiledRecognizerCache {
+
+    // -J-Dorg.antlr.works.editor.grammar.actions.CompiledRecognizerCache.capacity=8
+    private static final int CAPACITY = Math.max(1, Integer.getInteger(CompiledRecognizerCache.class.getName() + ".capacity", 8));
+
+    private static final Map<String, ClassLoader> loaders = new LinkedHashMap<String, ClassLoader>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ClassLoader> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private CompiledRecognizerCache() {
+    }
+
+    @CheckForNull
+    public static ClassLoader get(@NonNull String key) {
+        Parameters.notNull("key", key);
+        synchronized (loaders) {
+            return loaders.get(key);
+        }
+    }
+
+    public static void put(@NonNull String key, @NonNull ClassLoader loader) {
+        Parameters.notNull("key", key);
+        Parameters.notNull("loader", loader);
+        synchronized (loaders) {
+            loaders.put(key, loader);
+        }
+    }
+
+}
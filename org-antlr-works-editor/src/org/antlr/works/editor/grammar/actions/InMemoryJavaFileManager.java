@@ -0,0 +1,95 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.actions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.netbeans.api.annotations.common.NonNull;
+
+/**
+ * A {@link javax.tools.JavaFileManager} which reads sources through a
+ * {@link StandardJavaFileManager}, but keeps the compiled classes in memory.
+ *
+ * @author Sam Harwell
+ */
+final class InMemoryJavaFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, ClassOutput> classes = new HashMap<>();
+
+    public InMemoryJavaFileManager(@NonNull StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+        ClassOutput output = new ClassOutput(className, kind);
+        synchronized (classes) {
+            classes.put(className, output);
+        }
+
+        return output;
+    }
+
+    /**
+     * Creates a class loader which defines the classes written by the
+     * compiler.
+     */
+    @NonNull
+    public ClassLoader createClassLoader(ClassLoader parent) {
+        Map<String, byte[]> classBytes = new HashMap<>();
+        synchronized (classes) {
+            for (Map.Entry<String, ClassOutput> entry : classes.entrySet()) {
+                classBytes.put(entry.getKey(), entry.getValue().data.toByteArray());
+            }
+        }
+
+        return new InMemoryClassLoader(classBytes, parent);
+    }
+
+    private static final class ClassOutput extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        public ClassOutput(String className, Kind kind) {
+            super(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind);
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            data.reset();
+            return data;
+        }
+    }
+
+    private static final class InMemoryClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classBytes;
+
+        public InMemoryClassLoader(Map<String, byte[]> classBytes, ClassLoader parent) {
+            super(parent);
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            byte[] bytes = classBytes.get(name);
+            if (bytes == null) {
+                throw new ClassNotFoundException(name);
+            }
+
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
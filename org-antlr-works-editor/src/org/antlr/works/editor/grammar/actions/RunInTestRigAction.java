@@ -16,9 +16,8 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -39,6 +38,12 @@ import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
 import org.antlr.netbeans.parsing.spi.ParserData;
 import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.netbeans.util.NotificationIcons;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.ParserInterpreter;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.TestRig;
 import org.antlr.works.editor.grammar.GrammarDataObject;
 import org.antlr.works.editor.grammar.GrammarEditorKit;
@@ -52,9 +57,13 @@ import org.antlr.works.editor.grammar.codemodel.RuleModel;
 import org.antlr.works.editor.grammar.codemodel.TokenVocabDeclarationModel;
 import org.antlr.works.editor.grammar.codemodel.TokenVocabModel;
 import org.antlr.works.editor.grammar.codemodel.impl.FileVocabModelImpl;
+import org.antlr.works.editor.grammar.debugger.LexerInterpreterData;
+import org.antlr.works.editor.grammar.debugger.ParserInterpreterData;
 import org.netbeans.api.annotations.common.CheckForNull;
 import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.api.annotations.common.NullAllowed;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
 import org.openide.DialogDisplayer;
 import org.openide.WizardDescriptor;
 import org.openide.awt.ActionID;
@@ -69,7 +78,6 @@ import org.openide.util.Exceptions;
 import org.openide.util.Lookup;
 import org.openide.util.NbBundle.Messages;
 import org.openide.util.Task;
-import org.openide.util.Utilities;
 import org.openide.windows.IOProvider;
 import org.openide.windows.InputOutput;
 import org.openide.windows.OutputWriter;
@@ -133,9 +141,25 @@ public final class RunInTestRigAction implements ActionListener {
         }
         wizard.putProperty(RunInTestRigWizardPanel.AVAILABLE_RULES, availableRules.toArray(new String[availableRules.size()]));
         if (DialogDisplayer.getDefault().notify(wizard) == WizardDescriptor.FINISH_OPTION) {
-            File inputFile = new File(RunInTestRigWizardOptions.getInputFile(wizard));
+            String input = RunInTestRigWizardOptions.getInputFile(wizard);
+            File inputFile = new File(input);
+            List<File> corpus = null;
             if (!inputFile.isFile()) {
-                return;
+                if (!TestRigCorpusRunner.isCorpus(input)) {
+                    return;
+                }
+
+                try {
+                    corpus = TestRigCorpusRunner.findInputs(input);
+                } catch (IOException ex) {
+                    displayError("Unable to read the input files: " + ex.getMessage());
+                    return;
+                }
+
+                if (corpus.isEmpty()) {
+                    displayError("No input files match " + input);
+                    return;
+                }
             }
 
             String baseGrammarName = fileObject.getName();
@@ -167,6 +191,20 @@ public final class RunInTestRigAction implements ActionListener {
                 }
             }
 
+            if (RunInTestRigWizardOptions.isQuickRun(wizard)) {
+                // the interpreter data may wait for the grammar to compile, so it is built by the task
+                DocumentSnapshot snapshot = VersionedDocumentUtilities.getVersionedDocument(fileObject).getCurrentSnapshot();
+                QuickRunTask task = new QuickRunTask(baseGrammarName, snapshot, inputFile);
+                task.startRule = RunInTestRigWizardOptions.getStartRule(wizard);
+                task.encoding = RunInTestRigWizardOptions.isEncodingSpecified(wizard) ? RunInTestRigWizardOptions.getEncoding(wizard) : null;
+                task.showTokens = RunInTestRigWizardOptions.isShowTokens(wizard);
+                task.showTree = RunInTestRigWizardOptions.isShowTree(wizard);
+                task.showTreeInGUI = RunInTestRigWizardOptions.isShowTreeInGUI(wizard);
+                task.corpus = corpus;
+                CodeGenerator.REFERENCE_RP.post(task);
+                return;
+            }
+
             List<FileObject> dependencies = getDependencies(fileModel);
             TestRigTask task = new TestRigTask(baseGrammarName, fileObject, dependencies, inputFile);
             task.startRule = RunInTestRigWizardOptions.getStartRule(wizard);
@@ -175,6 +213,7 @@ public final class RunInTestRigAction implements ActionListener {
             task.showTokens = RunInTestRigWizardOptions.isShowTokens(wizard);
             task.showTree = RunInTestRigWizardOptions.isShowTree(wizard);
             task.showTreeInGUI = RunInTestRigWizardOptions.isShowTreeInGUI(wizard);
+            task.corpus = corpus;
             CodeGenerator.REFERENCE_RP.post(task);
         }
     }
@@ -311,6 +350,11 @@ public final class RunInTestRigAction implements ActionListener {
         public boolean showTokens;
         public boolean showTree;
         public boolean showTreeInGUI;
+        /**
+         * The input files to parse in corpus mode, or {@code null} to run
+         * {@code inputFile} through TestRig.
+         */
+        public List<File> corpus;
 
         private final String baseGrammarName;
         private final FileObject grammarFile;
@@ -327,60 +371,56 @@ public final class RunInTestRigAction implements ActionListener {
         @Override
         public void run() {
             try {
-                File tmpdir = new File(System.getProperty("java.io.tmpdir"),
-                    getClass().getSimpleName() + "-" + System.currentTimeMillis());
-                tmpdir.mkdir();
-
                 List<FileObject> compiled = new ArrayList<>();
                 compiled.add(grammarFile);
                 compiled.addAll(dependencies);
                 CodeGenerator codeGenerator = new CodeGenerator("Java", compiled.toArray(new FileObject[compiled.size()]));
-                codeGenerator.outputDirectory = FileUtil.toFileObject(tmpdir);
                 codeGenerator.libDirectory = grammarFile.getParent();
-                Task codeGenerationTask = codeGenerator.run();
-                codeGenerationTask.waitFinished();
+
+                // the output directory is excluded from the key, since every compilation uses a new one
+                String cacheKey = codeGenerator.getFingerprint();
+                ClassLoader cachedLoader = cacheKey != null ? CompiledRecognizerCache.get(cacheKey) : null;
+
+                File tmpdir = null;
+                if (cachedLoader == null) {
+                    tmpdir = new File(System.getProperty("java.io.tmpdir"),
+                        getClass().getSimpleName() + "-" + System.currentTimeMillis());
+                    tmpdir.mkdir();
+
+                    codeGenerator.outputDirectory = FileUtil.toFileObject(tmpdir);
+                    Task codeGenerationTask = codeGenerator.run();
+                    codeGenerationTask.waitFinished();
+                }
 
                 InputOutput inputOutput = IOProvider.getDefault().getIO("ANTLR TestRig (Java)", false);
                 inputOutput.select();
                 try (OutputWriter outputWriter = inputOutput.getOut(); OutputWriter errorWriter = inputOutput.getErr()) {
-                    outputWriter.println("Compiling grammar files...");
-
-                    File[] files = tmpdir.listFiles(new FilenameFilter() {
-                        @Override
-                        public boolean accept(File dir, String name) {
-                            return name.endsWith(".java");
+                    final ClassLoader loader;
+                    if (cachedLoader != null) {
+                        outputWriter.println("Grammar files are unchanged since they were last compiled.");
+                        loader = cachedLoader;
+                    } else {
+                        try {
+                            loader = compile(tmpdir, outputWriter, errorWriter);
+                        } finally {
+                            delete(tmpdir);
                         }
-                    });
-
-                    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-                    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
-
-                    Iterable<? extends JavaFileObject> compilationUnits =
-                        fileManager.getJavaFileObjectsFromFiles(Arrays.asList(files));
 
-                    List<String> compileOptions = new ArrayList<>();
-                    compileOptions.add("-g");
-                    compileOptions.add("-d");
-                    compileOptions.add(tmpdir.getAbsolutePath());
-                    compileOptions.add("-cp");
-                    compileOptions.add(CodeGenerator.getReferenceLibrary().getAbsolutePath());
-                    compileOptions.add("-Xlint");
-                    compileOptions.add("-Xlint:-serial");
-
-                    JavaCompiler.CompilationTask task =
-                        compiler.getTask(errorWriter, fileManager, null, compileOptions, null,
-                        compilationUnits);
+                        if (loader == null) {
+                            return;
+                        }
 
-                    task.call();
+                        if (cacheKey != null) {
+                            CompiledRecognizerCache.put(cacheKey, loader);
+                        }
+                    }
 
-                    try {
-                        fileManager.close();
-                    } catch (IOException ioe) {
-                        Exceptions.printStackTrace(ioe);
+                    if (corpus != null) {
+                        String corpusEncoding = encodingSpecified ? encoding : null;
+                        new TestRigCorpusRunner(loader, baseGrammarName, startRule, corpusEncoding).run(corpus, outputWriter, errorWriter);
                         return;
                     }
 
-                    final ClassLoader loader = new URLClassLoader(new URL[]{Utilities.toURI(tmpdir).toURL()}, CodeGenerator.getReferenceClassLoader());
                     Class<?> testRig = loader.loadClass(TestRig.class.getName());
                     Method mainMethod = testRig.getMethod("main", String[].class);
 
@@ -428,9 +468,168 @@ public final class RunInTestRigAction implements ActionListener {
                         Thread.currentThread().setContextClassLoader(contextClassLoader);
                     }
                 }
-            } catch (ClassNotFoundException | NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | MalformedURLException ex) {
+            } catch (ClassNotFoundException | NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
                 Exceptions.printStackTrace(ex);
             }
         }
+
+        /**
+         * Compiles the Java sources in {@code sourceDirectory} in memory.
+         *
+         * @return A class loader for the compiled recognizer, or {@code null}
+         * if the compilation failed.
+         */
+        @CheckForNull
+        private static ClassLoader compile(File sourceDirectory, OutputWriter outputWriter, OutputWriter errorWriter) {
+            outputWriter.println("Compiling grammar files...");
+
+            File[] files = sourceDirectory.listFiles(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".java");
+                }
+            });
+
+            if (files == null || files.length == 0) {
+                errorWriter.println("No source files were generated.");
+                return null;
+            }
+
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+            InMemoryJavaFileManager fileManager = new InMemoryJavaFileManager(standardFileManager);
+
+            Iterable<? extends JavaFileObject> compilationUnits =
+                standardFileManager.getJavaFileObjectsFromFiles(Arrays.asList(files));
+
+            List<String> compileOptions = new ArrayList<>();
+            compileOptions.add("-g");
+            compileOptions.add("-cp");
+            compileOptions.add(CodeGenerator.getReferenceLibrary().getAbsolutePath());
+            compileOptions.add("-Xlint");
+            compileOptions.add("-Xlint:-serial");
+
+            JavaCompiler.CompilationTask task =
+                compiler.getTask(errorWriter, fileManager, null, compileOptions, null,
+                compilationUnits);
+
+            boolean succeeded = task.call();
+
+            try {
+                fileManager.close();
+            } catch (IOException ioe) {
+                Exceptions.printStackTrace(ioe);
+                return null;
+            }
+
+            if (!succeeded) {
+                return null;
+            }
+
+            return fileManager.createClassLoader(CodeGenerator.getReferenceClassLoader());
+        }
+
+        private static void delete(File file) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    delete(child);
+                }
+            }
+
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Runs the input through interpreters for the ATN of the grammar in the
+     * editor, without generating or compiling a recognizer. Actions and
+     * semantic predicates in the grammar are not evaluated.
+     */
+    private static class QuickRunTask implements Runnable {
+
+        public String startRule;
+        public String encoding;
+        public boolean showTokens;
+        public boolean showTree;
+        public boolean showTreeInGUI;
+        public List<File> corpus;
+
+        private final String baseGrammarName;
+        private final DocumentSnapshot snapshot;
+        private final File inputFile;
+
+        public QuickRunTask(String baseGrammarName, DocumentSnapshot snapshot, File inputFile) {
+            this.baseGrammarName = baseGrammarName;
+            this.snapshot = snapshot;
+            this.inputFile = inputFile;
+        }
+
+        @Override
+        public void run() {
+            ParserInterpreterData parserInterpreterData;
+            ProgressHandle progress = ProgressHandleFactory.createHandle("Preparing the parser interpreter");
+            progress.start();
+            try {
+                parserInterpreterData = ParserInterpreterData.getForSnapshot(snapshot);
+            } finally {
+                progress.finish();
+            }
+
+            InputOutput inputOutput = IOProvider.getDefault().getIO("ANTLR TestRig (Interpreter)", false);
+            inputOutput.select();
+            try (OutputWriter outputWriter = inputOutput.getOut(); OutputWriter errorWriter = inputOutput.getErr()) {
+                if (parserInterpreterData == null) {
+                    errorWriter.println("An error occurred while constructing a lexer or parser ATN from the grammar.");
+                    return;
+                }
+
+                parserInterpreterData.startRuleIndex = parserInterpreterData.ruleNames.indexOf(startRule);
+                if (parserInterpreterData.startRuleIndex < 0) {
+                    errorWriter.println(String.format("Could not locate a rule named '%s'", startRule));
+                    return;
+                }
+
+                if (corpus != null) {
+                    new TestRigCorpusRunner(parserInterpreterData, baseGrammarName, encoding).run(corpus, outputWriter, errorWriter);
+                    return;
+                }
+
+                String text;
+                try {
+                    Charset charset = encoding != null && !encoding.isEmpty() ? Charset.forName(encoding) : Charset.defaultCharset();
+                    text = new String(Files.readAllBytes(inputFile.toPath()), charset);
+                } catch (IOException | IllegalArgumentException ex) {
+                    errorWriter.println("Unable to read " + inputFile.getAbsolutePath() + ": " + ex.getMessage());
+                    return;
+                }
+
+                LexerInterpreterData lexerInterpreterData = parserInterpreterData.lexerInterpreterData;
+                LexerInterpreter lexer = new LexerInterpreter(lexerInterpreterData.grammarFileName, lexerInterpreterData.vocabulary, lexerInterpreterData.ruleNames, lexerInterpreterData.modeNames, lexerInterpreterData.getATN(), new ANTLRInputStream(text));
+                CommonTokenStream tokens = new CommonTokenStream(lexer);
+                tokens.fill();
+                if (showTokens) {
+                    for (Token token : tokens.getTokens()) {
+                        outputWriter.println(token);
+                    }
+                }
+
+                ParserInterpreter parser = new ParserInterpreter(parserInterpreterData.grammarFileName, parserInterpreterData.vocabulary, parserInterpreterData.ruleNames, parserInterpreterData.getATN(), tokens);
+                long startTime = System.nanoTime();
+                ParserRuleContext tree = parser.parse(parserInterpreterData.startRuleIndex);
+                long parseTime = System.nanoTime() - startTime;
+                if (showTree) {
+                    outputWriter.println(tree.toStringTree(parser));
+                }
+
+                if (showTreeInGUI) {
+                    outputWriter.println("The parse tree cannot be shown in a window in quick run mode.");
+                }
+
+                outputWriter.println(String.format("Parsed %d tokens in %.3f ms with %d syntax errors.", tokens.size(), parseTime / 1000000.0, parser.getNumberOfSyntaxErrors()));
+            }
+        }
     }
 }
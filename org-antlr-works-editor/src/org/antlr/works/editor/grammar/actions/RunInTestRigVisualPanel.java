@@ -73,6 +73,7 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
             setShowTokens(wizardPanel.isShowTokens());
             setShowTree(wizardPanel.isShowTree());
             setShowTreeInGUI(wizardPanel.isShowTreeInGUI());
+            setQuickRun(wizardPanel.isQuickRun());
         }
 
         txtInputFile.getDocument().addDocumentListener(_documentListener);
@@ -151,6 +152,14 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
         chkShowTreeInGUI.setSelected(value);
     }
 
+    public boolean isQuickRun() {
+        return chkQuickRun.isSelected();
+    }
+
+    public void setQuickRun(boolean value) {
+        chkQuickRun.setSelected(value);
+    }
+
     @Override
     public String getName() {
         return "TestRig Options";
@@ -185,6 +194,7 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
         chkShowTokens = new javax.swing.JCheckBox();
         chkShowTree = new javax.swing.JCheckBox();
         chkShowTreeInGUI = new javax.swing.JCheckBox();
+        chkQuickRun = new javax.swing.JCheckBox();
 
         pnlInput.setBorder(javax.swing.BorderFactory.createTitledBorder(org.openide.util.NbBundle.getMessage(RunInTestRigVisualPanel.class, "RunInTestRigVisualPanel.pnlInput.border.title"))); // NOI18N
 
@@ -266,6 +276,9 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
 
         org.openide.awt.Mnemonics.setLocalizedText(chkShowTreeInGUI, org.openide.util.NbBundle.getMessage(RunInTestRigVisualPanel.class, "RunInTestRigVisualPanel.chkShowTreeInGUI.text")); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(chkQuickRun, org.openide.util.NbBundle.getMessage(RunInTestRigVisualPanel.class, "RunInTestRigVisualPanel.chkQuickRun.text")); // NOI18N
+        chkQuickRun.setToolTipText(org.openide.util.NbBundle.getMessage(RunInTestRigVisualPanel.class, "RunInTestRigVisualPanel.chkQuickRun.toolTipText")); // NOI18N
+
         javax.swing.GroupLayout pnlOptionsLayout = new javax.swing.GroupLayout(pnlOptions);
         pnlOptions.setLayout(pnlOptionsLayout);
         pnlOptionsLayout.setHorizontalGroup(
@@ -275,7 +288,8 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
                 .addGroup(pnlOptionsLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(chkShowTokens)
                     .addComponent(chkShowTree)
-                    .addComponent(chkShowTreeInGUI))
+                    .addComponent(chkShowTreeInGUI)
+                    .addComponent(chkQuickRun))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         pnlOptionsLayout.setVerticalGroup(
@@ -286,6 +300,8 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
                 .addComponent(chkShowTree)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(chkShowTreeInGUI)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(chkQuickRun)
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -342,6 +358,7 @@ public final class RunInTestRigVisualPanel extends javax.swing.JPanel {
     private javax.swing.JButton btnBrowseInput;
     private javax.swing.JButton btnDefaultEncoding;
     private javax.swing.JCheckBox chkEncoding;
+    private javax.swing.JCheckBox chkQuickRun;
     private javax.swing.JCheckBox chkShowTokens;
     private javax.swing.JCheckBox chkShowTree;
     private javax.swing.JCheckBox chkShowTreeInGUI;
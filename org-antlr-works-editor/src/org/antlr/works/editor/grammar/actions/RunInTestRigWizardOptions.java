@@ -73,6 +73,10 @@ public abstract class RunInTestRigWizardOptions {
         return getBooleanProperty(wiz, RunInTestRigWizardPanel.SHOW_TREE_GUI, true);
     }
 
+    public static boolean isQuickRun(WizardDescriptor wiz) {
+        return getBooleanProperty(wiz, RunInTestRigWizardPanel.QUICK_RUN, false);
+    }
+
     private RunInTestRigWizardOptions() {
     }
 }
@@ -31,6 +31,7 @@ public class RunInTestRigWizardPanel implements WizardDescriptor.Panel<WizardDes
     public static final String SHOW_TOKENS = "showTokens";
     public static final String SHOW_TREE = "showTree";
     public static final String SHOW_TREE_GUI = "showTreeInGUI";
+    public static final String QUICK_RUN = "quickRun";
     public static final String AVAILABLE_RULES = "availableRules";
 
     private final ChangeSupport _changeSupport = new ChangeSupport(this);
@@ -44,6 +45,7 @@ public class RunInTestRigWizardPanel implements WizardDescriptor.Panel<WizardDes
     private boolean _showTokens;
     private boolean _showTree;
     private boolean _showTreeInGUI;
+    private boolean _quickRun;
 
     /**
      * The visual component that displays this panel. If you need to access the
@@ -171,6 +173,22 @@ public class RunInTestRigWizardPanel implements WizardDescriptor.Panel<WizardDes
         _showTreeInGUI = value;
     }
 
+    public boolean isQuickRun() {
+        if (component != null) {
+            return component.isQuickRun();
+        }
+
+        return _quickRun;
+    }
+
+    public void setQuickRun(boolean value) {
+        if (component != null) {
+            component.setQuickRun(value);
+        }
+
+        _quickRun = value;
+    }
+
     // Get the visual component for the panel. In this template, the component
     // is kept separate. This can be more efficient: if the wizard is created
     // but never displayed, or not all panels are displayed, it is better to
@@ -198,7 +216,7 @@ public class RunInTestRigWizardPanel implements WizardDescriptor.Panel<WizardDes
             return false;
         }
 
-        if (!new File(inputFile).isFile()) {
+        if (!new File(inputFile).isFile() && !TestRigCorpusRunner.isCorpus(inputFile)) {
             return false;
         }
 
@@ -250,6 +268,7 @@ public class RunInTestRigWizardPanel implements WizardDescriptor.Panel<WizardDes
         setShowTokens(RunInTestRigWizardOptions.getBooleanProperty(wiz, SHOW_TOKENS, true));
         setShowTree(RunInTestRigWizardOptions.getBooleanProperty(wiz, SHOW_TREE, true));
         setShowTreeInGUI(RunInTestRigWizardOptions.getBooleanProperty(wiz, SHOW_TREE_GUI, true));
+        setQuickRun(RunInTestRigWizardOptions.getBooleanProperty(wiz, QUICK_RUN, false));
     }
 
     @Override
@@ -261,5 +280,6 @@ public class RunInTestRigWizardPanel implements WizardDescriptor.Panel<WizardDes
         RunInTestRigWizardOptions.setBooleanProperty(wiz, SHOW_TOKENS, isShowTokens());
         RunInTestRigWizardOptions.setBooleanProperty(wiz, SHOW_TREE, isShowTree());
         RunInTestRigWizardOptions.setBooleanProperty(wiz, SHOW_TREE_GUI, isShowTreeInGUI());
+        RunInTestRigWizardOptions.setBooleanProperty(wiz, QUICK_RUN, isQuickRun());
     }
 }
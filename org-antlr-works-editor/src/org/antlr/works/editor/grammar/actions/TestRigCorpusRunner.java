@@ -0,0 +1,649 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.ANTLRErrorStrategy;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.LexerInterpreter;
+import org.antlr.v4.runtime.ParserInterpreter;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.works.editor.grammar.debugger.LexerInterpreterData;
+import org.antlr.works.editor.grammar.debugger.ParserInterpreterData;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.RequestProcessor;
+import org.openide.windows.OutputWriter;
+
+/**
+ * Parses a corpus of input files with a recognizer compiled by
+ * {@link RunInTestRigAction}, or with interpreters for the grammar in the
+ * editor, and reports the throughput.
+ *
+ * <p>Compiled recognizer classes are loaded by the reference class loader, so
+ * they are accessed through reflection. Each worker thread creates a single
+ * lexer and parser which it reuses for every file it parses. The generated
+ * parsers store their DFA in static fields, and the interpreters share the ATN
+ * of their {@link ParserInterpreterData}, so in both cases the workers share
+ * the DFA. Every file is parsed in SLL mode first, and only parsed again in LL
+ * mode if the SLL parse fails.</p>
+ *
+ * @author Sam Harwell
+ */
+final class TestRigCorpusRunner {
+    // -J-Dorg.antlr.works.editor.grammar.actions.TestRigCorpusRunner.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(TestRigCorpusRunner.class.getName());
+
+    // -J-Dorg.antlr.works.editor.grammar.actions.TestRigCorpusRunner.threads=4
+    private static final int THREADS = Math.max(1, Integer.getInteger(TestRigCorpusRunner.class.getName() + ".threads", Runtime.getRuntime().availableProcessors()));
+
+    private static final int NOT_A_GLOB = -2;
+
+    private static final RequestProcessor CORPUS_RP = new RequestProcessor("ANTLR TestRig Corpus", THREADS);
+
+    private final ClassLoader loader;
+    private final ParserInterpreterData interpreterData;
+    private final String grammarName;
+    private final String startRule;
+    private final Charset charset;
+
+    /**
+     * Creates a runner for the recognizer compiled into {@code loader}.
+     */
+    public TestRigCorpusRunner(@NonNull ClassLoader loader, @NonNull String grammarName, @NonNull String startRule, String encoding) {
+        this(loader, null, grammarName, startRule, encoding);
+    }
+
+    /**
+     * Creates a runner which interprets the grammar described by
+     * {@code interpreterData}, starting at its
+     * {@link ParserInterpreterData#startRuleIndex start rule}.
+     */
+    public TestRigCorpusRunner(@NonNull ParserInterpreterData interpreterData, @NonNull String grammarName, String encoding) {
+        this(null, interpreterData, grammarName, interpreterData.ruleNames.get(interpreterData.startRuleIndex), encoding);
+    }
+
+    private TestRigCorpusRunner(ClassLoader loader, ParserInterpreterData interpreterData, String grammarName, String startRule, String encoding) {
+        this.loader = loader;
+        this.interpreterData = interpreterData;
+        this.grammarName = grammarName;
+        this.startRule = startRule;
+        this.charset = encoding != null && !encoding.isEmpty() ? Charset.forName(encoding) : Charset.defaultCharset();
+    }
+
+    /**
+     * Determines if {@code input} names a corpus of input files, which is
+     * either an existing directory or a glob pattern such as
+     * {@code /corpus/**}{@code /*.txt} whose base directory exists.
+     */
+    public static boolean isCorpus(String input) {
+        if (input == null || input.isEmpty()) {
+            return false;
+        }
+
+        if (new File(input).isDirectory()) {
+            return true;
+        }
+
+        File baseDirectory = getGlobBaseDirectory(input);
+        return baseDirectory != null && baseDirectory.isDirectory();
+    }
+
+    /**
+     * Gets the files in the corpus named by {@code input}, sorted by path. A
+     * directory includes every file beneath it.
+     */
+    @NonNull
+    public static List<File> findInputs(String input) throws IOException {
+        final File baseDirectory;
+        final PathMatcher matcher;
+        if (new File(input).isDirectory()) {
+            baseDirectory = new File(input);
+            matcher = null;
+        } else {
+            baseDirectory = getGlobBaseDirectory(input);
+            if (baseDirectory == null || !baseDirectory.isDirectory()) {
+                return Collections.emptyList();
+            }
+
+            String pattern = input.substring(findGlobSeparator(input) + 1).replace('\\', '/');
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        }
+
+        final Path basePath = baseDirectory.toPath();
+        final List<File> inputs = new ArrayList<>();
+        Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && (matcher == null || matcher.matches(basePath.relativize(file)))) {
+                    inputs.add(file.toFile());
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        Collections.sort(inputs);
+        return inputs;
+    }
+
+    /**
+     * Gets the directory formed by the leading segments of {@code pattern}
+     * which do not contain glob characters, or {@code null} if
+     * {@code pattern} is not a glob pattern.
+     */
+    private static File getGlobBaseDirectory(String pattern) {
+        int separator = findGlobSeparator(pattern);
+        if (separator == NOT_A_GLOB) {
+            return null;
+        } else if (separator < 0) {
+            return new File(".").getAbsoluteFile();
+        }
+
+        return new File(separator == 0 ? pattern.substring(0, 1) : pattern.substring(0, separator));
+    }
+
+    /**
+     * Gets the index of the last path separator before the first glob
+     * character in {@code pattern}, -1 if there is no such separator, or
+     * {@link #NOT_A_GLOB} if {@code pattern} does not contain glob
+     * characters.
+     */
+    private static int findGlobSeparator(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if ("*?[{".indexOf(pattern.charAt(i)) >= 0) {
+                return Math.max(pattern.lastIndexOf('/', i), pattern.lastIndexOf('\\', i));
+            }
+        }
+
+        return NOT_A_GLOB;
+    }
+
+    public void run(@NonNull List<File> inputs, @NonNull OutputWriter outputWriter, @NonNull OutputWriter errorWriter) {
+        final WorkerFactory workerFactory;
+        if (interpreterData != null) {
+            workerFactory = new InterpreterWorkerFactory(interpreterData);
+        } else {
+            try {
+                workerFactory = new Recognizers();
+            } catch (ClassNotFoundException | NoSuchMethodException ex) {
+                errorWriter.println("Unable to load the compiled recognizer: " + ex);
+                return;
+            }
+        }
+
+        outputWriter.format("Parsing %d files with %d threads...%n", inputs.size(), THREADS);
+
+        final FileResult[] results = new FileResult[inputs.size()];
+        final File[] files = inputs.toArray(new File[inputs.size()]);
+        final AtomicInteger nextInput = new AtomicInteger();
+
+        long startTime = System.nanoTime();
+        List<RequestProcessor.Task> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(THREADS, files.length); i++) {
+            workers.add(CORPUS_RP.post(new Runnable() {
+                @Override
+                public void run() {
+                    ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+                    if (loader != null) {
+                        Thread.currentThread().setContextClassLoader(loader);
+                    }
+
+                    try {
+                        Worker worker = workerFactory.createWorker();
+                        for (int index = nextInput.getAndIncrement(); index < files.length; index = nextInput.getAndIncrement()) {
+                            results[index] = parse(worker, files[index]);
+                        }
+                    } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+                        LOGGER.log(Level.WARNING, "Unable to create a recognizer for the corpus.", ex);
+                    } finally {
+                        Thread.currentThread().setContextClassLoader(contextClassLoader);
+                    }
+                }
+            }));
+        }
+
+        for (RequestProcessor.Task worker : workers) {
+            worker.waitFinished();
+        }
+
+        long elapsedTime = System.nanoTime() - startTime;
+        report(files, results, elapsedTime, outputWriter, errorWriter);
+    }
+
+    private FileResult parse(Worker worker, File file) {
+        FileResult result = new FileResult();
+        try {
+            String text = new String(Files.readAllBytes(file.toPath()), charset);
+            worker.parse(text, result);
+        } catch (IOException | InstantiationException | IllegalAccessException | NoSuchMethodException | RuntimeException ex) {
+            result.failure = ex.toString();
+        } catch (InvocationTargetException ex) {
+            result.failure = ex.getCause() != null ? ex.getCause().toString() : ex.toString();
+        }
+
+        return result;
+    }
+
+    private void report(File[] files, FileResult[] results, long elapsedTime, OutputWriter outputWriter, OutputWriter errorWriter) {
+        long totalTokens = 0;
+        int fallbacks = 0;
+        int filesWithErrors = 0;
+        int failures = 0;
+        List<Long> times = new ArrayList<>();
+
+        outputWriter.println();
+        for (int i = 0; i < files.length; i++) {
+            FileResult result = results[i];
+            if (result == null || result.failure != null) {
+                failures++;
+                errorWriter.format("%s: %s%n", files[i].getPath(), result != null ? result.failure : "not parsed");
+                continue;
+            }
+
+            totalTokens += result.tokens;
+            times.add(result.getTotalTime());
+            if (result.fallback) {
+                fallbacks++;
+            }
+
+            if (result.lexerErrors + result.parserErrors > 0) {
+                filesWithErrors++;
+            }
+
+            outputWriter.format(Locale.ROOT, "%s: %d tokens, %.2f ms, %.0f tokens/sec%s%s%n",
+                files[i].getPath(),
+                result.tokens,
+                toMillis(result.getTotalTime()),
+                tokensPerSecond(result.tokens, result.getTotalTime()),
+                result.fallback ? ", LL fallback" : "",
+                result.lexerErrors + result.parserErrors > 0 ? String.format(", %d errors", result.lexerErrors + result.parserErrors) : "");
+        }
+
+        Collections.sort(times);
+        outputWriter.println();
+        outputWriter.format(Locale.ROOT, "Files: %d parsed, %d failed%n", times.size(), failures);
+        outputWriter.format(Locale.ROOT, "Tokens: %d in %.2f ms (%.0f tokens/sec)%n", totalTokens, toMillis(elapsedTime), tokensPerSecond(totalTokens, elapsedTime));
+        if (!times.isEmpty()) {
+            outputWriter.format(Locale.ROOT, "Parse time: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                toMillis(percentile(times, 50)),
+                toMillis(percentile(times, 90)),
+                toMillis(percentile(times, 99)),
+                toMillis(times.get(times.size() - 1)));
+        }
+
+        outputWriter.format("SLL to LL fallbacks: %d%n", fallbacks);
+        outputWriter.format("Files with errors: %d%n", filesWithErrors);
+
+        try {
+            File csvFile = File.createTempFile("testrig-" + grammarName + "-", ".csv");
+            writeCsv(csvFile, files, results);
+            outputWriter.println("Results: " + csvFile.getAbsolutePath());
+        } catch (IOException ex) {
+            errorWriter.println("Unable to export the results: " + ex.getMessage());
+        }
+    }
+
+    private static void writeCsv(File csvFile, File[] files, FileResult[] results) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csvFile.toPath(), Charset.forName("UTF-8")))) {
+            writer.println("file,tokens,lexTimeMs,parseTimeMs,tokensPerSecond,llFallback,lexerErrors,parserErrors,failure");
+            for (int i = 0; i < files.length; i++) {
+                FileResult result = results[i];
+                String path = escapeCsv(files[i].getPath());
+                if (result == null || result.failure != null) {
+                    writer.format("%s,,,,,,,,%s%n", path, escapeCsv(result != null ? result.failure : "not parsed"));
+                    continue;
+                }
+
+                writer.format(Locale.ROOT, "%s,%d,%.3f,%.3f,%.0f,%s,%d,%d,%n",
+                    path,
+                    result.tokens,
+                    toMillis(result.lexTime),
+                    toMillis(result.parseTime),
+                    tokensPerSecond(result.tokens, result.getTotalTime()),
+                    result.fallback,
+                    result.lexerErrors,
+                    result.parserErrors);
+            }
+        }
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static long percentile(List<Long> sortedValues, int percentile) {
+        int rank = (int)Math.ceil(percentile / 100.0 * sortedValues.size());
+        return sortedValues.get(Math.max(0, rank - 1));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static double tokensPerSecond(long tokens, long nanos) {
+        if (nanos <= 0) {
+            return 0;
+        }
+
+        return tokens / (nanos / (double)TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * The reflected members of the compiled recognizer and the reference
+     * runtime.
+     */
+    private final class Recognizers implements WorkerFactory {
+        private final Constructor<?> lexerConstructor;
+        private final Constructor<?> parserConstructor;
+        private final Constructor<?> inputStreamConstructor;
+        private final Constructor<?> tokenStreamConstructor;
+        private final Constructor<?> bailErrorStrategyConstructor;
+        private final Constructor<?> defaultErrorStrategyConstructor;
+        private final Class<?> errorListenerClass;
+        private final Class<?> predictionModeClass;
+        private final Object sll;
+        private final Object ll;
+
+        private final Method lexerSetInputStream;
+        private final Method lexerRemoveErrorListeners;
+        private final Method lexerAddErrorListener;
+        private final Method tokenStreamFill;
+        private final Method tokenStreamSize;
+        private final Method parserSetTokenStream;
+        private final Method parserSetErrorHandler;
+        private final Method parserGetInterpreter;
+        private final Method parserRemoveErrorListeners;
+        private final Method parserAddErrorListener;
+        private final Method startRuleMethod;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        public Recognizers() throws ClassNotFoundException, NoSuchMethodException {
+            Class<?> lexerClass = loader.loadClass(grammarName + "Lexer");
+            Class<?> parserClass = loader.loadClass(grammarName + "Parser");
+            Class<?> charStreamClass = loader.loadClass(CharStream.class.getName());
+            Class<?> intStreamClass = loader.loadClass(IntStream.class.getName());
+            Class<?> tokenSourceClass = loader.loadClass(TokenSource.class.getName());
+            Class<?> tokenStreamClass = loader.loadClass(TokenStream.class.getName());
+            Class<?> errorStrategyClass = loader.loadClass(ANTLRErrorStrategy.class.getName());
+            Class<? extends Enum> predictionModeEnum = loader.loadClass(PredictionMode.class.getName()).asSubclass(Enum.class);
+            predictionModeClass = predictionModeEnum;
+            errorListenerClass = loader.loadClass(ANTLRErrorListener.class.getName());
+
+            lexerConstructor = lexerClass.getConstructor(charStreamClass);
+            parserConstructor = parserClass.getConstructor(tokenStreamClass);
+            inputStreamConstructor = loader.loadClass(ANTLRInputStream.class.getName()).getConstructor(String.class);
+            Class<?> commonTokenStreamClass = loader.loadClass(CommonTokenStream.class.getName());
+            tokenStreamConstructor = commonTokenStreamClass.getConstructor(tokenSourceClass);
+            bailErrorStrategyConstructor = loader.loadClass(BailErrorStrategy.class.getName()).getConstructor();
+            defaultErrorStrategyConstructor = loader.loadClass(DefaultErrorStrategy.class.getName()).getConstructor();
+            sll = Enum.valueOf(predictionModeEnum, "SLL");
+            ll = Enum.valueOf(predictionModeEnum, "LL");
+
+            lexerSetInputStream = lexerClass.getMethod("setInputStream", intStreamClass);
+            lexerRemoveErrorListeners = lexerClass.getMethod("removeErrorListeners");
+            lexerAddErrorListener = lexerClass.getMethod("addErrorListener", errorListenerClass);
+            tokenStreamFill = commonTokenStreamClass.getMethod("fill");
+            tokenStreamSize = commonTokenStreamClass.getMethod("size");
+            parserSetTokenStream = parserClass.getMethod("setTokenStream", tokenStreamClass);
+            parserSetErrorHandler = parserClass.getMethod("setErrorHandler", errorStrategyClass);
+            parserGetInterpreter = parserClass.getMethod("getInterpreter");
+            parserRemoveErrorListeners = parserClass.getMethod("removeErrorListeners");
+            parserAddErrorListener = parserClass.getMethod("addErrorListener", errorListenerClass);
+            startRuleMethod = parserClass.getMethod(startRule);
+        }
+
+        @Override
+        public Worker createWorker() throws InstantiationException, IllegalAccessException, InvocationTargetException {
+            Object emptyInput = inputStreamConstructor.newInstance("");
+            Object lexer = lexerConstructor.newInstance(emptyInput);
+            Object parser = parserConstructor.newInstance(tokenStreamConstructor.newInstance(lexer));
+
+            CompiledWorker worker = new CompiledWorker(this, lexer, parser);
+            lexerRemoveErrorListeners.invoke(lexer);
+            lexerAddErrorListener.invoke(lexer, createErrorListener(worker.lexerErrors));
+            parserRemoveErrorListeners.invoke(parser);
+            parserAddErrorListener.invoke(parser, createErrorListener(worker.parserErrors));
+            return worker;
+        }
+
+        private Object createErrorListener(final AtomicInteger errors) {
+            return Proxy.newProxyInstance(loader, new Class<?>[] { errorListenerClass }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    switch (method.getName()) {
+                    case "syntaxError":
+                        errors.incrementAndGet();
+                        return null;
+
+                    case "equals":
+                        return proxy == args[0];
+
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+
+                    case "toString":
+                        return "CorpusErrorListener";
+
+                    default:
+                        return null;
+                    }
+                }
+            });
+        }
+    }
+
+    private interface WorkerFactory {
+
+        Worker createWorker() throws InstantiationException, IllegalAccessException, InvocationTargetException;
+
+    }
+
+    /**
+     * Parses input files on a single thread, reusing one lexer and one parser.
+     */
+    private interface Worker {
+
+        void parse(String text, FileResult result) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException;
+
+    }
+
+    private static final class CompiledWorker implements Worker {
+        private final Recognizers recognizers;
+        private final Object lexer;
+        private final Object parser;
+        private final AtomicInteger lexerErrors = new AtomicInteger();
+        private final AtomicInteger parserErrors = new AtomicInteger();
+
+        public CompiledWorker(Recognizers recognizers, Object lexer, Object parser) {
+            this.recognizers = recognizers;
+            this.lexer = lexer;
+            this.parser = parser;
+        }
+
+        @Override
+        public void parse(String text, FileResult result) throws InstantiationException, IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+            lexerErrors.set(0);
+            long startTime = System.nanoTime();
+            recognizers.lexerSetInputStream.invoke(lexer, recognizers.inputStreamConstructor.newInstance(text));
+            Object tokens = recognizers.tokenStreamConstructor.newInstance(lexer);
+            recognizers.tokenStreamFill.invoke(tokens);
+            result.lexTime = System.nanoTime() - startTime;
+            result.tokens = (Integer)recognizers.tokenStreamSize.invoke(tokens);
+            result.lexerErrors = lexerErrors.get();
+
+            startTime = System.nanoTime();
+            Object interpreter = recognizers.parserGetInterpreter.invoke(parser);
+            Method setPredictionMode = interpreter.getClass().getMethod("setPredictionMode", recognizers.predictionModeClass);
+            try {
+                parserErrors.set(0);
+                setPredictionMode.invoke(interpreter, recognizers.sll);
+                recognizers.parserSetErrorHandler.invoke(parser, recognizers.bailErrorStrategyConstructor.newInstance());
+                recognizers.parserSetTokenStream.invoke(parser, tokens);
+                recognizers.startRuleMethod.invoke(parser);
+            } catch (InvocationTargetException ex) {
+                if (!isParseCancellation(ex.getCause())) {
+                    throw ex;
+                }
+
+                result.fallback = true;
+                parserErrors.set(0);
+                setPredictionMode.invoke(interpreter, recognizers.ll);
+                recognizers.parserSetErrorHandler.invoke(parser, recognizers.defaultErrorStrategyConstructor.newInstance());
+                recognizers.parserSetTokenStream.invoke(parser, tokens);
+                recognizers.startRuleMethod.invoke(parser);
+            }
+
+            result.parseTime = System.nanoTime() - startTime;
+            result.parserErrors = parserErrors.get();
+        }
+
+        private static boolean isParseCancellation(Throwable throwable) {
+            for (Class<?> type = throwable != null ? throwable.getClass() : null; type != null; type = type.getSuperclass()) {
+                if (type.getName().equals(ParseCancellationException.class.getName())) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Creates interpreters for the grammar in the editor, which share the ATN
+     * of the {@link ParserInterpreterData} along with its DFA.
+     */
+    private static final class InterpreterWorkerFactory implements WorkerFactory {
+        private final ParserInterpreterData data;
+
+        public InterpreterWorkerFactory(ParserInterpreterData data) {
+            this.data = data;
+        }
+
+        @Override
+        public Worker createWorker() {
+            LexerInterpreterData lexerData = data.lexerInterpreterData;
+            LexerInterpreter lexer = new LexerInterpreter(lexerData.grammarFileName, lexerData.vocabulary, lexerData.ruleNames, lexerData.modeNames, lexerData.getATN(), new ANTLRInputStream(""));
+            ParserInterpreter parser = new ParserInterpreter(data.grammarFileName, data.vocabulary, data.ruleNames, data.getATN(), new CommonTokenStream(lexer));
+            return new InterpreterWorker(data.startRuleIndex, lexer, parser);
+        }
+    }
+
+    private static final class InterpreterWorker implements Worker {
+        private final int startRuleIndex;
+        private final LexerInterpreter lexer;
+        private final ParserInterpreter parser;
+        private final ErrorCounter<Integer> lexerErrors = new ErrorCounter<>();
+        private final ErrorCounter<Token> parserErrors = new ErrorCounter<>();
+
+        public InterpreterWorker(int startRuleIndex, LexerInterpreter lexer, ParserInterpreter parser) {
+            this.startRuleIndex = startRuleIndex;
+            this.lexer = lexer;
+            this.parser = parser;
+
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(lexerErrors);
+            parser.removeErrorListeners();
+            parser.addErrorListener(parserErrors);
+        }
+
+        @Override
+        public void parse(String text, FileResult result) {
+            lexerErrors.count = 0;
+            long startTime = System.nanoTime();
+            lexer.setInputStream(new ANTLRInputStream(text));
+            CommonTokenStream tokens = new CommonTokenStream(lexer);
+            tokens.fill();
+            result.lexTime = System.nanoTime() - startTime;
+            result.tokens = tokens.size();
+            result.lexerErrors = lexerErrors.count;
+
+            startTime = System.nanoTime();
+            try {
+                parserErrors.count = 0;
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                parser.setErrorHandler(new BailErrorStrategy());
+                parser.setInputStream(tokens);
+                parser.parse(startRuleIndex);
+            } catch (ParseCancellationException ex) {
+                result.fallback = true;
+                parserErrors.count = 0;
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                parser.setInputStream(tokens);
+                parser.parse(startRuleIndex);
+            }
+
+            result.parseTime = System.nanoTime() - startTime;
+            result.parserErrors = parserErrors.count;
+        }
+    }
+
+    private static final class ErrorCounter<Symbol> implements ANTLRErrorListener<Symbol> {
+        private int count;
+
+        @Override
+        public <T extends Symbol> void syntaxError(Recognizer<T, ?> recognizer, T offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+            count++;
+        }
+    }
+
+    private static final class FileResult {
+        private int tokens;
+        private long lexTime;
+        private long parseTime;
+        private boolean fallback;
+        private int lexerErrors;
+        private int parserErrors;
+        private String failure;
+
+        public long getTotalTime() {
+            return lexTime + parseTime;
+        }
+    }
+
+}
@@ -8,6 +8,7 @@
  */
 package org.antlr.works.editor.grammar.codegen;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -18,10 +19,28 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.antlr.v4.Tool;
+import org.antlr.v4.parse.ANTLRParser;
+import org.antlr.v4.tool.ANTLRMessage;
+import org.antlr.v4.tool.ANTLRToolListener;
+import org.antlr.v4.tool.ast.GrammarAST;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.netbeans.api.annotations.common.CheckForNull;
 import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.api.annotations.common.StaticResource;
 import org.openide.filesystems.FileObject;
@@ -39,6 +58,9 @@ import org.openide.windows.OutputWriter;
  * @author Sam Harwell
  */
 public class CodeGenerator {
+    // -J-Dorg.antlr.works.editor.grammar.codegen.CodeGenerator.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(CodeGenerator.class.getName());
+
     @StaticResource
     private static final String ANTLR4_COMPLETE_JAR = "org/antlr/works/editor/grammar/resources/antlr4-complete.jar";
 
@@ -46,6 +68,10 @@ public class CodeGenerator {
     private static ClassLoader referenceClassLoader;
 
     public static final RequestProcessor REFERENCE_RP = new RequestProcessor("ANTLR Reference Tool");
+    private static final RequestProcessor CODEGEN_RP = new RequestProcessor("ANTLR Code Generator", Runtime.getRuntime().availableProcessors());
+
+    private static final String FINGERPRINT_ATTRIBUTE = CodeGenerator.class.getName() + ".fingerprint";
+    private static final String[] GRAMMAR_EXTENSIONS = { "g4", "g3", "g" };
 
     public final String target;
     public final String targetArgument;
@@ -61,6 +87,12 @@ public class CodeGenerator {
     public boolean forceATN;
     public Map<String, String> options;
     public List<String> arguments;
+    /**
+     * When set, grammars are only regenerated if they, a grammar or
+     * {@code .tokens} file they depend on, or the command arguments changed
+     * since their last successful generation.
+     */
+    public boolean incremental;
 
     public CodeGenerator(String target, FileObject... grammarFiles) {
         this.target = target;
@@ -108,6 +140,31 @@ public class CodeGenerator {
         return referenceLibrary;
     }
 
+    /**
+     * Gets a fingerprint of the target, the command arguments, and the
+     * content of {@link #grammarFiles} along with the grammars and
+     * {@code .tokens} files they depend on.
+     *
+     * @return The fingerprint, or {@code null} if it could not be computed.
+     */
+    @CheckForNull
+    public String getFingerprint() {
+        List<String> args = getCommandArguments();
+        Map<FileObject, String> contentHashes = new HashMap<>();
+        Map<FileObject, GrammarReferences> references = new HashMap<>();
+        StringBuilder builder = new StringBuilder(target);
+        for (FileObject grammarFile : grammarFiles) {
+            String fingerprint = computeFingerprint(grammarFile, args, contentHashes, references);
+            if (fingerprint == null) {
+                return null;
+            }
+
+            builder.append(';').append(fingerprint);
+        }
+
+        return builder.toString();
+    }
+
     public Task run() {
         ClassLoader targetLoader;
         if (target.contains("sharwell/optimized")) {
@@ -129,11 +186,7 @@ public class CodeGenerator {
                     Class<?> toolClass = loader.loadClass(Tool.class.getName());
                     Constructor<?> ctor = toolClass.getConstructor(String[].class);
                     Method processGrammarsOnCommandLine = toolClass.getMethod("processGrammarsOnCommandLine");
-
-                    List<String> args = getCommandArguments();
-                    for (FileObject grammarFile : grammarFiles) {
-                        args.add(FileUtil.toFile(grammarFile).getAbsolutePath());
-                    }
+                    Method getNumErrors = toolClass.getMethod("getNumErrors");
 
                     ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
                     Thread.currentThread().setContextClassLoader(loader);
@@ -142,15 +195,15 @@ public class CodeGenerator {
                         inputOutput.select();
                         PrintStream originalOut = System.out;
                         try (OutputWriter outputWriter = inputOutput.getOut()) {
-                            System.setOut(new PrintStream(new OutputWriterStream(outputWriter)));
+                            TaskOutputStream taskOut = new TaskOutputStream(new OutputWriterStream(outputWriter));
+                            System.setOut(new PrintStream(taskOut));
                             try {
                                 PrintStream originalErr = System.err;
                                 try (OutputWriter errorWriter = inputOutput.getErr()) {
-                                    System.setErr(new PrintStream(new OutputWriterStream(errorWriter)));
+                                    TaskOutputStream taskErr = new TaskOutputStream(new OutputWriterStream(errorWriter));
+                                    System.setErr(new PrintStream(taskErr));
                                     try {
-                                        outputWriter.format("Arguments: %s%n", args);
-                                        Object tool = ctor.newInstance((Object)args.toArray(new String[args.size()]));
-                                        processGrammarsOnCommandLine.invoke(tool);
+                                        generate(loader, ctor, processGrammarsOnCommandLine, getNumErrors, outputWriter, taskOut, errorWriter, taskErr);
                                     } finally {
                                         System.setErr(originalErr);
                                     }
@@ -162,13 +215,322 @@ public class CodeGenerator {
                     } finally {
                         Thread.currentThread().setContextClassLoader(contextClassLoader);
                     }
-                } catch (ClassNotFoundException | NoSuchMethodException | SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
+                } catch (ClassNotFoundException | NoSuchMethodException | SecurityException ex) {
                     Exceptions.printStackTrace(ex);
                 }
             }
         });
     }
 
+    /**
+     * Generates code for {@link #grammarFiles} in dependency order. Grammars
+     * which do not depend on each other through {@code tokenVocab} are
+     * generated in parallel, each by its own {@link Tool} instance. In
+     * {@link #incremental} mode, grammars whose fingerprint matches the one
+     * recorded by the last successful generation are skipped.
+     * <p>
+     * The output of each tool is collected separately and written when the
+     * tool completes, so the messages for different grammars are not
+     * interleaved.
+     */
+    private void generate(final ClassLoader loader, final Constructor<?> ctor, final Method processGrammarsOnCommandLine, final Method getNumErrors,
+                          final OutputWriter outputWriter, final TaskOutputStream taskOut, final OutputWriter errorWriter, final TaskOutputStream taskErr) {
+        final List<String> baseArgs = getCommandArguments();
+        outputWriter.format("Arguments: %s%n", baseArgs);
+
+        Map<FileObject, String> contentHashes = new HashMap<>();
+        Map<FileObject, GrammarReferences> references = new HashMap<>();
+        for (List<FileObject> level : getGenerationLevels(references)) {
+            List<RequestProcessor.Task> tasks = new ArrayList<>();
+            for (final FileObject grammarFile : level) {
+                final String fingerprint = incremental ? computeFingerprint(grammarFile, baseArgs, contentHashes, references) : null;
+                if (fingerprint != null && fingerprint.equals(grammarFile.getAttribute(FINGERPRINT_ATTRIBUTE)) && hasOutput(grammarFile)) {
+                    outputWriter.format("Skipping %s (up to date)%n", grammarFile.getNameExt());
+                    continue;
+                }
+
+                tasks.add(CODEGEN_RP.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+                        Thread.currentThread().setContextClassLoader(loader);
+                        taskOut.begin();
+                        taskErr.begin();
+                        try {
+                            List<String> args = new ArrayList<>(baseArgs);
+                            args.add(FileUtil.toFile(grammarFile).getAbsolutePath());
+                            Object tool = ctor.newInstance((Object)args.toArray(new String[args.size()]));
+                            processGrammarsOnCommandLine.invoke(tool);
+
+                            boolean succeeded = (Integer)getNumErrors.invoke(tool) == 0;
+                            if (incremental) {
+                                grammarFile.setAttribute(FINGERPRINT_ATTRIBUTE, succeeded ? fingerprint : null);
+                            }
+                        } catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | IOException ex) {
+                            Exceptions.printStackTrace(ex);
+                        } finally {
+                            Thread.currentThread().setContextClassLoader(contextClassLoader);
+                            String output = taskOut.end();
+                            String errors = taskErr.end();
+                            synchronized (outputWriter) {
+                                outputWriter.print(output);
+                                errorWriter.print(errors);
+                            }
+                        }
+                    }
+                }));
+            }
+
+            // the next level reads the .tokens files generated by this one
+            for (RequestProcessor.Task task : tasks) {
+                task.waitFinished();
+            }
+        }
+    }
+
+    /**
+     * Groups {@link #grammarFiles} into levels, where every grammar only
+     * depends (through {@code tokenVocab}) on grammars in earlier levels.
+     * Imported grammars are read from source by the tool, so they do not
+     * impose an order. Grammars involved in a cycle are placed in the last
+     * level.
+     */
+    private List<List<FileObject>> getGenerationLevels(Map<FileObject, GrammarReferences> references) {
+        Map<String, FileObject> grammarsByName = new HashMap<>();
+        for (FileObject grammarFile : grammarFiles) {
+            grammarsByName.put(grammarFile.getName(), grammarFile);
+        }
+
+        Map<FileObject, Set<FileObject>> pending = new LinkedHashMap<>();
+        for (FileObject grammarFile : grammarFiles) {
+            Set<FileObject> dependencies = new HashSet<>();
+            for (String vocabulary : getReferences(grammarFile, references).tokenVocabs) {
+                FileObject dependency = grammarsByName.get(vocabulary);
+                if (dependency != null && dependency != grammarFile) {
+                    dependencies.add(dependency);
+                }
+            }
+
+            pending.put(grammarFile, dependencies);
+        }
+
+        List<List<FileObject>> levels = new ArrayList<>();
+        Set<FileObject> scheduled = new HashSet<>();
+        while (!pending.isEmpty()) {
+            List<FileObject> level = new ArrayList<>();
+            for (Map.Entry<FileObject, Set<FileObject>> entry : pending.entrySet()) {
+                if (scheduled.containsAll(entry.getValue())) {
+                    level.add(entry.getKey());
+                }
+            }
+
+            if (level.isEmpty()) {
+                level.addAll(pending.keySet());
+            }
+
+            for (FileObject grammarFile : level) {
+                pending.remove(grammarFile);
+            }
+
+            scheduled.addAll(level);
+            levels.add(level);
+        }
+
+        return levels;
+    }
+
+    /**
+     * Computes a fingerprint of the command arguments, the content of
+     * {@code grammarFile}, and the content of every grammar and
+     * {@code .tokens} file it transitively depends on.
+     */
+    private String computeFingerprint(FileObject grammarFile, List<String> args, Map<FileObject, String> contentHashes, Map<FileObject, GrammarReferences> references) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(args.toString().getBytes(StandardCharsets.UTF_8));
+
+            Set<FileObject> visited = new HashSet<>();
+            Deque<FileObject> worklist = new ArrayDeque<>();
+            worklist.add(grammarFile);
+            while (!worklist.isEmpty()) {
+                FileObject file = worklist.poll();
+                if (!visited.add(file)) {
+                    continue;
+                }
+
+                digest.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+                if (file.hasExt("tokens")) {
+                    // .tokens files may be regenerated while this task runs, so they are never cached
+                    digest.update(hashContent(file).getBytes(StandardCharsets.UTF_8));
+                    continue;
+                }
+
+                String hash = contentHashes.get(file);
+                if (hash == null) {
+                    hash = hashContent(file);
+                    contentHashes.put(file, hash);
+                }
+
+                digest.update(hash.getBytes(StandardCharsets.UTF_8));
+                GrammarReferences fileReferences = getReferences(file, references);
+                for (String imported : fileReferences.imports) {
+                    worklist.addAll(resolveDependencies(file, imported, false));
+                }
+
+                for (String vocabulary : fileReferences.tokenVocabs) {
+                    worklist.addAll(resolveDependencies(file, vocabulary, true));
+                }
+            }
+
+            return toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException ex) {
+            LOGGER.log(Level.FINE, "Unable to compute a fingerprint for " + grammarFile.getPath(), ex);
+            return null;
+        }
+    }
+
+    private List<FileObject> resolveDependencies(FileObject grammarFile, String name, boolean tokenVocab) {
+        List<FileObject> folders = new ArrayList<>();
+        folders.add(grammarFile.getParent());
+        if (libDirectory != null && libDirectory.isFolder()) {
+            folders.add(libDirectory);
+        }
+
+        if (tokenVocab && outputDirectory != null) {
+            folders.add(outputDirectory);
+        }
+
+        List<FileObject> dependencies = new ArrayList<>();
+        for (FileObject folder : folders) {
+            if (folder == null) {
+                continue;
+            }
+
+            for (String extension : GRAMMAR_EXTENSIONS) {
+                FileObject dependency = folder.getFileObject(name, extension);
+                if (dependency != null && dependency.isData()) {
+                    dependencies.add(dependency);
+                }
+            }
+
+            if (tokenVocab) {
+                FileObject tokens = folder.getFileObject(name, "tokens");
+                if (tokens != null && tokens.isData()) {
+                    dependencies.add(tokens);
+                }
+            }
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Every grammar produces a {@code .tokens} file named after the grammar.
+     * Its absence means the previous output was removed.
+     */
+    private boolean hasOutput(FileObject grammarFile) {
+        FileObject folder = outputDirectory != null ? outputDirectory : grammarFile.getParent();
+        if (folder == null) {
+            return false;
+        }
+
+        FileObject tokens = folder.getFileObject(grammarFile.getName(), "tokens");
+        return tokens != null && tokens.isData();
+    }
+
+    private static GrammarReferences getReferences(FileObject grammarFile, Map<FileObject, GrammarReferences> references) {
+        GrammarReferences result = references.get(grammarFile);
+        if (result == null) {
+            result = readReferences(grammarFile);
+            references.put(grammarFile, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a grammar with the tool and reads its {@code import} statement
+     * and {@code tokenVocab} option from the syntax tree, so references in
+     * comments, actions and string literals are not mistaken for dependencies.
+     */
+    private static GrammarReferences readReferences(FileObject grammarFile) {
+        String text;
+        try {
+            text = grammarFile.asText();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Unable to read " + grammarFile.getPath(), ex);
+            return GrammarReferences.EMPTY;
+        }
+
+        Tool tool = new Tool();
+        // syntax errors are reported by the code generation itself, not by this scan
+        tool.addListener(new ANTLRToolListener() {
+            @Override
+            public void info(String msg) {
+            }
+
+            @Override
+            public void error(ANTLRMessage msg) {
+            }
+
+            @Override
+            public void warning(ANTLRMessage msg) {
+            }
+        });
+
+        GrammarRootAST root = tool.parseGrammarFromString(text);
+        if (root == null) {
+            return GrammarReferences.EMPTY;
+        }
+
+        // the same traversal as Grammar.loadImportedGrammars
+        List<String> imports = new ArrayList<>();
+        GrammarAST importNode = (GrammarAST)root.getFirstChildWithType(ANTLRParser.IMPORT);
+        if (importNode != null) {
+            for (Object child : importNode.getChildren()) {
+                GrammarAST delegate = (GrammarAST)child;
+                if (delegate.getType() == ANTLRParser.ASSIGN) {
+                    imports.add(delegate.getChild(1).getText());
+                } else if (delegate.getType() == ANTLRParser.ID) {
+                    imports.add(delegate.getText());
+                }
+            }
+        }
+
+        List<String> tokenVocabs = new ArrayList<>();
+        GrammarAST optionsNode = (GrammarAST)root.getFirstChildWithType(ANTLRParser.OPTIONS);
+        if (optionsNode != null) {
+            for (Object child : optionsNode.getChildren()) {
+                GrammarAST option = (GrammarAST)child;
+                if (option.getType() == ANTLRParser.ASSIGN && option.getChildCount() == 2 && "tokenVocab".equals(option.getChild(0).getText())) {
+                    String value = option.getChild(1).getText();
+                    if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+                        value = value.substring(1, value.length() - 1);
+                    }
+
+                    tokenVocabs.add(value);
+                }
+            }
+        }
+
+        return new GrammarReferences(imports, tokenVocabs);
+    }
+
+    private static String hashContent(FileObject file) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        return toHexString(digest.digest(file.asBytes()));
+    }
+
+    private static String toHexString(byte[] bytes) {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return builder.toString();
+    }
+
     private static File copyCompleteJarToTempDir() throws IOException {
         File tempFile = File.createTempFile("antlr4-complete", ".jar");
         tempFile.deleteOnExit();
@@ -253,6 +615,67 @@ public class CodeGenerator {
         return args;
     }
 
+    /**
+     * The names of the grammars a grammar refers to through its
+     * {@code import} statement and {@code tokenVocab} option.
+     */
+    private static final class GrammarReferences {
+        public static final GrammarReferences EMPTY = new GrammarReferences(Collections.<String>emptyList(), Collections.<String>emptyList());
+
+        public final List<String> imports;
+        public final List<String> tokenVocabs;
+
+        public GrammarReferences(List<String> imports, List<String> tokenVocabs) {
+            this.imports = imports;
+            this.tokenVocabs = tokenVocabs;
+        }
+    }
+
+    /**
+     * Collects the output written by each code generation task in a buffer of
+     * its own, between calls to {@link #begin} and {@link #end} on the task's
+     * thread. Output from other threads is written to the fallback stream.
+     */
+    private static final class TaskOutputStream extends OutputStream {
+        private final OutputStream fallback;
+        private final ThreadLocal<ByteArrayOutputStream> buffer = new ThreadLocal<>();
+
+        public TaskOutputStream(@NonNull OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        public void begin() {
+            buffer.set(new ByteArrayOutputStream());
+        }
+
+        @NonNull
+        public String end() {
+            ByteArrayOutputStream output = buffer.get();
+            buffer.remove();
+            return output != null ? output.toString() : "";
+        }
+
+        @Override
+        public void flush() throws IOException {
+            getTarget().flush();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            getTarget().write(b, off, len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getTarget().write(b);
+        }
+
+        private OutputStream getTarget() {
+            ByteArrayOutputStream output = buffer.get();
+            return output != null ? output : fallback;
+        }
+    }
+
     public static class OutputWriterStream extends OutputStream {
         private final OutputWriter writer;
 
@@ -29,6 +29,7 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
             setDebugST(wizardPanel.isDebugST());
             setForceATN(wizardPanel.isForceATN());
             setTreatWarningsAsErrors(wizardPanel.isTreatWarningsAsErrors());
+            setIncremental(wizardPanel.isIncremental());
         }
     }
 
@@ -64,6 +65,14 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
         chkTreatWarningsAsErrors.setSelected(value);
     }
 
+    public boolean isIncremental() {
+        return chkIncremental.isSelected();
+    }
+
+    public void setIncremental(boolean value) {
+        chkIncremental.setSelected(value);
+    }
+
     @Override
     public String getName() {
         return "Advanced";
@@ -86,6 +95,7 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
         javax.swing.JPanel jPanel1 = new javax.swing.JPanel();
         chkForceATN = new javax.swing.JCheckBox();
         chkTreatWarningsAsErrors = new javax.swing.JCheckBox();
+        chkIncremental = new javax.swing.JCheckBox();
         javax.swing.JPanel jPanel2 = new javax.swing.JPanel();
         chkATNDiagrams = new javax.swing.JCheckBox();
         chkDebugST = new javax.swing.JCheckBox();
@@ -106,6 +116,13 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
             }
         });
 
+        org.openide.awt.Mnemonics.setLocalizedText(chkIncremental, org.openide.util.NbBundle.getMessage(CodeGeneratorVisualPanel3.class, "CodeGeneratorVisualPanel3.chkIncremental.text")); // NOI18N
+        chkIncremental.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                chkIncrementalActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout jPanel1Layout = new javax.swing.GroupLayout(jPanel1);
         jPanel1.setLayout(jPanel1Layout);
         jPanel1Layout.setHorizontalGroup(
@@ -113,7 +130,8 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
             .addGroup(jPanel1Layout.createSequentialGroup()
                 .addGroup(jPanel1Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(chkForceATN)
-                    .addComponent(chkTreatWarningsAsErrors))
+                    .addComponent(chkTreatWarningsAsErrors)
+                    .addComponent(chkIncremental))
                 .addGap(0, 0, Short.MAX_VALUE))
         );
         jPanel1Layout.setVerticalGroup(
@@ -122,6 +140,8 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
                 .addComponent(chkForceATN)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(chkTreatWarningsAsErrors)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(chkIncremental)
                 .addGap(0, 0, Short.MAX_VALUE))
         );
 
@@ -185,6 +205,10 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
         fireChange();
     }//GEN-LAST:event_chkTreatWarningsAsErrorsActionPerformed
 
+    private void chkIncrementalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_chkIncrementalActionPerformed
+        fireChange();
+    }//GEN-LAST:event_chkIncrementalActionPerformed
+
     private void chkATNDiagramsActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_chkATNDiagramsActionPerformed
         fireChange();
     }//GEN-LAST:event_chkATNDiagramsActionPerformed
@@ -197,6 +221,7 @@ public final class CodeGeneratorVisualPanel3 extends JPanel {
     private javax.swing.JCheckBox chkATNDiagrams;
     private javax.swing.JCheckBox chkDebugST;
     private javax.swing.JCheckBox chkForceATN;
+    private javax.swing.JCheckBox chkIncremental;
     private javax.swing.JCheckBox chkTreatWarningsAsErrors;
     // End of variables declaration//GEN-END:variables
 }
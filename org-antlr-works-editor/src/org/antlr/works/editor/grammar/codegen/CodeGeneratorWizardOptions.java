@@ -104,6 +104,10 @@ public abstract class CodeGeneratorWizardOptions {
             return getBooleanProperty(wiz, CodeGeneratorWizardPanel3.TREAT_WARNINGS_AS_ERRORS, false);
         }
 
+        public static boolean isIncremental(WizardDescriptor wiz) {
+            return getBooleanProperty(wiz, CodeGeneratorWizardPanel3.INCREMENTAL, false);
+        }
+
         private Advanced() {
         }
     }
@@ -18,6 +18,7 @@ public class CodeGeneratorWizardPanel3 implements WizardDescriptor.Panel<WizardD
     public static final String DEBUG_ST = "debugST";
     public static final String FORCE_ATN = "forceATN";
     public static final String TREAT_WARNINGS_AS_ERRORS = "treatWarningsAsErrors";
+    public static final String INCREMENTAL = "incremental";
 
     private final ChangeSupport _changeSupport = new ChangeSupport(this);
 
@@ -25,6 +26,7 @@ public class CodeGeneratorWizardPanel3 implements WizardDescriptor.Panel<WizardD
     private boolean debugST;
     private boolean forceATN;
     private boolean treatWarningsAsErrors;
+    private boolean incremental;
 
     /**
      * The visual component that displays this panel. If you need to access the
@@ -100,6 +102,22 @@ public class CodeGeneratorWizardPanel3 implements WizardDescriptor.Panel<WizardD
         treatWarningsAsErrors = value;
     }
 
+    public boolean isIncremental() {
+        if (component != null) {
+            return component.isIncremental();
+        }
+
+        return incremental;
+    }
+
+    public void setIncremental(boolean value) {
+        if (component != null) {
+            component.setIncremental(value);
+        }
+
+        incremental = value;
+    }
+
     // Get the visual component for the panel. In this template, the component
     // is kept separate. This can be more efficient: if the wizard is created
     // but never displayed, or not all panels are displayed, it is better to
@@ -148,6 +166,7 @@ public class CodeGeneratorWizardPanel3 implements WizardDescriptor.Panel<WizardD
         setDebugST(CodeGeneratorWizardOptions.Advanced.isDebugST(wiz));
         setForceATN(CodeGeneratorWizardOptions.Advanced.isForceATN(wiz));
         setTreatWarningsAsErrors(CodeGeneratorWizardOptions.Advanced.isTreatWarningsAsErrors(wiz));
+        setIncremental(CodeGeneratorWizardOptions.Advanced.isIncremental(wiz));
     }
 
     @Override
@@ -156,5 +175,6 @@ public class CodeGeneratorWizardPanel3 implements WizardDescriptor.Panel<WizardD
         CodeGeneratorWizardOptions.setBooleanProperty(wiz, DEBUG_ST, isDebugST());
         CodeGeneratorWizardOptions.setBooleanProperty(wiz, FORCE_ATN, isForceATN());
         CodeGeneratorWizardOptions.setBooleanProperty(wiz, TREAT_WARNINGS_AS_ERRORS, isTreatWarningsAsErrors());
+        CodeGeneratorWizardOptions.setBooleanProperty(wiz, INCREMENTAL, isIncremental());
     }
 }
@@ -98,6 +98,7 @@ public final class GenerateRecognizerAction implements ActionListener {
             generator.forceATN = CodeGeneratorWizardOptions.Advanced.isForceATN(wizard);
             generator.atn = CodeGeneratorWizardOptions.Advanced.isGenerateATNDiagrams(wizard);
             generator.treatWarningsAsErrors = CodeGeneratorWizardOptions.Advanced.isTreatWarningsAsErrors(wizard);
+            generator.incremental = CodeGeneratorWizardOptions.Advanced.isIncremental(wizard);
             generator.options = new HashMap<>();
             if (CodeGeneratorWizardOptions.Features.isAbstractClasses(wizard)) {
                 generator.options.put("abstract", "true");
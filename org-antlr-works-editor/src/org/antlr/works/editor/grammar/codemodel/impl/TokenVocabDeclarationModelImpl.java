@@ -14,6 +14,7 @@ import java.util.Collections;
 import java.util.List;
 import org.antlr.works.editor.grammar.codemodel.TokenVocabDeclarationModel;
 import org.antlr.works.editor.grammar.codemodel.TokenVocabModel;
+import org.openide.filesystems.FileObject;
 
 /**
  *
@@ -52,7 +53,15 @@ public class TokenVocabDeclarationModelImpl extends AbstractCodeElementModel imp
             }
         }
 
-        // TODO: next try to find a .tokens file with this name
+        // next try to find a .tokens file with this name
+        if (result.isEmpty()) {
+            FileObject fileObject = file.getFileObject();
+            FileObject folder = fileObject != null ? fileObject.getParent() : null;
+            FileObject tokensFile = folder != null ? folder.getFileObject(getName(), "tokens") : null;
+            if (tokensFile != null) {
+                result.add(new TokenVocabModelImpl(getName(), file, tokensFile));
+            }
+        }
 
         return result;
     }
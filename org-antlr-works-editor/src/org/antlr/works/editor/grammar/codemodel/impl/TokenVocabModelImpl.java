@@ -8,21 +8,65 @@
  */
 package org.antlr.works.editor.grammar.codemodel.impl;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.works.editor.grammar.parser.TokenVocabularyCache;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Parameters;
 
 /**
+ * A token vocabulary read from a {@code .tokens} file.
  *
  * @author Sam Harwell
  */
 public class TokenVocabModelImpl extends AbstractTokenVocabModel {
+    @NonNull
+    private final FileObject tokensFile;
+    /**
+     * The file the tokens are defined in, as opposed to the grammar which
+     * references this vocabulary.
+     */
+    @NonNull
+    private final FileModelImpl tokensFileModel;
 
-    public TokenVocabModelImpl(String name, FileModelImpl file) {
+    public TokenVocabModelImpl(String name, FileModelImpl file, @NonNull FileObject tokensFile) {
         super(name, file);
+        Parameters.notNull("tokensFile", tokensFile);
+        this.tokensFile = tokensFile;
+        this.tokensFileModel = new FileModelImpl(tokensFile, file.getProject(), file.getPackagePath());
+        this.tokensFileModel.freeze();
     }
 
     @Override
     public Collection<TokenDataImpl> getTokens() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        File file = FileUtil.toFile(tokensFile);
+        if (file == null) {
+            return Collections.emptyList();
+        }
+
+        Map<String, Integer> tokens = TokenVocabularyCache.getTokens(file);
+        Map<Integer, String> literals = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : tokens.entrySet()) {
+            if (entry.getKey().startsWith("'")) {
+                literals.put(entry.getValue(), entry.getKey());
+            }
+        }
+
+        List<TokenDataImpl> result = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : tokens.entrySet()) {
+            if (!entry.getKey().startsWith("'")) {
+                result.add(new TokenDataImpl(entry.getKey(), literals.get(entry.getValue()), tokensFileModel));
+            }
+        }
+
+        return result;
     }
 
 }
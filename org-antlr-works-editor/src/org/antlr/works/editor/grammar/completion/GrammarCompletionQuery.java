@@ -23,10 +23,8 @@ import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.Document;
-import org.antlr.netbeans.editor.classification.TokenTag;
 import org.antlr.netbeans.editor.completion.Anchor;
 import org.antlr.netbeans.editor.navigation.Description;
-import org.antlr.netbeans.editor.tagging.Tagger;
 import org.antlr.netbeans.editor.text.DocumentSnapshot;
 import org.antlr.netbeans.editor.text.DocumentTextUtilities;
 import org.antlr.netbeans.editor.text.OffsetRegion;
@@ -57,7 +55,8 @@ import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.Rule;
-import org.antlr.works.editor.antlr4.classification.TaggerTokenSource;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenStream;
 import org.antlr.works.editor.antlr4.completion.AbstractCompletionQuery;
 import org.antlr.works.editor.antlr4.completion.CaretReachedException;
 import org.antlr.works.editor.antlr4.completion.CaretToken;
@@ -185,22 +184,26 @@ public final class GrammarCompletionQuery extends AbstractCompletionQuery {
             }
 
             if (forestParser != null) {
-                Tagger<TokenTag<Token>> tagger = getTagger(taskManager, snapshot);
+                TaggerTokenBuffer tokenBuffer = getTokenBuffer(taskManager, snapshot);
 
                 final OffsetRegion region = getParseRegion(snapshot, anchors);
                 if (LOGGER.isLoggable(Level.FINE)) {
                     LOGGER.log(Level.FINE, "Code completion from anchor region: {0}.", region);
                 }
 
-                TaggerTokenSource taggerTokenSource = new TaggerTokenSource(tagger, new SnapshotPositionRegion(snapshot, region));
-                TokenSource tokenSource = new CodeCompletionTokenSource(getCaretOffset(), taggerTokenSource);
+                TaggerTokenStream taggerTokenStream = new TaggerTokenStream(tokenBuffer, region);
+                TokenSource tokenSource = new CodeCompletionTokenSource(getCaretOffset(), taggerTokenStream);
                 CommonTokenStream tokens = new CommonTokenStream(tokenSource);
 
                 CodeCompletionGrammarParser parser = ParserFactory.DEFAULT.getParser(tokens);
-                parser.setBuildParseTree(true);
-                parser.setErrorHandler(new CodeCompletionErrorStrategy());
                 ATN atn = parser.getATN();
-                parseTrees = forestParser.getParseTrees(parser);
+                try {
+                    parser.setBuildParseTree(true);
+                    parser.setErrorHandler(new CodeCompletionErrorStrategy());
+                    parseTrees = forestParser.getParseTrees(parser);
+                } finally {
+                    ParserFactory.DEFAULT.putParser(parser);
+                }
 
                 boolean hasActionConfig = false;
                 boolean hasNonActionConfig = false;
@@ -404,16 +407,16 @@ public final class GrammarCompletionQuery extends AbstractCompletionQuery {
             return new GrammarReferenceAnchors(grammarType, previous, enclosing);
         }
 
-        private Tagger<TokenTag<Token>> getTagger(ParserTaskManager taskManager, DocumentSnapshot snapshot) {
-            Future<ParserData<Tagger<TokenTag<Token>>>> futureTokensData = taskManager.getData(snapshot, GrammarParserDataDefinitions.LEXER_TOKENS, EnumSet.of(ParserDataOptions.SYNCHRONOUS));
-            Tagger<TokenTag<Token>> tagger = null;
+        private TaggerTokenBuffer getTokenBuffer(ParserTaskManager taskManager, DocumentSnapshot snapshot) {
+            Future<ParserData<TaggerTokenBuffer>> futureTokenBufferData = taskManager.getData(snapshot, GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER, EnumSet.of(ParserDataOptions.SYNCHRONOUS));
+            TaggerTokenBuffer tokenBuffer = null;
             try {
-                tagger = futureTokensData.get().getData();
+                tokenBuffer = futureTokenBufferData.get().getData();
             } catch (InterruptedException | ExecutionException ex) {
                 Exceptions.printStackTrace(ex);
             }
 
-            return tagger;
+            return tokenBuffer;
         }
 
         private OffsetRegion getParseRegion(DocumentSnapshot snapshot, GrammarReferenceAnchors anchors) {
@@ -12,7 +12,9 @@ import org.antlr.v4.runtime.Dependents;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.RuleDependencies;
 import org.antlr.v4.runtime.RuleDependency;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.works.editor.antlr4.completion.AbstractForestParser;
+import org.antlr.works.editor.antlr4.completion.CodeCompletionErrorStrategy;
 import org.antlr.works.editor.grammar.experimental.GrammarParser;
 
 /**
@@ -56,4 +58,23 @@ public class GrammarForestParser extends AbstractForestParser<CodeCompletionGram
         }
     }
 
+    @Override
+    protected CodeCompletionGrammarParser createParser(CodeCompletionGrammarParser parser, TokenStream input) {
+        // a customized interpreter or error handler can't be reproduced here
+        if (parser.getInterpreter().getClass() != CompletionParserATNSimulator.class
+            || parser.getErrorHandler().getClass() != CodeCompletionErrorStrategy.class) {
+            return null;
+        }
+
+        CodeCompletionGrammarParser result = ParserFactory.DEFAULT.getParser(input);
+        result.setBuildParseTree(parser.getBuildParseTree());
+        result.setErrorHandler(new CodeCompletionErrorStrategy());
+        return result;
+    }
+
+    @Override
+    protected void releaseParser(CodeCompletionGrammarParser parser) {
+        ParserFactory.DEFAULT.putParser(parser);
+    }
+
 }
@@ -9,6 +9,7 @@
 package org.antlr.works.editor.grammar.completion;
 
 import org.antlr.v4.runtime.TokenStream;
+import org.antlr.works.editor.antlr4.completion.AbstractParserCache;
 import org.netbeans.api.annotations.common.NonNull;
 
 /**
@@ -18,6 +19,13 @@ import org.netbeans.api.annotations.common.NonNull;
 public class ParserFactory {
     public static final ParserFactory DEFAULT = new ParserFactory();
 
+    private final AbstractParserCache<CodeCompletionGrammarParser> cache = new AbstractParserCache<CodeCompletionGrammarParser>() {
+        @Override
+        protected CodeCompletionGrammarParser createParser(TokenStream input) {
+            return ParserFactory.this.createParser(input);
+        }
+    };
+
     @NonNull
     protected CodeCompletionGrammarParser createParser(@NonNull TokenStream input) {
         CodeCompletionGrammarParser parser = new CodeCompletionGrammarParser(input);
@@ -25,8 +33,21 @@ public class ParserFactory {
         return parser;
     }
 
+    /**
+     * Gets a parser for {@code input}, reusing an idle parser when one is
+     * available. Callers return the parser with {@link #putParser} once the
+     * parse is complete.
+     */
     @NonNull
     public CodeCompletionGrammarParser getParser(@NonNull TokenStream input) {
-        return createParser(input);
+        CodeCompletionGrammarParser parser = cache.getParser(input);
+        parser.removeParseListeners();
+        parser.setBuildParseTree(true);
+        return parser;
+    }
+
+    public void putParser(@NonNull CodeCompletionGrammarParser parser) {
+        parser.getInterpreter().reset();
+        cache.putParser(parser);
     }
 }
@@ -10,28 +10,31 @@
 package org.antlr.works.editor.grammar.debugger;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
-import javax.xml.bind.DatatypeConverter;
-import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.VocabularyImpl;
 import org.antlr.v4.runtime.atn.ATN;
 import org.antlr.v4.runtime.atn.ATNDeserializer;
 import org.antlr.works.editor.grammar.debugger.LexerDebuggerTokenHighlighterLayerFactory.LexerOpCode;
+import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.modules.editor.NbEditorKit;
 import org.netbeans.modules.editor.NbEditorUtilities;
 import org.openide.filesystems.FileObject;
 import org.openide.util.Exceptions;
 import org.openide.util.Parameters;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -40,13 +43,37 @@ import org.openide.util.Parameters;
 public abstract class AbstractGrammarDebuggerEditorKit extends NbEditorKit {
     protected static final String UTF_8 = "UTF-8"; // NOI18N
 
+    private static final Logger LOGGER = Logger.getLogger(AbstractGrammarDebuggerEditorKit.class.getName());
+
+    // -J-Dorg.antlr.works.editor.grammar.debugger.AbstractGrammarDebuggerEditorKit.mapThreshold=16777216
+    private static final int MAP_THRESHOLD =
+        Integer.getInteger(AbstractGrammarDebuggerEditorKit.class.getName() + ".mapThreshold", 16 * 1024 * 1024);
+
+    // -J-Dorg.antlr.works.editor.grammar.debugger.AbstractGrammarDebuggerEditorKit.chunkSize=1048576
+    private static final int CHUNK_SIZE =
+        Integer.getInteger(AbstractGrammarDebuggerEditorKit.class.getName() + ".chunkSize", 1024 * 1024);
+
+    private static final RequestProcessor ANALYSIS_RP = new RequestProcessor("ANTLR Lexer Trace Analysis", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The lexer trace, stored as a read-only {@link ByteBuffer}. Large traces
+     * are memory-mapped so they do not occupy the Java heap.
+     */
     public static final String PROP_TRACE = "Lexer Trace";
     public static final String PROP_LEXER_INTERP_DATA = "Lexer Interpreter Data";
     public static final String PROP_PARSER_INTERP_DATA = "Parser Interpreter Data";
+    /**
+     * The analysis of the lexer trace, stored as a {@link LexerTraceAnalysis}
+     * instance which is replaced as more of the trace is analyzed.
+     *
+     * @see #getAnalysis
+     */
     public static final String PROP_TOKENS = "Trace Tokens";
-    public static final String PROP_ATN_CHARACTERS = "Trace ATN Transitions";
-    public static final String PROP_DFA_CHARACTERS = "Trace DFA Transitions";
     public static final String PROP_SELECTED_TOKENS = "Selected Trace Tokens";
+    /**
+     * The characters to highlight, stored as a {@link CharacterStatistics}
+     * instance.
+     */
     public static final String PROP_SELECTED_CHARACTERS = "Selected Characters";
     public static final String PROP_CHANNELS = "Channels";
 
@@ -65,48 +92,153 @@ public abstract class AbstractGrammarDebuggerEditorKit extends NbEditorKit {
      */
     public static final String PROP_MODE_NAMES = "Mode Names";
 
+    /**
+     * The {@link TraceAnalysisTask} of the document.
+     */
+    private static final String PROP_ANALYSIS_TASK = "Lexer Trace Analysis Task";
+
     @Override
     public void read(Reader in, Document doc, int pos) throws IOException, BadLocationException {
+        // a new task for the document stops the analysis of its previous content
+        doc.putProperty(PROP_TOKENS, null);
+        doc.putProperty(PROP_ANALYSIS_TASK, new TraceAnalysisTask(doc));
+
         FileObject fileObject = NbEditorUtilities.getFileObject(doc);
         if (fileObject.hasExt("linterp") || fileObject.hasExt("pinterp")) {
             super.read(in, doc, pos);
             return;
         }
 
-        String data = readAllText(in, 0);
-        byte[] binary = DatatypeConverter.parseBase64Binary(data);
-        int inputSize = readInteger(binary, 0);
-        InputStream inputStream = new ByteArrayInputStream(binary, 4, inputSize);
-        super.read(new InputStreamReader(inputStream, UTF_8), doc, pos);
+        // decode while reading, so a large trace is never held on the heap as text or as bytes
+        InputStream binary = new Base64InputStream(in);
+        int inputSize = readInteger(binary);
+        BoundedInputStream input = new BoundedInputStream(binary, inputSize);
+        super.read(new InputStreamReader(input, UTF_8), doc, pos);
+        input.skipRemaining();
 
         // read the token names
-        int literalNamesOffset = 4 + inputSize;
-        int literalNamesSize = readInteger(binary, literalNamesOffset);
-        String[] literalNames = readStrings(binary, literalNamesOffset + 4, literalNamesSize);
-
-        int symbolicNamesOffset = literalNamesOffset + 4 + literalNamesSize;
-        int symbolicNamesSize = readInteger(binary, symbolicNamesOffset);
-        String[] symbolicNames = readStrings(binary, symbolicNamesOffset + 4, symbolicNamesSize);
-
+        String[] literalNames = readStrings(binary, readInteger(binary));
+        String[] symbolicNames = readStrings(binary, readInteger(binary));
         doc.putProperty(PROP_VOCABULARY, new VocabularyImpl(literalNames, symbolicNames));
 
         // read the rule names
-        int ruleNamesOffset = symbolicNamesOffset + 4 + symbolicNamesSize;
-        int ruleNamesSize = readInteger(binary, ruleNamesOffset);
-        String[] ruleNames = readStrings(binary, ruleNamesOffset + 4, ruleNamesSize);
+        String[] ruleNames = readStrings(binary, readInteger(binary));
         doc.putProperty(PROP_RULE_NAMES, ruleNames);
 
         // read the mode names
-        int modeNamesOffset = ruleNamesOffset + 4 + ruleNamesSize;
-        int modeNamesSize = readInteger(binary, modeNamesOffset);
-        String[] modeNames = readStrings(binary, modeNamesOffset + 4, modeNamesSize);
+        String[] modeNames = readStrings(binary, readInteger(binary));
         doc.putProperty(PROP_MODE_NAMES, modeNames);
 
         // read the trace
-        int traceOffset = modeNamesOffset + 4 + modeNamesSize;
-        int traceSize = readInteger(binary, traceOffset);
-        byte[] traceData = Arrays.copyOfRange(binary, traceOffset + 4, traceOffset + 4 + traceSize);
-        doc.putProperty(PROP_TRACE, traceData);
+        int traceSize = readInteger(binary);
+        doc.putProperty(PROP_TRACE, createTraceBuffer(binary, traceSize));
+    }
+
+    private static ByteBuffer createTraceBuffer(InputStream input, int length) throws IOException {
+        if (length >= MAP_THRESHOLD) {
+            File file = null;
+            try {
+                file = File.createTempFile("lexer-trace", ".bin"); // NOI18N
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to create a file for the lexer trace; it will be held on the heap.", ex);
+            }
+
+            if (file != null) {
+                return mapTrace(input, length, file);
+            }
+        }
+
+        return ByteBuffer.wrap(readFully(input, length)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies a trace to {@code file} and maps it into memory.
+     */
+    private static ByteBuffer mapTrace(InputStream input, int length, File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) { // NOI18N
+            byte[] buffer = new byte[64 * 1024];
+            for (int remaining = length; remaining > 0; ) {
+                int count = input.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new EOFException("The lexer trace is truncated.");
+                }
+
+                randomAccessFile.write(buffer, 0, count);
+                remaining -= count;
+            }
+
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            // the mapping remains valid after the file is closed; on systems
+            // which do not allow deleting a mapped file, try again on exit
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Reads the input section of a lexer trace file from the decoded stream,
+     * leaving the rest of the stream for the sections which follow it.
+     */
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream input;
+        private int remaining;
+
+        public BoundedInputStream(InputStream input, int length) throws IOException {
+            if (length < 0) {
+                throw new IOException("Invalid length in the lexer trace.");
+            }
+
+            this.input = input;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+
+            int value = input.read();
+            if (value < 0) {
+                throw new EOFException("The lexer trace is truncated.");
+            }
+
+            remaining--;
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+
+            int count = input.read(b, off, Math.min(len, remaining));
+            if (count < 0) {
+                throw new EOFException("The lexer trace is truncated.");
+            }
+
+            remaining -= count;
+            return count;
+        }
+
+        /**
+         * Reads the part of the input which the reader did not consume.
+         */
+        public void skipRemaining() throws IOException {
+            byte[] buffer = new byte[1024];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // continue until the end of the input
+            }
+        }
+
+        @Override
+        public void close() {
+            // the rest of the trace is read from the underlying stream
+        }
     }
 
     private static String readAllText(Reader reader, int estimatedSize) throws IOException {
@@ -124,16 +256,35 @@ public abstract class AbstractGrammarDebuggerEditorKit extends NbEditorKit {
         return builder.toString();
     }
 
-    private static int readInteger(byte[] data, int offset) {
-        int value = (data[offset++] & 0xFF);
-        value |= (data[offset++] & 0xFF) << 8;
-        value |= (data[offset++] & 0xFF) << 16;
-        value |= (data[offset++] & 0xFF) << 24;
+    private static int readInteger(InputStream input) throws IOException {
+        byte[] data = readFully(input, 4);
+        int value = (data[0] & 0xFF);
+        value |= (data[1] & 0xFF) << 8;
+        value |= (data[2] & 0xFF) << 16;
+        value |= (data[3] & 0xFF) << 24;
         return value;
     }
 
-    private static String[] readStrings(byte[] data, int offset, int length) throws IOException {
-        InputStream inputStream = new ByteArrayInputStream(data, offset, length);
+    private static byte[] readFully(InputStream input, int length) throws IOException {
+        if (length < 0) {
+            throw new IOException("Invalid length in the lexer trace.");
+        }
+
+        byte[] data = new byte[length];
+        for (int offset = 0; offset < length; ) {
+            int count = input.read(data, offset, length - offset);
+            if (count < 0) {
+                throw new EOFException("The lexer trace is truncated.");
+            }
+
+            offset += count;
+        }
+
+        return data;
+    }
+
+    private static String[] readStrings(InputStream input, int length) throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(readFully(input, length));
         InputStreamReader reader = new InputStreamReader(inputStream, UTF_8);
         String text = readAllText(reader, length);
         return text.split("\\n");
@@ -155,122 +306,219 @@ public abstract class AbstractGrammarDebuggerEditorKit extends NbEditorKit {
         }
     }
 
-    public TraceToken[] getTokens(Document document) {
-        TraceToken[] tokens = (TraceToken[])document.getProperty(PROP_TOKENS);
-        if (tokens == null) {
-            LexerTraceAnalyzer analyzer = new LexerTraceAnalyzer(document, true, false, false);
-            byte[] traceData = (byte[])document.getProperty(PROP_TRACE);
-            if (traceData != null) {
-                loadTokens(document, new ByteArrayInputStream(traceData), analyzer);
-            }
-            else {
-                LexerInterpreterData interpreterData = (LexerInterpreterData)document.getProperty(PROP_LEXER_INTERP_DATA);
-                if (interpreterData != null) {
-                    loadTokens(document, interpreterData, analyzer);
-                }
-            }
+    /**
+     * Gets the analysis of the lexer trace for {@code document}. The first call
+     * starts analyzing the trace in the background. Until the analysis is
+     * complete, this method returns the results for the part of the trace
+     * analyzed so far, and a {@link #PROP_TOKENS} property change is fired
+     * each time the results for another part are published.
+     */
+    @NonNull
+    public LexerTraceAnalysis getAnalysis(@NonNull Document document) {
+        LexerTraceAnalysis analysis = (LexerTraceAnalysis)document.getProperty(PROP_TOKENS);
+        if (analysis != null && analysis.isComplete()) {
+            return analysis;
+        }
 
-            tokens = analyzer.tokens.toArray(new TraceToken[analyzer.tokens.size()]);
-            document.putProperty(PROP_TOKENS, tokens);
+        TraceAnalysisTask task = (TraceAnalysisTask)document.getProperty(PROP_ANALYSIS_TASK);
+        if (task != null) {
+            task.start();
         }
 
-        return tokens;
+        analysis = (LexerTraceAnalysis)document.getProperty(PROP_TOKENS);
+        return analysis != null ? analysis : LexerTraceAnalysis.EMPTY;
     }
 
-    public TupleIntInt[] getAtnTransitions(Document document) {
-        TupleIntInt[] transitions = (TupleIntInt[])document.getProperty(PROP_ATN_CHARACTERS);
-        if (transitions == null) {
-            LexerTraceAnalyzer analyzer = new LexerTraceAnalyzer(document, false, true, false);
-            byte[] traceData = (byte[])document.getProperty(PROP_TRACE);
-            if (traceData != null) {
-                loadTokens(document, new ByteArrayInputStream(traceData), analyzer);
-            }
-            else {
-                LexerInterpreterData interpreterData = (LexerInterpreterData)document.getProperty(PROP_LEXER_INTERP_DATA);
-                if (interpreterData != null) {
-                    loadTokens(document, interpreterData, analyzer);
-                }
-            }
+    @NonNull
+    public CharacterStatistics getAtnTransitions(@NonNull Document document) {
+        return getAnalysis(document).getAtnTransitions();
+    }
+
+    @NonNull
+    public CharacterStatistics getDfaTransitions(@NonNull Document document) {
+        return getAnalysis(document).getDfaTransitions();
+    }
+
+    /**
+     * Analyzes the lexer trace of a document, publishing the results in the
+     * {@link #PROP_TOKENS} property after each chunk of the trace. Each
+     * document has its own task, so analyzing one document never waits for
+     * another.
+     */
+    private static final class TraceAnalysisTask implements Runnable {
+        private final Document document;
+        private boolean started;
 
-            transitions = getCharacterData(analyzer.atnCharacters);
-            document.putProperty(PROP_ATN_CHARACTERS, transitions);
+        public TraceAnalysisTask(Document document) {
+            this.document = document;
         }
 
-        return transitions;
-    }
+        /**
+         * Starts the analysis, unless it has already started or the document
+         * does not have a trace or interpreter data yet.
+         */
+        public synchronized void start() {
+            if (started) {
+                return;
+            }
 
-    public TupleIntInt[] getDfaTransitions(Document document) {
-        TupleIntInt[] transitions = (TupleIntInt[])document.getProperty(PROP_DFA_CHARACTERS);
-        if (transitions == null) {
-            LexerTraceAnalyzer analyzer = new LexerTraceAnalyzer(document, false, false, true);
-            byte[] traceData = (byte[])document.getProperty(PROP_TRACE);
-            if (traceData != null) {
-                loadTokens(document, new ByteArrayInputStream(traceData), analyzer);
-            }
-            else {
-                LexerInterpreterData interpreterData = (LexerInterpreterData)document.getProperty(PROP_LEXER_INTERP_DATA);
-                if (interpreterData != null) {
-                    loadTokens(document, interpreterData, analyzer);
-                }
+            if (document.getProperty(PROP_TRACE) == null && document.getProperty(PROP_LEXER_INTERP_DATA) == null) {
+                // the interpreter data is set after the document is opened
+                return;
             }
 
-            transitions = getCharacterData(analyzer.dfaCharacters);
-            document.putProperty(PROP_DFA_CHARACTERS, transitions);
+            started = true;
+            ANALYSIS_RP.post(this);
         }
 
-        return transitions;
-    }
+        @Override
+        public void run() {
+            ByteBuffer trace = (ByteBuffer)document.getProperty(PROP_TRACE);
+            boolean mapped = (trace != null ? trace.limit() : document.getLength()) >= MAP_THRESHOLD;
+            LexerTraceAnalyzer analyzer = new LexerTraceAnalyzer(document, mapped);
+            try {
+                if (trace != null) {
+                    for (int offset = 0; offset < trace.limit(); ) {
+                        offset = loadTrace(trace, offset, offset + CHUNK_SIZE, analyzer);
+                        if (offset < trace.limit() && !publish(analyzer.createAnalysis(false))) {
+                            return;
+                        }
+                    }
+                } else {
+                    LexerInterpreterData interpreterData = (LexerInterpreterData)document.getProperty(PROP_LEXER_INTERP_DATA);
+                    if (interpreterData != null && !loadTokens(interpreterData, analyzer)) {
+                        return;
+                    }
+                }
 
-    private TupleIntInt[] getCharacterData(Map<Integer, Integer> map) {
-        List<TupleIntInt> result = new ArrayList<>();
-        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
-            result.add(new TupleIntInt(entry.getKey(), entry.getValue()));
+                publish(analyzer.createAnalysis(true));
+            } finally {
+                analyzer.finish();
+            }
         }
 
-        return result.toArray(new TupleIntInt[result.size()]);
-    }
+        /**
+         * Publishes the results of the analysis so far.
+         *
+         * @return {@code false} if the document was reloaded and the analysis
+         * should stop, otherwise {@code true}.
+         */
+        private boolean publish(LexerTraceAnalysis analysis) {
+            if (document.getProperty(PROP_ANALYSIS_TASK) != this) {
+                return false;
+            }
 
-    private void loadTokens(final Document document, LexerInterpreterData interpreterData, LexerTraceAnalyzer analyzer) {
-        try {
-            TracingCharStream charStream = new TracingCharStream(analyzer, document.getText(0, document.getLength()));
-            TracingLexer lexer = new TracingLexer(interpreterData, analyzer, charStream);
-            ATN atn = new ATNDeserializer().deserialize(interpreterData.serializedAtn.toCharArray());
-            TracingLexerATNSimulator atnSimulator = new TracingLexerATNSimulator(analyzer, lexer, atn);
-            lexer.setInterpreter(atnSimulator);
-            CommonTokenStream commonTokenStream = new CommonTokenStream(lexer);
-            commonTokenStream.fill();
-        } catch (BadLocationException ex) {
-            Exceptions.printStackTrace(ex);
+            document.putProperty(PROP_TOKENS, analysis);
+            return true;
         }
-    }
 
-    private void loadTokens(final Document document, InputStream reader, LexerTraceAnalyzer analyzer) {
-        loadTrace(document, reader, analyzer);
+        private boolean loadTokens(LexerInterpreterData interpreterData, LexerTraceAnalyzer analyzer) {
+            try {
+                TracingCharStream charStream = new TracingCharStream(analyzer, document.getText(0, document.getLength()));
+                TracingLexer lexer = new TracingLexer(interpreterData, analyzer, charStream);
+                ATN atn = new ATNDeserializer().deserialize(interpreterData.serializedAtn.toCharArray());
+                TracingLexerATNSimulator atnSimulator = new TracingLexerATNSimulator(analyzer, lexer, atn);
+                lexer.setInterpreter(atnSimulator);
+                int nextPublish = CHUNK_SIZE;
+                while (lexer.nextToken().getType() != Token.EOF) {
+                    if (charStream.index() >= nextPublish) {
+                        if (!publish(analyzer.createAnalysis(false))) {
+                            return false;
+                        }
+
+                        nextPublish = charStream.index() + CHUNK_SIZE;
+                    }
+                }
+            } catch (BadLocationException ex) {
+                Exceptions.printStackTrace(ex);
+            }
+
+            return true;
+        }
     }
 
+    /**
+     * Collects the tokens and per-character transition counts of a lexer trace.
+     * Each call to {@link #createAnalysis} creates a {@link LexerTraceAnalysis}
+     * for the part of the trace seen so far. The tables are shared with the
+     * instances created earlier, which only read the records which were
+     * appended before they were created.
+     * <p>
+     * Only the counts for the characters which may still be read by the lexer
+     * are held in memory. A match never reads the input before its start
+     * index, so the counts for the characters before it are moved to the
+     * statistics tables when the next match begins.
+     */
     private static class LexerTraceAnalyzer extends AbstractLexerTraceListener {
-        public final List<TraceToken> tokens = new ArrayList<>();
-        public final Map<Integer, Integer> atnCharacters = new TreeMap<>();
-        public final Map<Integer, Integer> dfaCharacters = new TreeMap<>();
+        private static final int INITIAL_WINDOW_SIZE = 64;
 
         private final Document document;
-        private final boolean calculateTokens;
-        private final boolean calculateAtnCharacters;
-        private final boolean calculateDfaCharacters;
+
+        private final TraceTable tokens;
+        private final TraceTable overlappingTokens;
+        private final int[] tokenRecord = new int[LexerTraceAnalysis.TOKEN_FIELD_COUNT];
+        private final int[] overlappingTokenRecord = new int[1];
+        private int maxStopIndex = -1;
+        /** The stop index of the last token which was not an overlapping token. */
+        private int previousStopIndex = -1;
+
+        /**
+         * The number of computed transitions on the characters starting at
+         * {@link #finishedOffset}, indexed by offset modulo the length of the
+         * window, which is a power of two.
+         */
+        private int[] atnWindow = new int[INITIAL_WINDOW_SIZE];
+        /** The number of cached DFA transitions, stored like {@link #atnWindow}. */
+        private int[] dfaWindow = new int[INITIAL_WINDOW_SIZE];
+        /**
+         * The offset before which the counts were moved to the statistics
+         * tables.
+         */
+        private int finishedOffset;
+        /** The offset following the last character with a count in the window. */
+        private int windowEnd;
+        private final TraceTable atnStatistics;
+        private final TraceTable dfaStatistics;
+        private final int[] statisticsRecord = new int[CharacterStatistics.FIELD_COUNT];
 
         private int mode;
         private int inputIndex;
 
-        public LexerTraceAnalyzer(Document document, boolean calculateTokens, boolean calculateAtnCharacters, boolean calculateDfaCharacters) {
+        public LexerTraceAnalyzer(Document document, boolean mapped) {
             this.document = document;
-            this.calculateTokens = calculateTokens;
-            this.calculateAtnCharacters = calculateAtnCharacters;
-            this.calculateDfaCharacters = calculateDfaCharacters;
+            this.tokens = TraceTable.create(LexerTraceAnalysis.TOKEN_FIELD_COUNT, mapped);
+            this.overlappingTokens = TraceTable.create(1, mapped);
+            this.atnStatistics = TraceTable.create(CharacterStatistics.FIELD_COUNT, mapped);
+            this.dfaStatistics = TraceTable.create(CharacterStatistics.FIELD_COUNT, mapped);
+        }
+
+        public LexerTraceAnalysis createAnalysis(boolean complete) {
+            if (complete) {
+                finishCharacters(windowEnd);
+            }
+
+            return new LexerTraceAnalysis(document,
+                tokens, tokens.size(),
+                overlappingTokens, overlappingTokens.size(),
+                new CharacterStatistics(atnStatistics, atnStatistics.size()),
+                new CharacterStatistics(dfaStatistics, dfaStatistics.size()),
+                complete);
+        }
+
+        /**
+         * Indicates that the analysis is complete or was abandoned.
+         */
+        public void finish() {
+            tokens.finish();
+            overlappingTokens.finish();
+            atnStatistics.finish();
+            dfaStatistics.finish();
         }
 
         @Override
         public void beginMatch(int mode, int index) {
             this.mode = mode;
+            finishCharacters(index);
         }
 
         @Override
@@ -285,141 +533,214 @@ public abstract class AbstractGrammarDebuggerEditorKit extends NbEditorKit {
 
         @Override
         public void transition(boolean computed) {
-            if (computed && !calculateAtnCharacters) {
-                return;
-            } else if (!computed && !calculateDfaCharacters) {
+            if (inputIndex < finishedOffset) {
                 return;
             }
 
-            Map<Integer, Integer> map = computed ? atnCharacters : dfaCharacters;
-            Integer previous = map.put(inputIndex, 1);
-            if (previous != null) {
-                map.put(inputIndex, previous + 1);
+            if (inputIndex - finishedOffset >= atnWindow.length) {
+                growWindow(inputIndex - finishedOffset + 1);
             }
+
+            int slot = inputIndex & (atnWindow.length - 1);
+            if (computed) {
+                atnWindow[slot]++;
+            } else {
+                dfaWindow[slot]++;
+            }
+
+            windowEnd = Math.max(windowEnd, inputIndex + 1);
         }
 
         @Override
         public void emit(int startIndex, int stopIndex, int type, int channel) {
-            if (!calculateTokens) {
+            if (stopIndex < startIndex || startIndex <= previousStopIndex) {
+                overlappingTokenRecord[0] = tokens.size();
+                overlappingTokens.append(overlappingTokenRecord);
+            } else {
+                previousStopIndex = stopIndex;
+            }
+
+            maxStopIndex = Math.max(maxStopIndex, stopIndex);
+            tokenRecord[LexerTraceAnalysis.TOKEN_START] = startIndex;
+            tokenRecord[LexerTraceAnalysis.TOKEN_STOP] = stopIndex;
+            tokenRecord[LexerTraceAnalysis.TOKEN_TYPE] = type;
+            tokenRecord[LexerTraceAnalysis.TOKEN_CHANNEL] = channel;
+            tokenRecord[LexerTraceAnalysis.TOKEN_MODE] = mode;
+            tokenRecord[LexerTraceAnalysis.TOKEN_MAX_STOP] = maxStopIndex;
+            tokens.append(tokenRecord);
+        }
+
+        private void growWindow(int minimumLength) {
+            int length = atnWindow.length;
+            while (length < minimumLength) {
+                length *= 2;
+            }
+
+            int[] atn = new int[length];
+            int[] dfa = new int[length];
+            for (int i = finishedOffset; i < windowEnd; i++) {
+                atn[i & (length - 1)] = atnWindow[i & (atnWindow.length - 1)];
+                dfa[i & (length - 1)] = dfaWindow[i & (dfaWindow.length - 1)];
+            }
+
+            atnWindow = atn;
+            dfaWindow = dfa;
+        }
+
+        /**
+         * Moves the counts for the characters before {@code offset} from the
+         * window to the statistics tables.
+         */
+        private void finishCharacters(int offset) {
+            int end = Math.min(offset, windowEnd);
+            for (int i = finishedOffset; i < end; i++) {
+                int slot = i & (atnWindow.length - 1);
+                addStatistics(atnStatistics, i, atnWindow[slot]);
+                addStatistics(dfaStatistics, i, dfaWindow[slot]);
+                atnWindow[slot] = 0;
+                dfaWindow[slot] = 0;
+            }
+
+            finishedOffset = Math.max(finishedOffset, offset);
+            windowEnd = Math.max(windowEnd, finishedOffset);
+        }
+
+        private void addStatistics(TraceTable statistics, int offset, int count) {
+            if (count == 0) {
                 return;
             }
 
-            tokens.add(new TraceToken(document, startIndex, stopIndex, tokens.size(), type, channel, mode));
+            statisticsRecord[CharacterStatistics.OFFSET] = offset;
+            statisticsRecord[CharacterStatistics.COUNT] = count;
+            statistics.append(statisticsRecord);
         }
     }
 
     public void processTrace(Document document, LexerTraceListener listener) {
-        byte[] trace = (byte[])document.getProperty(PROP_TRACE);
+        ByteBuffer trace = (ByteBuffer)document.getProperty(PROP_TRACE);
         if (trace != null) {
-            loadTrace(document, new ByteArrayInputStream(trace), listener);
+            loadTrace(trace, 0, trace.limit(), listener);
         }
     }
 
-    private void loadTrace(Document document, InputStream reader, LexerTraceListener listener) {
-        try {
-            while (true) {
-                int opcodeValue = reader.read();
-                if (opcodeValue == -1) {
-                    break;
-                }
+    private static final LexerOpCode[] OPCODES = LexerOpCode.values();
 
-                LexerOpCode opcode = LexerOpCode.values()[opcodeValue];
-                switch (opcode) {
-                case BeginMatch:
-                {
-                    assert opcode.getArgumentSize() == 5;
-                    int mode = reader.read();
-                    int index = readInteger(reader);
-                    listener.beginMatch(mode, index);
-                    break;
-                }
+    /**
+     * Passes the operations of a lexer trace to {@code listener}, starting with
+     * the operation at {@code offset} and ending with the first operation
+     * which ends at or after {@code limit}.
+     *
+     * @return The offset of the next operation in the trace, or the length of
+     * the trace if it has been read completely.
+     */
+    private static int loadTrace(ByteBuffer trace, int offset, int limit, LexerTraceListener listener) {
+        int length = trace.limit();
+        while (offset < length && offset < limit) {
+            LexerOpCode opcode = OPCODES[trace.get(offset) & 0xFF];
+            offset++;
+            if (offset + opcode.getArgumentSize() > length) {
+                // the trace was truncated
+                return length;
+            }
 
-                case EndMatch:
-                    assert opcode.getArgumentSize() == 0;
-                    listener.endMatch();
-                    break;
-
-                case Transition:
-                    assert opcode.getArgumentSize() == 1;
-                    boolean computed = reader.read() != 0;
-                    listener.transition(computed);
-                    break;
-
-                case AcceptState:
-                {
-                    assert opcode.getArgumentSize() == 4;
-                    int tokenType = readInteger(reader);
-                    listener.acceptState(tokenType);
-                    break;
-                }
+            switch (opcode) {
+            case BeginMatch:
+            {
+                assert opcode.getArgumentSize() == 5;
+                int mode = trace.get(offset) & 0xFF;
+                int index = readInteger(trace, offset + 1);
+                listener.beginMatch(mode, index);
+                break;
+            }
 
-                case Predict:
-                {
-                    assert opcode.getArgumentSize() == 4;
-                    int tokenType = readInteger(reader);
-                    listener.predict(tokenType);
-                    break;
-                }
+            case EndMatch:
+                assert opcode.getArgumentSize() == 0;
+                listener.endMatch();
+                break;
 
-                case Seek:
-                {
-                    assert opcode.getArgumentSize() == 4;
-                    int index = readInteger(reader);
-                    listener.seek(index);
-                    break;
-                }
+            case Transition:
+                assert opcode.getArgumentSize() == 1;
+                boolean computed = trace.get(offset) != 0;
+                listener.transition(computed);
+                break;
 
-                case Consume:
-                {
-                    assert opcode.getArgumentSize() == 8;
-                    int symbol = readInteger(reader);
-                    int index = readInteger(reader);
-                    listener.consume(symbol, index);
-                    break;
-                }
+            case AcceptState:
+            {
+                assert opcode.getArgumentSize() == 4;
+                int tokenType = readInteger(trace, offset);
+                listener.acceptState(tokenType);
+                break;
+            }
 
-                case Lookahead1:
-                    assert opcode.getArgumentSize() == 0;
-                    listener.lookahead(1);
-                    break;
-
-                case PushMode:
-                {
-                    assert opcode.getArgumentSize() == 1;
-                    int mode = reader.read();
-                    listener.pushMode(mode);
-                    break;
-                }
+            case Predict:
+            {
+                assert opcode.getArgumentSize() == 4;
+                int tokenType = readInteger(trace, offset);
+                listener.predict(tokenType);
+                break;
+            }
 
-                case PopMode:
-                    assert opcode.getArgumentSize() == 0;
-                    listener.popMode();
-                    break;
-
-                case Emit:
-                {
-                    assert opcode.getArgumentSize() == 16;
-                    int startIndex = readInteger(reader);
-                    int stopIndex = readInteger(reader);
-                    int type = readInteger(reader);
-                    int channel = readInteger(reader);
-                    listener.emit(startIndex, stopIndex, type, channel);
-                    break;
-                }
+            case Seek:
+            {
+                assert opcode.getArgumentSize() == 4;
+                int index = readInteger(trace, offset);
+                listener.seek(index);
+                break;
+            }
 
-                default:
-                    throw new UnsupportedOperationException("Invalid debugger opcode.");
-                }
+            case Consume:
+            {
+                assert opcode.getArgumentSize() == 8;
+                int symbol = readInteger(trace, offset);
+                int index = readInteger(trace, offset + 4);
+                listener.consume(symbol, index);
+                break;
+            }
+
+            case Lookahead1:
+                assert opcode.getArgumentSize() == 0;
+                listener.lookahead(1);
+                break;
+
+            case PushMode:
+            {
+                assert opcode.getArgumentSize() == 1;
+                int mode = trace.get(offset) & 0xFF;
+                listener.pushMode(mode);
+                break;
+            }
+
+            case PopMode:
+                assert opcode.getArgumentSize() == 0;
+                listener.popMode();
+                break;
+
+            case Emit:
+            {
+                assert opcode.getArgumentSize() == 16;
+                int startIndex = readInteger(trace, offset);
+                int stopIndex = readInteger(trace, offset + 4);
+                int type = readInteger(trace, offset + 8);
+                int channel = readInteger(trace, offset + 12);
+                listener.emit(startIndex, stopIndex, type, channel);
+                break;
+            }
+
+            default:
+                throw new UnsupportedOperationException("Invalid debugger opcode.");
             }
-        } catch (IOException ex) {
+
+            offset += opcode.getArgumentSize();
         }
+
+        return offset;
     }
 
-    private static int readInteger(InputStream reader) throws IOException {
-        int value = reader.read();
-        value |= reader.read() << 8;
-        value |= reader.read() << 16;
-        value |= reader.read() << 24;
+    private static int readInteger(ByteBuffer data, int offset) {
+        int value = (data.get(offset++) & 0xFF);
+        value |= (data.get(offset++) & 0xFF) << 8;
+        value |= (data.get(offset++) & 0xFF) << 16;
+        value |= (data.get(offset++) & 0xFF) << 24;
         return value;
     }
 }
@@ -11,6 +11,8 @@ package org.antlr.works.editor.grammar.debugger;
 
 import java.util.List;
 import org.antlr.v4.runtime.Vocabulary;
+import org.antlr.v4.runtime.atn.ATN;
+import org.antlr.v4.runtime.atn.ATNDeserializer;
 
 /**
  *
@@ -24,4 +26,35 @@ public class AbstractInterpreterData {
     public List<String> ruleNames;
     public int startRuleIndex;
 
+    private volatile ATN atn;
+
+    /**
+     * Gets the ATN described by {@link #serializedAtn}. It is deserialized by
+     * the first call, and shared by every interpreter created from this data
+     * (and its copies) along with its DFA.
+     */
+    public ATN getATN() {
+        ATN result = atn;
+        if (result == null) {
+            synchronized (this) {
+                result = atn;
+                if (result == null) {
+                    result = new ATNDeserializer().deserialize(serializedAtn.toCharArray());
+                    atn = result;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    protected void copyFrom(AbstractInterpreterData other) {
+        this.grammarFileName = other.grammarFileName;
+        this.serializedAtn = other.serializedAtn;
+        this.vocabulary = other.vocabulary;
+        this.ruleNames = other.ruleNames;
+        this.startRuleIndex = other.startRuleIndex;
+        this.atn = other.getATN();
+    }
+
 }
@@ -0,0 +1,163 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+
+package org.antlr.works.editor.grammar.debugger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * Decodes base64 text from a {@link Reader} as it is read, so the decoded
+ * data never needs to be held in memory all at once. Whitespace between the
+ * encoded characters is ignored.
+ *
+ * @author Sam Harwell
+ */
+final class Base64InputStream extends InputStream {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int PADDING = -2;
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            DECODE[ALPHABET.charAt(i)] = i;
+        }
+
+        DECODE['='] = PADDING;
+    }
+
+    @NonNull
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int bufferLength;
+    private int bufferIndex;
+
+    /** The decoded bytes of the current group of four characters. */
+    private final byte[] decoded = new byte[3];
+    private int decodedLength;
+    private int decodedIndex;
+    private boolean finished;
+
+    public Base64InputStream(@NonNull Reader reader) {
+        Parameters.notNull("reader", reader);
+        this.reader = reader;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (decodedIndex == decodedLength && !decodeGroup()) {
+            return -1;
+        }
+
+        return decoded[decodedIndex++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        int count = 0;
+        while (count < len) {
+            if (decodedIndex == decodedLength && !decodeGroup()) {
+                break;
+            }
+
+            int available = Math.min(decodedLength - decodedIndex, len - count);
+            System.arraycopy(decoded, decodedIndex, b, off + count, available);
+            decodedIndex += available;
+            count += available;
+        }
+
+        return count == 0 && len > 0 ? -1 : count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Decodes the next group of four characters.
+     *
+     * @return {@code true} if bytes were decoded, or {@code false} at the end
+     * of the input.
+     */
+    private boolean decodeGroup() throws IOException {
+        if (finished) {
+            return false;
+        }
+
+        int value = 0;
+        int padding = 0;
+        for (int i = 0; i < 4; i++) {
+            int c = nextSignificantChar();
+            if (c < 0) {
+                if (i == 0) {
+                    finished = true;
+                    return false;
+                }
+
+                throw new IOException("The base64 data ended in the middle of a group.");
+            }
+
+            int digit = c < DECODE.length ? DECODE[c] : -1;
+            if (digit == -1) {
+                throw new IOException(String.format("Invalid base64 character '%c'.", (char)c));
+            } else if (digit == PADDING) {
+                if (i < 2) {
+                    throw new IOException("Unexpected base64 padding.");
+                }
+
+                padding++;
+                digit = 0;
+            } else if (padding > 0) {
+                throw new IOException("Unexpected base64 data after padding.");
+            }
+
+            value = (value << 6) | digit;
+        }
+
+        decoded[0] = (byte)(value >> 16);
+        decoded[1] = (byte)(value >> 8);
+        decoded[2] = (byte)value;
+        decodedLength = 3 - padding;
+        decodedIndex = 0;
+        if (padding > 0) {
+            finished = true;
+        }
+
+        return decodedLength > 0;
+    }
+
+    private int nextSignificantChar() throws IOException {
+        while (true) {
+            if (bufferIndex == bufferLength) {
+                bufferLength = reader.read(buffer, 0, buffer.length);
+                bufferIndex = 0;
+                if (bufferLength < 0) {
+                    bufferLength = 0;
+                    return -1;
+                }
+            }
+
+            char c = buffer[bufferIndex++];
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.debugger;
+
+/**
+ * Per-character counts collected from a lexer trace. Only characters with a
+ * non-zero count are stored, as a {@link TraceTable} of offsets and counts
+ * which is sorted by offset.
+ * <p>
+ * While a trace is analyzed, the table is shared by the statistics published
+ * for successive chunks. Each instance only reads the first {@link #size()}
+ * records, which are not modified once they are written.
+ *
+ * @author Sam Harwell
+ */
+public final class CharacterStatistics {
+    static final int OFFSET = 0;
+    static final int COUNT = 1;
+    static final int FIELD_COUNT = 2;
+
+    public static final CharacterStatistics EMPTY = new CharacterStatistics(TraceTable.EMPTY, 0);
+
+    private final TraceTable table;
+    private final int size;
+
+    CharacterStatistics(TraceTable table, int size) {
+        this.table = table;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getOffset(int index) {
+        checkIndex(index);
+        return table.getInt(index, OFFSET);
+    }
+
+    public int getCount(int index) {
+        checkIndex(index);
+        return table.getInt(index, COUNT);
+    }
+
+    /**
+     * Gets the index of the first entry whose offset is greater than or equal
+     * to {@code offset}, or {@link #size()} if there is no such entry.
+     */
+    public int findIndex(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (table.getInt(mid, OFFSET) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+}
@@ -60,6 +60,8 @@ public class FileParseResult {
     public final long[] maxLookaheadSll;
     public final long[] minLookaheadLl;
     public final long[] maxLookaheadLl;
+    public final long[] sllPredictionTime;
+    public final long[] llPredictionTime;
 
     private final List<? extends SyntaxError> syntaxErrors;
 
@@ -118,6 +120,8 @@ public class FileParseResult {
                 maxLookaheadSll = ((StatisticsParserATNSimulator)interpreter).maxLookaheadSll;
                 minLookaheadLl = ((StatisticsParserATNSimulator)interpreter).minLookaheadLl;
                 maxLookaheadLl = ((StatisticsParserATNSimulator)interpreter).maxLookaheadLl;
+                sllPredictionTime = ((StatisticsParserATNSimulator)interpreter).sllPredictionTime;
+                llPredictionTime = ((StatisticsParserATNSimulator)interpreter).llPredictionTime;
             } else {
                 decisionInvocations = new long[0];
                 fullContextFallback = new long[0];
@@ -132,6 +136,8 @@ public class FileParseResult {
                 maxLookaheadSll = new long[0];
                 minLookaheadLl = new long[0];
                 maxLookaheadLl = new long[0];
+                sllPredictionTime = new long[0];
+                llPredictionTime = new long[0];
             }
 
             int dfaSize = 0;
@@ -158,6 +164,8 @@ public class FileParseResult {
             maxLookaheadSll = new long[0];
             minLookaheadLl = new long[0];
             maxLookaheadLl = new long[0];
+            sllPredictionTime = new long[0];
+            llPredictionTime = new long[0];
         }
     }
 
@@ -22,6 +22,8 @@ import org.antlr.netbeans.util.NotificationIcons;
 import org.antlr.works.editor.grammar.GrammarEditorKit;
 import org.antlr.works.editor.grammar.actions.RunInTestRigAction;
 import org.antlr.works.editor.grammar.codemodel.FileModel;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
 import org.netbeans.modules.editor.NbEditorUtilities;
 import org.openide.DialogDisplayer;
 import org.openide.WizardDescriptor;
@@ -38,6 +40,7 @@ import org.openide.loaders.DataObject;
 import org.openide.loaders.DataObjectNotFoundException;
 import org.openide.util.Exceptions;
 import org.openide.util.NbBundle.Messages;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -52,6 +55,8 @@ import org.openide.util.NbBundle.Messages;
 @Messages("CTL_InterpretCurrentParserAction=Interpret Parser...")
 public class InterpretCurrentParserAction implements ActionListener {
 
+    private static final RequestProcessor INTERPRETER_RP = new RequestProcessor("ANTLR Parser Interpreter");
+
     private final EditorCookie context;
 
     public InterpretCurrentParserAction(EditorCookie context) {
@@ -81,7 +86,7 @@ public class InterpretCurrentParserAction implements ActionListener {
         wizard.setTitle("{0} ({1})");
         wizard.setTitle("Parser Interpreter");
 
-        DocumentSnapshot snapshot = VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
+        final DocumentSnapshot snapshot = VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
         FileModel fileModel = RunInTestRigAction.getFileModel(snapshot);
         List<String> availableRules = RunInTestRigAction.getAvailableRules(fileModel);
         if (fileModel != null) {
@@ -93,13 +98,7 @@ public class InterpretCurrentParserAction implements ActionListener {
             return;
         }
 
-        ParserInterpreterData parserInterpreterData = ParserInterpreterData.buildFromSnapshot(snapshot);
-        if (parserInterpreterData == null) {
-            displayError("An error occurred while constructing a lexer or parser ATN from the grammar.");
-            return;
-        }
-
-        File inputFile = new File(ParserDebuggerWizardOptions.getInputFile(wizard));
+        final File inputFile = new File(ParserDebuggerWizardOptions.getInputFile(wizard));
         if (!inputFile.isFile()) {
             return;
         }
@@ -109,13 +108,39 @@ public class InterpretCurrentParserAction implements ActionListener {
             return;
         }
 
-        String startRule = ParserDebuggerWizardOptions.getStartRule(wizard);
+        final String startRule = ParserDebuggerWizardOptions.getStartRule(wizard);
+        final boolean twoStagePrediction = ParserDebuggerWizardOptions.isTwoStagePrediction(wizard);
+
+        // the interpreter data may wait for the grammar to compile, which must not block the UI
+        INTERPRETER_RP.post(new Runnable() {
+            @Override
+            public void run() {
+                ProgressHandle progress = ProgressHandleFactory.createHandle("Preparing the parser interpreter");
+                progress.start();
+                try {
+                    openInterpreter(snapshot, inputFile, startRule, twoStagePrediction);
+                } finally {
+                    progress.finish();
+                }
+            }
+        });
+    }
+
+    private void openInterpreter(DocumentSnapshot snapshot, File inputFile, String startRule, boolean twoStagePrediction) {
+        ParserInterpreterData parserInterpreterData = ParserInterpreterData.getForSnapshot(snapshot);
+        if (parserInterpreterData == null) {
+            displayError("An error occurred while constructing a lexer or parser ATN from the grammar.");
+            return;
+        }
+
         parserInterpreterData.startRuleIndex = parserInterpreterData.ruleNames.indexOf(startRule);
         if (parserInterpreterData.startRuleIndex < 0) {
             displayError(String.format("Could not locate a rule named '%s'", startRule));
             return;
         }
 
+        parserInterpreterData.twoStagePrediction = twoStagePrediction;
+
         try {
             FileSystem fileSystem = FileUtil.createMemoryFileSystem();
             FileObject tempFileObject = FileUtil.copyFile(FileUtil.toFileObject(inputFile), fileSystem.getRoot(), inputFile.getName(), "pinterp");
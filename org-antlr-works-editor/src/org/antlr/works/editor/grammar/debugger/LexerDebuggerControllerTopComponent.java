@@ -22,6 +22,7 @@ import javax.swing.AbstractListModel;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.SwingUtilities;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.plaf.TextUI;
@@ -37,6 +38,7 @@ import org.antlr.v4.runtime.VocabularyImpl;
 import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.api.editor.EditorRegistry;
 import org.netbeans.api.settings.ConvertAsProperties;
+import org.netbeans.lib.editor.util.swing.DocumentUtilities;
 import org.netbeans.modules.editor.NbEditorUtilities;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
@@ -105,13 +107,14 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                     }
 
                     JTextComponent editor = EditorRegistry.lastFocusedComponent();
-                    TraceToken[] tokens = getEditorTokens(editor);
+                    LexerTraceAnalysis analysis = getEditorAnalysis(editor);
                     if (editor == null || !(editor.getDocument() instanceof StyledDocument)) {
                         return;
                     }
 
                     StyledDocument document = (StyledDocument)editor.getDocument();
-                    for (TraceToken token : tokens) {
+                    for (int i = 0; i < analysis.getTokenCount(); i++) {
+                        TraceToken token = analysis.getToken(i);
                         if (selectedChannels.contains(token.getChannel())) {
                             int index = token.getStartIndex();
                             if (index >= 0 && index <= document.getLength()) {
@@ -147,15 +150,16 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                 }
 
                 JTextComponent editor = EditorRegistry.lastFocusedComponent();
-                TraceToken[] tokens = getEditorTokens(editor);
+                LexerTraceAnalysis analysis = getEditorAnalysis(editor);
                 List<TraceToken> selectedTokens = new ArrayList<>();
-                for (TraceToken token : tokens) {
+                for (int i = 0; i < analysis.getTokenCount(); i++) {
+                    TraceToken token = analysis.getToken(i);
                     if (selectedChannels.contains(token.getChannel())) {
                         selectedTokens.add(token);
                     }
                 }
 
-                if (tokens.length > 0) {
+                if (analysis.getTokenCount() > 0) {
                     editor.getDocument().putProperty(LexerDebuggerEditorKit.PROP_SELECTED_TOKENS, selectedTokens);
                 }
             }
@@ -178,8 +182,9 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                     }
 
                     StyledDocument document = (StyledDocument)editor.getDocument();
-                    TraceToken[] tokens = getEditorTokens(editor);
-                    for (TraceToken token : tokens) {
+                    LexerTraceAnalysis analysis = getEditorAnalysis(editor);
+                    for (int i = 0; i < analysis.getTokenCount(); i++) {
+                        TraceToken token = analysis.getToken(i);
                         if (token.getType() < 0) {
                             continue;
                         }
@@ -207,9 +212,10 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                 }
 
                 JTextComponent editor = EditorRegistry.lastFocusedComponent();
-                TraceToken[] tokens = getEditorTokens(editor);
+                LexerTraceAnalysis analysis = getEditorAnalysis(editor);
                 List<TraceToken> selectedTokens = new ArrayList<>();
-                for (TraceToken token : tokens) {
+                for (int i = 0; i < analysis.getTokenCount(); i++) {
+                    TraceToken token = analysis.getToken(i);
                     if (token.getType() < 0) {
                         continue;
                     }
@@ -219,7 +225,7 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                     }
                 }
 
-                if (tokens.length > 0) {
+                if (analysis.getTokenCount() > 0) {
                     editor.getDocument().putProperty(LexerDebuggerEditorKit.PROP_SELECTED_TOKENS, selectedTokens);
                 }
             }
@@ -264,8 +270,8 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                 }
 
                 JTextComponent editor = EditorRegistry.lastFocusedComponent();
-                TraceToken[] tokens = getEditorTokens(editor);
-                if (tokens.length > 0) {
+                LexerTraceAnalysis analysis = getEditorAnalysis(editor);
+                if (analysis.getTokenCount() > 0) {
                     editor.getDocument().putProperty(LexerDebuggerEditorKit.PROP_SELECTED_TOKENS, selectedTokens);
                 }
             }
@@ -280,13 +286,14 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                     int[] selectedModes = list.getSelectedIndices();
 
                     JTextComponent editor = EditorRegistry.lastFocusedComponent();
-                    TraceToken[] tokens = getEditorTokens(editor);
+                    LexerTraceAnalysis analysis = getEditorAnalysis(editor);
                     if (editor == null || !(editor.getDocument() instanceof StyledDocument)) {
                         return;
                     }
 
                     StyledDocument document = (StyledDocument)editor.getDocument();
-                    for (TraceToken token : tokens) {
+                    for (int i = 0; i < analysis.getTokenCount(); i++) {
+                        TraceToken token = analysis.getToken(i);
                         if (Arrays.binarySearch(selectedModes, token.getMode()) >= 0) {
                             int index = token.getStartIndex();
                             if (index >= 0 && index <= document.getLength()) {
@@ -307,15 +314,16 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                 int[] selectedModes = list.getSelectedIndices();
 
                 JTextComponent editor = EditorRegistry.lastFocusedComponent();
-                TraceToken[] tokens = getEditorTokens(editor);
+                LexerTraceAnalysis analysis = getEditorAnalysis(editor);
                 List<TraceToken> selectedTokens = new ArrayList<>();
-                for (TraceToken token : tokens) {
+                for (int i = 0; i < analysis.getTokenCount(); i++) {
+                    TraceToken token = analysis.getToken(i);
                     if (Arrays.binarySearch(selectedModes, token.getMode()) >= 0) {
                         selectedTokens.add(token);
                     }
                 }
 
-                if (tokens.length > 0) {
+                if (analysis.getTokenCount() > 0) {
                     editor.getDocument().putProperty(LexerDebuggerEditorKit.PROP_SELECTED_TOKENS, selectedTokens);
                 }
             }
@@ -324,36 +332,43 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
         lstLookahead.addListSelectionListener(new ListSelectionListener() {
             @Override
             public void valueChanged(ListSelectionEvent e) {
-                JList<?> list = (JList<?>)e.getSource();
-                JTextComponent editor = EditorRegistry.lastFocusedComponent();
-
-                boolean showAtnTmp = false;
-                boolean showDfaTmp = false;
-                for (Object value : list.getSelectedValuesList()) {
-                    if ("ATN".equals(value)) {
-                        showAtnTmp = true;
-                    } else if ("DFA".equals(value)) {
-                        showDfaTmp = true;
-                    }
-                }
+                updateSelectedCharacters();
+            }
+        });
+    }
 
-                final boolean showAtn = showAtnTmp;
-                final boolean showDfa = showDfaTmp;
-
-                TupleIntInt[] highlightedCharacters;
-                if (showAtn) {
-                    TupleIntInt[] atnCharacters = getEditorAtnCharacters(editor);
-                    highlightedCharacters = atnCharacters;
-                } else if (showDfa) {
-                    TupleIntInt[] dfaCharacters = getEditorDfaCharacters(editor);
-                    highlightedCharacters = dfaCharacters;
-                } else {
-                    highlightedCharacters = new TupleIntInt[0];
-                }
+    /**
+     * Highlights the characters for the transitions selected in
+     * {@link #lstLookahead}.
+     */
+    private void updateSelectedCharacters() {
+        JTextComponent editor = EditorRegistry.lastFocusedComponent();
+        if (editor == null) {
+            return;
+        }
 
-                editor.getDocument().putProperty(LexerDebuggerEditorKit.PROP_SELECTED_CHARACTERS, highlightedCharacters);
+        boolean showAtn = false;
+        boolean showDfa = false;
+        for (Object value : lstLookahead.getSelectedValuesList()) {
+            if ("ATN".equals(value)) {
+                showAtn = true;
+            } else if ("DFA".equals(value)) {
+                showDfa = true;
             }
-        });
+        }
+
+        CharacterStatistics highlightedCharacters;
+        if (showAtn) {
+            CharacterStatistics atnCharacters = getEditorAtnCharacters(editor);
+            highlightedCharacters = atnCharacters;
+        } else if (showDfa) {
+            CharacterStatistics dfaCharacters = getEditorDfaCharacters(editor);
+            highlightedCharacters = dfaCharacters;
+        } else {
+            highlightedCharacters = CharacterStatistics.EMPTY;
+        }
+
+        editor.getDocument().putProperty(LexerDebuggerEditorKit.PROP_SELECTED_CHARACTERS, highlightedCharacters);
     }
 
     /**
@@ -594,6 +609,7 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
 
     private class EditorRegistryListener implements PropertyChangeListener {
         private JTextComponent currentComponent;
+        private TraceTokenListModel tokenListModel;
 
         @Override
         public void propertyChange(PropertyChangeEvent evt) {
@@ -695,20 +711,12 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
                     }
                 });
 
-                lstTokens.setModel(new AbstractListModel<TraceToken>() {
-                    private final TraceToken[] elements = getFocusedEditorTokens();
-
-                    @Override
-                    public int getSize() {
-                        return elements.length;
-                    }
+                if (tokenListModel != null) {
+                    tokenListModel.dispose();
+                }
 
-                    @Override
-                    public TraceToken getElementAt(int index) {
-                        return elements[index];
-                    }
-
-                });
+                tokenListModel = new TraceTokenListModel(component);
+                lstTokens.setModel(tokenListModel);
 
                 List<String> tokenNames = new ArrayList<>();
                 for (int i = Token.EOF; i < 1024; i++) {
@@ -766,62 +774,89 @@ public final class LexerDebuggerControllerTopComponent extends TopComponent {
         }
     }
 
-    private static TraceToken[] getFocusedEditorTokens() {
-        JTextComponent component = EditorRegistry.lastFocusedComponent();
-        if (component == null) {
-            return new TraceToken[0];
-        }
-
-        return getEditorTokens(component);
-    }
-
-    private static TraceToken[] getEditorTokens(@NonNull JTextComponent component) {
+    @NonNull
+    private static LexerTraceAnalysis getEditorAnalysis(@NonNull JTextComponent component) {
         TextUI ui = component.getUI();
         if (ui == null) {
-            return new TraceToken[0];
+            return LexerTraceAnalysis.EMPTY;
         }
 
         EditorKit kit = ui.getEditorKit(component);
         if (!(kit instanceof LexerDebuggerEditorKit)) {
-            return new TraceToken[0];
+            return LexerTraceAnalysis.EMPTY;
         }
 
         Document document = component.getDocument();
         if (document == null) {
-            return new TraceToken[0];
+            return LexerTraceAnalysis.EMPTY;
         }
 
-        return ((LexerDebuggerEditorKit)kit).getTokens(document);
+        return ((LexerDebuggerEditorKit)kit).getAnalysis(document);
     }
 
-    private static TupleIntInt[] getEditorAtnCharacters(@NonNull JTextComponent component) {
+    private static CharacterStatistics getEditorAtnCharacters(@NonNull JTextComponent component) {
         return getEditorTransitions(component, true);
     }
 
-    private static TupleIntInt[] getEditorDfaCharacters(@NonNull JTextComponent component) {
+    private static CharacterStatistics getEditorDfaCharacters(@NonNull JTextComponent component) {
         return getEditorTransitions(component, false);
     }
 
-    private static TupleIntInt[] getEditorTransitions(@NonNull JTextComponent component, boolean atn) {
-        TextUI ui = component.getUI();
-        if (ui == null) {
-            return new TupleIntInt[0];
+    private static CharacterStatistics getEditorTransitions(@NonNull JTextComponent component, boolean atn) {
+        LexerTraceAnalysis analysis = getEditorAnalysis(component);
+        return atn ? analysis.getAtnTransitions() : analysis.getDfaTransitions();
+    }
+
+    /**
+     * Lists the tokens of an editor. While the lexer trace is analyzed, the
+     * tokens are added to the list as the results for each part of the trace
+     * are published.
+     */
+    private class TraceTokenListModel extends AbstractListModel<TraceToken> implements PropertyChangeListener {
+        private final Document document;
+        private LexerTraceAnalysis analysis;
+
+        public TraceTokenListModel(@NonNull JTextComponent component) {
+            this.document = component.getDocument();
+            DocumentUtilities.addPropertyChangeListener(document, this);
+            this.analysis = getEditorAnalysis(component);
         }
 
-        EditorKit kit = ui.getEditorKit(component);
-        if (!(kit instanceof LexerDebuggerEditorKit)) {
-            return new TupleIntInt[0];
+        public void dispose() {
+            DocumentUtilities.removePropertyChangeListener(document, this);
         }
 
-        Document document = component.getDocument();
-        if (document == null) {
-            return new TupleIntInt[0];
+        @Override
+        public int getSize() {
+            return analysis.getTokenCount();
         }
 
-        if (atn) {
-            return ((LexerDebuggerEditorKit)kit).getAtnTransitions(document);
-        } else {
-            return ((LexerDebuggerEditorKit)kit).getDfaTransitions(document);
+        @Override
+        public TraceToken getElementAt(int index) {
+            return analysis.getToken(index);
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (!LexerDebuggerEditorKit.PROP_TOKENS.equals(evt.getPropertyName()) || evt.getNewValue() == null) {
+                return;
+            }
+
+            final LexerTraceAnalysis updated = (LexerTraceAnalysis)evt.getNewValue();
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    int previousSize = analysis.getTokenCount();
+                    analysis = updated;
+                    if (updated.getTokenCount() > previousSize) {
+                        fireIntervalAdded(TraceTokenListModel.this, previousSize, updated.getTokenCount() - 1);
+                    }
+
+                    if (!lstLookahead.isSelectionEmpty() && EditorRegistry.lastFocusedComponent() != null && EditorRegistry.lastFocusedComponent().getDocument() == document) {
+                        updateSelectedCharacters();
+                    }
+                }
+            });
         }
     }
 
@@ -18,10 +18,11 @@ import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import org.netbeans.api.editor.mimelookup.MimeRegistration;
 import org.netbeans.lib.editor.util.swing.DocumentUtilities;
-import org.netbeans.spi.editor.highlighting.HighlightsContainer;
 import org.netbeans.spi.editor.highlighting.HighlightsLayer;
 import org.netbeans.spi.editor.highlighting.HighlightsLayerFactory;
+import org.netbeans.spi.editor.highlighting.HighlightsSequence;
 import org.netbeans.spi.editor.highlighting.ZOrder;
+import org.netbeans.spi.editor.highlighting.support.AbstractHighlightsContainer;
 import org.netbeans.spi.editor.highlighting.support.OffsetsBag;
 
 /**
@@ -45,12 +46,16 @@ public class LexerDebuggerSelectedTokenHighlighterLayerFactory implements Highli
 
     @Override
     public HighlightsLayer[] createLayers(Context context) {
-        HighlightsContainer container = createSelectedTokensContainer(context.getComponent());
-        return new HighlightsLayer[] { HighlightsLayer.create(getClass().getName(), ZOrder.SYNTAX_RACK, true, container) };
+        OffsetsBag container = new OffsetsBag(context.getComponent().getDocument());
+        SelectedCharactersContainer charactersContainer = new SelectedCharactersContainer();
+        addSelectionListener(context.getComponent(), container, charactersContainer);
+        return new HighlightsLayer[] {
+            HighlightsLayer.create(getClass().getName(), ZOrder.SYNTAX_RACK, true, container),
+            HighlightsLayer.create(getClass().getName() + ".characters", ZOrder.SYNTAX_RACK, true, charactersContainer),
+        };
     }
 
-    private HighlightsContainer createSelectedTokensContainer(JTextComponent component) {
-        final OffsetsBag container = new OffsetsBag(component.getDocument());
+    private void addSelectionListener(JTextComponent component, final OffsetsBag container, final SelectedCharactersContainer charactersContainer) {
 
         DocumentUtilities.addPropertyChangeListener(component.getDocument(), new PropertyChangeListener() {
 
@@ -59,6 +64,7 @@ public class LexerDebuggerSelectedTokenHighlighterLayerFactory implements Highli
                 switch (evt.getPropertyName()) {
                 case LexerDebuggerEditorKit.PROP_SELECTED_TOKENS:
                     container.clear();
+                    charactersContainer.setCharacters(CharacterStatistics.EMPTY);
                     List<?> tokens = (List<?>)evt.getNewValue();
                     for (Object obj : tokens) {
                         if (obj instanceof TraceToken) {
@@ -70,12 +76,8 @@ public class LexerDebuggerSelectedTokenHighlighterLayerFactory implements Highli
 
                 case LexerDebuggerEditorKit.PROP_SELECTED_CHARACTERS:
                     container.clear();
-                    TupleIntInt[] characters = (TupleIntInt[])evt.getNewValue();
-                    if (characters != null) {
-                        for (TupleIntInt character : characters) {
-                            container.addHighlight(character.getItem1(), character.getItem1() + 1, getSelectedTokenAttributes(character.getItem2() - 1));
-                        }
-                    }
+                    CharacterStatistics characters = (CharacterStatistics)evt.getNewValue();
+                    charactersContainer.setCharacters(characters != null ? characters : CharacterStatistics.EMPTY);
                     break;
 
                 default:
@@ -83,8 +85,6 @@ public class LexerDebuggerSelectedTokenHighlighterLayerFactory implements Highli
                 }
             }
         });
-
-        return container;
     }
 
     private static AttributeSet getSelectedTokenAttributes(int mode) {
@@ -95,6 +95,57 @@ public class LexerDebuggerSelectedTokenHighlighterLayerFactory implements Highli
         return SelectedTokenAttributes[SelectedTokenAttributes.length - 1];
     }
 
+    /**
+     * Highlights the characters of a {@link CharacterStatistics} instance,
+     * shaded by count. Only the entries within the requested range are visited.
+     */
+    private static final class SelectedCharactersContainer extends AbstractHighlightsContainer {
+        private volatile CharacterStatistics characters = CharacterStatistics.EMPTY;
+
+        public void setCharacters(CharacterStatistics characters) {
+            if (this.characters == characters) {
+                return;
+            }
+
+            this.characters = characters;
+            fireHighlightsChange(0, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public HighlightsSequence getHighlights(int startOffset, int endOffset) {
+            final CharacterStatistics current = characters;
+            final int first = current.findIndex(startOffset);
+            final int last = current.findIndex(endOffset);
+            return new HighlightsSequence() {
+                private int index = first - 1;
+
+                @Override
+                public boolean moveNext() {
+                    if (index < last) {
+                        index++;
+                    }
+
+                    return index < last;
+                }
+
+                @Override
+                public int getStartOffset() {
+                    return current.getOffset(index);
+                }
+
+                @Override
+                public int getEndOffset() {
+                    return current.getOffset(index) + 1;
+                }
+
+                @Override
+                public AttributeSet getAttributes() {
+                    return getSelectedTokenAttributes(current.getCount(index) - 1);
+                }
+            };
+        }
+    }
+
     private static AttributeSet createSelectedTokenAttributeSet(int mode) {
         MutableAttributeSet attributes = new SimpleAttributeSet();
         attributes.addAttribute(StyleConstants.Background, LexerDebuggerTokenHighlighterLayerFactory.getColorForMode(mode, 0.15));
@@ -9,9 +9,13 @@
 package org.antlr.works.editor.grammar.debugger;
 
 import java.awt.Color;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.Document;
 import javax.swing.text.EditorKit;
@@ -20,10 +24,13 @@ import javax.swing.text.MutableAttributeSet;
 import javax.swing.text.SimpleAttributeSet;
 import org.netbeans.api.editor.mimelookup.MimeRegistration;
 import org.netbeans.api.editor.settings.EditorStyleConstants;
+import org.netbeans.lib.editor.util.swing.DocumentUtilities;
 import org.netbeans.spi.editor.highlighting.HighlightsContainer;
 import org.netbeans.spi.editor.highlighting.HighlightsLayer;
 import org.netbeans.spi.editor.highlighting.HighlightsLayerFactory;
+import org.netbeans.spi.editor.highlighting.HighlightsSequence;
 import org.netbeans.spi.editor.highlighting.ZOrder;
+import org.netbeans.spi.editor.highlighting.support.AbstractHighlightsContainer;
 import org.netbeans.spi.editor.highlighting.support.OffsetsBag;
 
 /**
@@ -183,20 +190,7 @@ public class LexerDebuggerTokenHighlighterLayerFactory implements HighlightsLaye
             return new OffsetsBag(document);
         }
 
-        LexerDebuggerEditorKit dbgkit = (LexerDebuggerEditorKit)kit;
-        TraceToken[] tokens = dbgkit.getTokens(component.getDocument());
-        if (tokens == null || tokens.length == 0) {
-            return new OffsetsBag(document);
-        }
-
-        OffsetsBag highlights = new OffsetsBag(document);
-        for (TraceToken token : tokens) {
-            int start = token.getStartIndex();
-            int stop = token.getStopIndex();
-            addHighlights(highlights, start, stop, token.getMode());
-        }
-
-        return highlights;
+        return new TraceTokenHighlightsContainer(document, (LexerDebuggerEditorKit)kit);
 //        try {
 //            if (INTERNAL_PARSE) {
 //                GrammarLexer lexer = new GrammarLexer(new DocumentCharStreamV4((StyledDocument)document));
@@ -238,6 +232,217 @@ public class LexerDebuggerTokenHighlighterLayerFactory implements HighlightsLaye
         }
     }
 
+    /**
+     * Outlines the tokens of a lexer trace. The trace is analyzed in the
+     * background, and the highlights are updated each time the results for
+     * another part of the trace are published. A request for highlights only
+     * visits the tokens within the requested range, along with the tokens
+     * which overlap an earlier token.
+     * <p>
+     * When one of the overlapping tokens falls in the requested range, the
+     * highlights of the range are combined in an {@link OffsetsBag} in the
+     * order the tokens were emitted, so later tokens are drawn over earlier
+     * ones as they were when every token was added to a single bag.
+     */
+    private static final class TraceTokenHighlightsContainer extends AbstractHighlightsContainer implements PropertyChangeListener {
+        private final Document document;
+        private final LexerDebuggerEditorKit kit;
+        private volatile LexerTraceAnalysis analysis;
+
+        public TraceTokenHighlightsContainer(Document document, LexerDebuggerEditorKit kit) {
+            this.document = document;
+            this.kit = kit;
+            DocumentUtilities.addPropertyChangeListener(document, this);
+            this.analysis = kit.getAnalysis(document);
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            switch (evt.getPropertyName()) {
+            case LexerDebuggerEditorKit.PROP_TOKENS:
+                LexerTraceAnalysis updated = (LexerTraceAnalysis)evt.getNewValue();
+                analysis = updated != null ? updated : LexerTraceAnalysis.EMPTY;
+                fireHighlightsChange(0, Integer.MAX_VALUE);
+                break;
+
+            case LexerDebuggerEditorKit.PROP_LEXER_INTERP_DATA:
+                // the interpreter data is set after the document is opened
+                analysis = kit.getAnalysis(document);
+                break;
+
+            default:
+                break;
+            }
+        }
+
+        @Override
+        public HighlightsSequence getHighlights(int startOffset, int endOffset) {
+            LexerTraceAnalysis current = analysis;
+            int firstToken = current.findFirstToken(startOffset);
+            List<TraceToken> overlapping = getOverlappingTokens(current, firstToken, startOffset, endOffset);
+            if (overlapping.isEmpty()) {
+                return new TokenSequence(current, firstToken, startOffset, endOffset);
+            }
+
+            // merge the two lists in the order the tokens were emitted
+            OffsetsBag highlights = new OffsetsBag(document);
+            int overlappingIndex = 0;
+            int nextOverlapping = current.findOverlappingToken(firstToken);
+            for (int i = firstToken; i < current.getTokenCount(); i++) {
+                if (nextOverlapping < current.getOverlappingTokenCount() && current.getOverlappingTokenIndex(nextOverlapping) == i) {
+                    nextOverlapping++;
+                    continue;
+                }
+
+                TraceToken token = current.getToken(i);
+                if (token.getStartIndex() >= endOffset) {
+                    break;
+                }
+
+                while (overlappingIndex < overlapping.size() && overlapping.get(overlappingIndex).getTokenIndex() < i) {
+                    addHighlights(highlights, overlapping.get(overlappingIndex++));
+                }
+
+                addHighlights(highlights, token);
+            }
+
+            while (overlappingIndex < overlapping.size()) {
+                addHighlights(highlights, overlapping.get(overlappingIndex++));
+            }
+
+            return highlights.getHighlights(startOffset, endOffset);
+        }
+
+        /**
+         * Gets the overlapping tokens starting at {@code firstToken} which
+         * have text in the range from {@code startOffset} to
+         * {@code endOffset}.
+         */
+        private static List<TraceToken> getOverlappingTokens(LexerTraceAnalysis analysis, int firstToken, int startOffset, int endOffset) {
+            List<TraceToken> result = new ArrayList<>();
+            for (int i = analysis.findOverlappingToken(firstToken); i < analysis.getOverlappingTokenCount(); i++) {
+                TraceToken token = analysis.getToken(analysis.getOverlappingTokenIndex(i));
+                if (token.getStopIndex() >= token.getStartIndex() && token.getStopIndex() >= startOffset && token.getStartIndex() < endOffset) {
+                    result.add(token);
+                }
+            }
+
+            return result;
+        }
+
+        private static void addHighlights(OffsetsBag highlights, TraceToken token) {
+            LexerDebuggerTokenHighlighterLayerFactory.addHighlights(highlights, token.getStartIndex(), token.getStopIndex(), token.getMode());
+        }
+
+        /**
+         * Outlines the tokens in a range which does not contain any
+         * overlapping tokens.
+         */
+        private static final class TokenSequence implements HighlightsSequence {
+            private final LexerTraceAnalysis analysis;
+            private final int startOffset;
+            private final int endOffset;
+            private int tokenIndex;
+            private int nextOverlapping;
+            private int part = -1;
+            private int start;
+            private int end;
+            private AttributeSet attributes;
+
+            public TokenSequence(LexerTraceAnalysis analysis, int firstToken, int startOffset, int endOffset) {
+                this.analysis = analysis;
+                this.tokenIndex = firstToken;
+                this.startOffset = startOffset;
+                this.endOffset = endOffset;
+                this.nextOverlapping = analysis.findOverlappingToken(firstToken);
+            }
+
+            @Override
+            public boolean moveNext() {
+                while (tokenIndex < analysis.getTokenCount()) {
+                    if (nextOverlapping < analysis.getOverlappingTokenCount() && analysis.getOverlappingTokenIndex(nextOverlapping) == tokenIndex) {
+                        // none of the overlapping tokens have text in the range
+                        nextOverlapping++;
+                        tokenIndex++;
+                        continue;
+                    }
+
+                    TraceToken token = analysis.getToken(tokenIndex);
+                    if (token.getStartIndex() >= endOffset) {
+                        break;
+                    }
+
+                    if (token.getStopIndex() >= startOffset && moveNextPart(token)) {
+                        return true;
+                    }
+
+                    tokenIndex++;
+                    part = -1;
+                }
+
+                return false;
+            }
+
+            private boolean moveNextPart(TraceToken token) {
+                int tokenStart = token.getStartIndex();
+                int tokenStop = token.getStopIndex();
+                int mode = token.getMode();
+                if (tokenStop == tokenStart) {
+                    if (part >= FULL) {
+                        return false;
+                    }
+
+                    set(FULL, tokenStart, tokenStop + 1, mode);
+                    return true;
+                }
+
+                switch (part) {
+                case -1:
+                    set(START, tokenStart, tokenStart + 1, mode);
+                    return true;
+
+                case START:
+                    if (tokenStop > tokenStart + 1) {
+                        set(MIDDLE, tokenStart + 1, tokenStop, mode);
+                        return true;
+                    }
+
+                    set(STOP, tokenStop, tokenStop + 1, mode);
+                    return true;
+
+                case MIDDLE:
+                    set(STOP, tokenStop, tokenStop + 1, mode);
+                    return true;
+
+                default:
+                    return false;
+                }
+            }
+
+            private void set(int part, int start, int end, int mode) {
+                this.part = part;
+                this.start = start;
+                this.end = end;
+                this.attributes = getTokenOutlineAttributes(part, mode);
+            }
+
+            @Override
+            public int getStartOffset() {
+                return start;
+            }
+
+            @Override
+            public int getEndOffset() {
+                return end;
+            }
+
+            @Override
+            public AttributeSet getAttributes() {
+                return attributes;
+            }
+        }
+    }
+
     private static HighlightsContainer loadHighlights(Document document, InputStream reader) {
         OffsetsBag highlights = new OffsetsBag(document);
 
@@ -83,6 +83,14 @@ public class LexerInterpreterData extends AbstractInterpreterData {
             return null;
         }
 
+        return buildFromGrammar(lexerGrammar);
+    }
+
+    /**
+     * Builds the interpreter data for a lexer grammar which was already
+     * processed by the tool.
+     */
+    public static LexerInterpreterData buildFromGrammar(LexerGrammar lexerGrammar) {
         LexerInterpreterData data = new LexerInterpreterData();
         data.grammarFileName = lexerGrammar.fileName;
         data.serializedAtn = ATNSerializer.getSerializedAsString(lexerGrammar.atn, Arrays.asList(lexerGrammar.getRuleNames()));
@@ -0,0 +1,174 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.debugger;
+
+import javax.swing.text.Document;
+import org.netbeans.api.annotations.common.NonNull;
+
+/**
+ * The tokens and per-character transition counts of a lexer trace, or of the
+ * part of the trace which has been analyzed so far. While a trace is analyzed,
+ * {@link AbstractGrammarDebuggerEditorKit} publishes a new instance after each
+ * chunk, so the results for the start of the input are available before the
+ * rest of the trace is read. Instances are immutable.
+ * <p>
+ * The tokens are stored as records in a {@link TraceTable}, and a
+ * {@link TraceToken} is only created when a token is requested, so the views
+ * seek to the tokens they display rather than holding every token.
+ * <p>
+ * Tokens are usually emitted in order, with each token starting after the end
+ * of the previous one. The tokens which are empty or start before the end of
+ * an earlier token are listed separately as <em>overlapping</em> tokens, so
+ * {@link #findFirstToken} can locate the tokens for a range of the input
+ * without visiting the tokens before it.
+ *
+ * @author Sam Harwell
+ */
+public final class LexerTraceAnalysis {
+    static final int TOKEN_START = 0;
+    static final int TOKEN_STOP = 1;
+    static final int TOKEN_TYPE = 2;
+    static final int TOKEN_CHANNEL = 3;
+    static final int TOKEN_MODE = 4;
+    /**
+     * The largest stop index of the tokens up to and including each token.
+     * Unlike the stop indexes themselves, these never decrease, so they can be
+     * searched for the first token which reaches an offset.
+     */
+    static final int TOKEN_MAX_STOP = 5;
+    static final int TOKEN_FIELD_COUNT = 6;
+
+    /**
+     * The analysis of a document which does not have a lexer trace.
+     */
+    public static final LexerTraceAnalysis EMPTY =
+        new LexerTraceAnalysis(null, TraceTable.EMPTY, 0, TraceTable.EMPTY, 0, CharacterStatistics.EMPTY, CharacterStatistics.EMPTY, true);
+
+    private final Document document;
+    private final TraceTable tokens;
+    private final int tokenCount;
+    /**
+     * The token indexes of the overlapping tokens, in a table with one field.
+     */
+    private final TraceTable overlappingTokens;
+    private final int overlappingTokenCount;
+    @NonNull
+    private final CharacterStatistics atnTransitions;
+    @NonNull
+    private final CharacterStatistics dfaTransitions;
+    private final boolean complete;
+
+    LexerTraceAnalysis(Document document, TraceTable tokens, int tokenCount, TraceTable overlappingTokens, int overlappingTokenCount, @NonNull CharacterStatistics atnTransitions, @NonNull CharacterStatistics dfaTransitions, boolean complete) {
+        this.document = document;
+        this.tokens = tokens;
+        this.tokenCount = tokenCount;
+        this.overlappingTokens = overlappingTokens;
+        this.overlappingTokenCount = overlappingTokenCount;
+        this.atnTransitions = atnTransitions;
+        this.dfaTransitions = dfaTransitions;
+        this.complete = complete;
+    }
+
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    @NonNull
+    public TraceToken getToken(int index) {
+        if (index < 0 || index >= tokenCount) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return new TraceToken(document,
+            tokens.getInt(index, TOKEN_START),
+            tokens.getInt(index, TOKEN_STOP),
+            index,
+            tokens.getInt(index, TOKEN_TYPE),
+            tokens.getInt(index, TOKEN_CHANNEL),
+            tokens.getInt(index, TOKEN_MODE));
+    }
+
+    /**
+     * Gets the index of the first token which may end at or after
+     * {@code offset}. Every token before it ends before {@code offset}.
+     */
+    public int findFirstToken(int offset) {
+        int low = 0;
+        int high = tokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens.getInt(mid, TOKEN_MAX_STOP) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    public int getOverlappingTokenCount() {
+        return overlappingTokenCount;
+    }
+
+    /**
+     * Gets the token index of an overlapping token. The overlapping tokens are
+     * ordered by token index.
+     */
+    public int getOverlappingTokenIndex(int index) {
+        if (index < 0 || index >= overlappingTokenCount) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        return overlappingTokens.getInt(index, 0);
+    }
+
+    /**
+     * Gets the position of the first overlapping token whose token index is
+     * greater than or equal to {@code tokenIndex}, or
+     * {@link #getOverlappingTokenCount()} if there is no such token.
+     */
+    public int findOverlappingToken(int tokenIndex) {
+        int low = 0;
+        int high = overlappingTokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (overlappingTokens.getInt(mid, 0) < tokenIndex) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the number of computed ATN transitions on each character.
+     */
+    @NonNull
+    public CharacterStatistics getAtnTransitions() {
+        return atnTransitions;
+    }
+
+    /**
+     * Gets the number of cached DFA transitions on each character.
+     */
+    @NonNull
+    public CharacterStatistics getDfaTransitions() {
+        return dfaTransitions;
+    }
+
+    /**
+     * Determines whether the whole trace has been analyzed.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+}
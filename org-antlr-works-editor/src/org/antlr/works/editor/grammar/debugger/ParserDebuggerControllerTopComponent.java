@@ -22,7 +22,6 @@ import org.antlr.netbeans.parsing.spi.ParserDataOptions;
 import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.atn.ATN;
-import org.antlr.v4.runtime.atn.ATNDeserializer;
 import org.antlr.v4.runtime.tree.ErrorNode;
 import org.antlr.v4.runtime.tree.ParseTreeListener;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
@@ -408,7 +407,7 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
                     return;
                 }
 
-                ATN atn = new ATNDeserializer().deserialize(parserInterpreterData.serializedAtn.toCharArray());
+                ATN atn = parserInterpreterData.getATN();
 
                 ParserTaskManager taskManager = Lookup.getDefault().lookup(ParserTaskManager.class);
                 DocumentSnapshot snapshot = VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
@@ -499,7 +498,7 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
                     for (int i = 0; i < fileParseResult.decisionInvocations.length; i++) {
                         int ruleIndex = atn.decisionToState.get(i).ruleIndex;
                         String ruleName = parserInterpreterData.ruleNames.get(ruleIndex);
-                        decisionStatistics.add(new DecisionStatistic(i, ruleName, fileParseResult.decisionInvocations[i]));
+                        decisionStatistics.add(new DecisionStatistic(i, ruleName, fileParseResult.decisionInvocations[i], fileParseResult.sllPredictionTime[i], fileParseResult.llPredictionTime[i]));
                     }
                 }
 
@@ -512,7 +511,7 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
 
                     @Override
                     public int getColumnCount() {
-                        return 3;
+                        return 5;
                     }
 
                     @Override
@@ -524,6 +523,10 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
                             return "Rule";
                         case 2:
                             return "Count";
+                        case 3:
+                            return "SLL Time (ns)";
+                        case 4:
+                            return "LL Time (ns)";
                         default:
                             throw new IllegalArgumentException("column");
                         }
@@ -537,6 +540,8 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
                         case 1:
                             return String.class;
                         case 2:
+                        case 3:
+                        case 4:
                             return Long.class;
                         default:
                             throw new IllegalArgumentException("columnIndex");
@@ -552,6 +557,10 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
                             return decisionStatistics.get(rowIndex).getRuleName();
                         case 2:
                             return decisionStatistics.get(rowIndex).getCount();
+                        case 3:
+                            return decisionStatistics.get(rowIndex).getSllPredictionTime();
+                        case 4:
+                            return decisionStatistics.get(rowIndex).getLlPredictionTime();
                         default:
                             throw new IllegalArgumentException("columnIndex");
                         }
@@ -881,11 +890,15 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
         private final int decision;
         private final String ruleName;
         private final long count;
+        private final long sllPredictionTime;
+        private final long llPredictionTime;
 
-        public DecisionStatistic(int decision, String ruleName, long count) {
+        public DecisionStatistic(int decision, String ruleName, long count, long sllPredictionTime, long llPredictionTime) {
             this.decision = decision;
             this.ruleName = ruleName;
             this.count = count;
+            this.sllPredictionTime = sllPredictionTime;
+            this.llPredictionTime = llPredictionTime;
         }
 
         public int getDecision() {
@@ -899,6 +912,14 @@ public final class ParserDebuggerControllerTopComponent extends TopComponent {
         public long getCount() {
             return count;
         }
+
+        public long getSllPredictionTime() {
+            return sllPredictionTime;
+        }
+
+        public long getLlPredictionTime() {
+            return llPredictionTime;
+        }
     }
 
     private static class LookaheadStatistic {
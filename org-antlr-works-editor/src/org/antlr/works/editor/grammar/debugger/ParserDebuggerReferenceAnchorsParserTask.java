@@ -35,12 +35,11 @@ import org.antlr.netbeans.parsing.spi.ParserTaskDefinition;
 import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.netbeans.parsing.spi.ParserTaskProvider;
 import org.antlr.netbeans.parsing.spi.ParserTaskScheduler;
-import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.ParserInterpreter;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.TokenSource;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.Vocabulary;
 import org.antlr.v4.runtime.atn.ATN;
@@ -49,8 +48,9 @@ import org.antlr.v4.runtime.atn.ATNState;
 import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.atn.RuleTransition;
 import org.antlr.v4.runtime.atn.Transition;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.works.editor.antlr4.classification.TaggerTokenSource;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenStream;
 import org.antlr.works.editor.antlr4.parsing.DescriptiveErrorListener;
 import org.antlr.works.editor.antlr4.parsing.SyntaxErrorListener;
 import org.netbeans.api.editor.mimelookup.MimeRegistration;
@@ -85,8 +85,7 @@ public final class ParserDebuggerReferenceAnchorsParserTask implements ParserTas
             if (fileParseResultData == null || parseTreeResult == null) {
                 Future<ParserData<Tagger<TokenTag<Token>>>> futureTokensData = taskManager.getData(snapshot, ParserDebuggerParserDataDefinitions.LEXER_TOKENS);
                 Tagger<TokenTag<Token>> tagger = futureTokensData.get().getData();
-                TaggerTokenSource tokenSource = new TaggerTokenSource(tagger, snapshot);
-                InterruptableTokenStream tokenStream = new InterruptableTokenStream(tokenSource);
+                InterruptableTokenStream tokenStream = new InterruptableTokenStream(tagger, snapshot);
                 ParserRuleContext parseResult;
 
                 ParserInterpreterData parserInterpreterData = (ParserInterpreterData)snapshot.getVersionedDocument().getDocument().getProperty(ParserDebuggerEditorKit.PROP_PARSER_INTERP_DATA);
@@ -98,17 +97,21 @@ public final class ParserDebuggerReferenceAnchorsParserTask implements ParserTas
 
                 long startTime = System.nanoTime();
                 parser.setInterpreter(new StatisticsParserATNSimulator(parser, atn));
-                parser.getInterpreter().optimize_ll1 = false;
-                parser.getInterpreter().reportAmbiguities = true;
-                parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
                 parser.removeErrorListeners();
                 parser.addErrorListener(DescriptiveErrorListener.INSTANCE);
                 parser.addErrorListener(new StatisticsParserErrorListener());
                 SyntaxErrorListener syntaxErrorListener = new SyntaxErrorListener(snapshot);
                 parser.addErrorListener(syntaxErrorListener);
                 parser.setBuildParseTree(true);
-                parser.setErrorHandler(new DefaultErrorStrategy());
-                parseResult = parser.parse(parserInterpreterData.startRuleIndex);
+                if (parserInterpreterData.twoStagePrediction) {
+                    parseResult = parseTwoStage(parser, parserInterpreterData.startRuleIndex);
+                } else {
+                    parser.getInterpreter().optimize_ll1 = false;
+                    parser.getInterpreter().reportAmbiguities = true;
+                    parser.getInterpreter().setPredictionMode(PredictionMode.LL_EXACT_AMBIG_DETECTION);
+                    parser.setErrorHandler(new DefaultErrorStrategy());
+                    parseResult = parser.parse(parserInterpreterData.startRuleIndex);
+                }
 
                 String sourceName = (String)document.getDocument().getProperty(Document.TitleProperty);
                 FileParseResult fileParseResult = new FileParseResult(sourceName, 0, parseResult, syntaxErrorListener.getSyntaxErrors(), tokenStream.size(), startTime, null, parser);
@@ -121,6 +124,27 @@ public final class ParserDebuggerReferenceAnchorsParserTask implements ParserTas
         }
     }
 
+    /**
+     * Parses the input the way a production parser would: first with SLL
+     * prediction and the {@link BailErrorStrategy}, then with full LL
+     * prediction and the {@link DefaultErrorStrategy} only if the first stage
+     * fails. The statistics gathered by the {@link StatisticsParserATNSimulator}
+     * cover both stages.
+     */
+    private static ParserRuleContext parseTwoStage(TracingParserInterpreter parser, int startRuleIndex) {
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.parse(startRuleIndex);
+        } catch (ParseCancellationException ex) {
+            parser.associatedTransitions.clear();
+            parser.reset();
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            return parser.parse(startRuleIndex);
+        }
+    }
+
     public static class TracingParserInterpreter extends ParserInterpreter {
         public final Map<ParseTree, Transition> associatedTransitions = new IdentityHashMap<>();
 
@@ -148,9 +172,9 @@ public final class ParserDebuggerReferenceAnchorsParserTask implements ParserTas
         }
     }
 
-    private static class InterruptableTokenStream extends CommonTokenStream {
-        public InterruptableTokenStream(TokenSource tokenSource) {
-            super(tokenSource);
+    private static class InterruptableTokenStream extends TaggerTokenStream {
+        public InterruptableTokenStream(Tagger<TokenTag<Token>> tagger, DocumentSnapshot snapshot) {
+            super(tagger, snapshot);
         }
 
         @Override
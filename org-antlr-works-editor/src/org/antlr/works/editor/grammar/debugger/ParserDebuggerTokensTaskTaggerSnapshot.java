@@ -16,7 +16,6 @@ import org.antlr.v4.runtime.LexerInterpreter;
 import org.antlr.v4.runtime.TokenSource;
 import org.antlr.v4.runtime.Vocabulary;
 import org.antlr.v4.runtime.atn.ATN;
-import org.antlr.v4.runtime.atn.ATNDeserializer;
 import org.antlr.works.editor.antlr4.classification.AbstractTokensTaskTaggerSnapshot;
 import org.antlr.works.editor.antlr4.classification.SimpleLexerState;
 import org.antlr.works.editor.antlr4.highlighting.TokenSourceWithStateV4;
@@ -47,7 +46,7 @@ class ParserDebuggerTokensTaskTaggerSnapshot extends AbstractTokensTaskTaggerSna
 
     @Override
     protected TokenSourceWithStateV4<SimpleLexerState> createLexer(CharStream input, SimpleLexerState startState) {
-        ATN atn = new ATNDeserializer().deserialize(lexerInterpreterData.serializedAtn.toCharArray());
+        ATN atn = lexerInterpreterData.getATN();
         Vocabulary vocabulary = lexerInterpreterData.vocabulary;
         String grammarFileName = lexerInterpreterData.grammarFileName;
         List<String> ruleNames = lexerInterpreterData.ruleNames;
@@ -59,7 +58,7 @@ class ParserDebuggerTokensTaskTaggerSnapshot extends AbstractTokensTaskTaggerSna
 
     @Override
     protected TokenSource getEffectiveTokenSource(TokenSourceWithStateV4<SimpleLexerState> lexer) {
-        ATN atn = new ATNDeserializer().deserialize(lexerInterpreterData.serializedAtn.toCharArray());
+        ATN atn = lexerInterpreterData.getATN();
         Vocabulary vocabulary = lexerInterpreterData.vocabulary;
         String grammarFileName = lexerInterpreterData.grammarFileName;
         List<String> ruleNames = lexerInterpreterData.ruleNames;
@@ -70,6 +70,7 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
             setAvailableRules(wizardPanel.getAvailableRules(), wizardPanel.getStartRule());
             setEncodingSpecified(wizardPanel.isEncodingSpecified());
             setEncoding(wizardPanel.getEncoding());
+            setTwoStagePrediction(wizardPanel.isTwoStagePrediction());
         }
 
         txtInputFile.getDocument().addDocumentListener(_documentListener);
@@ -124,6 +125,14 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
         txtEncoding.setText(value);
     }
 
+    public boolean isTwoStagePrediction() {
+        return chkTwoStagePrediction.isSelected();
+    }
+
+    public void setTwoStagePrediction(boolean value) {
+        chkTwoStagePrediction.setSelected(value);
+    }
+
     @Override
     public String getName() {
         return "Parser Interpreter Options";
@@ -154,6 +163,7 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
         chkEncoding = new javax.swing.JCheckBox();
         txtEncoding = new javax.swing.JTextField();
         btnDefaultEncoding = new javax.swing.JButton();
+        chkTwoStagePrediction = new javax.swing.JCheckBox();
 
         pnlInput.setBorder(javax.swing.BorderFactory.createTitledBorder(org.openide.util.NbBundle.getMessage(ParserDebuggerVisualPanel.class, "ParserDebuggerVisualPanel.pnlInput.border.title"))); // NOI18N
 
@@ -189,6 +199,9 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
             }
         });
 
+        org.openide.awt.Mnemonics.setLocalizedText(chkTwoStagePrediction, org.openide.util.NbBundle.getMessage(ParserDebuggerVisualPanel.class, "ParserDebuggerVisualPanel.chkTwoStagePrediction.text")); // NOI18N
+        chkTwoStagePrediction.setToolTipText(org.openide.util.NbBundle.getMessage(ParserDebuggerVisualPanel.class, "ParserDebuggerVisualPanel.chkTwoStagePrediction.toolTipText")); // NOI18N
+
         javax.swing.GroupLayout pnlInputLayout = new javax.swing.GroupLayout(pnlInput);
         pnlInput.setLayout(pnlInputLayout);
         pnlInputLayout.setHorizontalGroup(
@@ -208,6 +221,10 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
                 .addGroup(pnlInputLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
                     .addComponent(btnBrowseInput, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                     .addComponent(btnDefaultEncoding, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)))
+            .addGroup(pnlInputLayout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(chkTwoStagePrediction)
+                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
         pnlInputLayout.setVerticalGroup(
             pnlInputLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
@@ -225,6 +242,8 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
                     .addComponent(chkEncoding)
                     .addComponent(txtEncoding, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(btnDefaultEncoding))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(chkTwoStagePrediction)
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -277,6 +296,7 @@ public final class ParserDebuggerVisualPanel extends javax.swing.JPanel {
     private javax.swing.JButton btnBrowseInput;
     private javax.swing.JButton btnDefaultEncoding;
     private javax.swing.JCheckBox chkEncoding;
+    private javax.swing.JCheckBox chkTwoStagePrediction;
     private javax.swing.JComboBox<String> cmbStartRule;
     private javax.swing.JTextField txtEncoding;
     private javax.swing.JTextField txtInputFile;
@@ -61,6 +61,10 @@ public abstract class ParserDebuggerWizardOptions {
         return getProperty(wiz, ParserDebuggerWizardPanel.ENCODING, Charset.defaultCharset().name());
     }
 
+    public static boolean isTwoStagePrediction(WizardDescriptor wiz) {
+        return getBooleanProperty(wiz, ParserDebuggerWizardPanel.TWO_STAGE_PREDICTION, false);
+    }
+
     private ParserDebuggerWizardOptions() {
     }
 }
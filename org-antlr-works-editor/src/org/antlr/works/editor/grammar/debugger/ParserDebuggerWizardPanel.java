@@ -28,6 +28,7 @@ public class ParserDebuggerWizardPanel implements WizardDescriptor.Panel<WizardD
     public static final String START_RULE = "startRule";
     public static final String ENCODING_SPECIFIED = "encodingSpecified";
     public static final String ENCODING = "encoding";
+    public static final String TWO_STAGE_PREDICTION = "twoStagePrediction";
     public static final String AVAILABLE_RULES = "availableRules";
 
     private final ChangeSupport _changeSupport = new ChangeSupport(this);
@@ -38,6 +39,7 @@ public class ParserDebuggerWizardPanel implements WizardDescriptor.Panel<WizardD
     private String _startRule;
     private boolean _encodingSpecified;
     private String _encoding;
+    private boolean _twoStagePrediction;
 
     /**
      * The visual component that displays this panel. If you need to access the
@@ -117,6 +119,22 @@ public class ParserDebuggerWizardPanel implements WizardDescriptor.Panel<WizardD
         _encoding = value;
     }
 
+    public boolean isTwoStagePrediction() {
+        if (component != null) {
+            return component.isTwoStagePrediction();
+        }
+
+        return _twoStagePrediction;
+    }
+
+    public void setTwoStagePrediction(boolean value) {
+        if (component != null) {
+            component.setTwoStagePrediction(value);
+        }
+
+        _twoStagePrediction = value;
+    }
+
     // Get the visual component for the panel. In this template, the component
     // is kept separate. This can be more efficient: if the wizard is created
     // but never displayed, or not all panels are displayed, it is better to
@@ -193,6 +211,7 @@ public class ParserDebuggerWizardPanel implements WizardDescriptor.Panel<WizardD
         setStartRule(ParserDebuggerWizardOptions.getProperty(wiz, START_RULE, ""));
         setEncodingSpecified(ParserDebuggerWizardOptions.getBooleanProperty(wiz, ENCODING_SPECIFIED, false));
         setEncoding(ParserDebuggerWizardOptions.getProperty(wiz, ENCODING, Charset.defaultCharset().name()));
+        setTwoStagePrediction(ParserDebuggerWizardOptions.getBooleanProperty(wiz, TWO_STAGE_PREDICTION, false));
     }
 
     @Override
@@ -201,5 +220,6 @@ public class ParserDebuggerWizardPanel implements WizardDescriptor.Panel<WizardD
         ParserDebuggerWizardOptions.setProperty(wiz, START_RULE, getStartRule());
         ParserDebuggerWizardOptions.setBooleanProperty(wiz, ENCODING_SPECIFIED, isEncodingSpecified());
         ParserDebuggerWizardOptions.setProperty(wiz, ENCODING, getEncoding());
+        ParserDebuggerWizardOptions.setBooleanProperty(wiz, TWO_STAGE_PREDICTION, isTwoStagePrediction());
     }
 }
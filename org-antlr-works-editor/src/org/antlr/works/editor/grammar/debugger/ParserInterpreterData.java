@@ -12,17 +12,29 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import org.antlr.netbeans.editor.parsing.SyntaxError;
 import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.VersionedDocument;
+import org.antlr.netbeans.parsing.spi.ParserData;
+import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.v4.Tool;
 import org.antlr.v4.runtime.atn.ATNSerializer;
 import org.antlr.v4.tool.Grammar;
 import org.antlr.v4.tool.LexerGrammar;
 import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.antlr.works.editor.grammar.GrammarParserDataDefinitions;
+import org.antlr.works.editor.grammar.parser.CompiledFileModelV4;
+import org.antlr.works.editor.grammar.parser.CompiledModel;
 import org.antlr.works.editor.grammar.parser.CompiledModelParserV4.CustomErrorManager;
 import org.antlr.works.editor.grammar.parser.CompiledModelParserV4.CustomTool;
 import org.antlr.works.editor.grammar.parser.CompiledModelParserV4.ErrorListener;
+import org.antlr.works.editor.grammar.parser.CompiledModelV4;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Lookup;
 
 /**
  *
@@ -32,6 +44,108 @@ public class ParserInterpreterData extends AbstractInterpreterData {
 
     public LexerInterpreterData lexerInterpreterData;
 
+    /**
+     * {@code true} to profile the parser the way a production parser runs,
+     * with SLL prediction and a fallback to full LL prediction when the SLL
+     * parse fails; otherwise, {@code false} to parse with exact ambiguity
+     * detection.
+     */
+    public boolean twoStagePrediction;
+
+    /**
+     * Gets the interpreter data for a snapshot of a grammar, built from the
+     * grammar compiled by {@link org.antlr.works.editor.grammar.parser.CompiledModelParserV4}
+     * instead of processing the grammar again. The data is cached with the
+     * compiled grammar it was built from, so the ATN is only deserialized once
+     * for each version of the grammar.
+     *
+     * @return A copy of the cached data, so the caller is free to set the
+     * {@link #startRuleIndex}; or {@code null} if the grammar does not define
+     * a parser.
+     */
+    @CheckForNull
+    public static ParserInterpreterData getForSnapshot(@NonNull DocumentSnapshot snapshot) {
+        CompiledFileModelV4 compiledModel = getCompiledModel(snapshot);
+        if (compiledModel == null) {
+            return buildFromSnapshot(snapshot);
+        }
+
+        VersionedDocument document = snapshot.getVersionedDocument();
+        CachedData cachedData = (CachedData)document.getProperty(CachedData.class);
+        if (cachedData == null || cachedData.compiledModel != compiledModel) {
+            ParserInterpreterData data = buildFromCompiledModel(snapshot, compiledModel);
+            if (data == null) {
+                return buildFromSnapshot(snapshot);
+            }
+
+            cachedData = new CachedData(compiledModel, data);
+            document.putProperty(CachedData.class, cachedData);
+        }
+
+        return cachedData.data.copy();
+    }
+
+    @CheckForNull
+    private static CompiledFileModelV4 getCompiledModel(DocumentSnapshot snapshot) {
+        ParserTaskManager taskManager = Lookup.getDefault().lookup(ParserTaskManager.class);
+        Future<ParserData<CompiledModel>> futureData = taskManager.getData(snapshot, GrammarParserDataDefinitions.COMPILED_MODEL);
+        if (futureData == null) {
+            return null;
+        }
+
+        ParserData<CompiledModel> data;
+        try {
+            data = futureData.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            return null;
+        }
+
+        if (data == null || !(data.getData() instanceof CompiledModelV4)) {
+            return null;
+        }
+
+        return ((CompiledModelV4)data.getData()).getResult();
+    }
+
+    @CheckForNull
+    private static ParserInterpreterData buildFromCompiledModel(DocumentSnapshot snapshot, CompiledFileModelV4 compiledModel) {
+        Grammar grammar = compiledModel.getGrammar();
+        if (grammar == null || grammar instanceof LexerGrammar || grammar.atn == null) {
+            return null;
+        }
+
+        LexerInterpreterData lexerInterpreterData;
+        if (grammar.implicitLexer != null && grammar.implicitLexer.atn != null) {
+            lexerInterpreterData = LexerInterpreterData.buildFromGrammar(grammar.implicitLexer);
+        } else {
+            lexerInterpreterData = LexerInterpreterData.buildFromSnapshot(snapshot);
+        }
+
+        if (lexerInterpreterData == null) {
+            return null;
+        }
+
+        ParserInterpreterData data = new ParserInterpreterData();
+        data.lexerInterpreterData = lexerInterpreterData;
+        data.grammarFileName = grammar.fileName;
+        data.serializedAtn = ATNSerializer.getSerializedAsString(grammar.atn, Arrays.asList(grammar.getRuleNames()));
+        data.vocabulary = grammar.getVocabulary();
+        data.ruleNames = new ArrayList<>(grammar.rules.keySet());
+        return data;
+    }
+
+    /**
+     * Creates a copy of this data which shares its ATN.
+     */
+    @NonNull
+    public ParserInterpreterData copy() {
+        ParserInterpreterData copy = new ParserInterpreterData();
+        copy.copyFrom(this);
+        copy.lexerInterpreterData = lexerInterpreterData;
+        copy.twoStagePrediction = twoStagePrediction;
+        return copy;
+    }
+
     public static ParserInterpreterData buildFromSnapshot(DocumentSnapshot snapshot) {
         LexerInterpreterData lexerInterpreterData = LexerInterpreterData.buildFromSnapshot(snapshot);
         if (lexerInterpreterData == null) {
@@ -67,4 +181,14 @@ public class ParserInterpreterData extends AbstractInterpreterData {
 
         return data;
     }
+
+    private static final class CachedData {
+        private final CompiledFileModelV4 compiledModel;
+        private final ParserInterpreterData data;
+
+        public CachedData(CompiledFileModelV4 compiledModel, ParserInterpreterData data) {
+            this.compiledModel = compiledModel;
+            this.data = data;
+        }
+    }
 }
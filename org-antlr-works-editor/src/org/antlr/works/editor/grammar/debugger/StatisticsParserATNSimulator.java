@@ -16,6 +16,7 @@ import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.ATN;
 import org.antlr.v4.runtime.atn.ParserATNSimulator;
 import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.atn.SimulatorState;
 import org.antlr.v4.runtime.dfa.DFA;
 import org.antlr.v4.runtime.dfa.DFAState;
@@ -40,6 +41,17 @@ public class StatisticsParserATNSimulator extends ParserATNSimulator {
     public final long[] maxLookaheadSll;
     public final long[] minLookaheadLl;
     public final long[] maxLookaheadLl;
+    /**
+     * The time in nanoseconds spent in {@link #adaptivePredict} for each
+     * decision while the prediction mode was {@link PredictionMode#SLL}.
+     */
+    public final long[] sllPredictionTime;
+    /**
+     * The time in nanoseconds spent in {@link #adaptivePredict} for each
+     * decision while the prediction mode was {@link PredictionMode#LL} or
+     * {@link PredictionMode#LL_EXACT_AMBIG_DETECTION}.
+     */
+    public final long[] llPredictionTime;
 
     private int decision;
     private boolean reportedLookahead;
@@ -59,6 +71,8 @@ public class StatisticsParserATNSimulator extends ParserATNSimulator {
         maxLookaheadSll = new long[atn.decisionToState.size()];
         minLookaheadLl = new long[atn.decisionToState.size()];
         maxLookaheadLl = new long[atn.decisionToState.size()];
+        sllPredictionTime = new long[atn.decisionToState.size()];
+        llPredictionTime = new long[atn.decisionToState.size()];
         for (int i = 0; i < minLookaheadSll.length; i++) {
             minLookaheadSll[i] = Long.MAX_VALUE;
             minLookaheadLl[i] = Long.MAX_VALUE;
@@ -82,6 +96,8 @@ public class StatisticsParserATNSimulator extends ParserATNSimulator {
         maxLookaheadSll = new long[atn.decisionToState.size()];
         minLookaheadLl = new long[atn.decisionToState.size()];
         maxLookaheadLl = new long[atn.decisionToState.size()];
+        sllPredictionTime = new long[atn.decisionToState.size()];
+        llPredictionTime = new long[atn.decisionToState.size()];
         for (int i = 0; i < minLookaheadSll.length; i++) {
             minLookaheadSll[i] = Long.MAX_VALUE;
             minLookaheadLl[i] = Long.MAX_VALUE;
@@ -92,6 +108,7 @@ public class StatisticsParserATNSimulator extends ParserATNSimulator {
 
     @Override
     public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
+        long startTime = System.nanoTime();
         try {
             this.decision = decision;
             this.reportedLookahead = false;
@@ -99,6 +116,12 @@ public class StatisticsParserATNSimulator extends ParserATNSimulator {
             return super.adaptivePredict(input, decision, outerContext);
         } finally {
             this.decision = -1;
+            long elapsed = System.nanoTime() - startTime;
+            if (getPredictionMode() == PredictionMode.SLL) {
+                sllPredictionTime[decision] += elapsed;
+            } else {
+                llPredictionTime[decision] += elapsed;
+            }
         }
     }
 
@@ -0,0 +1,203 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.debugger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append-only table of fixed-size records of {@code int} fields, which
+ * holds one of the indexes created while a lexer trace is analyzed.
+ * <p>
+ * The table starts with a header holding {@link #MAGIC}, {@link #VERSION},
+ * and the number of fields in each record, followed by the records. The
+ * records are stored in pages, so appending a record never moves the records
+ * before it. Tables for large traces are stored in a temporary file which is
+ * mapped into memory one page at a time, so they do not occupy the Java heap.
+ * <p>
+ * Records are read while more records are appended, so readers only read the
+ * records which were appended before the reader obtained the record count.
+ *
+ * @author Sam Harwell
+ */
+final class TraceTable {
+    // -J-Dorg.antlr.works.editor.grammar.debugger.TraceTable.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(TraceTable.class.getName());
+
+    /**
+     * The first field of the header, {@code "LTIX"}.
+     */
+    static final int MAGIC = 0x4C544958;
+    /**
+     * The version of the table format.
+     */
+    static final int VERSION = 1;
+
+    static final TraceTable EMPTY = new TraceTable(1, null, null);
+
+    private static final int HEADER_SIZE = 3 * 4;
+    private static final int PAGE_SIZE = 1024 * 1024;
+    private static final int INITIAL_PAGE_SIZE = 4 * 1024;
+
+    private final int fieldCount;
+    private final int recordSize;
+    private final int recordsPerPage;
+    /**
+     * The number of record slots at the start of the first page which hold
+     * the header.
+     */
+    private final int headerRecords;
+
+    private final File file;
+    private FileChannel channel;
+
+    private volatile ByteBuffer[] pages = new ByteBuffer[0];
+    private int size;
+
+    private TraceTable(int fieldCount, File file, FileChannel channel) {
+        this.fieldCount = fieldCount;
+        this.recordSize = fieldCount * 4;
+        this.recordsPerPage = PAGE_SIZE / recordSize;
+        this.headerRecords = (HEADER_SIZE + recordSize - 1) / recordSize;
+        this.file = file;
+        this.channel = channel;
+
+        ensureCapacity(headerRecords - 1);
+        ByteBuffer header = pages[0];
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putInt(8, fieldCount);
+    }
+
+    /**
+     * Creates a table with {@code fieldCount} fields in each record.
+     *
+     * @param fieldCount The number of fields in each record.
+     * @param mapped {@code true} to store the table in a memory-mapped file,
+     * or {@code false} to store it on the heap.
+     */
+    public static TraceTable create(int fieldCount, boolean mapped) {
+        if (mapped) {
+            try {
+                File file = File.createTempFile("lexer-trace-index", ".bin"); // NOI18N
+                return new TraceTable(fieldCount, file, new RandomAccessFile(file, "rw").getChannel()); // NOI18N
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to create a file for the lexer trace index; it will be held on the heap.", ex);
+            }
+        }
+
+        return new TraceTable(fieldCount, null, null);
+    }
+
+    /**
+     * Gets the number of records which have been appended to the table. Only
+     * the thread appending records may call this method; readers use the
+     * record count which was published along with the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getInt(int record, int field) {
+        assert field >= 0 && field < fieldCount;
+        int slot = headerRecords + record;
+        return pages[slot / recordsPerPage].getInt((slot % recordsPerPage) * recordSize + field * 4);
+    }
+
+    /**
+     * Appends a record to the table.
+     *
+     * @return The index of the new record.
+     */
+    public int append(int[] record) {
+        assert record.length == fieldCount;
+        int slot = headerRecords + size;
+        ensureCapacity(slot);
+        ByteBuffer page = pages[slot / recordsPerPage];
+        int offset = (slot % recordsPerPage) * recordSize;
+        for (int i = 0; i < fieldCount; i++) {
+            page.putInt(offset + i * 4, record[i]);
+        }
+
+        return size++;
+    }
+
+    /**
+     * Indicates that no more records will be appended. The file holding a
+     * mapped table is closed and deleted; the pages which are already mapped
+     * remain valid.
+     */
+    public void finish() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Failed to close the lexer trace index.", ex);
+        }
+
+        channel = null;
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void ensureCapacity(int slot) {
+        ByteBuffer[] currentPages = pages;
+        int pageIndex = slot / recordsPerPage;
+        int offset = (slot % recordsPerPage) * recordSize;
+        if (pageIndex < currentPages.length && offset + recordSize <= currentPages[pageIndex].capacity()) {
+            return;
+        }
+
+        ByteBuffer[] newPages = Arrays.copyOf(currentPages, Math.max(currentPages.length, pageIndex + 1));
+        if (pageIndex < currentPages.length) {
+            // heap pages start small, and grow until they are full size
+            ByteBuffer current = currentPages[pageIndex];
+            int capacity = Math.min(recordsPerPage * recordSize, Math.max(current.capacity() * 2, offset + recordSize));
+            ByteBuffer page = ByteBuffer.allocate(capacity);
+            ByteBuffer source = current.duplicate();
+            source.clear();
+            page.put(source);
+            newPages[pageIndex] = page;
+        } else {
+            for (int i = currentPages.length; i <= pageIndex; i++) {
+                newPages[i] = allocatePage(i, i == pageIndex ? offset + recordSize : recordsPerPage * recordSize);
+            }
+        }
+
+        pages = newPages;
+    }
+
+    private ByteBuffer allocatePage(int pageIndex, int requiredCapacity) {
+        int pageSize = recordsPerPage * recordSize;
+        if (channel != null) {
+            try {
+                return channel.map(FileChannel.MapMode.READ_WRITE, (long)pageIndex * pageSize, pageSize);
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to map the lexer trace index; the rest of it will be held on the heap.", ex);
+                finish();
+            }
+        }
+
+        if (pageIndex == 0 && requiredCapacity < pageSize) {
+            return ByteBuffer.allocate(Math.max(requiredCapacity, Math.min(pageSize, INITIAL_PAGE_SIZE)));
+        }
+
+        return ByteBuffer.allocate(pageSize);
+    }
+}
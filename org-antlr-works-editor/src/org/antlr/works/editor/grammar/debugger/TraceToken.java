@@ -23,33 +23,45 @@ import org.openide.util.Exceptions;
  * @author Sam Harwell
  */
 public class TraceToken implements Token {
+    /**
+     * The document holding the input. The token text is read on demand rather
+     * than copied, so the tokens for a large input do not duplicate it.
+     */
+    @NonNull
+    private final Document document;
     private final int startIndex;
     private final int stopIndex;
     private final int tokenIndex;
     private final int type;
     private final int channel;
     private final int mode;
-    private final String text;
 
     public TraceToken(@NonNull Document document, int startIndex, int stopIndex, int tokenIndex, int type, int channel, int mode) {
+        this.document = document;
         this.startIndex = startIndex;
         this.stopIndex = stopIndex;
         this.tokenIndex = tokenIndex;
         this.type = type;
         this.channel = channel;
         this.mode = mode;
-        String tokenText = null;
-        try {
-            tokenText = document.getText(startIndex, stopIndex - startIndex + 1).toString();
-        } catch (BadLocationException ex) {
-            Exceptions.printStackTrace(ex);
-        }
-        this.text = tokenText;
     }
 
     @Override
     public String getText() {
-        return text;
+        // tokens are read from the UI and from background tasks, so hold the read lock
+        final String[] text = new String[1];
+        document.render(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    text[0] = document.getText(startIndex, stopIndex - startIndex + 1);
+                } catch (BadLocationException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
+            }
+        });
+
+        return text[0];
     }
 
     @Override
@@ -1,24 +0,0 @@
-/*
- *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
- *  All rights reserved.
- *
- *  The source code of this document is proprietary work, and is not licensed for
- *  distribution. For information about licensing, contact Sam Harwell at:
- *      sam@tunnelvisionlabs.com
- */
-
-package org.antlr.works.editor.grammar.debugger;
-
-import org.antlr.v4.runtime.misc.Tuple2;
-
-/**
- *
- * @author Sam Harwell
- */
-public class TupleIntInt extends Tuple2<Integer, Integer> {
-
-    public TupleIntInt(Integer item1, Integer item2) {
-        super(item1, item2);
-    }
-
-}
@@ -8,6 +8,7 @@
  */
 package org.antlr.works.editor.grammar.experimental;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -16,6 +17,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import org.antlr.netbeans.editor.completion.Anchor;
 import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.OffsetRegion;
 import org.antlr.netbeans.parsing.spi.BaseParserData;
 import org.antlr.netbeans.parsing.spi.ParseContext;
 import org.antlr.netbeans.parsing.spi.ParserData;
@@ -36,9 +38,12 @@ import org.antlr.v4.runtime.Dependents;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.RuleDependency;
 import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.works.editor.antlr4.classification.DocumentSnapshotCharStream;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenStream;
 import org.antlr.works.editor.grammar.GrammarEditorKit;
 import org.antlr.works.editor.grammar.GrammarParserDataDefinitions;
 import org.antlr.works.editor.grammar.codemodel.FileModel;
@@ -102,10 +107,18 @@ public final class CurrentRuleContextParserTask implements ParserTask {
                     }
 
                     if (enclosing != null) {
-                        CharStream input = new DocumentSnapshotCharStream(snapshot);
-                        input.seek(enclosing.getSpan().getStartPosition(snapshot).getOffset());
-                        GrammarLexer lexer = new GrammarLexer(input);
-                        CommonTokenStream tokens = new TaskTokenStream(lexer);
+                        int enclosingStart = enclosing.getSpan().getStartPosition(snapshot).getOffset();
+                        TaggerTokenBuffer tokenBuffer = GrammarParserDataDefinitions.tryGetData(taskManager, snapshot, GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER, EnumSet.of(ParserDataOptions.SYNCHRONOUS));
+                        TokenStream tokens;
+                        if (tokenBuffer != null) {
+                            tokens = new TaggerTokenStream(tokenBuffer, OffsetRegion.fromBounds(enclosingStart, snapshot.length()));
+                        } else {
+                            CharStream input = new DocumentSnapshotCharStream(snapshot);
+                            input.seek(enclosingStart);
+                            GrammarLexer lexer = new GrammarLexer(input);
+                            tokens = new TaskTokenStream(lexer);
+                        }
+
                         GrammarParser parser = GrammarParserFactory.DEFAULT.getParser(tokens);
                         try {
                             parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
@@ -116,7 +129,7 @@ public final class CurrentRuleContextParserTask implements ParserTask {
                         } catch (ParseCancellationException ex) {
                             if (ex.getCause() instanceof RecognitionException) {
                                 // retry with default error handler
-                                tokens.reset();
+                                tokens.seek(0);
                                 parser.getInterpreter().setPredictionMode(PredictionMode.LL);
                                 parser.setInputStream(tokens);
                                 parser.setErrorHandler(new DefaultErrorStrategy());
@@ -124,6 +137,8 @@ public final class CurrentRuleContextParserTask implements ParserTask {
                             } else {
                                 throw ex;
                             }
+                        } finally {
+                            GrammarParserFactory.DEFAULT.putParser(parser);
                         }
                     }
                 }
@@ -154,7 +169,7 @@ public final class CurrentRuleContextParserTask implements ParserTask {
 
     private static final class Definition extends ParserTaskDefinition {
         private static final Collection<ParserDataDefinition<?>> INPUTS =
-            Collections.<ParserDataDefinition<?>>singletonList(GrammarParserDataDefinitions.DYNAMIC_ANCHOR_POINTS);
+            Arrays.<ParserDataDefinition<?>>asList(GrammarParserDataDefinitions.DYNAMIC_ANCHOR_POINTS, GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER);
         private static final Collection<ParserDataDefinition<?>> OUTPUTS =
             Collections.<ParserDataDefinition<?>>singletonList(GrammarParserDataDefinitions.CURRENT_RULE_CONTEXT);
 
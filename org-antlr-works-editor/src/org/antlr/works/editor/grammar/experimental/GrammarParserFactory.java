@@ -11,6 +11,7 @@ package org.antlr.works.editor.grammar.experimental;
 import org.antlr.v4.runtime.DefaultErrorStrategy;
 import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.works.editor.antlr4.completion.AbstractParserCache;
 import org.antlr.works.editor.antlr4.parsing.DescriptiveErrorListener;
 import org.netbeans.api.annotations.common.NonNull;
 
@@ -21,20 +22,37 @@ import org.netbeans.api.annotations.common.NonNull;
 public class GrammarParserFactory {
     public static final GrammarParserFactory DEFAULT = new GrammarParserFactory();
 
+    private final AbstractParserCache<GrammarParser> cache = new AbstractParserCache<GrammarParser>() {
+        @Override
+        protected GrammarParser createParser(TokenStream input) {
+            return GrammarParserFactory.this.createParser(input);
+        }
+    };
+
     @NonNull
     protected GrammarParser createParser(@NonNull TokenStream input) {
         GrammarParser parser = new GrammarParser(input);
         return parser;
     }
 
+    /**
+     * Gets a parser for {@code input}, reusing an idle parser when one is
+     * available. Callers return the parser with {@link #putParser} once the
+     * parse is complete.
+     */
     @NonNull
     public GrammarParser getParser(@NonNull TokenStream input) {
-        GrammarParser result = createParser(input);
+        GrammarParser result = cache.getParser(input);
         result.getInterpreter().setPredictionMode(PredictionMode.LL);
+        result.removeParseListeners();
         result.removeErrorListeners();
         result.addErrorListener(DescriptiveErrorListener.INSTANCE);
         result.setBuildParseTree(false);
         result.setErrorHandler(new DefaultErrorStrategy());
         return result;
     }
+
+    public void putParser(@NonNull GrammarParser parser) {
+        cache.putParser(parser);
+    }
 }
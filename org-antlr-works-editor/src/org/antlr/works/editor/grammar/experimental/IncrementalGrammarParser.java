@@ -0,0 +1,715 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.experimental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.antlr.netbeans.editor.completion.Anchor;
+import org.antlr.netbeans.editor.text.DocumentChange;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.DocumentVersion;
+import org.antlr.netbeans.editor.text.NormalizedDocumentChangeCollection;
+import org.antlr.netbeans.editor.text.OffsetRegion;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.Dependents;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.RuleDependencies;
+import org.antlr.v4.runtime.RuleDependency;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenStream;
+import org.antlr.works.editor.antlr4.parsing.DescriptiveErrorListener;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.GrammarSpecContext;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.RuleSpecContext;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.RulesContext;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+
+/**
+ * Parses the reference parse tree of a grammar, and updates the tree after an
+ * edit by parsing only the rules affected by the edit.
+ * <p>
+ * A tree which parsed without syntax errors is divided into <em>segments</em>:
+ * the part of the grammar before its rules, each {@code ruleSpec} of the
+ * rules, and the part after the rules. The tokens of the tree are
+ * {@link SegmentToken}s, which add the offsets of the segment holding them to
+ * their own position. After an edit, the rules which intersect the changed
+ * text are parsed again along with one rule on each side of them, and the
+ * segments after the edit are moved to their new position by updating the
+ * offsets of each segment. The subtrees of the other rules, and the anchors
+ * found in them, are shared with the previous tree instead of being parsed or
+ * copied, so the cost of an update is the cost of parsing the edited rules
+ * plus a constant amount of work for each segment after the edit.
+ * <p>
+ * Since the shared subtrees are moved to the positions of the new snapshot,
+ * a tree produced by this parser only reports the positions of its snapshot
+ * until the next update. When an update is not possible, because the edit
+ * changed the text before or after the rules, the affected rules do not parse
+ * in SLL mode, or the tokens after the edit were lexed differently, the
+ * complete document is parsed again. Trees with syntax errors are never
+ * updated.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Sam Harwell
+ */
+public final class IncrementalGrammarParser {
+    // -J-Dorg.antlr.works.editor.grammar.experimental.IncrementalGrammarParser.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(IncrementalGrammarParser.class.getName());
+
+    /**
+     * The snapshot which was parsed most recently.
+     */
+    private DocumentSnapshot snapshot;
+    private GrammarSpecContext tree;
+    private GrammarTokenStream tokenStream;
+
+    /**
+     * {@code true} if {@link #tree} parsed without syntax errors, and the
+     * segments below describe it.
+     */
+    private boolean updatable;
+    private Segment head;
+    private final List<Segment> rules = new ArrayList<>();
+    private Segment tail;
+
+    /**
+     * Parses {@code snapshot}, updating the tree of the snapshot which was
+     * parsed before it when possible.
+     *
+     * @param snapshot The snapshot to parse.
+     * @param tokenBuffer The tokens of {@code snapshot}.
+     * @return The parse tree of {@code snapshot}.
+     */
+    @NonNull
+    public GrammarSpecContext parse(@NonNull DocumentSnapshot snapshot, @NonNull TaggerTokenBuffer tokenBuffer) {
+        long startTime = System.nanoTime();
+        if (updatable && tryUpdate(snapshot, tokenBuffer)) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Updated the parse tree of {0} rules in {1}ms.", new Object[] { rules.size(), (System.nanoTime() - startTime) / 1000000.0 });
+            }
+
+            return tree;
+        }
+
+        parseDocument(snapshot, tokenBuffer);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Parsed the complete document in {0}ms.", (System.nanoTime() - startTime) / 1000000.0);
+        }
+
+        return tree;
+    }
+
+    /**
+     * Gets a stream over all the tokens of the snapshot which was parsed most
+     * recently. The token indexes of the parse tree are indexes in this
+     * stream.
+     */
+    @NonNull
+    public TokenStream getTokenStream() {
+        return tokenStream;
+    }
+
+    /**
+     * Gets the anchors of the tree which was parsed most recently. Only the
+     * anchors of the rules which were parsed by the last update are created;
+     * the anchors of the other rules track their position from an earlier
+     * snapshot.
+     */
+    @NonNull
+    public List<Anchor> getAnchors() {
+        if (!updatable) {
+            GrammarParserAnchorListener listener = new GrammarParserAnchorListener(snapshot);
+            ParseTreeWalker.DEFAULT.walk(listener, tree);
+            return listener.getAnchors();
+        }
+
+        List<Anchor> anchors = new ArrayList<>();
+        anchors.addAll(head.getAnchors(snapshot));
+        for (Segment rule : rules) {
+            anchors.addAll(rule.getAnchors(snapshot));
+        }
+
+        anchors.addAll(tail.getAnchors(snapshot));
+        return anchors;
+    }
+
+    @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_grammarSpec, version=0, dependents=Dependents.SELF)
+    private void parseDocument(DocumentSnapshot snapshot, TaggerTokenBuffer tokenBuffer) {
+        this.updatable = false;
+        this.snapshot = snapshot;
+        this.tree = null;
+        this.tokenStream = null;
+
+        GrammarTokenStream tokens = new GrammarTokenStream(tokenBuffer);
+        GrammarSpecContext result;
+        boolean syntaxErrors = false;
+        GrammarParser parser = GrammarParserFactory.DEFAULT.getParser(tokens);
+        try {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.removeErrorListeners();
+            parser.setBuildParseTree(true);
+            parser.setErrorHandler(new BailErrorStrategy());
+            result = parser.grammarSpec();
+        } catch (ParseCancellationException ex) {
+            if (ex.getCause() instanceof RecognitionException) {
+                // retry with default error handler
+                syntaxErrors = true;
+                tokens.reset();
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.addErrorListener(DescriptiveErrorListener.INSTANCE);
+                parser.setInputStream(tokens);
+                parser.setErrorHandler(new DefaultErrorStrategy());
+                result = parser.grammarSpec();
+            } else {
+                throw ex;
+            }
+        } finally {
+            GrammarParserFactory.DEFAULT.putParser(parser);
+        }
+
+        this.tree = result;
+        this.tokenStream = tokens;
+        if (!syntaxErrors) {
+            this.updatable = createSegments(result, tokens);
+        }
+
+        tokens.releaseCreatedTokens();
+    }
+
+    @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_grammarSpec, version=0, dependents=Dependents.SELF)
+    private boolean createSegments(GrammarSpecContext tree, GrammarTokenStream tokens) {
+        RulesContext rulesContext = tree.rules();
+        if (rulesContext == null || tree.children == null) {
+            return false;
+        }
+
+        List<Segment> ruleSegments = createRuleSegments(rulesContext, tokens);
+        if (ruleSegments.isEmpty()) {
+            return false;
+        }
+
+        Segment headSegment = new Segment(tokens, tree.start);
+        Segment tailSegment = null;
+        for (ParseTree child : tree.children) {
+            if (child == rulesContext) {
+                continue;
+            }
+
+            Token start = child instanceof TerminalNode ? ((TerminalNode)child).getSymbol() : ((ParserRuleContext)child).start;
+            if (start.getTokenIndex() < rulesContext.start.getTokenIndex()) {
+                headSegment.add(child);
+            } else {
+                if (tailSegment == null) {
+                    tailSegment = new Segment(tokens, start);
+                }
+
+                tailSegment.add(child);
+            }
+        }
+
+        if (tailSegment == null) {
+            // the tree always ends with EOF
+            return false;
+        }
+
+        assignSegments(tokens.getCreatedTokens(), ruleSegments, headSegment, tailSegment);
+
+        this.head = headSegment;
+        this.rules.clear();
+        this.rules.addAll(ruleSegments);
+        this.tail = tailSegment;
+        return true;
+    }
+
+    /**
+     * Updates {@link #tree} for the changes made to the document between
+     * {@link #snapshot} and {@code snapshot}. The state of this parser is only
+     * changed when the update succeeds.
+     *
+     * @return {@code true} if the tree was updated, or {@code false} if the
+     * document needs to be parsed from the beginning.
+     */
+    @RuleDependencies({
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_grammarSpec, version=0, dependents=Dependents.SELF),
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_rules, version=0, dependents=Dependents.SELF),
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_ruleSpec, version=3, dependents=Dependents.SELF),
+    })
+    private boolean tryUpdate(DocumentSnapshot snapshot, TaggerTokenBuffer tokenBuffer) {
+        DocumentSnapshot previousSnapshot = this.snapshot;
+        if (previousSnapshot.getVersionedDocument() != snapshot.getVersionedDocument()
+            || previousSnapshot.getVersion().getVersionNumber() >= snapshot.getVersion().getVersionNumber()) {
+            return false;
+        }
+
+        // find the unchanged text at the beginning and end of the document
+        int oldLength = previousSnapshot.length();
+        int newLength = snapshot.length();
+        int prefix = oldLength;
+        int suffix = oldLength;
+        for (DocumentVersion version = previousSnapshot.getVersion(); version != null && version.getVersionNumber() < snapshot.getVersion().getVersionNumber(); version = version.getNext()) {
+            NormalizedDocumentChangeCollection changes = version.getChanges();
+            if (changes == null) {
+                return false;
+            }
+
+            for (DocumentChange change : changes) {
+                prefix = Math.min(prefix, change.getOldOffset());
+                suffix = Math.min(suffix, version.getLength() - change.getOldEnd());
+            }
+        }
+
+        prefix = Math.min(prefix, Math.min(oldLength, newLength));
+        suffix = Math.min(suffix, Math.min(oldLength, newLength) - prefix);
+        int changeStart = prefix;
+        int changeEnd = oldLength - suffix;
+        int delta = newLength - oldLength;
+
+        // the rules intersecting the change, and the rule before and after them
+        int ruleCount = rules.size();
+        int firstRule = findFirstRuleEndingAtOrAfter(changeStart - 1);
+        firstRule = Math.max(0, Math.min(firstRule, ruleCount - 1) - 1);
+        if (changeStart < rules.get(firstRule).start.getStartIndex()) {
+            // the change is before the rules
+            return false;
+        }
+
+        int lastRule = findFirstRuleStartingAfter(changeEnd) - 1;
+        lastRule = Math.min(ruleCount - 1, Math.max(lastRule, firstRule) + 1);
+
+        Segment next = lastRule + 1 < ruleCount ? rules.get(lastRule + 1) : tail;
+        int ruleEnd = getRule(lastRule).stop.getStopIndex() + 1;
+        boolean extendsToTail = changeEnd > ruleEnd;
+        if (extendsToTail && (next != tail || tail.trees.size() != 1)) {
+            // the change is after the rules, and the grammar has modes
+            return false;
+        }
+
+        int newStart = rules.get(firstRule).start.getStartIndex();
+        int newEnd = extendsToTail ? newLength : ruleEnd + delta;
+        if (newEnd < newStart) {
+            return false;
+        }
+
+        // the first token of the updated rules must not have changed
+        int firstToken = rules.get(firstRule).start.getTokenIndex();
+        if (tokenBuffer.getFirstTokenStartingAtOrAfter(newStart) != firstToken || tokenBuffer.getFirstTokenEndingAtOrAfter(newStart) != firstToken) {
+            return false;
+        }
+
+        // the tokens after the updated rules must be lexed the same way, so
+        // the segments holding them can be moved instead of parsed again
+        Token nextToken = next.start;
+        int nextStart = nextToken.getStartIndex() + delta;
+        int nextIndex = tokenBuffer.getFirstTokenStartingAtOrAfter(nextStart);
+        int tokenDelta = nextIndex - nextToken.getTokenIndex();
+        if (tokenBuffer.getStartIndex(nextIndex) != nextStart
+            || tokenBuffer.getFirstTokenEndingAtOrAfter(nextStart) != nextIndex
+            || tokenBuffer.getType(nextIndex) != nextToken.getType()
+            || tokenBuffer.getCharPositionInLine(nextIndex) != nextToken.getCharPositionInLine()
+            || tokenBuffer.size() - tokenStream.size() != tokenDelta) {
+            LOGGER.log(Level.FINE, "Parsing the complete document after a change to the tokens following the edit.");
+            return false;
+        }
+
+        int lineDelta = tokenBuffer.getLine(nextIndex) - nextToken.getLine();
+
+        GrammarTokenStream ruleTokens = new GrammarTokenStream(tokenBuffer, OffsetRegion.fromBounds(newStart, newEnd), firstToken);
+        RulesContext updatedRules;
+        GrammarParser parser = GrammarParserFactory.DEFAULT.getParser(ruleTokens);
+        try {
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            parser.removeErrorListeners();
+            parser.setBuildParseTree(true);
+            parser.setErrorHandler(new BailErrorStrategy());
+            updatedRules = parser.rules();
+        } catch (ParseCancellationException ex) {
+            LOGGER.log(Level.FINE, "Parsing the complete document after a syntax error in the updated rules.");
+            return false;
+        } finally {
+            GrammarParserFactory.DEFAULT.putParser(parser);
+        }
+
+        if (ruleTokens.LA(1) != Token.EOF) {
+            return false;
+        }
+
+        GrammarTokenStream tokens = new GrammarTokenStream(tokenBuffer);
+        tokens.releaseCreatedTokens();
+
+        List<Segment> updatedSegments = createRuleSegments(updatedRules, tokens);
+        if (ruleCount - (lastRule - firstRule + 1) + updatedSegments.size() == 0) {
+            return false;
+        }
+
+        // everything after this point updates the state of the parser
+        if (!updatedSegments.isEmpty()) {
+            assignSegments(ruleTokens.getCreatedTokens(), updatedSegments, null, null);
+        }
+
+        for (int i = lastRule + 1; i < ruleCount; i++) {
+            rules.get(i).move(tokens, tokenDelta, delta, lineDelta);
+        }
+
+        tail.move(tokens, tokenDelta, delta, lineDelta);
+
+        List<Segment> replacedSegments = rules.subList(firstRule, lastRule + 1);
+        replacedSegments.clear();
+        replacedSegments.addAll(updatedSegments);
+
+        this.snapshot = snapshot;
+        this.tree = createTree(tree);
+        this.tokenStream = tokens;
+        return true;
+    }
+
+    /**
+     * Creates a tree holding the current rule segments, which shares every
+     * other child with {@code previousTree}.
+     */
+    @RuleDependencies({
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_grammarSpec, version=0, dependents=Dependents.SELF),
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_rules, version=0, dependents=Dependents.SELF),
+    })
+    private GrammarSpecContext createTree(GrammarSpecContext previousTree) {
+        RulesContext previousRules = previousTree.rules();
+
+        GrammarSpecContext result = new GrammarSpecContext(null, previousTree.invokingState);
+        RulesContext rulesContext = new RulesContext(result, previousRules.invokingState);
+        for (Segment segment : rules) {
+            RuleSpecContext rule = (RuleSpecContext)segment.trees.get(0);
+            rule.parent = rulesContext;
+            rulesContext.addChild(rule);
+        }
+
+        rulesContext.start = getRule(0).start;
+        rulesContext.stop = getRule(rules.size() - 1).stop;
+
+        for (ParseTree child : previousTree.children) {
+            if (child == previousRules) {
+                result.addChild(rulesContext);
+            } else if (child instanceof TerminalNode) {
+                result.addChild(((TerminalNode)child).getSymbol());
+            } else {
+                ParserRuleContext context = (ParserRuleContext)child;
+                context.parent = result;
+                result.addChild(context);
+            }
+        }
+
+        result.start = previousTree.start;
+        result.stop = previousTree.stop;
+        return result;
+    }
+
+    @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_rules, version=0, dependents=Dependents.SELF)
+    private static List<Segment> createRuleSegments(RulesContext rulesContext, TaggerTokenStream tokens) {
+        List<Segment> segments = new ArrayList<>();
+        for (RuleSpecContext rule : rulesContext.ruleSpec()) {
+            Segment segment = new Segment(tokens, rule.start);
+            segment.add(rule);
+            segments.add(segment);
+        }
+
+        return segments;
+    }
+
+    /**
+     * Moves each token to the segment holding it. Tokens before the first rule
+     * are moved to {@code head}, and tokens after the last rule are moved to
+     * {@code tail}; when these are {@code null}, the tokens are moved to the
+     * first or last rule instead.
+     */
+    private static void assignSegments(List<SegmentToken> tokens, List<Segment> ruleSegments, @CheckForNull Segment head, @CheckForNull Segment tail) {
+        int[] ruleStarts = new int[ruleSegments.size()];
+        for (int i = 0; i < ruleStarts.length; i++) {
+            ruleStarts[i] = ruleSegments.get(i).start.getTokenIndex();
+        }
+
+        int lastStop = ((ParserRuleContext)ruleSegments.get(ruleSegments.size() - 1).trees.get(0)).stop.getTokenIndex();
+        for (SegmentToken token : tokens) {
+            int index = token.getTokenIndex();
+            Segment segment;
+            if (index < ruleStarts[0]) {
+                segment = head != null ? head : ruleSegments.get(0);
+            } else if (index > lastStop && tail != null) {
+                segment = tail;
+            } else {
+                int rule = Arrays.binarySearch(ruleStarts, index);
+                if (rule < 0) {
+                    rule = -rule - 2;
+                }
+
+                segment = ruleSegments.get(rule);
+            }
+
+            token.segment = segment;
+        }
+    }
+
+    private ParserRuleContext getRule(int index) {
+        return (ParserRuleContext)rules.get(index).trees.get(0);
+    }
+
+    /**
+     * Gets the index of the first rule which ends at or after {@code offset},
+     * or the number of rules if no such rule exists.
+     */
+    private int findFirstRuleEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = rules.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getRule(mid).stop.getStopIndex() < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the index of the first rule which starts after {@code offset}, or
+     * the number of rules if no such rule exists.
+     */
+    private int findFirstRuleStartingAfter(int offset) {
+        int low = 0;
+        int high = rules.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (rules.get(mid).start.getStartIndex() <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * A part of the parse tree which is either parsed again or moved as a
+     * whole after an edit.
+     */
+    private static final class Segment {
+        public final List<ParseTree> trees = new ArrayList<>();
+        /**
+         * The first token of the segment.
+         */
+        public final Token start;
+
+        /**
+         * The stream over the tokens of the snapshot the segment is
+         * positioned in.
+         */
+        public TaggerTokenStream tokens;
+        public int tokenDelta;
+        public int charDelta;
+        public int lineDelta;
+
+        private List<Anchor> anchors;
+
+        public Segment(TaggerTokenStream tokens, Token start) {
+            this.tokens = tokens;
+            this.start = start;
+        }
+
+        public void add(ParseTree tree) {
+            trees.add(tree);
+        }
+
+        public void move(TaggerTokenStream tokens, int tokenDelta, int charDelta, int lineDelta) {
+            this.tokens = tokens;
+            this.tokenDelta += tokenDelta;
+            this.charDelta += charDelta;
+            this.lineDelta += lineDelta;
+        }
+
+        /**
+         * Gets the anchors of the segment, which are created in
+         * {@code snapshot} the first time they are requested.
+         */
+        public List<Anchor> getAnchors(DocumentSnapshot snapshot) {
+            if (anchors == null) {
+                GrammarParserAnchorListener listener = new GrammarParserAnchorListener(snapshot);
+                for (ParseTree tree : trees) {
+                    ParseTreeWalker.DEFAULT.walk(listener, tree);
+                }
+
+                anchors = listener.getAnchors();
+            }
+
+            return anchors;
+        }
+    }
+
+    /**
+     * A token whose position is relative to the {@link Segment} holding it.
+     * Until the parse tree is divided into segments, the token is held by the
+     * stream it was read from, and reports the position it had in that stream.
+     */
+    private static final class SegmentToken implements Token {
+        private final int type;
+        private final int channel;
+        private final int tokenIndex;
+        private final int startIndex;
+        private final int stopIndex;
+        private final int line;
+        private final int charPositionInLine;
+
+        private Segment segment;
+
+        public SegmentToken(Segment segment, Token token, int tokenIndex) {
+            this.segment = segment;
+            this.type = token.getType();
+            this.channel = token.getChannel();
+            this.tokenIndex = tokenIndex;
+            this.startIndex = token.getStartIndex();
+            this.stopIndex = token.getStopIndex();
+            this.line = token.getLine();
+            this.charPositionInLine = token.getCharPositionInLine();
+        }
+
+        @Override
+        public String getText() {
+            if (type == Token.EOF) {
+                return "<EOF>";
+            }
+
+            return segment.tokens.getSnapshot().subSequence(getStartIndex(), getStopIndex() + 1).toString();
+        }
+
+        @Override
+        public int getType() {
+            return type;
+        }
+
+        @Override
+        public int getLine() {
+            return line + segment.lineDelta;
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return charPositionInLine;
+        }
+
+        @Override
+        public int getChannel() {
+            return channel;
+        }
+
+        @Override
+        public int getTokenIndex() {
+            return tokenIndex + segment.tokenDelta;
+        }
+
+        @Override
+        public int getStartIndex() {
+            return startIndex + segment.charDelta;
+        }
+
+        @Override
+        public int getStopIndex() {
+            return stopIndex + segment.charDelta;
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return segment.tokens;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return segment.tokens.getInputStream();
+        }
+
+        @Override
+        public String toString() {
+            String text = getText().replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+            return String.format("[@%d,%d:%d='%s',<%d>%s,%d:%d]",
+                getTokenIndex(), getStartIndex(), getStopIndex(), text, type,
+                channel > 0 ? ",channel=" + channel : "",
+                getLine(), charPositionInLine);
+        }
+    }
+
+    /**
+     * A stream which returns {@link SegmentToken}s, and checks for
+     * interruption each time a token is consumed.
+     */
+    private static final class GrammarTokenStream extends TaggerTokenStream {
+        /**
+         * The index of the first token of this stream in the stream over all
+         * the tokens of the snapshot.
+         */
+        private final int tokenIndexOffset;
+        /**
+         * The segment which holds the tokens until they are assigned to the
+         * segments of the tree.
+         */
+        private final Segment initialSegment;
+        private List<SegmentToken> createdTokens = new ArrayList<>();
+
+        public GrammarTokenStream(TaggerTokenBuffer tokenBuffer) {
+            super(tokenBuffer);
+            this.tokenIndexOffset = 0;
+            this.initialSegment = new Segment(this, null);
+        }
+
+        public GrammarTokenStream(TaggerTokenBuffer tokenBuffer, OffsetRegion region, int tokenIndexOffset) {
+            super(tokenBuffer, region);
+            this.tokenIndexOffset = tokenIndexOffset;
+            this.initialSegment = new Segment(this, null);
+        }
+
+        public List<SegmentToken> getCreatedTokens() {
+            return createdTokens;
+        }
+
+        public void releaseCreatedTokens() {
+            createdTokens = null;
+        }
+
+        @Override
+        protected Token createToken(int index) {
+            SegmentToken token = new SegmentToken(initialSegment, super.createToken(index), tokenIndexOffset + index);
+            if (createdTokens != null) {
+                createdTokens.add(token);
+            }
+
+            return token;
+        }
+
+        @Override
+        public void consume() {
+            if (Thread.interrupted()) {
+                throw new CancellationException();
+            }
+
+            super.consume();
+        }
+    }
+}
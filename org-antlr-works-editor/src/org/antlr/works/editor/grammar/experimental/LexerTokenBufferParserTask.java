@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.experimental;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.parsing.spi.BaseParserData;
+import org.antlr.netbeans.parsing.spi.ParseContext;
+import org.antlr.netbeans.parsing.spi.ParserData;
+import org.antlr.netbeans.parsing.spi.ParserDataDefinition;
+import org.antlr.netbeans.parsing.spi.ParserDataOptions;
+import org.antlr.netbeans.parsing.spi.ParserResultHandler;
+import org.antlr.netbeans.parsing.spi.ParserTask;
+import org.antlr.netbeans.parsing.spi.ParserTaskDefinition;
+import org.antlr.netbeans.parsing.spi.ParserTaskManager;
+import org.antlr.netbeans.parsing.spi.ParserTaskProvider;
+import org.antlr.netbeans.parsing.spi.ParserTaskScheduler;
+import org.antlr.netbeans.parsing.spi.SingletonParserTaskProvider;
+import org.antlr.v4.runtime.Token;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.grammar.GrammarEditorKit;
+import org.antlr.works.editor.grammar.GrammarParserDataDefinitions;
+import org.netbeans.api.editor.mimelookup.MimeRegistration;
+
+/**
+ * Buffers the {@link GrammarParserDataDefinitions#LEXER_TOKENS} of a snapshot
+ * so the tasks which parse the snapshot can share a single copy of its tokens.
+ *
+ * @author Sam Harwell
+ */
+public final class LexerTokenBufferParserTask implements ParserTask {
+
+    private final Object lock = new Object();
+
+    private LexerTokenBufferParserTask() {
+    }
+
+    @Override
+    public ParserTaskDefinition getDefinition() {
+        return Definition.INSTANCE;
+    }
+
+    @Override
+    public void parse(ParserTaskManager taskManager, ParseContext context, DocumentSnapshot snapshot, Collection<? extends ParserDataDefinition<?>> requestedData, ParserResultHandler results)
+        throws InterruptedException, ExecutionException {
+
+        if (requestedData.contains(GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER)) {
+            synchronized (lock) {
+                ParserData<TaggerTokenBuffer> result = taskManager.getData(snapshot, GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER, EnumSet.of(ParserDataOptions.NO_UPDATE)).get();
+                if (result == null) {
+                    Future<ParserData<Tagger<TokenTag<Token>>>> futureTokensData = taskManager.getData(snapshot, GrammarParserDataDefinitions.LEXER_TOKENS);
+                    Tagger<TokenTag<Token>> tagger = futureTokensData.get().getData();
+                    TaggerTokenBuffer buffer = tagger != null ? new TaggerTokenBuffer(tagger, snapshot) : null;
+                    result = new BaseParserData<>(context, GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER, snapshot, buffer);
+                }
+
+                results.addResult(result);
+            }
+        }
+    }
+
+    private static final class Definition extends ParserTaskDefinition {
+        private static final Collection<ParserDataDefinition<?>> INPUTS =
+            Collections.<ParserDataDefinition<?>>singletonList(GrammarParserDataDefinitions.LEXER_TOKENS);
+        private static final Collection<ParserDataDefinition<?>> OUTPUTS =
+            Collections.<ParserDataDefinition<?>>singletonList(GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER);
+
+        public static final Definition INSTANCE = new Definition();
+
+        public Definition() {
+            super("Grammar Lexer Token Buffer", INPUTS, OUTPUTS, ParserTaskScheduler.CONTENT_SENSITIVE_TASK_SCHEDULER);
+        }
+    }
+
+    @MimeRegistration(mimeType=GrammarEditorKit.GRAMMAR_MIME_TYPE, service=ParserTaskProvider.class)
+    public static final class Provider extends SingletonParserTaskProvider {
+
+        @Override
+        public ParserTaskDefinition getDefinition() {
+            return Definition.INSTANCE;
+        }
+
+        @Override
+        public ParserTask createTaskImpl() {
+            return new LexerTokenBufferParserTask();
+        }
+
+    }
+}
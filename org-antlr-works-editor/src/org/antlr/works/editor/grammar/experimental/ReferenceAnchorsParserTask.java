@@ -13,12 +13,9 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import org.antlr.netbeans.editor.classification.TokenTag;
 import org.antlr.netbeans.editor.completion.Anchor;
-import org.antlr.netbeans.editor.tagging.Tagger;
 import org.antlr.netbeans.editor.text.DocumentSnapshot;
 import org.antlr.netbeans.editor.text.VersionedDocument;
 import org.antlr.netbeans.parsing.spi.BaseParserData;
@@ -33,19 +30,9 @@ import org.antlr.netbeans.parsing.spi.ParserTaskDefinition;
 import org.antlr.netbeans.parsing.spi.ParserTaskManager;
 import org.antlr.netbeans.parsing.spi.ParserTaskProvider;
 import org.antlr.netbeans.parsing.spi.ParserTaskScheduler;
-import org.antlr.v4.runtime.BailErrorStrategy;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.DefaultErrorStrategy;
-import org.antlr.v4.runtime.Dependents;
-import org.antlr.v4.runtime.RecognitionException;
-import org.antlr.v4.runtime.RuleDependency;
-import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.TokenSource;
-import org.antlr.v4.runtime.atn.PredictionMode;
-import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
-import org.antlr.works.editor.antlr4.classification.TaggerTokenSource;
-import org.antlr.works.editor.antlr4.parsing.DescriptiveErrorListener;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
 import org.antlr.works.editor.grammar.GrammarEditorKit;
 import org.antlr.works.editor.grammar.GrammarParserDataDefinitions;
 import org.antlr.works.editor.grammar.codemodel.FileModel;
@@ -64,6 +51,12 @@ public final class ReferenceAnchorsParserTask implements ParserTask {
 
     private final Object lock = new Object();
 
+    /**
+     * Updates the parse tree of the previous snapshot after an edit, rather
+     * than parsing the complete document again.
+     */
+    private final IncrementalGrammarParser parser = new IncrementalGrammarParser();
+
     private ReferenceAnchorsParserTask(VersionedDocument document) {
         this.document = document;
     }
@@ -74,7 +67,6 @@ public final class ReferenceAnchorsParserTask implements ParserTask {
     }
 
     @Override
-    @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_grammarSpec, version=0, dependents=Dependents.SELF)
     public void parse(ParserTaskManager taskManager, ParseContext context, DocumentSnapshot snapshot, Collection<? extends ParserDataDefinition<?>> requestedData, ParserResultHandler results)
         throws InterruptedException, ExecutionException {
 
@@ -90,41 +82,17 @@ public final class ReferenceAnchorsParserTask implements ParserTask {
             ParserData<List<Anchor>> anchorPointsResult = taskManager.getData(snapshot, GrammarParserDataDefinitions.REFERENCE_ANCHOR_POINTS, EnumSet.of(ParserDataOptions.NO_UPDATE)).get();
             ParserData<FileModel> fileModelResult = taskManager.getData(snapshot, GrammarParserDataDefinitions.FILE_MODEL, EnumSet.of(ParserDataOptions.NO_UPDATE)).get();
             if (parseTreeResult == null || anchorPointsResult == null || fileModelResult == null) {
-                Future<ParserData<Tagger<TokenTag<Token>>>> futureTokensData = taskManager.getData(snapshot, GrammarParserDataDefinitions.LEXER_TOKENS);
-                Tagger<TokenTag<Token>> tagger = futureTokensData.get().getData();
-                TaggerTokenSource tokenSource = new TaggerTokenSource(tagger, snapshot);
+                Future<ParserData<TaggerTokenBuffer>> futureTokenBufferData = taskManager.getData(snapshot, GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER);
+                TaggerTokenBuffer tokenBuffer = futureTokenBufferData.get().getData();
         //        DocumentSnapshotCharStream input = new DocumentSnapshotCharStream(snapshot);
         //        input.setSourceName((String)document.getDocument().getProperty(Document.TitleProperty));
         //        GrammarLexer lexer = new GrammarLexer(input);
-                InterruptableTokenStream tokenStream = new InterruptableTokenStream(tokenSource);
-                GrammarSpecContext parseResult;
-                GrammarParser parser = GrammarParserFactory.DEFAULT.getParser(tokenStream);
-                try {
-                    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
-                    parser.removeErrorListeners();
-                    parser.setBuildParseTree(true);
-                    parser.setErrorHandler(new BailErrorStrategy());
-                    parseResult = parser.grammarSpec();
-                } catch (ParseCancellationException ex) {
-                    if (ex.getCause() instanceof RecognitionException) {
-                        // retry with default error handler
-                        tokenStream.reset();
-                        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
-                        parser.addErrorListener(DescriptiveErrorListener.INSTANCE);
-                        parser.setInputStream(tokenStream);
-                        parser.setErrorHandler(new DefaultErrorStrategy());
-                        parseResult = parser.grammarSpec();
-                    } else {
-                        throw ex;
-                    }
-                }
-
+                GrammarSpecContext parseResult = parser.parse(snapshot, tokenBuffer);
+                TokenStream tokenStream = parser.getTokenStream();
                 parseTreeResult = new BaseParserData<>(context, GrammarParserDataDefinitions.REFERENCE_PARSE_TREE, snapshot, parseResult);
 
                 if (anchorPointsResult == null && snapshot.getVersionedDocument().getDocument() != null) {
-                    GrammarParserAnchorListener listener = new GrammarParserAnchorListener(snapshot);
-                    ParseTreeWalker.DEFAULT.walk(listener, parseResult);
-                    anchorPointsResult = new BaseParserData<>(context, GrammarParserDataDefinitions.REFERENCE_ANCHOR_POINTS, snapshot, listener.getAnchors());
+                    anchorPointsResult = new BaseParserData<>(context, GrammarParserDataDefinitions.REFERENCE_ANCHOR_POINTS, snapshot, parser.getAnchors());
                 }
 
                 if (fileModelResult == null) {
@@ -155,21 +123,6 @@ public final class ReferenceAnchorsParserTask implements ParserTask {
         codeModelCache.updateFile(fileModel);
     }
 
-    private static class InterruptableTokenStream extends CommonTokenStream {
-        public InterruptableTokenStream(TokenSource tokenSource) {
-            super(tokenSource);
-        }
-
-        @Override
-        public void consume() {
-            if (Thread.interrupted()) {
-                throw new CancellationException();
-            }
-
-            super.consume();
-        }
-    }
-
     private static final class Definition extends ParserTaskDefinition {
         private static final Collection<ParserDataDefinition<?>> INPUTS =
             Collections.<ParserDataDefinition<?>>emptyList();
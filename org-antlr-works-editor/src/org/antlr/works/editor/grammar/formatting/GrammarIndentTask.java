@@ -41,6 +41,7 @@ import org.antlr.v4.runtime.misc.Tuple2;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
 import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
 import org.antlr.works.editor.antlr4.completion.CaretReachedException;
 import org.antlr.works.editor.antlr4.completion.CodeCompletionErrorStrategy;
 import org.antlr.works.editor.antlr4.formatting.AbstractIndentTask;
@@ -152,13 +153,22 @@ public class GrammarIndentTask extends AbstractIndentTask {
     }
 
     @Override
-    @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_ruleSpec, version=0, dependents=Dependents.SELF)
-    protected Map<RuleContext, CaretReachedException> getParseTrees(CommonTokenStream tokens, ReferenceAnchors anchors) {
-        CodeCompletionGrammarParser parser = ParserFactory.DEFAULT.getParser(tokens);
+    protected TaggerTokenBuffer getTokenBuffer() {
+        Future<ParserData<TaggerTokenBuffer>> futureTokenBufferData = getTaskManager().getData(getSnapshot(), GrammarParserDataDefinitions.LEXER_TOKEN_BUFFER, EnumSet.of(ParserDataOptions.SYNCHRONOUS));
+        TaggerTokenBuffer tokenBuffer = null;
+        try {
+            tokenBuffer = futureTokenBufferData != null ? futureTokenBufferData.get().getData() : null;
+        } catch (InterruptedException | ExecutionException ex) {
+            // Warning because a timeout keeps the UI responsive but still indicates a broken auto-indent feature
+            LOGGER.log(Level.WARNING, "An exception occurred while getting the token buffer.", ex);
+        }
 
-        parser.setBuildParseTree(true);
-        parser.setErrorHandler(new CodeCompletionErrorStrategy());
+        return tokenBuffer;
+    }
 
+    @Override
+    @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_ruleSpec, version=0, dependents=Dependents.SELF)
+    protected Map<RuleContext, CaretReachedException> getParseTrees(CommonTokenStream tokens, ReferenceAnchors anchors) {
         GrammarForestParser forestParser;
         if (anchors.getPrevious() != null) {
             switch (anchors.getPrevious().getRule()) {
@@ -177,6 +187,10 @@ public class GrammarIndentTask extends AbstractIndentTask {
             return null;
         }
 
+        CodeCompletionGrammarParser parser = ParserFactory.DEFAULT.getParser(tokens);
+        parser.setBuildParseTree(true);
+        parser.setErrorHandler(new CodeCompletionErrorStrategy());
+
         CompletionParserATNSimulator originalInterpreter = parser.getInterpreter();
         try {
             parser.setInterpreter(new CompletionParserATNSimulator(parser, GrammarParser._ATN) {
@@ -209,6 +223,7 @@ public class GrammarIndentTask extends AbstractIndentTask {
             return parseTrees;
         } finally {
             parser.setInterpreter(originalInterpreter);
+            ParserFactory.DEFAULT.putParser(parser);
         }
     }
 
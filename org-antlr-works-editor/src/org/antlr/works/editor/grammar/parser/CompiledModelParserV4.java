@@ -9,6 +9,7 @@
 package org.antlr.works.editor.grammar.parser;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -25,6 +26,7 @@ import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
 import org.antlr.netbeans.parsing.spi.ParseContext;
 import org.antlr.netbeans.parsing.spi.ParserData;
 import org.antlr.netbeans.parsing.spi.ParserTaskManager;
+import org.antlr.runtime.ANTLRFileStream;
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CommonToken;
 import org.antlr.runtime.CommonTokenStream;
@@ -43,12 +45,14 @@ import org.antlr.v4.tool.GrammarSemanticsMessage;
 import org.antlr.v4.tool.GrammarSyntaxMessage;
 import org.antlr.v4.tool.GrammarTransformPipeline;
 import org.antlr.v4.tool.LexerGrammar;
+import org.antlr.v4.tool.ast.GrammarAST;
 import org.antlr.v4.tool.ast.GrammarRootAST;
 import org.antlr.works.editor.antlr3.parsing.AntlrSyntaxErrorV3;
 import org.antlr.works.editor.grammar.GrammarParserDataDefinitions;
 import org.antlr.works.editor.grammar.codemodel.FileModel;
 import org.antlr.works.editor.grammar.codemodel.TokenData;
 import org.antlr.works.editor.grammar.codemodel.TokenVocabModel;
+import org.netbeans.api.annotations.common.CheckForNull;
 import org.netbeans.api.annotations.common.NonNull;
 import org.netbeans.spi.editor.hints.Severity;
 import org.openide.filesystems.FileObject;
@@ -65,9 +69,7 @@ public class CompiledModelParserV4 extends CompiledModelParser {
     private static final Logger LOGGER = Logger.getLogger(CompiledModelParserV4.class.getName());
 
     private final Object lock = new Object();
-    private DocumentSnapshot lastSnapshot;
-    private CompiledFileModelV4 lastResult;
-    private Throwable lastException;
+    private final Object cacheLock = new Object();
 
     @Override
     protected CompiledModelV4 parseImpl(ParserTaskManager taskManager, ParseContext context, final DocumentSnapshot snapshot)
@@ -75,53 +77,202 @@ public class CompiledModelParserV4 extends CompiledModelParser {
 
         Parameters.notNull("snapshot", snapshot);
 
-        synchronized (lock) {
-            if (snapshot.equals(lastSnapshot)) {
-                if (lastException != null) {
-                    throw new ExecutionException("An unexpected error occurred.", lastException);
+        IdenticalTextResultCache cache = getResultCache(snapshot.getVersionedDocument());
+        synchronized (cache) {
+            if (snapshot.equals(cache.lastSnapshot)) {
+                if (cache.lastException != null) {
+                    throw new ExecutionException("An unexpected error occurred.", cache.lastException);
                 }
 
-                return new CompiledModelV4(snapshot, lastResult);
+                return new CompiledModelV4(snapshot, cache.lastResult);
+            }
+
+            String text = snapshot.getText();
+            FileObject fileObject = snapshot.getVersionedDocument().getFileObject();
+            CompiledFileModelV4 cachedResult = cache.get(text, fileObject);
+            if (cachedResult != null) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.log(Level.FINE, "Reusing the compiled model for identical text in snapshot {0}", new Object[] { snapshot });
+                }
+
+                cache.lastSnapshot = snapshot;
+                return new CompiledModelV4(snapshot, cachedResult);
             }
 
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.log(Level.FINE, "Reparsing snapshot {0}", new Object[] { snapshot });
             }
 
-            try {
-                final List<SyntaxError> syntaxErrors = new ArrayList<>();
-                final Tool tool = new CustomTool(snapshot);
-                tool.errMgr = new CustomErrorManager(tool);
-                tool.addListener(new ErrorListener(snapshot, tool, syntaxErrors));
-                tool.libDirectory = new File(snapshot.getVersionedDocument().getFileObject().getPath()).getParent();
-                GrammarRootAST root = tool.parseGrammarFromString(snapshot.getText().toString());
-
-                Grammar grammar = null;
-                CommonToken[] tokens = null;
-                if (root != null) {
-                    ANTLRStringStream inputStream = (ANTLRStringStream)root.token.getInputStream();
-                    inputStream.name = snapshot.getVersionedDocument().getFileObject().getPath();
-
-                    grammar = tool.createGrammar(root);
-                    grammar.fileName = snapshot.getVersionedDocument().getFileObject().getNameExt();
-                    tool.process(grammar, false);
-
-                    CommonTokenStream tokenStream = (CommonTokenStream)root.tokenStream;
-                    List<? extends Token> tokenList = tokenStream.getTokens();
-                    tokens = tokenList.toArray(new CommonToken[0]);
+            // the Tool is not safe to run concurrently, so compilations are serialized
+            synchronized (lock) {
+                return compile(cache, snapshot, text, fileObject);
+            }
+        }
+    }
+
+    @NonNull
+    private CompiledModelV4 compile(@NonNull IdenticalTextResultCache cache, @NonNull DocumentSnapshot snapshot, @NonNull String text, @NonNull FileObject fileObject)
+        throws ExecutionException {
+
+        try {
+            final List<SyntaxError> syntaxErrors = new ArrayList<>();
+            final Tool tool = new CustomTool(snapshot);
+            tool.errMgr = new CustomErrorManager(tool);
+            tool.addListener(new ErrorListener(snapshot, tool, syntaxErrors));
+            tool.libDirectory = new File(fileObject.getPath()).getParent();
+            GrammarRootAST root = tool.parseGrammarFromString(text);
+
+            Grammar grammar = null;
+            CommonToken[] tokens = null;
+            if (root != null) {
+                ANTLRStringStream inputStream = (ANTLRStringStream)root.token.getInputStream();
+                inputStream.name = fileObject.getPath();
+
+                grammar = tool.createGrammar(root);
+                grammar.fileName = fileObject.getNameExt();
+                tool.process(grammar, false);
+
+                CommonTokenStream tokenStream = (CommonTokenStream)root.tokenStream;
+                List<? extends Token> tokenList = tokenStream.getTokens();
+                tokens = tokenList.toArray(new CommonToken[0]);
+            }
+
+            CompiledFileModelV4 currentResult = new CompiledFileModelV4(grammar, root, syntaxErrors, fileObject, tokens);
+            cache.put(snapshot, text, fileObject, currentResult, getDependencies(fileObject, currentResult));
+            return new CompiledModelV4(snapshot, currentResult);
+        } catch (Exception ex) {
+            cache.fail(snapshot, ex);
+            throw new ExecutionException("An unexpected error occurred.", ex);
+        }
+    }
+
+    @NonNull
+    private IdenticalTextResultCache getResultCache(@NonNull VersionedDocument document) {
+        synchronized (cacheLock) {
+            IdenticalTextResultCache cache = (IdenticalTextResultCache)document.getProperty(IdenticalTextResultCache.class);
+            if (cache == null) {
+                cache = new IdenticalTextResultCache();
+                document.putProperty(IdenticalTextResultCache.class, cache);
+            }
+
+            return cache;
+        }
+    }
+
+    /**
+     * Gets the files which can affect the compiled form of a grammar: the
+     * folder holding it (for imports and token vocabularies which are created
+     * or deleted), the imported grammars, and the sources of its token
+     * vocabulary.
+     */
+    @NonNull
+    private static List<FileStamp> getDependencies(@NonNull FileObject fileObject, @NonNull CompiledFileModelV4 result) {
+        List<FileStamp> dependencies = new ArrayList<>();
+        FileObject folder = fileObject.getParent();
+        if (folder != null) {
+            dependencies.add(new FileStamp(folder, false));
+        }
+
+        for (CompiledFileModelV4 importedResult : result.getImportedGrammarResults()) {
+            if (importedResult.getFileObject() != null) {
+                dependencies.add(new FileStamp(importedResult.getFileObject(), false));
+            }
+        }
+
+        Grammar grammar = result.getGrammar();
+        String vocabName = grammar != null ? grammar.getOptionString("tokenVocab") : null;
+        if (folder != null && vocabName != null && !vocabName.isEmpty()) {
+            for (String extension : new String[] { "tokens", "g4", "g3", "g" }) {
+                FileObject vocabFile = folder.getFileObject(vocabName, extension);
+                if (vocabFile != null) {
+                    // the vocabulary is read from the current snapshot of a grammar source
+                    dependencies.add(new FileStamp(vocabFile, !"tokens".equals(extension)));
                 }
+            }
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Holds the most recent compilation of a single document, which is reused
+     * only for a snapshot with exactly the same text, as long as none of the
+     * files the compilation read has changed. This avoids recompiling when a
+     * new snapshot is created without an edit, such as when the document is
+     * saved or reopened. Any edit compiles the whole grammar again, since the
+     * tool builds the ATN and checks the grammar as a whole.
+     */
+    private static final class IdenticalTextResultCache {
+        private DocumentSnapshot lastSnapshot;
+        private String lastText;
+        private FileObject lastFileObject;
+        private CompiledFileModelV4 lastResult;
+        private Throwable lastException;
+        private List<FileStamp> dependencies = Collections.emptyList();
+
+        /**
+         * Gets the last result if it was compiled from {@code text}, or
+         * {@code null} otherwise. Since the text is identical, the offsets in
+         * the compiled model still apply.
+         */
+        @CheckForNull
+        public CompiledFileModelV4 get(String text, FileObject fileObject) {
+            if (lastResult == null || lastException != null || fileObject != lastFileObject || !text.equals(lastText)) {
+                return null;
+            }
 
-                CompiledFileModelV4 currentResult = new CompiledFileModelV4(grammar, root, syntaxErrors, snapshot.getVersionedDocument().getFileObject(), tokens);
-                lastSnapshot = snapshot;
-                lastResult = currentResult;
-                lastException = null;
-                return new CompiledModelV4(snapshot, currentResult);
-            } catch (Exception ex) {
-                lastSnapshot = snapshot;
-                lastResult = null;
-                lastException = ex;
-                throw new ExecutionException("An unexpected error occurred.", ex);
+            for (FileStamp dependency : dependencies) {
+                if (!dependency.isCurrent()) {
+                    if (LOGGER.isLoggable(Level.FINE)) {
+                        LOGGER.log(Level.FINE, "Dependency {0} changed", new Object[] { dependency.fileObject });
+                    }
+
+                    return null;
+                }
             }
+
+            return lastResult;
+        }
+
+        public void put(DocumentSnapshot snapshot, String text, FileObject fileObject, CompiledFileModelV4 result, List<FileStamp> dependencies) {
+            this.lastSnapshot = snapshot;
+            this.lastText = text;
+            this.lastFileObject = fileObject;
+            this.lastResult = result;
+            this.lastException = null;
+            this.dependencies = dependencies;
+        }
+
+        public void fail(DocumentSnapshot snapshot, Throwable exception) {
+            this.lastSnapshot = snapshot;
+            this.lastText = null;
+            this.lastFileObject = null;
+            this.lastResult = null;
+            this.lastException = exception;
+            this.dependencies = Collections.emptyList();
+        }
+    }
+
+    /**
+     * Records the state of a file a compilation depended on.
+     */
+    private static final class FileStamp {
+        private final FileObject fileObject;
+        private final long lastModified;
+        private final DocumentSnapshot snapshot;
+
+        public FileStamp(@NonNull FileObject fileObject, boolean trackSnapshot) {
+            this.fileObject = fileObject;
+            this.lastModified = fileObject.lastModified().getTime();
+            this.snapshot = trackSnapshot ? VersionedDocumentUtilities.getVersionedDocument(fileObject).getCurrentSnapshot() : null;
+        }
+
+        public boolean isCurrent() {
+            if (!fileObject.isValid() || fileObject.lastModified().getTime() != lastModified) {
+                return false;
+            }
+
+            return snapshot == null || snapshot.equals(snapshot.getVersionedDocument().getCurrentSnapshot());
         }
     }
 
@@ -148,6 +299,44 @@ public class CompiledModelParserV4 extends CompiledModelParser {
             return g;
         }
 
+        @Override
+        public Grammar loadImportedGrammar(Grammar g, GrammarAST nameNode) throws IOException {
+            String name = nameNode.getText();
+            File importedFile = null;
+            for (String extension : new String[] { GRAMMAR_EXTENSION, LEGACY_GRAMMAR_EXTENSION }) {
+                importedFile = getImportedGrammarFile(g, name + extension);
+                if (importedFile != null) {
+                    break;
+                }
+            }
+
+            if (importedFile == null) {
+                // let the tool report the missing grammar
+                return super.loadImportedGrammar(g, nameNode);
+            }
+
+            // imported grammars are read from disk, and usually haven't changed
+            String absolutePath = importedFile.getAbsolutePath();
+            ANTLRFileStream input = new ANTLRFileStream(absolutePath, grammarEncoding);
+            String text = input.substring(0, input.size() - 1);
+            GrammarRootAST root = ImportedGrammarCache.get(importedFile, text);
+            if (root == null) {
+                root = parse(g.fileName, input);
+                if (root == null) {
+                    return null;
+                }
+
+                // don't cache a tree whose syntax errors would not be reported again
+                if (!root.hasErrors) {
+                    root = ImportedGrammarCache.put(importedFile, text, root);
+                }
+            }
+
+            Grammar imported = createGrammar(root);
+            imported.fileName = absolutePath;
+            return imported;
+        }
+
     }
 
     public static class CustomErrorManager extends ErrorManager {
@@ -243,7 +432,17 @@ public class CompiledModelParserV4 extends CompiledModelParser {
         public Map<String, Integer> load() {
             File vocabFile = getImportedVocabFile();
             if (vocabFile.isFile()) {
-                return super.load();
+                TokenVocabularyCache.TokenVocabulary vocabulary = TokenVocabularyCache.getVocabulary(vocabFile);
+                // report the same errors as the tool when it reads the file itself
+                if (vocabulary.getReadError() != null) {
+                    g.tool.errMgr.toolError(ErrorType.ERROR_READING_TOKENS_FILE, vocabFile, vocabulary.getReadError());
+                }
+
+                for (TokenVocabularyCache.MalformedLine line : vocabulary.getMalformedLines()) {
+                    g.tool.errMgr.toolError(ErrorType.TOKENS_FILE_SYNTAX_ERROR, vocabFile.getName(), " bad token def: " + line.getText(), line.getLineNumber());
+                }
+
+                return vocabulary.getTokens();
             }
 
             String vocabName = g.getOptionString("tokenVocab");
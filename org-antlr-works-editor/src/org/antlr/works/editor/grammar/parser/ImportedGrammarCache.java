@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.tree.CommonTree;
+import org.antlr.v4.tool.ast.GrammarRootAST;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * A shared cache of the syntax trees of imported grammars, so a grammar which
+ * imports several others does not read and parse each of them again on every
+ * change.
+ *
+ * <p>An entry is validated against the content of its file, since the size
+ * and modification time of a file can stay the same across an edit. The least
+ * recently used entry is dropped when the cache is full. The tool transforms
+ * the trees it processes, including the types and text of their tokens, so
+ * the cached trees are never handed out; callers always receive a copy with
+ * its own tokens and token stream.</p>
+ *
+ * @author Sam Harwell
+ */
+final class ImportedGrammarCache {
+
+    // -J-Dorg.antlr.works.editor.grammar.parser.ImportedGrammarCache.capacity=32
+    private static final int CAPACITY = Math.max(1, Integer.getInteger(ImportedGrammarCache.class.getName() + ".capacity", 32));
+
+    private static final Map<File, Entry> entries = new LinkedHashMap<File, Entry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Entry> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private ImportedGrammarCache() {
+    }
+
+    /**
+     * Gets a copy of the cached tree for {@code file}, or {@code null} if the
+     * file is not cached or {@code text}, its current content, differs from
+     * the content it was parsed from.
+     */
+    @CheckForNull
+    public static GrammarRootAST get(@NonNull File file, @NonNull String text) {
+        Parameters.notNull("file", file);
+        Parameters.notNull("text", text);
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(file.getAbsoluteFile());
+        }
+
+        if (entry == null || entry.contentHash != text.hashCode() || !entry.text.equals(text)) {
+            return null;
+        }
+
+        return copy(entry.root);
+    }
+
+    /**
+     * Caches the tree parsed from {@code text}, the content of {@code file},
+     * and returns a copy of it for the caller to use.
+     */
+    @NonNull
+    public static GrammarRootAST put(@NonNull File file, @NonNull String text, @NonNull GrammarRootAST root) {
+        Parameters.notNull("file", file);
+        Parameters.notNull("text", text);
+        Parameters.notNull("root", root);
+
+        synchronized (entries) {
+            entries.put(file.getAbsoluteFile(), new Entry(text, root));
+        }
+
+        return copy(root);
+    }
+
+    /**
+     * Copies {@code root} along with its tokens. Each node of the copy refers
+     * to the copy of its token in the copied token stream, or to its own copy
+     * of a token the parser created for the tree.
+     */
+    private static GrammarRootAST copy(GrammarRootAST root) {
+        List<Token> tokens = new ArrayList<>();
+        if (root.tokenStream != null) {
+            for (int i = 0; i < root.tokenStream.size(); i++) {
+                tokens.add(new CommonToken(root.tokenStream.get(i)));
+            }
+        }
+
+        GrammarRootAST result = (GrammarRootAST)root.dupTree();
+        result.grammarType = root.grammarType;
+        result.hasErrors = root.hasErrors;
+        result.tokenStream = root.tokenStream != null ? copy(root.tokenStream, tokens) : null;
+        copyTokens(result, root.tokenStream, tokens);
+        return result;
+    }
+
+    private static TokenStream copy(final TokenStream tokenStream, final List<Token> tokens) {
+        CommonTokenStream result = new CommonTokenStream(new TokenSource() {
+            private int index;
+
+            @Override
+            public Token nextToken() {
+                if (index < tokens.size()) {
+                    return tokens.get(index++);
+                }
+
+                return new CommonToken(Token.EOF);
+            }
+
+            @Override
+            public String getSourceName() {
+                return tokenStream.getSourceName();
+            }
+        });
+
+        result.fill();
+        return result;
+    }
+
+    private static void copyTokens(CommonTree node, TokenStream tokenStream, List<Token> tokens) {
+        Token token = node.token;
+        if (token != null) {
+            int index = token.getTokenIndex();
+            if (index >= 0 && index < tokens.size() && tokenStream.get(index) == token) {
+                node.token = tokens.get(index);
+            } else {
+                node.token = new CommonToken(token);
+            }
+        }
+
+        for (int i = 0; i < node.getChildCount(); i++) {
+            copyTokens((CommonTree)node.getChild(i), tokenStream, tokens);
+        }
+    }
+
+    private static final class Entry {
+        private final String text;
+        private final int contentHash;
+        private final GrammarRootAST root;
+
+        public Entry(String text, GrammarRootAST root) {
+            this.text = text;
+            this.contentHash = text.hashCode();
+            this.root = root;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * A shared cache of the token vocabularies read from {@code .tokens} files.
+ * Each entry is validated against the size and modification time of its file,
+ * so a file which changes on disk is read again by the next request. The least
+ * recently used entry is dropped when the cache is full.
+ *
+ * @author Sam Harwell
+ */
+public final class TokenVocabularyCache {
+    // -J-Dorg.antlr.works.editor.grammar.parser.TokenVocabularyCache.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(TokenVocabularyCache.class.getName());
+
+    // -J-Dorg.antlr.works.editor.grammar.parser.TokenVocabularyCache.capacity=32
+    private static final int CAPACITY = Math.max(1, Integer.getInteger(TokenVocabularyCache.class.getName() + ".capacity", 32));
+
+    /**
+     * The pattern the tool uses to read a token definition.
+     */
+    private static final Pattern TOKEN_DEF_PATTERN = Pattern.compile("([^\n]+?)[ \\t]*?=[ \\t]*?([0-9]+)");
+
+    private static final Map<File, TokenVocabulary> entries = new LinkedHashMap<File, TokenVocabulary>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, TokenVocabulary> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private TokenVocabularyCache() {
+    }
+
+    /**
+     * Gets the tokens defined in a {@code .tokens} file, as a map from the
+     * token name or literal to the token type.
+     *
+     * @return An unmodifiable map, which is empty if the file could not be
+     * read.
+     */
+    @NonNull
+    public static Map<String, Integer> getTokens(@NonNull File file) {
+        return getVocabulary(file).getTokens();
+    }
+
+    /**
+     * Gets the vocabulary read from a {@code .tokens} file, along with the
+     * problems found while reading it.
+     */
+    @NonNull
+    public static TokenVocabulary getVocabulary(@NonNull File file) {
+        Parameters.notNull("file", file);
+
+        File key = file.getAbsoluteFile();
+        long lastModified = key.lastModified();
+        long length = key.length();
+        synchronized (entries) {
+            TokenVocabulary entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+                return entry;
+            }
+        }
+
+        TokenVocabulary vocabulary = readVocabulary(key, lastModified, length);
+        synchronized (entries) {
+            if (vocabulary.getReadError() == null) {
+                entries.put(key, vocabulary);
+            } else {
+                entries.remove(key);
+            }
+        }
+
+        return vocabulary;
+    }
+
+    private static TokenVocabulary readVocabulary(File file, long lastModified, long length) {
+        LOGGER.log(Level.FINE, "Reading token vocabulary {0}", file);
+        Map<String, Integer> tokens = new LinkedHashMap<>();
+        List<MalformedLine> malformedLines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"))) { // NOI18N
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+
+                // each line has the form NAME=TYPE or 'literal'=TYPE
+                Matcher matcher = TOKEN_DEF_PATTERN.matcher(line);
+                if (!matcher.find()) {
+                    if (!line.isEmpty()) {
+                        malformedLines.add(new MalformedLine(lineNumber, line));
+                    }
+
+                    continue;
+                }
+
+                try {
+                    tokens.put(matcher.group(1), Integer.parseInt(matcher.group(2)));
+                } catch (NumberFormatException ex) {
+                    malformedLines.add(new MalformedLine(lineNumber, line));
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Failed to read token vocabulary " + file, ex);
+            return new TokenVocabulary(lastModified, length, Collections.<String, Integer>emptyMap(), Collections.<MalformedLine>emptyList(), ex);
+        }
+
+        return new TokenVocabulary(lastModified, length, Collections.unmodifiableMap(tokens), Collections.unmodifiableList(malformedLines), null);
+    }
+
+    /**
+     * The tokens read from a {@code .tokens} file.
+     */
+    public static final class TokenVocabulary {
+        private final long lastModified;
+        private final long length;
+        private final Map<String, Integer> tokens;
+        private final List<MalformedLine> malformedLines;
+        private final IOException readError;
+
+        private TokenVocabulary(long lastModified, long length, Map<String, Integer> tokens, List<MalformedLine> malformedLines, IOException readError) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.tokens = tokens;
+            this.malformedLines = malformedLines;
+            this.readError = readError;
+        }
+
+        /**
+         * Gets a map from the token name or literal to the token type.
+         */
+        @NonNull
+        public Map<String, Integer> getTokens() {
+            return tokens;
+        }
+
+        /**
+         * Gets the non-empty lines which are not valid token definitions.
+         */
+        @NonNull
+        public List<MalformedLine> getMalformedLines() {
+            return malformedLines;
+        }
+
+        /**
+         * Gets the exception thrown while reading the file, if any.
+         */
+        @CheckForNull
+        public IOException getReadError() {
+            return readError;
+        }
+    }
+
+    /**
+     * A line of a {@code .tokens} file which is not a valid token definition.
+     */
+    public static final class MalformedLine {
+        private final int lineNumber;
+        private final String text;
+
+        private MalformedLine(int lineNumber, String text) {
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        @NonNull
+        public String getText() {
+            return text;
+        }
+    }
+}
@@ -27,15 +27,23 @@ import org.openide.util.Parameters;
  */
 public class AnnotatedParseTree {
 
-    private final ObjectDecorator<Tree> treeDecorator = new ObjectDecorator<>();
-    private final ObjectDecorator<Token> tokenDecorator = new ObjectDecorator<>();
+    private final ObjectDecorator<Tree> treeDecorator;
+    private final ObjectDecorator<Token> tokenDecorator;
 
     private ParserRuleContext parseTree;
 
     public AnnotatedParseTree(@NonNull ParserRuleContext parseTree) {
+        this(parseTree, new ObjectDecorator<Tree>(), new ObjectDecorator<Token>());
+    }
+
+    public AnnotatedParseTree(@NonNull ParserRuleContext parseTree, @NonNull ObjectDecorator<Tree> treeDecorator, @NonNull ObjectDecorator<Token> tokenDecorator) {
         Parameters.notNull("parseTree", parseTree);
+        Parameters.notNull("treeDecorator", treeDecorator);
+        Parameters.notNull("tokenDecorator", tokenDecorator);
 
         this.parseTree = parseTree;
+        this.treeDecorator = treeDecorator;
+        this.tokenDecorator = tokenDecorator;
     }
 
     @NonNull
@@ -8,6 +8,7 @@
  */
 package org.antlr.works.editor.grammar.semantics;
 
+import org.antlr.netbeans.semantics.ObjectDecorator;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.Tree;
@@ -23,6 +24,10 @@ public class GrammarAnnotatedParseTree extends AnnotatedParseTree {
         super(parseTree);
     }
 
+    public GrammarAnnotatedParseTree(@NonNull ParserRuleContext parseTree, @NonNull ObjectDecorator<Tree> treeDecorator, @NonNull ObjectDecorator<Token> tokenDecorator) {
+        super(parseTree, treeDecorator, tokenDecorator);
+    }
+
 //    @NonNull
 //    public CodeElementReference getTarget(ParserRuleContext<Token> parseTree) {
 //        Object property = getAnnotations().getProperty(parseTree, AlloyAnnotations.PROP_ELEMENT_REFERENCE);
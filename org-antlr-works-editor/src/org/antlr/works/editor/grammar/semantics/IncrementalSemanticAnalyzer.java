@@ -0,0 +1,603 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.semantics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.antlr.netbeans.semantics.ObjectDecorator;
+import org.antlr.netbeans.semantics.ObjectProperty;
+import org.antlr.v4.runtime.Dependents;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.RuleDependencies;
+import org.antlr.v4.runtime.RuleDependency;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.Tree;
+import org.antlr.works.editor.grammar.experimental.GrammarParser;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.GrammarSpecContext;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.RulesContext;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+
+/**
+ * Runs the {@link SemanticAnalyzerListener} over the reference parse trees of
+ * one document, reusing the analysis of the parts of the grammar which did not
+ * change since the previous tree.
+ * <p>
+ * The grammar is divided into <em>units</em>: each {@code ruleSpec} of the
+ * rules, and each other child of the {@code grammarSpec}. The analysis of a
+ * unit holds the node types the listener assigned in it, along with the names
+ * it declares and references. Analyses are keyed by the subtree of the unit.
+ * The reference parse tree shares the subtree of a rule with the previous tree
+ * for as long as the text of the rule does not change, so the subtree identity
+ * serves as the version of the rule, and no text is read or hashed to find the
+ * units which changed. The token count of the span of a unit is recorded with
+ * its analysis and checked before the analysis is reused.
+ * <p>
+ * The declarations and references of every unit are indexed by name. Only the
+ * names declared or referenced by the units which were added or removed are
+ * resolved again, so a change to a declaration updates the targets of the
+ * references to it without visiting the rules holding those references.
+ * <p>
+ * The decorators of the returned {@link GrammarAnnotatedParseTree} read the
+ * properties of a node from the analysis of its unit, and the properties of a
+ * reference from the resolved names, instead of copying every annotation into
+ * new maps. They are read-only. Like the reference parse tree, the annotations
+ * locate the unit of a token by its token index, so they are only reliable
+ * for the positions of the tree which was analyzed most recently.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @author Sam Harwell
+ */
+final class IncrementalSemanticAnalyzer {
+    // -J-Dorg.antlr.works.editor.grammar.semantics.IncrementalSemanticAnalyzer.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(IncrementalSemanticAnalyzer.class.getName());
+
+    /**
+     * The analysis of each unit of the tree which was analyzed most recently.
+     */
+    private Map<ParseTree, UnitAnalysis> analyses = new IdentityHashMap<>();
+
+    private final Map<SymbolKind, Map<String, Set<UnitAnalysis>>> declarations = new EnumMap<>(SymbolKind.class);
+    private final Map<SymbolKind, Map<String, Set<UnitAnalysis>>> references = new EnumMap<>(SymbolKind.class);
+
+    /**
+     * The resolved names of the tree which was analyzed most recently. These
+     * maps are shared with the annotations of that tree, so they are replaced
+     * rather than modified.
+     */
+    private final Map<SymbolKind, Map<String, Resolution>> resolutions = new EnumMap<>(SymbolKind.class);
+
+    public IncrementalSemanticAnalyzer() {
+        for (SymbolKind kind : SymbolKind.values()) {
+            declarations.put(kind, new HashMap<String, Set<UnitAnalysis>>());
+            references.put(kind, new HashMap<String, Set<UnitAnalysis>>());
+            resolutions.put(kind, Collections.<String, Resolution>emptyMap());
+        }
+    }
+
+    /**
+     * Analyzes {@code parseTree}, reusing the analysis of each unit which is
+     * shared with the tree analyzed before it.
+     *
+     * @param parseTree The reference parse tree to analyze.
+     * @return The annotated parse tree.
+     */
+    @NonNull
+    public GrammarAnnotatedParseTree analyze(@NonNull GrammarSpecContext parseTree) {
+        long startTime = System.nanoTime();
+
+        List<ParseTree> trees = getUnits(parseTree);
+        UnitAnalysis[] units = new UnitAnalysis[trees.size()];
+        Map<ParseTree, UnitAnalysis> currentAnalyses = new IdentityHashMap<>();
+        List<UnitAnalysis> addedUnits = new ArrayList<>();
+        for (int i = 0; i < units.length; i++) {
+            ParseTree tree = trees.get(i);
+            UnitAnalysis unit = analyses.get(tree);
+            if (unit == null || unit.span != getSpan(tree)) {
+                unit = new UnitAnalysis(tree);
+                addedUnits.add(unit);
+            }
+
+            units[i] = unit;
+            currentAnalyses.put(tree, unit);
+        }
+
+        Map<SymbolKind, Set<String>> changedNames = new EnumMap<>(SymbolKind.class);
+        for (SymbolKind kind : SymbolKind.values()) {
+            changedNames.put(kind, new HashSet<String>());
+        }
+
+        int removedCount = 0;
+        for (UnitAnalysis unit : analyses.values()) {
+            if (currentAnalyses.get(unit.tree) != unit) {
+                unregister(unit, changedNames);
+                removedCount++;
+            }
+        }
+
+        for (UnitAnalysis unit : addedUnits) {
+            register(unit, changedNames);
+        }
+
+        for (SymbolKind kind : SymbolKind.values()) {
+            Set<String> names = changedNames.get(kind);
+            if (names.isEmpty()) {
+                continue;
+            }
+
+            Map<String, Resolution> updated = new HashMap<>(resolutions.get(kind));
+            for (String name : names) {
+                Resolution resolution = resolve(kind, name);
+                if (resolution != null) {
+                    updated.put(name, resolution);
+                } else {
+                    updated.remove(name);
+                }
+            }
+
+            resolutions.put(kind, updated);
+        }
+
+        analyses = currentAnalyses;
+
+        Annotations annotations = new Annotations(units, new EnumMap<SymbolKind, Map<String, Resolution>>(resolutions));
+        GrammarAnnotatedParseTree result = new GrammarAnnotatedParseTree(parseTree,
+            new ObjectDecorator<Tree>(new TreeAnnotationMap(annotations)),
+            new ObjectDecorator<Token>(new TokenAnnotationMap(annotations)));
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Analyzed {0} of {1} units ({2} removed) in {3}ms.", new Object[] { addedUnits.size(), units.length, removedCount, (System.nanoTime() - startTime) / 1000000.0 });
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the units of {@code parseTree} in document order.
+     */
+    @RuleDependencies({
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_grammarSpec, version=0, dependents=Dependents.SELF),
+        @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_rules, version=0, dependents=Dependents.SELF),
+    })
+    private static List<ParseTree> getUnits(GrammarSpecContext parseTree) {
+        List<ParseTree> units = new ArrayList<>();
+        if (parseTree.children == null) {
+            return units;
+        }
+
+        for (ParseTree child : parseTree.children) {
+            if (child instanceof RulesContext) {
+                RulesContext rules = (RulesContext)child;
+                if (rules.children != null) {
+                    units.addAll(rules.children);
+                }
+            } else {
+                units.add(child);
+            }
+        }
+
+        return units;
+    }
+
+    private void register(UnitAnalysis unit, Map<SymbolKind, Set<String>> changedNames) {
+        for (SymbolKind kind : SymbolKind.values()) {
+            for (String name : unit.declarations.get(kind).keySet()) {
+                add(declarations.get(kind), name, unit);
+                changedNames.get(kind).add(name);
+            }
+
+            for (String name : unit.references.get(kind).keySet()) {
+                add(references.get(kind), name, unit);
+                changedNames.get(kind).add(name);
+            }
+        }
+    }
+
+    private void unregister(UnitAnalysis unit, Map<SymbolKind, Set<String>> changedNames) {
+        for (SymbolKind kind : SymbolKind.values()) {
+            for (String name : unit.declarations.get(kind).keySet()) {
+                remove(declarations.get(kind), name, unit);
+                changedNames.get(kind).add(name);
+            }
+
+            for (String name : unit.references.get(kind).keySet()) {
+                remove(references.get(kind), name, unit);
+                changedNames.get(kind).add(name);
+            }
+        }
+    }
+
+    private static void add(Map<String, Set<UnitAnalysis>> index, String name, UnitAnalysis unit) {
+        Set<UnitAnalysis> units = index.get(name);
+        if (units == null) {
+            units = new HashSet<>();
+            index.put(name, units);
+        }
+
+        units.add(unit);
+    }
+
+    private static void remove(Map<String, Set<UnitAnalysis>> index, String name, UnitAnalysis unit) {
+        Set<UnitAnalysis> units = index.get(name);
+        if (units != null && units.remove(unit) && units.isEmpty()) {
+            index.remove(name);
+        }
+    }
+
+    /**
+     * Resolves a name the same way as
+     * {@link SemanticAnalyzerListener#exitGrammarSpec}. The last declaration
+     * of the name in the document is its target. When a rule or token name is
+     * not declared, its first reference which may be an implicit definition
+     * is the target instead.
+     */
+    @CheckForNull
+    private Resolution resolve(SymbolKind kind, String name) {
+        Token target = null;
+        Set<UnitAnalysis> declaringUnits = declarations.get(kind).get(name);
+        if (declaringUnits != null) {
+            for (UnitAnalysis unit : declaringUnits) {
+                Token declaration = unit.declarations.get(kind).get(name);
+                if (target == null || declaration.getTokenIndex() > target.getTokenIndex()) {
+                    target = declaration;
+                }
+            }
+
+            return new Resolution(target, false);
+        }
+
+        Set<UnitAnalysis> referencingUnits = references.get(kind).get(name);
+        if (referencingUnits == null || !kind.allowsImplicitDefinitions()) {
+            return null;
+        }
+
+        for (UnitAnalysis unit : referencingUnits) {
+            for (Token reference : unit.references.get(kind).get(name)) {
+                if (kind.isImplicitDefinition(reference)) {
+                    if (target == null || reference.getTokenIndex() < target.getTokenIndex()) {
+                        target = reference;
+                    }
+
+                    break;
+                }
+            }
+        }
+
+        return target != null ? new Resolution(target, true) : null;
+    }
+
+    private static int getStartTokenIndex(ParseTree tree) {
+        if (tree instanceof TerminalNode) {
+            return ((TerminalNode)tree).getSymbol().getTokenIndex();
+        }
+
+        Token start = ((ParserRuleContext)tree).start;
+        return start != null ? start.getTokenIndex() : -1;
+    }
+
+    /**
+     * Gets the number of tokens after the first token of {@code tree}.
+     */
+    private static int getSpan(ParseTree tree) {
+        if (tree instanceof TerminalNode) {
+            return 0;
+        }
+
+        ParserRuleContext context = (ParserRuleContext)tree;
+        if (context.start == null || context.stop == null) {
+            return -1;
+        }
+
+        return context.stop.getTokenIndex() - context.start.getTokenIndex();
+    }
+
+    private enum SymbolKind {
+        RULE,
+        TOKEN,
+        CHANNEL,
+        MODE;
+
+        public boolean allowsImplicitDefinitions() {
+            return this == RULE || this == TOKEN;
+        }
+
+        /**
+         * Determines whether an undeclared reference of this kind defines the
+         * name it references.
+         */
+        public boolean isImplicitDefinition(Token reference) {
+            switch (this) {
+            case RULE:
+                return reference.getType() == GrammarParser.RULE_REF || reference.getType() == GrammarParser.TOKEN_REF;
+
+            case TOKEN:
+                return reference.getType() == GrammarParser.STRING_LITERAL || reference.getType() == GrammarParser.TOKEN_REF;
+
+            default:
+                return false;
+            }
+        }
+    }
+
+    private static final class Resolution {
+        public final Token target;
+        /**
+         * {@code true} if {@link #target} is the first reference to a name
+         * which is not declared.
+         */
+        public final boolean implicit;
+
+        public Resolution(Token target, boolean implicit) {
+            this.target = target;
+            this.implicit = implicit;
+        }
+    }
+
+    /**
+     * The results of walking one unit with a {@link SemanticAnalyzerListener}.
+     * Instances are not modified after they are created.
+     */
+    private static final class UnitAnalysis {
+        public final ParseTree tree;
+        public final int span;
+        public final ObjectDecorator<Tree> treeDecorator = new ObjectDecorator<>();
+        public final ObjectDecorator<Token> tokenDecorator = new ObjectDecorator<>();
+        /**
+         * The last declaration of each name in the unit.
+         */
+        public final Map<SymbolKind, Map<String, Token>> declarations = new EnumMap<>(SymbolKind.class);
+        /**
+         * The references to each name in the unit, in document order.
+         */
+        public final Map<SymbolKind, Map<String, List<Token>>> references = new EnumMap<>(SymbolKind.class);
+        public final Map<Token, SymbolKind> referenceKinds = new IdentityHashMap<>();
+
+        public UnitAnalysis(ParseTree tree) {
+            this.tree = tree;
+            this.span = getSpan(tree);
+
+            SemanticAnalyzerListener listener = new SemanticAnalyzerListener(treeDecorator, tokenDecorator);
+            ParseTreeWalker.DEFAULT.walk(listener, tree);
+
+            declarations.put(SymbolKind.RULE, listener.getDeclaredRules());
+            declarations.put(SymbolKind.TOKEN, listener.getDeclaredTokens());
+            declarations.put(SymbolKind.CHANNEL, listener.getDeclaredChannels());
+            declarations.put(SymbolKind.MODE, listener.getDeclaredModes());
+            addReferences(SymbolKind.RULE, listener.getUnresolvedRuleReferences());
+            addReferences(SymbolKind.TOKEN, listener.getUnresolvedTokenReferences());
+            addReferences(SymbolKind.CHANNEL, listener.getUnresolvedChannelReferences());
+            addReferences(SymbolKind.MODE, listener.getUnresolvedModeReferences());
+        }
+
+        private void addReferences(SymbolKind kind, List<Token> tokens) {
+            Map<String, List<Token>> names = new HashMap<>();
+            for (Token token : tokens) {
+                String text = token.getText();
+                if (text == null || text.isEmpty()) {
+                    continue;
+                }
+
+                List<Token> nameReferences = names.get(text);
+                if (nameReferences == null) {
+                    nameReferences = new ArrayList<>();
+                    names.put(text, nameReferences);
+                }
+
+                nameReferences.add(token);
+                referenceKinds.put(token, kind);
+            }
+
+            references.put(kind, names);
+        }
+    }
+
+    /**
+     * The annotations of one analyzed tree.
+     */
+    private static final class Annotations {
+        /**
+         * The units of the tree, in document order.
+         */
+        private final UnitAnalysis[] units;
+        private final Map<SymbolKind, Map<String, Resolution>> resolutions;
+
+        public Annotations(UnitAnalysis[] units, Map<SymbolKind, Map<String, Resolution>> resolutions) {
+            this.units = units;
+            this.resolutions = resolutions;
+        }
+
+        @CheckForNull
+        public Map<ObjectProperty<?>, Object> getTreeProperties(Tree tree) {
+            int tokenIndex;
+            if (tree instanceof ParserRuleContext) {
+                Token start = ((ParserRuleContext)tree).start;
+                if (start == null) {
+                    return null;
+                }
+
+                tokenIndex = start.getTokenIndex();
+            } else if (tree instanceof TerminalNode) {
+                tokenIndex = ((TerminalNode)tree).getSymbol().getTokenIndex();
+            } else {
+                return null;
+            }
+
+            UnitAnalysis unit = findUnit(tokenIndex);
+            if (unit == null) {
+                return null;
+            }
+
+            @SuppressWarnings("unchecked")
+            Map<ObjectProperty<?>, Object> properties = (Map<ObjectProperty<?>, Object>)unit.treeDecorator.getProperties().get(tree);
+            return properties;
+        }
+
+        @CheckForNull
+        public Map<ObjectProperty<?>, Object> getTokenProperties(Token token) {
+            UnitAnalysis unit = null;
+            if (token.getTokenIndex() >= 0) {
+                unit = findUnit(token.getTokenIndex());
+            } else {
+                // tokens inserted during error recovery do not have an index
+                for (UnitAnalysis candidate : units) {
+                    if (candidate.referenceKinds.containsKey(token) || candidate.tokenDecorator.getProperties().containsKey(token)) {
+                        unit = candidate;
+                        break;
+                    }
+                }
+            }
+
+            return unit != null ? getTokenProperties(unit, token) : null;
+        }
+
+        @CheckForNull
+        public Map<ObjectProperty<?>, Object> getTokenProperties(UnitAnalysis unit, Token token) {
+            @SuppressWarnings("unchecked")
+            Map<ObjectProperty<?>, Object> properties = (Map<ObjectProperty<?>, Object>)unit.tokenDecorator.getProperties().get(token);
+            SymbolKind kind = unit.referenceKinds.get(token);
+            if (kind == null) {
+                return properties;
+            }
+
+            Resolution resolution = resolutions.get(kind).get(token.getText());
+            if (resolution == null) {
+                return properties;
+            }
+
+            if (resolution.implicit
+                && !kind.isImplicitDefinition(token)
+                && token.getTokenIndex() < resolution.target.getTokenIndex()) {
+                // the listener skips this reference, since it is not declared
+                // when the reference is resolved
+                return properties;
+            }
+
+            Map<ObjectProperty<?>, Object> result = properties != null ? new HashMap<ObjectProperty<?>, Object>(properties) : new HashMap<ObjectProperty<?>, Object>();
+            result.put(GrammarTreeProperties.PROP_TARGET, resolution.target);
+            if (resolution.implicit) {
+                if (kind == SymbolKind.RULE) {
+                    result.put(GrammarTreeProperties.PROP_MISSING_DEF, true);
+                } else if (resolution.target == token) {
+                    result.put(GrammarTreeProperties.PROP_IMPLICIT_DEF, true);
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Gets the unit holding the token at {@code tokenIndex}.
+         */
+        @CheckForNull
+        private UnitAnalysis findUnit(int tokenIndex) {
+            int low = 0;
+            int high = units.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (getStartTokenIndex(units[mid].tree) <= tokenIndex) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low > 0 ? units[low - 1] : null;
+        }
+    }
+
+    /**
+     * The read-only tree properties of an analyzed tree. Looking up a tree is
+     * a search for its unit; iterating the map visits every unit.
+     */
+    private static final class TreeAnnotationMap extends AbstractMap<Tree, Map<ObjectProperty<?>, Object>> {
+        private final Annotations annotations;
+
+        public TreeAnnotationMap(Annotations annotations) {
+            this.annotations = annotations;
+        }
+
+        @Override
+        public Map<ObjectProperty<?>, Object> get(Object key) {
+            return key instanceof Tree ? annotations.getTreeProperties((Tree)key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<Tree, Map<ObjectProperty<?>, Object>>> entrySet() {
+            Map<Tree, Map<ObjectProperty<?>, Object>> result = new LinkedHashMap<>();
+            for (UnitAnalysis unit : annotations.units) {
+                for (Map.Entry<? extends Tree, ? extends Map<? extends ObjectProperty<?>, ? extends Object>> entry : unit.treeDecorator.getProperties().entrySet()) {
+                    result.put(entry.getKey(), Collections.<ObjectProperty<?>, Object>unmodifiableMap(entry.getValue()));
+                }
+            }
+
+            return Collections.unmodifiableMap(result).entrySet();
+        }
+    }
+
+    /**
+     * The read-only token properties of an analyzed tree. Looking up a token
+     * is a search for its unit; iterating the map visits every unit.
+     */
+    private static final class TokenAnnotationMap extends AbstractMap<Token, Map<ObjectProperty<?>, Object>> {
+        private final Annotations annotations;
+
+        public TokenAnnotationMap(Annotations annotations) {
+            this.annotations = annotations;
+        }
+
+        @Override
+        public Map<ObjectProperty<?>, Object> get(Object key) {
+            return key instanceof Token ? annotations.getTokenProperties((Token)key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<Token, Map<ObjectProperty<?>, Object>>> entrySet() {
+            Map<Token, Map<ObjectProperty<?>, Object>> result = new LinkedHashMap<>();
+            for (UnitAnalysis unit : annotations.units) {
+                Set<Token> tokens = new LinkedHashSet<>();
+                tokens.addAll(unit.tokenDecorator.getProperties().keySet());
+                tokens.addAll(unit.referenceKinds.keySet());
+                for (Token token : tokens) {
+                    Map<ObjectProperty<?>, Object> properties = annotations.getTokenProperties(unit, token);
+                    if (properties != null) {
+                        result.put(token, Collections.unmodifiableMap(properties));
+                    }
+                }
+            }
+
+            return Collections.unmodifiableMap(result).entrySet();
+        }
+    }
+}
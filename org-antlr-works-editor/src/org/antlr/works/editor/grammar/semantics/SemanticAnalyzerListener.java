@@ -127,6 +127,38 @@ public class SemanticAnalyzerListener implements GrammarParserListener {
         this.tokenDecorator = tokenDecorator;
     }
 
+    Map<String, Token> getDeclaredRules() {
+        return declaredRules;
+    }
+
+    Map<String, Token> getDeclaredTokens() {
+        return declaredTokens;
+    }
+
+    Map<String, Token> getDeclaredChannels() {
+        return declaredChannels;
+    }
+
+    Map<String, Token> getDeclaredModes() {
+        return declaredModes;
+    }
+
+    List<Token> getUnresolvedRuleReferences() {
+        return unresolvedRuleReferences;
+    }
+
+    List<Token> getUnresolvedTokenReferences() {
+        return unresolvedTokenReferences;
+    }
+
+    List<Token> getUnresolvedChannelReferences() {
+        return unresolvedChannelReferences;
+    }
+
+    List<Token> getUnresolvedModeReferences() {
+        return unresolvedModeReferences;
+    }
+
     @Override
     @RuleDependencies({
         @RuleDependency(recognizer=GrammarParser.class, rule=GrammarParser.RULE_parserRuleSpec, version=0, dependents=Dependents.SELF),
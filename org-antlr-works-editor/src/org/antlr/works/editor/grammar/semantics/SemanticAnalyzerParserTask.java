@@ -34,7 +34,6 @@ import org.antlr.netbeans.parsing.spi.ParserTaskScheduler;
 import org.antlr.v4.runtime.Dependents;
 import org.antlr.v4.runtime.RuleDependencies;
 import org.antlr.v4.runtime.RuleDependency;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.antlr.works.editor.grammar.GrammarEditorKit;
 import org.antlr.works.editor.grammar.GrammarParserDataDefinitions;
 import org.antlr.works.editor.grammar.experimental.GrammarParser;
@@ -59,6 +58,7 @@ public final class SemanticAnalyzerParserTask implements ParserTask {
     private static final Logger LOGGER = Logger.getLogger(SemanticAnalyzerParserTask.class.getName());
 
     private final Object lock = new Object();
+    private final IncrementalSemanticAnalyzer analyzer = new IncrementalSemanticAnalyzer();
 
     private SemanticAnalyzerParserTask() {
     }
@@ -92,9 +92,7 @@ public final class SemanticAnalyzerParserTask implements ParserTask {
 
                 if (referenceParseTree != null) {
                     updateImportedFiles(snapshot.getVersionedDocument(), referenceParseTree);
-                    GrammarAnnotatedParseTree annotatedParseTree = new GrammarAnnotatedParseTree(referenceParseTree);
-                    SemanticAnalyzerListener listener = new SemanticAnalyzerListener(annotatedParseTree.getTreeDecorator(), annotatedParseTree.getTokenDecorator());
-                    ParseTreeWalker.DEFAULT.walk(listener, referenceParseTree);
+                    GrammarAnnotatedParseTree annotatedParseTree = analyzer.analyze(referenceParseTree);
                     parseTreeResult = new BaseParserData<>(context, GrammarParserDataDefinitions.ANNOTATED_PARSE_TREE, snapshot, annotatedParseTree);
                 } else {
                     parseTreeResult = new BaseParserData<>(context, GrammarParserDataDefinitions.ANNOTATED_PARSE_TREE, snapshot, null);
@@ -0,0 +1,105 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.completion;
+
+import java.util.Arrays;
+import java.util.Map;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.works.editor.antlr4.completion.CaretReachedException;
+import org.antlr.works.editor.antlr4.completion.CodeCompletionErrorStrategy;
+import org.antlr.works.editor.antlr4.completion.CodeCompletionTokenSource;
+import org.antlr.works.editor.grammar.experimental.GrammarLexer;
+import org.antlr.works.editor.grammar.experimental.GrammarParser;
+
+/**
+ * Measures the forest parse performed for code completion in a grammar, with
+ * the branches of the first ambiguous decision explored on one thread and in
+ * parallel.
+ * <p>
+ * The caret is placed in the last rule of a synthetic grammar, inside an
+ * alternative which could continue in several ways, so the forest parser has
+ * to explore multiple paths through the whole grammar.
+ * <p>
+ * Usage: {@code GrammarForestParserBenchmark [rules] [iterations]}
+ *
+ * @author Sam Harwell
+ */
+public final class GrammarForestParserBenchmark {
+
+    /**
+     * Holds the result of the parses so they are not optimized away.
+     */
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        String grammar = createGrammar(ruleCount);
+        int caretOffset = grammar.lastIndexOf("CARET");
+        grammar = grammar.substring(0, caretOffset) + grammar.substring(caretOffset + "CARET".length());
+
+        GrammarForestParser sequential = new GrammarForestParser(GrammarParser.RULE_grammarSpec) {
+            @Override
+            protected CodeCompletionGrammarParser createParser(CodeCompletionGrammarParser parser, TokenStream input) {
+                return null;
+            }
+        };
+
+        System.out.format("%d rules, %d characters, %d processors%n", ruleCount, grammar.length(), Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < 2; i++) {
+            measure("sequential", sequential, grammar, caretOffset, iterations);
+            measure("parallel branches", GrammarForestParser.GRAMMAR_SPEC, grammar, caretOffset, iterations);
+        }
+    }
+
+    private static void measure(String name, GrammarForestParser forestParser, String grammar, int caretOffset, int iterations) {
+        long[] times = new long[iterations];
+        int trees = 0;
+        for (int i = 0; i < iterations; i++) {
+            TokenSource tokenSource = new CodeCompletionTokenSource(caretOffset, new GrammarLexer(new ANTLRInputStream(grammar)));
+            CodeCompletionGrammarParser parser = ParserFactory.DEFAULT.getParser(new CommonTokenStream(tokenSource));
+            parser.setBuildParseTree(true);
+            parser.setErrorHandler(new CodeCompletionErrorStrategy());
+
+            long startTime = System.nanoTime();
+            Map<RuleContext, CaretReachedException> parseTrees = forestParser.getParseTrees(parser);
+            times[i] = System.nanoTime() - startTime;
+            trees = parseTrees.size();
+            ParserFactory.DEFAULT.putParser(parser);
+        }
+
+        sink += trees;
+        Arrays.sort(times);
+        System.out.format("%-18s %4d trees   min %8.2fms  median %8.2fms  max %8.2fms%n", name, trees, times[0] / 1e6, times[iterations / 2] / 1e6, times[iterations - 1] / 1e6);
+    }
+
+    private static String createGrammar(int ruleCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("grammar G;\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            builder.append("rule").append(i).append("\n");
+            builder.append("    :   rule").append((i + 1) % ruleCount).append(" ID? ('+' rule").append((i + 3) % ruleCount).append(")*\n");
+            builder.append("    |   '(' rule").append((i + 7) % ruleCount).append(" ')' # Alt").append(i).append("\n");
+            builder.append("    ;\n\n");
+        }
+
+        builder.append("last : rule0 CARET;\n\n");
+        builder.append("ID : [a-zA-Z_]+ ;\n");
+        builder.append("WS : [ \\t\\r\\n]+ -> skip ;\n");
+        return builder.toString();
+    }
+
+    private GrammarForestParserBenchmark() {
+    }
+}
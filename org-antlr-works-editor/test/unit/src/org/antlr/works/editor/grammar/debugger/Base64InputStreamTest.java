@@ -0,0 +1,83 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.debugger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Random;
+import javax.xml.bind.DatatypeConverter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class Base64InputStreamTest {
+
+    @Test
+    public void testPadding() throws IOException {
+        Random random = new Random(0);
+        for (int length = 0; length < 20; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            assertArrayEquals(data, decode(DatatypeConverter.printBase64Binary(data), 1));
+        }
+    }
+
+    @Test
+    public void testLargeData() throws IOException {
+        // larger than the character buffer, with line breaks as written by the debugger
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+        String encoded = DatatypeConverter.printBase64Binary(data).replaceAll("(.{76})", "$1\r\n");
+        assertArrayEquals(data, decode(encoded, 4096));
+        assertArrayEquals(data, decode(encoded, 1));
+    }
+
+    @Test
+    public void testReadAfterEnd() throws IOException {
+        InputStream stream = new Base64InputStream(new StringReader("AQI="));
+        assertEquals(1, stream.read());
+        assertEquals(2, stream.read());
+        assertEquals(-1, stream.read());
+        assertEquals(-1, stream.read(new byte[4], 0, 4));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws IOException {
+        decode("AQID AQ", 16);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidCharacter() throws IOException {
+        decode("AQ*D", 16);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDataAfterPadding() throws IOException {
+        decode("AQ=D", 16);
+    }
+
+    private static byte[] decode(String encoded, int chunkSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream stream = new Base64InputStream(new StringReader(encoded))) {
+            byte[] buffer = new byte[chunkSize];
+            for (int count = stream.read(buffer, 0, chunkSize); count >= 0; count = stream.read(buffer, 0, chunkSize)) {
+                output.write(buffer, 0, count);
+            }
+        }
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.experimental;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.BadLocationException;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.BaseTaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.SnapshotPositionRegionEventListener;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.GrammarSpecContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.netbeans.editor.BaseDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares the trees updated by {@link IncrementalGrammarParser} after an edit
+ * with the trees of a complete parse of the edited document.
+ *
+ * @author Sam Harwell
+ */
+public class IncrementalGrammarParserTest {
+    private static final int RULE_COUNT = 50;
+
+    private BaseDocument document;
+    private IncrementalGrammarParser parser;
+    private GrammarSpecContext tree;
+
+    @Before
+    public void setUp() throws BadLocationException {
+        document = new BaseDocument(false, "text/plain");
+        document.insertString(0, createGrammar(RULE_COUNT), null);
+        parser = new IncrementalGrammarParser();
+        tree = parser.parse(getSnapshot(), getTokens(getSnapshot()));
+    }
+
+    @Test
+    public void testInsertInRule() throws BadLocationException {
+        GrammarSpecContext previous = tree;
+        insert("rule25\n    :   ", "ID ");
+        GrammarSpecContext updated = assertMatchesFullParse();
+
+        // the rules away from the edit are shared with the previous tree
+        assertSame(previous.rules().ruleSpec(2), updated.rules().ruleSpec(2));
+        assertSame(previous.rules().ruleSpec(40), updated.rules().ruleSpec(40));
+        assertNotSame(previous.rules().ruleSpec(25), updated.rules().ruleSpec(25));
+    }
+
+    @Test
+    public void testInsertLines() throws BadLocationException {
+        insert("rule10\n", "    // comment\n\n");
+        assertMatchesFullParse();
+    }
+
+    @Test
+    public void testAddRule() throws BadLocationException {
+        insert("// rule 30\n", "added : rule1 ;\n\n");
+        GrammarSpecContext updated = assertMatchesFullParse();
+        assertEquals(RULE_COUNT + 3, updated.rules().ruleSpec().size());
+    }
+
+    @Test
+    public void testRemoveRule() throws BadLocationException {
+        String text = getSnapshot().getText();
+        int start = text.indexOf("rule20\n");
+        int end = text.indexOf("rule21\n");
+        document.remove(start, end - start);
+        GrammarSpecContext updated = assertMatchesFullParse();
+        assertEquals(RULE_COUNT + 1, updated.rules().ruleSpec().size());
+    }
+
+    @Test
+    public void testEditFirstAndLastRule() throws BadLocationException {
+        insert("rule0\n    :   ", "ID ");
+        assertMatchesFullParse();
+        insert("ID : [a-zA-Z_]+", " [0-9]*");
+        assertMatchesFullParse();
+    }
+
+    @Test
+    public void testRepeatedEdits() throws BadLocationException {
+        for (int i = 0; i < 10; i++) {
+            insert("rule" + (i * 4) + "\n    :   ", "rule" + i + " ");
+            assertMatchesFullParse();
+        }
+    }
+
+    @Test
+    public void testSyntaxError() throws BadLocationException {
+        insert("rule12\n    :   ", "( ");
+        assertMatchesFullParse();
+
+        String text = getSnapshot().getText();
+        document.remove(text.indexOf("rule12\n    :   ( ") + "rule12\n    :   ".length(), 2);
+        assertMatchesFullParse();
+    }
+
+    private void insert(String before, String text) throws BadLocationException {
+        int offset = getSnapshot().getText().indexOf(before);
+        if (offset < 0) {
+            throw new IllegalArgumentException(before);
+        }
+
+        document.insertString(offset + before.length(), text, null);
+    }
+
+    private GrammarSpecContext assertMatchesFullParse() {
+        DocumentSnapshot snapshot = getSnapshot();
+        GrammarSpecContext updated = parser.parse(snapshot, getTokens(snapshot));
+        GrammarSpecContext expected = new IncrementalGrammarParser().parse(snapshot, getTokens(snapshot));
+
+        List<String> ruleNames = Arrays.asList(GrammarParser.ruleNames);
+        assertEquals(expected.toStringTree(ruleNames), updated.toStringTree(ruleNames));
+
+        List<Token> expectedTokens = new ArrayList<>();
+        List<Token> updatedTokens = new ArrayList<>();
+        getTokens(expected, expectedTokens);
+        getTokens(updated, updatedTokens);
+        assertEquals(expectedTokens.size(), updatedTokens.size());
+        for (int i = 0; i < expectedTokens.size(); i++) {
+            Token expectedToken = expectedTokens.get(i);
+            Token updatedToken = updatedTokens.get(i);
+            assertEquals(expectedToken.toString(), updatedToken.toString());
+            assertEquals(parser.getTokenStream().get(updatedToken.getTokenIndex()).getType(), updatedToken.getType());
+        }
+
+        return updated;
+    }
+
+    private static void getTokens(ParseTree tree, List<Token> tokens) {
+        if (tree instanceof TerminalNode) {
+            tokens.add(((TerminalNode)tree).getSymbol());
+            return;
+        }
+
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            getTokens(tree.getChild(i), tokens);
+        }
+    }
+
+    private DocumentSnapshot getSnapshot() {
+        return VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
+    }
+
+    private static TaggerTokenBuffer getTokens(DocumentSnapshot snapshot) {
+        return new TaggerTokenBuffer(new LexedTagger(snapshot), snapshot);
+    }
+
+    private static String createGrammar(int ruleCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("grammar G;\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            builder.append("// rule ").append(i).append("\n");
+            builder.append("rule").append(i).append("\n");
+            builder.append("    :   rule").append((i + 1) % ruleCount).append(" ID? ('+' rule").append((i + 3) % ruleCount).append(")*\n");
+            builder.append("    |   '(' rule").append((i + 7) % ruleCount).append(" ')' # Alt").append(i).append("\n");
+            builder.append("    ;\n\n");
+        }
+
+        builder.append("ID : [a-zA-Z_]+ ;\n");
+        builder.append("WS : [ \\t\\r\\n]+ -> skip ;\n");
+        return builder.toString();
+    }
+
+    /**
+     * A tagger which returns the tokens of a snapshot lexed ahead of time.
+     */
+    private static final class LexedTagger implements Tagger<TokenTag<Token>> {
+        private final List<TaggedPositionRegion<TokenTag<Token>>> tags = new ArrayList<>();
+
+        public LexedTagger(DocumentSnapshot snapshot) {
+            GrammarLexer lexer = new GrammarLexer(new ANTLRInputStream(snapshot.getText()));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                SnapshotPositionRegion region = new SnapshotPositionRegion(snapshot, token.getStartIndex(), token.getStopIndex() - token.getStartIndex() + 1);
+                tags.add(new BaseTaggedPositionRegion<>(region, new TokenTag<>(token)));
+            }
+        }
+
+        @Override
+        public Iterable<TaggedPositionRegion<TokenTag<Token>>> getTags(NormalizedSnapshotPositionRegionCollection regions) {
+            return tags;
+        }
+
+        @Override
+        public void addTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+
+        @Override
+        public void removeTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.experimental;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.BaseTaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.SnapshotPositionRegionEventListener;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenSource;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenStream;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Compares the reference parse of a grammar reading its tokens from a
+ * {@link CommonTokenStream} over a {@link TaggerTokenSource} with the same
+ * parse reading from a {@link TaggerTokenStream}.
+ * <p>
+ * The tokens are lexed once before the measurements start, so both streams
+ * read the same tags and only the cost of creating the tokens, finding their
+ * lines, and parsing them is measured.
+ * <p>
+ * Usage: {@code TaggerTokenStreamBenchmark [rules] [iterations]}
+ *
+ * @author Sam Harwell
+ */
+public final class TaggerTokenStreamBenchmark {
+
+    /**
+     * Holds the result of the parses so they are not optimized away.
+     */
+    private static volatile int sink;
+
+    public static void main(String[] args) throws IOException {
+        int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        String grammar = createGrammar(ruleCount);
+        FileObject file = FileUtil.createMemoryFileSystem().getRoot().createData("G.g4");
+        try (OutputStream output = file.getOutputStream()) {
+            output.write(grammar.getBytes("UTF-8"));
+        }
+
+        DocumentSnapshot snapshot = VersionedDocumentUtilities.getVersionedDocument(file).getCurrentSnapshot();
+        Tagger<TokenTag<Token>> tagger = new LexedTagger(snapshot);
+
+        System.out.format("%d rules, %d characters, %d tokens%n", ruleCount, grammar.length(), new TaggerTokenBuffer(tagger, snapshot).size());
+        for (int i = 0; i < 2; i++) {
+            measure("CommonTokenStream", tagger, snapshot, false, iterations);
+            measure("TaggerTokenStream", tagger, snapshot, true, iterations);
+        }
+    }
+
+    private static void measure(String name, Tagger<TokenTag<Token>> tagger, DocumentSnapshot snapshot, boolean buffered, int iterations) {
+        long[] times = new long[iterations];
+        int count = 0;
+        for (int i = 0; i < iterations; i++) {
+            long startTime = System.nanoTime();
+            TokenStream tokenStream;
+            if (buffered) {
+                tokenStream = new TaggerTokenStream(new TaggerTokenBuffer(tagger, snapshot));
+            } else {
+                tokenStream = new CommonTokenStream(new TaggerTokenSource(tagger, snapshot));
+            }
+
+            GrammarParser parser = GrammarParserFactory.DEFAULT.getParser(tokenStream);
+            try {
+                parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+                parser.removeErrorListeners();
+                parser.setBuildParseTree(true);
+                parser.setErrorHandler(new BailErrorStrategy());
+                count += parser.grammarSpec().getChildCount();
+            } finally {
+                GrammarParserFactory.DEFAULT.putParser(parser);
+            }
+
+            times[i] = System.nanoTime() - startTime;
+        }
+
+        sink += count;
+        Arrays.sort(times);
+        System.out.format("%-18s min %8.2fms  median %8.2fms  max %8.2fms%n", name, times[0] / 1e6, times[iterations / 2] / 1e6, times[iterations - 1] / 1e6);
+    }
+
+    private static String createGrammar(int ruleCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("grammar G;\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            builder.append("// rule ").append(i).append("\n");
+            builder.append("rule").append(i).append("\n");
+            builder.append("    :   rule").append((i + 1) % ruleCount).append(" ID? ('+' rule").append((i + 3) % ruleCount).append(")*\n");
+            builder.append("    |   '(' rule").append((i + 7) % ruleCount).append(" ')' # Alt").append(i).append("\n");
+            builder.append("    ;\n\n");
+        }
+
+        builder.append("ID : [a-zA-Z_]+ ;\n");
+        builder.append("WS : [ \\t\\r\\n]+ -> skip ;\n");
+        return builder.toString();
+    }
+
+    /**
+     * A tagger which returns the tokens of a snapshot lexed ahead of time.
+     */
+    private static final class LexedTagger implements Tagger<TokenTag<Token>> {
+        private final List<TaggedPositionRegion<TokenTag<Token>>> tags = new ArrayList<>();
+
+        public LexedTagger(DocumentSnapshot snapshot) {
+            GrammarLexer lexer = new GrammarLexer(new ANTLRInputStream(snapshot.getText()));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                SnapshotPositionRegion region = new SnapshotPositionRegion(snapshot, token.getStartIndex(), token.getStopIndex() - token.getStartIndex() + 1);
+                tags.add(new BaseTaggedPositionRegion<>(region, new TokenTag<>(token)));
+            }
+        }
+
+        @Override
+        public Iterable<TaggedPositionRegion<TokenTag<Token>>> getTags(NormalizedSnapshotPositionRegionCollection regions) {
+            return tags;
+        }
+
+        @Override
+        public void addTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+
+        @Override
+        public void removeTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+    }
+
+    private TaggerTokenStreamBenchmark() {
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class TokenVocabularyCacheTest {
+
+    @Test
+    public void testRead() throws IOException {
+        File file = createFile("ID=1\nWS = 2\n'='=3\n\n'+'=4\n");
+        TokenVocabularyCache.TokenVocabulary vocabulary = TokenVocabularyCache.getVocabulary(file);
+        Map<String, Integer> tokens = vocabulary.getTokens();
+        assertEquals(4, tokens.size());
+        assertEquals(Integer.valueOf(1), tokens.get("ID"));
+        assertEquals(Integer.valueOf(2), tokens.get("WS"));
+        assertEquals(Integer.valueOf(3), tokens.get("'='"));
+        assertEquals(Integer.valueOf(4), tokens.get("'+'"));
+        assertEquals(0, vocabulary.getMalformedLines().size());
+        assertNull(vocabulary.getReadError());
+
+        // unchanged files are served from the cache
+        assertSame(vocabulary, TokenVocabularyCache.getVocabulary(file));
+    }
+
+    @Test
+    public void testMalformedLines() throws IOException {
+        File file = createFile("ID=1\nbroken\nWS=x\n");
+        TokenVocabularyCache.TokenVocabulary vocabulary = TokenVocabularyCache.getVocabulary(file);
+        assertEquals(1, vocabulary.getTokens().size());
+        assertEquals(2, vocabulary.getMalformedLines().size());
+        assertEquals(2, vocabulary.getMalformedLines().get(0).getLineNumber());
+        assertEquals("broken", vocabulary.getMalformedLines().get(0).getText());
+        assertEquals(3, vocabulary.getMalformedLines().get(1).getLineNumber());
+    }
+
+    @Test
+    public void testChangedFile() throws IOException {
+        File file = createFile("ID=1\n");
+        assertEquals(1, TokenVocabularyCache.getTokens(file).size());
+
+        write(file, "ID=1\nWS=2\n");
+        assertEquals(2, TokenVocabularyCache.getTokens(file).size());
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        File file = createFile("ID=1\n");
+        assertEquals(1, TokenVocabularyCache.getTokens(file).size());
+
+        file.delete();
+        TokenVocabularyCache.TokenVocabulary vocabulary = TokenVocabularyCache.getVocabulary(file);
+        assertEquals(0, vocabulary.getTokens().size());
+        assertNotNull(vocabulary.getReadError());
+    }
+
+    private static File createFile(String text) throws IOException {
+        File file = File.createTempFile("TokenVocabularyCacheTest", ".tokens");
+        file.deleteOnExit();
+        write(file, text);
+        return file;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write(text);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.semantics;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.BadLocationException;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.BaseTaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.SnapshotPositionRegionEventListener;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.grammar.experimental.GrammarLexer;
+import org.antlr.works.editor.grammar.experimental.IncrementalGrammarParser;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.GrammarSpecContext;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.ParserRuleSpecContext;
+import org.junit.Before;
+import org.junit.Test;
+import org.netbeans.editor.BaseDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the annotations produced by {@link IncrementalSemanticAnalyzer}
+ * after an edit with the annotations of a {@link SemanticAnalyzerListener}
+ * walk over the whole tree.
+ *
+ * @author Sam Harwell
+ */
+public class IncrementalSemanticAnalyzerTest {
+    private static final int RULE_COUNT = 50;
+
+    private BaseDocument document;
+    private IncrementalGrammarParser parser;
+    private IncrementalSemanticAnalyzer analyzer;
+    private GrammarAnnotatedParseTree annotatedParseTree;
+
+    @Before
+    public void setUp() throws BadLocationException {
+        document = new BaseDocument(false, "text/plain");
+        document.insertString(0, createGrammar(RULE_COUNT), null);
+        parser = new IncrementalGrammarParser();
+        analyzer = new IncrementalSemanticAnalyzer();
+        annotatedParseTree = assertMatchesFullAnalysis();
+    }
+
+    @Test
+    public void testEditInRule() throws BadLocationException {
+        GrammarAnnotatedParseTree previous = annotatedParseTree;
+        insert("rule25\n    :   ", "ID ");
+        GrammarAnnotatedParseTree updated = assertMatchesFullAnalysis();
+
+        // the analysis of the rules away from the edit is reused
+        Token previousName = getRuleName(previous, 40);
+        Token updatedName = getRuleName(updated, 40);
+        assertSame(previousName, updatedName);
+        assertSame(previous.getTokenDecorator().getProperties(previousName), updated.getTokenDecorator().getProperties(updatedName));
+        assertNotSame(getRuleName(previous, 25), getRuleName(updated, 25));
+    }
+
+    @Test
+    public void testRenameDeclaration() throws BadLocationException {
+        replace("\nrule10\n", "\nrenamed\n");
+        GrammarAnnotatedParseTree updated = assertMatchesFullAnalysis();
+
+        // the references to rule10 in other rules became implicit definitions
+        Token reference = findReference(updated, "rule10");
+        assertTrue(updated.getTokenDecorator().getProperty(reference, GrammarTreeProperties.PROP_MISSING_DEF));
+
+        replace("\nrenamed\n", "\nrule10\n");
+        assertMatchesFullAnalysis();
+    }
+
+    @Test
+    public void testDeclareMissingRule() throws BadLocationException {
+        insert("// rule 30\n", "missing : ID ;\n\n");
+        GrammarAnnotatedParseTree updated = assertMatchesFullAnalysis();
+
+        Token reference = findReference(updated, "missing");
+        assertEquals(NodeType.RULE_DECL, updated.getNodeType(updated.getTokenDecorator().getProperty(reference, GrammarTreeProperties.PROP_TARGET)));
+    }
+
+    @Test
+    public void testRemoveRule() throws BadLocationException {
+        String text = getSnapshot().getText();
+        int start = text.indexOf("// rule 20\n");
+        int end = text.indexOf("// rule 21\n");
+        document.remove(start, end - start);
+        assertMatchesFullAnalysis();
+    }
+
+    @Test
+    public void testMoveImplicitDefinition() throws BadLocationException {
+        insert("rule30\n    :   ", "'-' ");
+        assertMatchesFullAnalysis();
+        insert("rule5\n    :   ", "'-' ");
+        assertMatchesFullAnalysis();
+        replace("rule5\n    :   '-' ", "rule5\n    :   ");
+        assertMatchesFullAnalysis();
+    }
+
+    @Test
+    public void testRepeatedEdits() throws BadLocationException {
+        for (int i = 0; i < 10; i++) {
+            insert("rule" + (i * 4) + "\n    :   ", "rule" + (i * 3) + " MISSING_TOKEN ");
+            assertMatchesFullAnalysis();
+        }
+    }
+
+    @Test
+    public void testSyntaxError() throws BadLocationException {
+        insert("rule12\n    :   ", "( ");
+        assertMatchesFullAnalysis();
+        replace("rule12\n    :   ( ", "rule12\n    :   ");
+        assertMatchesFullAnalysis();
+    }
+
+    private void insert(String before, String text) throws BadLocationException {
+        int offset = getSnapshot().getText().indexOf(before);
+        if (offset < 0) {
+            throw new IllegalArgumentException(before);
+        }
+
+        document.insertString(offset + before.length(), text, null);
+    }
+
+    private void replace(String text, String replacement) throws BadLocationException {
+        int offset = getSnapshot().getText().indexOf(text);
+        if (offset < 0) {
+            throw new IllegalArgumentException(text);
+        }
+
+        document.remove(offset, text.length());
+        document.insertString(offset, replacement, null);
+    }
+
+    private GrammarAnnotatedParseTree assertMatchesFullAnalysis() {
+        DocumentSnapshot snapshot = getSnapshot();
+        GrammarSpecContext tree = parser.parse(snapshot, new TaggerTokenBuffer(new LexedTagger(snapshot), snapshot));
+        GrammarAnnotatedParseTree updated = analyzer.analyze(tree);
+
+        GrammarAnnotatedParseTree expected = new GrammarAnnotatedParseTree(tree);
+        SemanticAnalyzerListener listener = new SemanticAnalyzerListener(expected.getTreeDecorator(), expected.getTokenDecorator());
+        ParseTreeWalker.DEFAULT.walk(listener, tree);
+
+        List<ParserRuleContext> contexts = new ArrayList<>();
+        List<Token> tokens = new ArrayList<>();
+        getNodes(tree, contexts, tokens);
+        for (ParserRuleContext context : contexts) {
+            assertEquals(expected.getTreeDecorator().getProperties(context), updated.getTreeDecorator().getProperties(context));
+        }
+
+        for (Token token : tokens) {
+            assertEquals(token.toString(), expected.getTokenDecorator().getProperties(token), updated.getTokenDecorator().getProperties(token));
+        }
+
+        assertEquals(expected.getTokenDecorator().getProperties().size(), updated.getTokenDecorator().getProperties().size());
+        return updated;
+    }
+
+    private static void getNodes(ParseTree tree, List<ParserRuleContext> contexts, List<Token> tokens) {
+        if (tree instanceof TerminalNode) {
+            tokens.add(((TerminalNode)tree).getSymbol());
+            return;
+        }
+
+        contexts.add((ParserRuleContext)tree);
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            getNodes(tree.getChild(i), contexts, tokens);
+        }
+    }
+
+    private static Token getRuleName(GrammarAnnotatedParseTree annotatedParseTree, String name) {
+        GrammarSpecContext tree = (GrammarSpecContext)annotatedParseTree.getParseTree();
+        for (int i = 0; i < tree.rules().ruleSpec().size(); i++) {
+            ParserRuleSpecContext rule = tree.rules().ruleSpec(i).parserRuleSpec();
+            if (rule != null && name.equals(rule.RULE_REF().getText())) {
+                return rule.RULE_REF().getSymbol();
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private static Token getRuleName(GrammarAnnotatedParseTree annotatedParseTree, int rule) {
+        return getRuleName(annotatedParseTree, "rule" + rule);
+    }
+
+    private static Token findReference(GrammarAnnotatedParseTree annotatedParseTree, String name) {
+        List<ParserRuleContext> contexts = new ArrayList<>();
+        List<Token> tokens = new ArrayList<>();
+        getNodes(annotatedParseTree.getParseTree(), contexts, tokens);
+        for (Token token : tokens) {
+            if (name.equals(token.getText()) && annotatedParseTree.getNodeType(token) == NodeType.RULE_REF) {
+                return token;
+            }
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private DocumentSnapshot getSnapshot() {
+        return VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
+    }
+
+    private static String createGrammar(int ruleCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("grammar G;\n\n");
+        builder.append("tokens { DECLARED }\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            builder.append("// rule ").append(i).append("\n");
+            builder.append("rule").append(i).append("\n");
+            builder.append("    :   rule").append((i + 1) % ruleCount).append(" ID? ('+' rule").append((i + 3) % ruleCount).append(")*\n");
+            builder.append("    |   '(' rule").append((i + 7) % ruleCount).append(" ')' # Alt").append(i).append("\n");
+            if (i % 5 == 0) {
+                builder.append("    |   missing MISSING_TOKEN DECLARED\n");
+            }
+
+            builder.append("    ;\n\n");
+        }
+
+        builder.append("PLUS : '+' ;\n");
+        builder.append("ID : [a-zA-Z_]+ ;\n");
+        builder.append("WS : [ \\t\\r\\n]+ -> channel(HIDDEN) ;\n");
+        return builder.toString();
+    }
+
+    /**
+     * A tagger which returns the tokens of a snapshot lexed ahead of time.
+     */
+    private static final class LexedTagger implements Tagger<TokenTag<Token>> {
+        private final List<TaggedPositionRegion<TokenTag<Token>>> tags = new ArrayList<>();
+
+        public LexedTagger(DocumentSnapshot snapshot) {
+            GrammarLexer lexer = new GrammarLexer(new ANTLRInputStream(snapshot.getText()));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                SnapshotPositionRegion region = new SnapshotPositionRegion(snapshot, token.getStartIndex(), token.getStopIndex() - token.getStartIndex() + 1);
+                tags.add(new BaseTaggedPositionRegion<>(region, new TokenTag<>(token)));
+            }
+        }
+
+        @Override
+        public Iterable<TaggedPositionRegion<TokenTag<Token>>> getTags(NormalizedSnapshotPositionRegionCollection regions) {
+            return tags;
+        }
+
+        @Override
+        public void addTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+
+        @Override
+        public void removeTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.grammar.semantics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.text.BadLocationException;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.BaseTaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.SnapshotPositionRegionEventListener;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
+import org.antlr.works.editor.grammar.experimental.GrammarLexer;
+import org.antlr.works.editor.grammar.experimental.IncrementalGrammarParser;
+import org.antlr.works.editor.grammar.experimental.generated.AbstractGrammarParser.GrammarSpecContext;
+import org.netbeans.editor.BaseDocument;
+
+/**
+ * Compares the semantic analysis of a grammar after an edit to one rule, done
+ * by walking the whole reference parse tree with a
+ * {@link SemanticAnalyzerListener} and by updating the previous analysis with
+ * an {@link IncrementalSemanticAnalyzer}.
+ * <p>
+ * Each iteration inserts a reference in a different rule and updates the
+ * reference parse tree before the measurements, so both analyses annotate the
+ * same tree. The time to look up the target of every token in the annotated
+ * tree, as the mark occurrences highlighter does, is measured as well.
+ * <p>
+ * Usage: {@code SemanticAnalyzerBenchmark [rules] [iterations]}
+ *
+ * @author Sam Harwell
+ */
+public final class SemanticAnalyzerBenchmark {
+
+    /**
+     * Holds the result of the lookups so they are not optimized away.
+     */
+    private static volatile int sink;
+
+    public static void main(String[] args) throws BadLocationException {
+        int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        BaseDocument document = new BaseDocument(false, "text/plain");
+        document.insertString(0, createGrammar(ruleCount), null);
+
+        IncrementalGrammarParser parser = new IncrementalGrammarParser();
+        IncrementalSemanticAnalyzer analyzer = new IncrementalSemanticAnalyzer();
+        analyzer.analyze(parse(parser, document));
+
+        System.out.format("%d rules, %d characters%n", ruleCount, document.getLength());
+        for (int i = 0; i < 2; i++) {
+            long[] fullTimes = new long[iterations];
+            long[] incrementalTimes = new long[iterations];
+            long[] fullLookupTimes = new long[iterations];
+            long[] incrementalLookupTimes = new long[iterations];
+            for (int j = 0; j < iterations; j++) {
+                String rule = "rule" + ((i * iterations + j) * 7 % ruleCount) + "\n    :   ";
+                document.insertString(document.getText(0, document.getLength()).indexOf(rule) + rule.length(), "ID ", null);
+                GrammarSpecContext tree = parse(parser, document);
+                List<Token> tokens = new ArrayList<>();
+                getTokens(tree, tokens);
+
+                long startTime = System.nanoTime();
+                GrammarAnnotatedParseTree full = new GrammarAnnotatedParseTree(tree);
+                ParseTreeWalker.DEFAULT.walk(new SemanticAnalyzerListener(full.getTreeDecorator(), full.getTokenDecorator()), tree);
+                fullTimes[j] = System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                GrammarAnnotatedParseTree incremental = analyzer.analyze(tree);
+                incrementalTimes[j] = System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                sink += lookupTargets(full, tokens);
+                fullLookupTimes[j] = System.nanoTime() - startTime;
+
+                startTime = System.nanoTime();
+                sink += lookupTargets(incremental, tokens);
+                incrementalLookupTimes[j] = System.nanoTime() - startTime;
+            }
+
+            report("full walk", fullTimes);
+            report("incremental", incrementalTimes);
+            report("full lookups", fullLookupTimes);
+            report("incr. lookups", incrementalLookupTimes);
+        }
+    }
+
+    private static GrammarSpecContext parse(IncrementalGrammarParser parser, BaseDocument document) {
+        DocumentSnapshot snapshot = VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
+        return parser.parse(snapshot, new TaggerTokenBuffer(new LexedTagger(snapshot), snapshot));
+    }
+
+    private static int lookupTargets(GrammarAnnotatedParseTree annotatedParseTree, List<Token> tokens) {
+        int count = 0;
+        for (Token token : tokens) {
+            if (annotatedParseTree.getTokenDecorator().getProperty(token, GrammarTreeProperties.PROP_TARGET) != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static void report(String name, long[] times) {
+        Arrays.sort(times);
+        System.out.format("%-18s min %8.2fms  median %8.2fms  max %8.2fms%n", name, times[0] / 1e6, times[times.length / 2] / 1e6, times[times.length - 1] / 1e6);
+    }
+
+    private static void getTokens(ParseTree tree, List<Token> tokens) {
+        if (tree instanceof TerminalNode) {
+            tokens.add(((TerminalNode)tree).getSymbol());
+            return;
+        }
+
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            getTokens(tree.getChild(i), tokens);
+        }
+    }
+
+    private static String createGrammar(int ruleCount) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("grammar G;\n\n");
+        for (int i = 0; i < ruleCount; i++) {
+            builder.append("// rule ").append(i).append("\n");
+            builder.append("rule").append(i).append("\n");
+            builder.append("    :   rule").append((i + 1) % ruleCount).append(" ID? ('+' rule").append((i + 3) % ruleCount).append(")*\n");
+            builder.append("    |   '(' rule").append((i + 7) % ruleCount).append(" ')' # Alt").append(i).append("\n");
+            builder.append("    ;\n\n");
+        }
+
+        builder.append("ID : [a-zA-Z_]+ ;\n");
+        builder.append("WS : [ \\t\\r\\n]+ -> skip ;\n");
+        return builder.toString();
+    }
+
+    /**
+     * A tagger which returns the tokens of a snapshot lexed ahead of time.
+     */
+    private static final class LexedTagger implements Tagger<TokenTag<Token>> {
+        private final List<TaggedPositionRegion<TokenTag<Token>>> tags = new ArrayList<>();
+
+        public LexedTagger(DocumentSnapshot snapshot) {
+            GrammarLexer lexer = new GrammarLexer(new ANTLRInputStream(snapshot.getText()));
+            for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+                SnapshotPositionRegion region = new SnapshotPositionRegion(snapshot, token.getStartIndex(), token.getStopIndex() - token.getStartIndex() + 1);
+                tags.add(new BaseTaggedPositionRegion<>(region, new TokenTag<>(token)));
+            }
+        }
+
+        @Override
+        public Iterable<TaggedPositionRegion<TokenTag<Token>>> getTags(NormalizedSnapshotPositionRegionCollection regions) {
+            return tags;
+        }
+
+        @Override
+        public void addTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+
+        @Override
+        public void removeTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+    }
+
+    private SemanticAnalyzerBenchmark() {
+    }
+}
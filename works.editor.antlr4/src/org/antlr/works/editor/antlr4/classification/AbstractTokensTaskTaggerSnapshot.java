@@ -11,7 +11,11 @@ package org.antlr.works.editor.antlr4.classification;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
@@ -28,9 +32,13 @@ import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection
 import org.antlr.netbeans.editor.text.OffsetRegion;
 import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
 import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
 import org.antlr.v4.runtime.TokenSource;
 import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Tuple;
+import org.antlr.v4.runtime.misc.Tuple2;
 import org.antlr.works.editor.antlr4.highlighting.TokenSourceWithStateV4;
 import org.netbeans.api.annotations.common.NonNull;
 import org.openide.util.Parameters;
@@ -44,11 +52,42 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
     // -J-Dorg.antlr.works.editor.antlr4.classification.AbstractTokensTaskTaggerSnapshot.level=FINE
     private static final Logger LOGGER = Logger.getLogger(AbstractTokensTaskTaggerSnapshot.class.getName());
 
+    /**
+     * The number of times {@link #getHighlights} lexes a region before it
+     * returns tags which could not be committed.
+     */
+    private static final int MAX_LEX_ATTEMPTS = 3;
+
     @NonNull
     private final DocumentSnapshot snapshot;
 
     private final Object lock = new Object();
-    private final ArrayList<TState> lineStates = new ArrayList<>();
+
+    /*
+     * The line states and cached tokens are copy-on-write. Once the tagger is
+     * published, these lists are never modified; updates made under the lock
+     * replace them instead. The lexer can then run without holding the lock.
+     */
+    private volatile ArrayList<TState> lineStates = new ArrayList<>();
+    /**
+     * The tokens which start on each line, or {@code null} if the line has not
+     * been lexed. Entries carried forward from an earlier snapshot are
+     * translated to this snapshot the first time they are used.
+     */
+    private volatile ArrayList<LineTokens> lineTokens = new ArrayList<>();
+    /**
+     * The source of tokens translated from an earlier snapshot. It only
+     * references this snapshot, so translated tokens do not keep the lexer
+     * or the snapshots of earlier versions reachable.
+     */
+    private volatile Tuple2<? extends TokenSource, CharStream> translatedTokenSource;
+    /**
+     * Incremented each time {@link #lineStates} or {@link #lineTokens} is
+     * replaced. A call to {@link #getHighlights} which finds a different stamp
+     * when it commits only stores its results if the state the lexer started
+     * from is still current.
+     */
+    private int stamp;
 
     private Integer firstDirtyLine;
     private Integer lastDirtyLine;
@@ -74,6 +113,7 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
 
         this.snapshot = snapshot;
         this.lineStates.addAll(reference.lineStates);
+        this.lineTokens.addAll(reference.lineTokens);
         this.firstDirtyLine = reference.firstDirtyLine;
         this.lastDirtyLine = reference.lastDirtyLine;
         Integer firstChangedLine = null;
@@ -97,8 +137,15 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
                 /* processChange */
                 int oldStartLine = source.findLineNumber(oldOffset);
                 int oldEndLine = oldLength == 0 ? oldStartLine : source.findLineNumber(oldOffset + oldLength - 1);
+
+                // tokens starting on an earlier line may extend into the change
+                for (int j = oldStartLine - 1; j >= 0 && lineStates.get(j).getIsMultiLineToken(); j--) {
+                    lineTokens.set(j, null);
+                }
+
                 if (lineCountDelta < 0) {
                     lineStates.subList(oldStartLine, oldStartLine + Math.abs(lineCountDelta)).clear();
+                    lineTokens.subList(oldStartLine, oldStartLine + Math.abs(lineCountDelta)).clear();
                 } else if (lineCountDelta > 0) {
                     TState endLineState = lineStates.get(oldStartLine);
                     ArrayList<TState> insertedElements = new ArrayList<>();
@@ -106,6 +153,11 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
                         insertedElements.add(endLineState);
                     }
                     lineStates.addAll(oldStartLine, insertedElements);
+                    lineTokens.addAll(oldStartLine, Collections.<LineTokens>nCopies(lineCountDelta, null));
+                }
+
+                for (int j = oldStartLine; j <= Math.max(oldStartLine, oldEndLine + lineCountDelta); j++) {
+                    lineTokens.set(j, null);
                 }
 
                 if (lastDirtyLine != null && lastDirtyLine > oldStartLine) {
@@ -152,15 +204,27 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
     }
 
     public void initialize() {
-        int lineCount = snapshot.getLineCount();
-        if (lineStates.size() != lineCount) {
-            lineStates.ensureCapacity(lineCount);
-            TState dirtyState = getStartState().createDirtyState();
-            for (int i = lineStates.size(); i < lineCount; i++) {
-                lineStates.add(dirtyState);
-            }
+        synchronized (lock) {
+            int lineCount = snapshot.getLineCount();
+            if (lineStates.size() != lineCount) {
+                ArrayList<TState> states = new ArrayList<>(lineCount);
+                states.addAll(lineStates);
+                TState dirtyState = getStartState().createDirtyState();
+                for (int i = states.size(); i < lineCount; i++) {
+                    states.add(dirtyState);
+                }
 
-            forceRehighlightLines(0, lineCount - 1);
+                ArrayList<LineTokens> tokens = new ArrayList<>(lineCount);
+                tokens.addAll(lineTokens);
+                while (tokens.size() < lineCount) {
+                    tokens.add(null);
+                }
+
+                lineStates = states;
+                lineTokens = tokens;
+                stamp++;
+                forceRehighlightLines(0, lineCount - 1);
+            }
         }
     }
 
@@ -183,6 +247,25 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
     }
 
     public List<TaggedPositionRegion<TokenTag<Token>>> getHighlights(int startOffset, int endOffset) {
+        for (int attempt = 1; ; attempt++) {
+            List<TaggedPositionRegion<TokenTag<Token>>> tags = getHighlights(startOffset, endOffset, attempt == MAX_LEX_ATTEMPTS);
+            if (tags != null) {
+                return tags;
+            }
+
+            LOGGER.log(Level.FINE, "Lexed region was invalidated by a concurrent update, attempt {0}.", attempt);
+        }
+    }
+
+    /**
+     * Lexes the requested region and commits the updated line states and
+     * tokens.
+     *
+     * @return The tags in the region, or {@code null} if another call updated
+     * the state the lexer started from before the results were committed and
+     * {@code lastAttempt} is {@code false}.
+     */
+    private List<TaggedPositionRegion<TokenTag<Token>>> getHighlights(int startOffset, int endOffset, boolean lastAttempt) {
         List<TaggedPositionRegion<TokenTag<Token>>> tags = new ArrayList<>();
         boolean updateOffsets = true;
 
@@ -201,142 +284,239 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
         int extendMultiLineSpanToLine = 0;
         OffsetRegion extendedSpan = span;
 
+        OffsetRegion requestedSpan = span;
+
+        /* The lexer runs without holding the lock. It reads the line states and
+         * cached tokens which were current when it started, and holds its own
+         * updates until they are committed at the end.
+         */
+        ArrayList<TState> states;
+        ArrayList<LineTokens> cachedTokens;
+        Integer dirtyStartLine;
+        Integer dirtyEndLine;
+        ParseRequest<TState> request;
+        int startStamp;
         synchronized (lock) {
-            OffsetRegion requestedSpan = span;
+            startStamp = stamp;
+            states = lineStates;
+            cachedTokens = lineTokens;
+            dirtyStartLine = firstDirtyLine;
+            dirtyEndLine = lastDirtyLine;
+            request = adjustParseSpan(span);
+        }
 
-            ParseRequest<TState> request = adjustParseSpan(span);
-            TState startState = request.getState();
-            span = request.getRegion();
+        SortedMap<Integer, TState> pendingStates = new TreeMap<>();
+        Map<Integer, LineTokens> pendingTokens = new HashMap<>();
+        Map<Integer, LineTokens> translatedTokens = new HashMap<>();
+
+        int requestedEndLine = snapshot.findLineNumber(Math.max(span.getStart(), span.getEnd() - 1));
+        if (dirtyStartLine == null || dirtyStartLine > requestedEndLine) {
+            int requestedStartLine = snapshot.findLineNumber(span.getStart());
+            while (requestedStartLine > 0 && states.get(requestedStartLine - 1).getIsMultiLineToken()) {
+                requestedStartLine--;
+            }
+
+            if (appendCachedTags(tags, cachedTokens, translatedTokens, requestedStartLine, requestedEndLine, requestedSpan)) {
+                synchronized (lock) {
+                    commit(pendingStates, pendingTokens, cachedTokens, translatedTokens);
+                }
 
-            CharStream input;
-            try {
-                input = createInputStream(span);
-            } catch (BadLocationException ex) {
-                LOGGER.log(Level.WARNING, ex.getMessage(), ex);
                 return tags;
             }
+        }
 
-            TokenSourceWithStateV4<TState> lexer = createLexer(input, startState);
-            lexer.setTokenFactory(new DocumentSnapshotTokenFactory(getEffectiveTokenSource(lexer)));
+        // lines from here to the end of the request already have cached tokens
+        int cachedStartLine = requestedEndLine + 1;
+        while (cachedStartLine > 0 && cachedTokens.get(cachedStartLine - 1) != null) {
+            cachedStartLine--;
+        }
 
-            Token previousToken = null;
-            boolean previousTokenEndsLine = false;
+        TState startState = request.getState();
+        span = request.getRegion();
+        int startStateLine = snapshot.findLineNumber(span.getStart()) - 1;
 
-            /* this is held outside the loop because only tokens which end at the end of a line
-             * impact its value.
-             */
-            boolean lineStateChanged = false;
+        CharStream input;
+        try {
+            input = createInputStream(span);
+        } catch (BadLocationException ex) {
+            LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+            return tags;
+        }
 
-            while (true)
-            {
-                // TODO: perform this under a read lock
-                Token token = lexer.nextToken();
-
-                // The latter is true for EOF token with span.getEnd() at the end of the document
-                boolean inBounds = token.getStartIndex() < span.getEnd()
-                    || token.getStopIndex() < span.getEnd();
-
-                if (updateOffsets) {
-                    int startLineCurrent;
-                    if (token.getType() == Token.EOF)
-                        startLineCurrent = snapshot.getLineCount();
-                    else
-                        startLineCurrent = snapshot.findLineNumber(token.getStartIndex());
-
-                    // endLinePrevious is the line number the previous token ended on
-                    int endLinePrevious;
-                    if (previousToken != null)
-                        endLinePrevious = snapshot.findLineNumber(previousToken.getStopIndex() + 1);
-                    else
-                        endLinePrevious = snapshot.findLineNumber(span.getStart()) - 1;
-
-                    if (startLineCurrent > endLinePrevious + 1 || (startLineCurrent == endLinePrevious + 1 && !previousTokenEndsLine))
-                    {
-                        int firstMultilineLine = endLinePrevious;
-                        if (previousToken == null || previousTokenEndsLine)
-                            firstMultilineLine++;
+        TokenSourceWithStateV4<TState> lexer = createLexer(input, startState);
+        lexer.setTokenFactory(new DocumentSnapshotTokenFactory(getEffectiveTokenSource(lexer)));
 
-                        for (int i = firstMultilineLine; i < startLineCurrent; i++)
-                        {
-                            if (!lineStates.get(i).getIsMultiLineToken() || lineStateChanged)
-                                extendMultiLineSpanToLine = i + 1;
+        Token previousToken = null;
+        boolean previousTokenEndsLine = false;
 
-                            if (inBounds)
-                                setLineState(i, lineStates.get(i).createMultiLineState());
-                        }
-                    }
-                }
+        /* this is held outside the loop because only tokens which end at the end of a line
+         * impact its value.
+         */
+        boolean lineStateChanged = false;
+        int lineStateLine = -1;
 
-                if (token.getType() == Token.EOF)
-                    break;
+        // the tokens starting on the line currently being lexed
+        int recordLine = snapshot.findLineNumber(span.getStart());
+        boolean recordLineComplete = snapshot.findLineFromLineNumber(recordLine).getStart().getOffset() == span.getStart();
+        List<Token> recordTokens = new ArrayList<>();
+        List<Collection<TaggedPositionRegion<TokenTag<Token>>>> recordTags = new ArrayList<>();
+
+        while (true)
+        {
+            Token token = lexer.nextToken();
+
+            // The latter is true for EOF token with span.getEnd() at the end of the document
+            boolean inBounds = token.getStartIndex() < span.getEnd()
+                || token.getStopIndex() < span.getEnd();
 
-                if (updateOffsets && isMultiLineToken(lexer, token))
+            if (updateOffsets) {
+                int startLineCurrent;
+                if (token.getType() == Token.EOF)
+                    startLineCurrent = snapshot.getLineCount();
+                else
+                    startLineCurrent = snapshot.findLineNumber(token.getStartIndex());
+
+                // endLinePrevious is the line number the previous token ended on
+                int endLinePrevious;
+                if (previousToken != null)
+                    endLinePrevious = snapshot.findLineNumber(previousToken.getStopIndex() + 1);
+                else
+                    endLinePrevious = snapshot.findLineNumber(span.getStart()) - 1;
+
+                if (startLineCurrent > endLinePrevious + 1 || (startLineCurrent == endLinePrevious + 1 && !previousTokenEndsLine))
                 {
-                    int startLine = snapshot.findLineNumber(token.getStartIndex());
-                    int stopLine = snapshot.findLineNumber(token.getStopIndex() + 1);
-                    for (int i = startLine; i < stopLine; i++)
+                    int firstMultilineLine = endLinePrevious;
+                    if (previousToken == null || previousTokenEndsLine)
+                        firstMultilineLine++;
+
+                    for (int i = firstMultilineLine; i < startLineCurrent; i++)
                     {
-                        if (!lineStates.get(i).getIsMultiLineToken())
+                        if (!getLineState(states, pendingStates, i).getIsMultiLineToken() || lineStateChanged)
                             extendMultiLineSpanToLine = i + 1;
 
                         if (inBounds)
-                            setLineState(i, lineStates.get(i).createMultiLineState());
+                            pendingStates.put(i, getLineState(states, pendingStates, i).createMultiLineState());
                     }
                 }
+            }
+
+            int tokenLine = token.getType() == Token.EOF ? snapshot.getLineCount() : snapshot.findLineNumber(token.getStartIndex());
+            if (tokenLine > recordLine) {
+                // every line before the current token has been completely lexed
+                if (recordLineComplete) {
+                    pendingTokens.put(recordLine, createLineTokens(recordLine, recordTokens, recordTags));
+                }
+
+                for (int i = recordLine + 1; i < tokenLine; i++) {
+                    pendingTokens.put(i, createLineTokens(i, Collections.<Token>emptyList(), Collections.<Collection<TaggedPositionRegion<TokenTag<Token>>>>emptyList()));
+                }
+
+                recordLine = tokenLine;
+                recordLineComplete = true;
+                recordTokens = new ArrayList<>();
+                recordTags = new ArrayList<>();
+
+                /* If the state at the end of the previous line did not change, the lexer
+                 * has converged with the cached tokens for the following lines.
+                 */
+                if (token.getType() != Token.EOF
+                    && tokenLine >= cachedStartLine
+                    && lineStateLine == tokenLine - 1
+                    && !lineStateChanged
+                    && !getLineState(states, pendingStates, tokenLine - 1).getIsMultiLineToken()
+                    && (dirtyStartLine == null || dirtyStartLine > requestedEndLine || dirtyEndLine < tokenLine)
+                    && snapshot.findLineFromLineNumber(tokenLine).getStart().getOffset() == token.getStartIndex()
+                    && appendCachedTags(tags, cachedTokens, translatedTokens, tokenLine, requestedEndLine, requestedSpan))
+                {
+                    break;
+                }
+            }
 
-                boolean tokenEndsLine = tokenEndsAtEndOfLine(lexer, token);
-                if (updateOffsets && tokenEndsLine)
+            if (token.getType() == Token.EOF)
+                break;
+
+            if (updateOffsets && isMultiLineToken(lexer, token))
+            {
+                int startLine = snapshot.findLineNumber(token.getStartIndex());
+                int stopLine = snapshot.findLineNumber(token.getStopIndex() + 1);
+                for (int i = startLine; i < stopLine; i++)
                 {
-                    TState stateAtEndOfLine = lexer.getCurrentState();
-                    int line = snapshot.findLineNumber(token.getStopIndex() + 1);
-                    lineStateChanged =
-                        lineStates.get(line).getIsMultiLineToken()
-                        || !lineStates.get(line).equals(stateAtEndOfLine);
-
-                    // even if the state didn't change, we call SetLineState to make sure the _first/_lastChangedLine values get updated.
-                    // have to check bounds for this one or the editor might not get an update (if the token ends a line)
-                    if (updateOffsets && inBounds)
-                        setLineState(line, stateAtEndOfLine);
-
-                    if (lineStateChanged)
+                    if (!getLineState(states, pendingStates, i).getIsMultiLineToken())
+                        extendMultiLineSpanToLine = i + 1;
+
+                    if (inBounds)
+                        pendingStates.put(i, getLineState(states, pendingStates, i).createMultiLineState());
+                }
+            }
+
+            boolean tokenEndsLine = tokenEndsAtEndOfLine(lexer, token);
+            if (updateOffsets && tokenEndsLine)
+            {
+                TState stateAtEndOfLine = lexer.getCurrentState();
+                int line = snapshot.findLineNumber(token.getStopIndex() + 1);
+                lineStateChanged =
+                    getLineState(states, pendingStates, line).getIsMultiLineToken()
+                    || !getLineState(states, pendingStates, line).equals(stateAtEndOfLine);
+                lineStateLine = line;
+
+                // even if the state didn't change, we commit it to make sure the _first/_lastChangedLine values get updated.
+                // have to check bounds for this one or the editor might not get an update (if the token ends a line)
+                if (updateOffsets && inBounds)
+                    pendingStates.put(line, stateAtEndOfLine);
+
+                if (lineStateChanged)
+                {
+                    if (line < snapshot.getLineCount() - 1)
                     {
-                        if (line < snapshot.getLineCount() - 1)
+                        /* update the span's end position or the line state change won't be reflected
+                         * in the editor
+                         */
+                        int endPosition = line < snapshot.getLineCount() - 2 ? snapshot.findLineFromLineNumber(line + 2).getStart().getOffset() : snapshot.length();
+                        if (endPosition > extendedSpan.getEnd())
                         {
-                            /* update the span's end position or the line state change won't be reflected
-                             * in the editor
-                             */
-                            int endPosition = line < snapshot.getLineCount() - 2 ? snapshot.findLineFromLineNumber(line + 2).getStart().getOffset() : snapshot.length();
-                            if (endPosition > extendedSpan.getEnd())
-                            {
-                                spanExtended = true;
-                                extendedSpan = OffsetRegion.fromBounds(extendedSpan.getStart(), endPosition);
-                            }
+                            spanExtended = true;
+                            extendedSpan = OffsetRegion.fromBounds(extendedSpan.getStart(), endPosition);
                         }
                     }
                 }
+            }
 
-                if (token.getStartIndex() >= span.getEnd()) {
-                    break;
-                }
+            if (token.getStartIndex() >= span.getEnd()) {
+                break;
+            }
 
-                previousToken = token;
-                previousTokenEndsLine = tokenEndsLine;
+            previousToken = token;
+            previousTokenEndsLine = tokenEndsLine;
+            recordTokens.add(token);
 
-                if (token.getStopIndex() < requestedSpan.getStart()) {
-                    continue;
-                }
+            if (token.getStopIndex() < requestedSpan.getStart()) {
+                recordTags.add(null);
+                continue;
+            }
 
-                Collection<TaggedPositionRegion<TokenTag<Token>>> tokenClassificationSpans = getTagsForToken(token);
-                if (tokenClassificationSpans != null) {
-                    tags.addAll(tokenClassificationSpans);
-                }
+            Collection<TaggedPositionRegion<TokenTag<Token>>> tokenClassificationSpans = getTagsForToken(token);
+            recordTags.add(tokenClassificationSpans);
+            if (tokenClassificationSpans != null) {
+                tags.addAll(tokenClassificationSpans);
+            }
 
-                if (!inBounds) {
-                    break;
-                }
+            if (!inBounds) {
+                break;
             }
         }
 
+        synchronized (lock) {
+            if (startStamp != stamp && startStateLine >= 0 && !startState.equals(lineStates.get(startStateLine))) {
+                /* Another call replaced the state this lex started from, so
+                 * storing these results would overwrite newer states with
+                 * ones derived from an outdated state.
+                 */
+                return lastAttempt ? tags : null;
+            }
+
+            commit(pendingStates, pendingTokens, cachedTokens, translatedTokens);
+        }
+
         if (updateOffsets && extendMultiLineSpanToLine > 0) {
             int endPosition = extendMultiLineSpanToLine < snapshot.getLineCount() - 1 ? snapshot.findLineFromLineNumber(extendMultiLineSpanToLine + 1).getStart().getOffset() : snapshot.length();
             if (endPosition > extendedSpan.getEnd()) {
@@ -361,7 +541,69 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
 
     protected void setLineState(int line, TState state) {
         synchronized (lock) {
-            lineStates.set(line, state);
+            SortedMap<Integer, TState> states = new TreeMap<>();
+            states.put(line, state);
+            commitLineStates(states);
+        }
+    }
+
+    private TState getLineState(List<TState> states, Map<Integer, TState> pendingStates, int line) {
+        TState state = pendingStates.get(line);
+        if (state != null) {
+            return state;
+        }
+
+        return states.get(line);
+    }
+
+    /**
+     * Publishes the results of a call to {@link #getHighlights}. Translated
+     * token entries are only stored if the entry they replace is still
+     * current.
+     */
+    private void commit(SortedMap<Integer, TState> pendingStates, Map<Integer, LineTokens> pendingTokens, List<LineTokens> cachedTokens, Map<Integer, LineTokens> translatedTokens) {
+        assert Thread.holdsLock(lock);
+        commitLineStates(pendingStates);
+
+        if (pendingTokens.isEmpty() && translatedTokens.isEmpty()) {
+            return;
+        }
+
+        ArrayList<LineTokens> tokens = new ArrayList<>(lineTokens);
+        for (Map.Entry<Integer, LineTokens> entry : translatedTokens.entrySet()) {
+            int line = entry.getKey();
+            if (tokens.get(line) == cachedTokens.get(line)) {
+                tokens.set(line, entry.getValue());
+            }
+        }
+
+        for (Map.Entry<Integer, LineTokens> entry : pendingTokens.entrySet()) {
+            tokens.set(entry.getKey(), entry.getValue());
+        }
+
+        lineTokens = tokens;
+        stamp++;
+    }
+
+    /**
+     * Stores updated line states, in line order. The state list is only copied
+     * if a state actually changed, but every line is considered when updating
+     * the dirty range.
+     */
+    private void commitLineStates(SortedMap<Integer, TState> pendingStates) {
+        assert Thread.holdsLock(lock);
+        ArrayList<TState> states = null;
+        for (Map.Entry<Integer, TState> entry : pendingStates.entrySet()) {
+            int line = entry.getKey();
+            TState state = entry.getValue();
+            if (!state.equals(lineStates.get(line))) {
+                if (states == null) {
+                    states = new ArrayList<>(lineStates);
+                }
+
+                states.set(line, state);
+            }
+
             if (!state.getIsDirty() && firstDirtyLine != null && firstDirtyLine.equals(line)) {
                 firstDirtyLine++;
             }
@@ -371,6 +613,101 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
                 lastDirtyLine = null;
             }
         }
+
+        if (states != null) {
+            lineStates = states;
+            stamp++;
+        }
+    }
+
+    private LineTokens createLineTokens(int line, List<Token> tokens, List<Collection<TaggedPositionRegion<TokenTag<Token>>>> tags) {
+        int lineStart = snapshot.findLineFromLineNumber(line).getStart().getOffset();
+        List<Collection<TaggedPositionRegion<TokenTag<Token>>>> tokenTags = new ArrayList<>(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            Collection<TaggedPositionRegion<TokenTag<Token>>> currentTags = i < tags.size() ? tags.get(i) : null;
+            if (currentTags == null) {
+                currentTags = getTagsForToken(tokens.get(i));
+                if (currentTags == null) {
+                    currentTags = Collections.emptyList();
+                }
+            }
+
+            tokenTags.add(currentTags);
+        }
+
+        return new LineTokens(snapshot, lineStart, tokens, tokenTags);
+    }
+
+    /**
+     * Adds the tags for cached tokens starting on lines {@code startLine}
+     * through {@code endLine} which overlap {@code requestedSpan}. Entries which
+     * had to be translated to the current snapshot are added to
+     * {@code translatedTokens}.
+     *
+     * @return {@code true} if tokens were available for every line, otherwise
+     * {@code false} and {@code tags} is unchanged.
+     */
+    private boolean appendCachedTags(List<TaggedPositionRegion<TokenTag<Token>>> tags, List<LineTokens> cachedTokens, Map<Integer, LineTokens> translatedTokens, int startLine, int endLine, OffsetRegion requestedSpan) {
+        for (int i = startLine; i <= endLine; i++) {
+            if (getLineTokens(cachedTokens, translatedTokens, i) == null) {
+                return false;
+            }
+        }
+
+        for (int i = startLine; i <= endLine; i++) {
+            LineTokens entry = getLineTokens(cachedTokens, translatedTokens, i);
+            for (int j = 0; j < entry.tokens.size(); j++) {
+                Token token = entry.tokens.get(j);
+                if (token.getStopIndex() < requestedSpan.getStart()) {
+                    continue;
+                } else if (token.getStartIndex() >= requestedSpan.getEnd()) {
+                    break;
+                }
+
+                tags.addAll(entry.tags.get(j));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the cached tokens for a line, translating them to the current
+     * snapshot if necessary.
+     */
+    private LineTokens getLineTokens(List<LineTokens> cachedTokens, Map<Integer, LineTokens> translatedTokens, int line) {
+        LineTokens entry = translatedTokens.get(line);
+        if (entry != null) {
+            return entry;
+        }
+
+        entry = cachedTokens.get(line);
+        if (entry == null || entry.snapshot.equals(snapshot)) {
+            return entry;
+        }
+
+        // the line is unchanged, so its tokens only need to move with the line
+        int lineStart = snapshot.findLineFromLineNumber(line).getStart().getOffset();
+        int offset = lineStart - entry.lineStart;
+        Tuple2<? extends TokenSource, CharStream> source = translatedTokenSource;
+        if (source == null) {
+            TranslatedTokenSource tokenSource = new TranslatedTokenSource(new DocumentSnapshotCharStream(snapshot));
+            source = Tuple.create(tokenSource, tokenSource.getInputStream());
+            translatedTokenSource = source;
+        }
+
+        List<Token> tokens = new ArrayList<>(entry.tokens.size());
+        for (Token token : entry.tokens) {
+            if (!(token instanceof DocumentSnapshotToken)) {
+                return null;
+            }
+
+            tokens.add(new DocumentSnapshotToken(source, (DocumentSnapshotToken)token, offset));
+        }
+
+        entry = createLineTokens(line, tokens, Collections.<Collection<TaggedPositionRegion<TokenTag<Token>>>>emptyList());
+        translatedTokens.put(line, entry);
+        return entry;
     }
 
     protected abstract TState getStartState();
@@ -492,8 +829,10 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
             throw new IllegalArgumentException();
         }
 
-        firstDirtyLine = firstDirtyLine != null ? Math.min(firstDirtyLine, startLine) : startLine;
-        lastDirtyLine = lastDirtyLine != null ? Math.max(lastDirtyLine, endLineInclusive) : endLineInclusive;
+        synchronized (lock) {
+            firstDirtyLine = firstDirtyLine != null ? Math.min(firstDirtyLine, startLine) : startLine;
+            lastDirtyLine = lastDirtyLine != null ? Math.max(lastDirtyLine, endLineInclusive) : endLineInclusive;
+        }
 
 //        int start = snapshot.findLineFromOffset(startLine).getStart().getOffset();
 //        int end = (endLineInclusive == lineStates.size() - 1) ? snapshot.length() : snapshot.findLineFromOffset(endLineInclusive + 1).getStart().getOffset();
@@ -523,6 +862,80 @@ public abstract class AbstractTokensTaskTaggerSnapshot<TState extends LineStateI
 
     protected abstract AbstractTokensTaskTaggerSnapshot<TState> translateToImpl(@NonNull DocumentSnapshot targetSnapshot);
 
+    private static final class LineTokens {
+        @NonNull
+        private final DocumentSnapshot snapshot;
+        private final int lineStart;
+        @NonNull
+        private final List<Token> tokens;
+        /** The tags for each token in {@link #tokens}. */
+        @NonNull
+        private final List<Collection<TaggedPositionRegion<TokenTag<Token>>>> tags;
+
+        public LineTokens(@NonNull DocumentSnapshot snapshot, int lineStart, @NonNull List<Token> tokens, @NonNull List<Collection<TaggedPositionRegion<TokenTag<Token>>>> tags) {
+            assert tokens.size() == tags.size();
+            this.snapshot = snapshot;
+            this.lineStart = lineStart;
+            this.tokens = tokens;
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * The token source of tokens translated from an earlier snapshot. The
+     * tokens were already lexed, so the source is empty.
+     */
+    private static final class TranslatedTokenSource implements TokenSource {
+        @NonNull
+        private final DocumentSnapshotCharStream input;
+        private TokenFactory tokenFactory = CommonTokenFactory.DEFAULT;
+
+        public TranslatedTokenSource(@NonNull DocumentSnapshotCharStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public Token nextToken() {
+            DocumentSnapshot snapshot = input.getSnapshot();
+            int start = snapshot.length();
+            int lineCount = snapshot.getLineCount();
+            int lineLength = snapshot.findLineFromLineNumber(lineCount - 1).getLength();
+            return tokenFactory.create(Tuple.create(this, (CharStream)input), Token.EOF, null, Token.DEFAULT_CHANNEL, start, start - 1, lineCount, lineLength);
+        }
+
+        @Override
+        public int getLine() {
+            return input.getSnapshot().getLineCount();
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            DocumentSnapshot snapshot = input.getSnapshot();
+            return snapshot.findLineFromLineNumber(snapshot.getLineCount() - 1).getLength();
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public String getSourceName() {
+            return input.getSourceName();
+        }
+
+        @Override
+        public TokenFactory getTokenFactory() {
+            return tokenFactory;
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory tokenFactory) {
+            Parameters.notNull("tokenFactory", tokenFactory);
+            this.tokenFactory = tokenFactory;
+        }
+    }
+
     public static class ParseRequest<TState> {
         private final OffsetRegion region;
         private final TState state;
@@ -21,6 +21,10 @@ import org.openide.util.Parameters;
  * @author Sam Harwell
  */
 public class DocumentSnapshotCharStream implements CharStream {
+    /**
+     * The number of characters copied from the snapshot at a time.
+     */
+    private static final int BUFFER_SIZE = 4096;
 
     // input info
     private final DocumentSnapshot snapshot;
@@ -34,16 +38,16 @@ public class DocumentSnapshotCharStream implements CharStream {
 
     // cache info
     private boolean explicitCache;
-    private int currentSnapshotLineStartIndex;
-    private String currentSnapshotLine;
+    private char[] buffer;
+    private int bufferStartIndex;
+    private int bufferLength;
 
     public DocumentSnapshotCharStream(DocumentSnapshot snapshot) {
         Parameters.notNull("snapshot", snapshot);
 
         this.snapshot = snapshot;
         this.count = snapshot.length();
-
-        updateCachedLine();
+        this.buffer = new char[Math.min(BUFFER_SIZE, count)];
     }
 
     public DocumentSnapshotCharStream(DocumentSnapshot snapshot, OffsetRegion cachedSpan) {
@@ -54,8 +58,10 @@ public class DocumentSnapshotCharStream implements CharStream {
         this.snapshot = cachedSpan.getSnapshot();
         this.count = getSnapshot().length();
         this.explicitCache = true;
-        this.currentSnapshotLineStartIndex = cachedSpan.getStart().getOffset();
-        this.currentSnapshotLine = cachedSpan.getText();
+        this.bufferStartIndex = cachedSpan.getStart().getOffset();
+        this.bufferLength = cachedSpan.getLength();
+        this.buffer = new char[bufferLength];
+        this.snapshot.getChars(bufferStartIndex, bufferStartIndex + bufferLength, buffer, 0);
     }
 
     public final DocumentSnapshot getSnapshot() {
@@ -110,10 +116,8 @@ public class DocumentSnapshotCharStream implements CharStream {
     public String getText(Interval interval) {
         int start = interval.a;
         int stop = interval.b;
-        if (currentSnapshotLine != null) {
-            if (start >= currentSnapshotLineStartIndex && stop < currentSnapshotLineStartIndex + currentSnapshotLine.length()) {
-                return currentSnapshotLine.substring(start - currentSnapshotLineStartIndex, stop + 1 - currentSnapshotLineStartIndex);
-            }
+        if (start >= bufferStartIndex && stop < bufferStartIndex + bufferLength && stop >= start) {
+            return new String(buffer, start - bufferStartIndex, stop + 1 - start);
         }
 
         // HACK: special handling due to Lexer passing invalid indexes.
@@ -139,7 +143,6 @@ public class DocumentSnapshotCharStream implements CharStream {
         }
 
         setIndex(index() + 1);
-        updateCachedLine();
     }
 
     @Override
@@ -166,15 +169,17 @@ public class DocumentSnapshotCharStream implements CharStream {
 
         int actualIndex = currentIndex + i - 1;
 
-        String currentLine = currentSnapshotLine;
-        int currentLineStartIndex = currentSnapshotLineStartIndex;
-        if (currentLine != null
-            && actualIndex >= currentLineStartIndex
-            && actualIndex < currentLineStartIndex + currentLine.length()) {
-            return currentLine.charAt(actualIndex - currentLineStartIndex);
+        int bufferIndex = actualIndex - bufferStartIndex;
+        if (bufferIndex >= 0 && bufferIndex < bufferLength) {
+            return buffer[bufferIndex];
+        }
+
+        if (explicitCache) {
+            return getSnapshot().charAt(actualIndex);
         }
 
-        return getSnapshot().charAt(actualIndex);
+        fillBuffer(actualIndex);
+        return buffer[actualIndex - bufferStartIndex];
     }
 
     @Override
@@ -199,26 +204,23 @@ public class DocumentSnapshotCharStream implements CharStream {
         DocumentSnapshotLine currentLine = getSnapshot().findLineFromOffset(index());
         setLine(currentLine.getLineNumber());
         setCharPositionInLine(index() - currentLine.getStart().getOffset());
-        updateCachedLine();
     }
 
-    private void updateCachedLine() {
-        if (explicitCache) {
-            return;
+    /**
+     * Copies a block of text containing {@code index} from the snapshot into
+     * the buffer. When the stream moves backwards, the block is positioned so
+     * text on both sides of {@code index} is available.
+     */
+    private void fillBuffer(int index) {
+        int start = index;
+        if (index < bufferStartIndex) {
+            start = Math.max(0, index - buffer.length / 2);
         }
 
-        if (currentSnapshotLine == null
-            || index() < currentSnapshotLineStartIndex
-            || index() >= currentSnapshotLineStartIndex + currentSnapshotLine.length()) {
-            if (index() >= 0 && index() < size()) {
-                DocumentSnapshotLine currentLine = getSnapshot().findLineFromOffset(index());
-                currentSnapshotLineStartIndex = currentLine.getStart().getOffset();
-                currentSnapshotLine = currentLine.getTextIncludingLineBreak();
-            } else {
-                currentSnapshotLine = null;
-                currentSnapshotLineStartIndex = 0;
-            }
-        }
+        start = Math.max(0, Math.min(start, size() - buffer.length));
+        bufferStartIndex = start;
+        bufferLength = Math.min(buffer.length, size() - start);
+        getSnapshot().getChars(bufferStartIndex, bufferStartIndex + bufferLength, buffer, 0);
     }
 
 }
@@ -33,6 +33,16 @@ public class DocumentSnapshotToken extends CommonToken {
         snapshot = charStream.getSnapshot();
     }
 
+    /**
+     * Creates a copy of {@code token} which is shifted by {@code offset}
+     * characters. The snapshot of the new token is taken from {@code source}.
+     */
+    public DocumentSnapshotToken(Tuple2<? extends TokenSource, CharStream> source, DocumentSnapshotToken token, int offset) {
+        this(source, token.getType(), token.getChannel(), token.getStartIndex() + offset, token.getStopIndex() + offset);
+        this.text = token.text;
+        setTokenIndex(token.getTokenIndex());
+    }
+
     public DocumentSnapshotToken(int type, String text) {
         super(type, text);
         snapshot = null;
@@ -0,0 +1,262 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.classification;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.DocumentSnapshotLine;
+import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.v4.runtime.Token;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * An immutable buffer holding the tokens of a {@link Tagger} for a single
+ * snapshot. The type, channel, bounds, line and column of each token are
+ * stored in parallel arrays, and the last token in the buffer is always
+ * {@link Token#EOF}, positioned at the end of the region the buffer was
+ * created for.
+ * <p>
+ * A buffer is safe to share between threads. Use {@link TaggerTokenStream} to
+ * read the tokens of the whole buffer, or of a region of the snapshot.
+ *
+ * @author Sam Harwell
+ */
+public final class TaggerTokenBuffer {
+    // -J-Dorg.antlr.works.editor.antlr4.classification.TaggerTokenBuffer.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(TaggerTokenBuffer.class.getName());
+
+    private final DocumentSnapshot snapshot;
+
+    private final int size;
+    private final int[] types;
+    private final int[] channels;
+    private final int[] startIndexes;
+    private final int[] stopIndexes;
+    private final int[] lines;
+    private final int[] columns;
+
+    public TaggerTokenBuffer(@NonNull Tagger<TokenTag<Token>> tagger, @NonNull DocumentSnapshot snapshot) {
+        this(tagger, new SnapshotPositionRegion(snapshot, 0, snapshot.length()));
+    }
+
+    public TaggerTokenBuffer(@NonNull Tagger<TokenTag<Token>> tagger, @NonNull SnapshotPositionRegion region) {
+        Parameters.notNull("tagger", tagger);
+        Parameters.notNull("region", region);
+        this.snapshot = region.getSnapshot();
+
+        long startTime = System.nanoTime();
+        Builder builder = new Builder(snapshot);
+        builder.fill(tagger.getTags(new NormalizedSnapshotPositionRegionCollection(region)), region.getEnd().getOffset());
+
+        this.size = builder.size;
+        this.types = Arrays.copyOf(builder.types, size);
+        this.channels = Arrays.copyOf(builder.channels, size);
+        this.startIndexes = Arrays.copyOf(builder.startIndexes, size);
+        this.stopIndexes = Arrays.copyOf(builder.stopIndexes, size);
+        this.lines = Arrays.copyOf(builder.lines, size);
+        this.columns = Arrays.copyOf(builder.columns, size);
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Buffered {0} tokens in {1}ms.", new Object[] { size, (System.nanoTime() - startTime) / 1000000.0 });
+        }
+    }
+
+    @NonNull
+    public DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of tokens in the buffer, including the final
+     * {@link Token#EOF} token.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getType(int index) {
+        checkIndex(index);
+        return types[index];
+    }
+
+    public int getChannel(int index) {
+        checkIndex(index);
+        return channels[index];
+    }
+
+    public int getStartIndex(int index) {
+        checkIndex(index);
+        return startIndexes[index];
+    }
+
+    public int getStopIndex(int index) {
+        checkIndex(index);
+        return stopIndexes[index];
+    }
+
+    public int getLine(int index) {
+        checkIndex(index);
+        return lines[index];
+    }
+
+    public int getCharPositionInLine(int index) {
+        checkIndex(index);
+        return columns[index];
+    }
+
+    @NonNull
+    public String getText(int index) {
+        checkIndex(index);
+        if (types[index] == Token.EOF) {
+            return "<EOF>";
+        }
+
+        return snapshot.subSequence(startIndexes[index], stopIndexes[index] + 1).toString();
+    }
+
+    /**
+     * Gets the index of the first token which ends at or after {@code offset},
+     * or the index of the {@link Token#EOF} token if no such token exists.
+     */
+    public int getFirstTokenEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (stopIndexes[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Gets the index of the first token which starts at or after
+     * {@code offset}, or the index of the {@link Token#EOF} token if no such
+     * token exists.
+     */
+    public int getFirstTokenStartingAtOrAfter(int offset) {
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startIndexes[mid] < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("token index " + index + " out of range 0.." + (size - 1));
+        }
+    }
+
+    /**
+     * Collects the columns of the buffer while the tags are read.
+     */
+    private static final class Builder {
+        private final DocumentSnapshot snapshot;
+
+        private int size;
+        private int[] types = new int[256];
+        private int[] channels = new int[256];
+        private int[] startIndexes = new int[256];
+        private int[] stopIndexes = new int[256];
+        private int[] lines = new int[256];
+        private int[] columns = new int[256];
+
+        public Builder(DocumentSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public void fill(Iterable<TaggedPositionRegion<TokenTag<Token>>> tags, int endOffset) {
+            // tokens are returned in document order, so the line of each token is
+            // found by advancing from the line of the previous token
+            DocumentSnapshotLine line = null;
+            int lineStart = 0;
+            int lineEnd = 0;
+            int lastLine = snapshot.getLineCount() - 1;
+
+            for (TaggedPositionRegion<TokenTag<Token>> tag : tags) {
+                Token token = tag.getTag().getToken();
+                int start = token.getStartIndex();
+                if (token.getType() == Token.EOF) {
+                    break;
+                }
+
+                if (line == null || start < lineStart) {
+                    line = snapshot.findLineFromOffset(start);
+                    lineStart = line.getStart().getOffset();
+                    lineEnd = line.getEndIncludingLineBreak().getOffset();
+                }
+
+                while (start >= lineEnd && line.getLineNumber() < lastLine) {
+                    line = snapshot.findLineFromLineNumber(line.getLineNumber() + 1);
+                    lineStart = line.getStart().getOffset();
+                    lineEnd = line.getEndIncludingLineBreak().getOffset();
+                }
+
+                add(token.getType(), token.getChannel(), start, token.getStopIndex(), line.getLineNumber() + 1, start - lineStart);
+            }
+
+            // the last token may extend past the end of the region
+            if (size > 0) {
+                endOffset = Math.max(endOffset, stopIndexes[size - 1] + 1);
+            }
+
+            addEof(Math.min(endOffset, snapshot.length()));
+        }
+
+        private void addEof(int start) {
+            DocumentSnapshotLine line;
+            if (start == snapshot.length()) {
+                line = snapshot.findLineFromLineNumber(snapshot.getLineCount() - 1);
+            } else {
+                line = snapshot.findLineFromOffset(start);
+            }
+
+            add(Token.EOF, Token.DEFAULT_CHANNEL, start, start - 1, line.getLineNumber() + 1, start - line.getStart().getOffset());
+        }
+
+        private void add(int type, int channel, int start, int stop, int line, int column) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                channels = Arrays.copyOf(channels, capacity);
+                startIndexes = Arrays.copyOf(startIndexes, capacity);
+                stopIndexes = Arrays.copyOf(stopIndexes, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                columns = Arrays.copyOf(columns, capacity);
+            }
+
+            types[size] = type;
+            channels[size] = channel;
+            startIndexes[size] = start;
+            stopIndexes[size] = stop;
+            lines[size] = line;
+            columns[size] = column;
+            size++;
+        }
+    }
+}
@@ -42,6 +42,9 @@ public class TaggerTokenSource implements TokenSource {
     private Tuple2<? extends TokenSource, CharStream> tokenFactorySourcePair;
     private int line = -1;
     private int charPositionInLine = -1;
+    private DocumentSnapshotLine cachedLine;
+    private int cachedLineStart;
+    private int cachedLineEnd;
     private TokenFactory tokenFactory = CommonTokenFactory.DEFAULT;
 
     public TaggerTokenSource(@NonNull Tagger<TokenTag<Token>> tagger, DocumentSnapshot snapshot) {
@@ -99,7 +102,7 @@ public class TaggerTokenSource implements TokenSource {
                     line = 1;
                     charPositionInLine = 0;
                 } else {
-                    DocumentSnapshotLine snapshotLine = snapshot.findLineFromOffset(region.getStart().getOffset() + 1);
+                    DocumentSnapshotLine snapshotLine = findLineFromOffset(region.getStart().getOffset() + 1);
                     line = snapshotLine.getLineNumber() + 1;
                     charPositionInLine = region.getStart().getOffset() - snapshotLine.getStart().getOffset();
                 }
@@ -108,13 +111,34 @@ public class TaggerTokenSource implements TokenSource {
                 line = snapshotLine.getLineNumber() + 1;
                 charPositionInLine = snapshotLine.getLength();
             } else {
-                DocumentSnapshotLine snapshotLine = snapshot.findLineFromOffset(previousTag.getToken().getStopIndex() + 1);
+                int offset = previousTag.getToken().getStopIndex() + 1;
+                DocumentSnapshotLine snapshotLine = findLineFromOffset(offset);
                 line = snapshotLine.getLineNumber() + 1;
-                charPositionInLine = previousTag.getToken().getStopIndex() + 1 - snapshotLine.getStart().getOffset();
+                charPositionInLine = offset - snapshotLine.getStart().getOffset();
             }
         }
     }
 
+    /**
+     * Finds the line containing {@code offset}. Tokens are returned in document
+     * order, so most lookups fall on the same line as the previous one and
+     * can skip the search through the snapshot.
+     */
+    @NonNull
+    private DocumentSnapshotLine findLineFromOffset(int offset) {
+        if (cachedLine == null || offset < cachedLineStart || offset >= cachedLineEnd) {
+            cachedLine = snapshot.findLineFromOffset(offset);
+            cachedLineStart = cachedLine.getStart().getOffset();
+            cachedLineEnd = cachedLine.getEndIncludingLineBreak().getOffset();
+            if (cachedLine.getLineNumber() == snapshot.getLineCount() - 1) {
+                // the final line also contains the end of the document
+                cachedLineEnd++;
+            }
+        }
+
+        return cachedLine;
+    }
+
     @Override
     public CharStream getInputStream() {
         if (input == null) {
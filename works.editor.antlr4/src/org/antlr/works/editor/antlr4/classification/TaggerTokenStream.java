@@ -0,0 +1,493 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.classification;
+
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.DocumentSnapshotLine;
+import org.antlr.netbeans.editor.text.OffsetRegion;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.filesystems.FileObject;
+import org.openide.util.Parameters;
+
+/**
+ * A {@link TokenStream} over the tokens of a {@link TaggerTokenBuffer}, or
+ * over the tokens of the buffer which intersect a region of the snapshot.
+ * <p>
+ * Unlike a {@link org.antlr.v4.runtime.CommonTokenStream} reading from a
+ * {@link TaggerTokenSource}, the stream only creates token objects for the
+ * tokens which are read from it, and the line information is computed once
+ * when the buffer is created instead of searching the snapshot each time a
+ * token is asked for its line. The {@link Token} instances returned by
+ * {@link #LT}, {@link #get} and {@link #nextToken} are views of an index in
+ * the stream, which are created the first time the index is read and returned
+ * for every later read of the same index. Token indexes are relative to the
+ * start of the stream. The stream always ends with an {@link Token#EOF}
+ * token, which for a stream over a region of the snapshot is positioned at
+ * the end of the region.
+ * <p>
+ * The text of a token is always read from the snapshot, so the stream should
+ * not be used with lexers which change the text of a token. Like
+ * {@link org.antlr.v4.runtime.CommonTokenStream}, the stream only returns
+ * tokens on the {@link Token#DEFAULT_CHANNEL default channel} from
+ * {@link #LT} and {@link #LA}. It also implements {@link TokenSource}, so it can
+ * be read one token at a time.
+ *
+ * @author Sam Harwell
+ */
+public class TaggerTokenStream implements TokenStream, TokenSource {
+
+    private final TaggerTokenBuffer buffer;
+    private final DocumentSnapshot snapshot;
+    /**
+     * The index in {@link #buffer} of the first token in the stream.
+     */
+    private final int firstTokenIndex;
+    /**
+     * The number of tokens in the stream, including {@link Token#EOF}.
+     */
+    private final int size;
+    /**
+     * The position of the {@link Token#EOF} token at the end of the stream.
+     */
+    private final int eofStartIndex;
+    private final int eofLine;
+    private final int eofCharPositionInLine;
+
+    /**
+     * The index of the current token in the stream, which is always on the
+     * default channel.
+     */
+    private int p;
+    /**
+     * The index of the next token returned by {@link #nextToken}.
+     */
+    private int nextTokenIndex;
+
+    /**
+     * The token views which were already returned by this stream, indexed by
+     * the token index in the stream.
+     */
+    private Token[] views;
+
+    private CharStream input;
+    private TokenFactory tokenFactory = CommonTokenFactory.DEFAULT;
+
+    public TaggerTokenStream(@NonNull Tagger<TokenTag<Token>> tagger, @NonNull DocumentSnapshot snapshot) {
+        this(new TaggerTokenBuffer(tagger, snapshot));
+    }
+
+    public TaggerTokenStream(@NonNull Tagger<TokenTag<Token>> tagger, @NonNull SnapshotPositionRegion region) {
+        this(new TaggerTokenBuffer(tagger, region));
+    }
+
+    public TaggerTokenStream(@NonNull TaggerTokenBuffer buffer) {
+        this(buffer, 0, buffer.size(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a stream over the tokens of {@code buffer} which intersect
+     * {@code region}.
+     */
+    public TaggerTokenStream(@NonNull TaggerTokenBuffer buffer, @NonNull OffsetRegion region) {
+        this(buffer, buffer.getFirstTokenEndingAtOrAfter(region.getStart()), region);
+    }
+
+    private TaggerTokenStream(TaggerTokenBuffer buffer, int firstTokenIndex, OffsetRegion region) {
+        this(buffer, firstTokenIndex, Math.max(firstTokenIndex, buffer.getFirstTokenStartingAtOrAfter(region.getEnd())) - firstTokenIndex + 1, region.getEnd());
+    }
+
+    private TaggerTokenStream(TaggerTokenBuffer buffer, int firstTokenIndex, int size, int endOffset) {
+        Parameters.notNull("buffer", buffer);
+        this.buffer = buffer;
+        this.snapshot = buffer.getSnapshot();
+        this.firstTokenIndex = Math.min(firstTokenIndex, buffer.size() - 1);
+        this.size = Math.min(size, buffer.size() - this.firstTokenIndex);
+
+        // the last token in the stream may extend past the end of the region
+        if (this.size > 1) {
+            endOffset = Math.max(endOffset, buffer.getStopIndex(getBufferIndex(this.size - 2)) + 1);
+        }
+
+        int bufferEof = buffer.size() - 1;
+        if (endOffset >= buffer.getStartIndex(bufferEof)) {
+            this.eofStartIndex = buffer.getStartIndex(bufferEof);
+            this.eofLine = buffer.getLine(bufferEof);
+            this.eofCharPositionInLine = buffer.getCharPositionInLine(bufferEof);
+        } else {
+            DocumentSnapshotLine line = snapshot.findLineFromOffset(endOffset);
+            this.eofStartIndex = endOffset;
+            this.eofLine = line.getLineNumber() + 1;
+            this.eofCharPositionInLine = endOffset - line.getStart().getOffset();
+        }
+
+        this.p = nextTokenOnChannel(0);
+    }
+
+    @NonNull
+    public final TaggerTokenBuffer getBuffer() {
+        return buffer;
+    }
+
+    @NonNull
+    public final DocumentSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the index in the buffer of the token at index {@code i} in this
+     * stream.
+     */
+    private int getBufferIndex(int i) {
+        if (i == size - 1) {
+            return buffer.size() - 1;
+        }
+
+        return firstTokenIndex + i;
+    }
+
+    public void reset() {
+        seek(0);
+    }
+
+    @Override
+    public void consume() {
+        if (buffer.getType(getBufferIndex(p)) == Token.EOF) {
+            throw new IllegalStateException("cannot consume EOF");
+        }
+
+        p = nextTokenOnChannel(p + 1);
+    }
+
+    @Override
+    public int LA(int i) {
+        int index = getLookaheadIndex(i);
+        if (index < 0) {
+            return Token.INVALID_TYPE;
+        }
+
+        return buffer.getType(getBufferIndex(index));
+    }
+
+    @Override
+    public Token LT(int k) {
+        int index = getLookaheadIndex(k);
+        if (index < 0) {
+            return null;
+        }
+
+        return getView(index);
+    }
+
+    private int getLookaheadIndex(int k) {
+        if (k == 0) {
+            return -1;
+        }
+
+        int i = p;
+        if (k < 0) {
+            for (int n = 0; n < -k; n++) {
+                i = previousTokenOnChannel(i - 1);
+                if (i < 0) {
+                    return -1;
+                }
+            }
+
+            return i;
+        }
+
+        for (int n = 1; n < k; n++) {
+            if (buffer.getType(getBufferIndex(i)) == Token.EOF) {
+                break;
+            }
+
+            i = nextTokenOnChannel(i + 1);
+        }
+
+        return i;
+    }
+
+    private int nextTokenOnChannel(int i) {
+        if (i >= size) {
+            return size - 1;
+        }
+
+        while (i < size - 1 && buffer.getChannel(getBufferIndex(i)) != Token.DEFAULT_CHANNEL) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private int previousTokenOnChannel(int i) {
+        while (i >= 0 && buffer.getChannel(getBufferIndex(i)) != Token.DEFAULT_CHANNEL) {
+            i--;
+        }
+
+        return i;
+    }
+
+    @Override
+    public Token get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("token index " + i + " out of range 0.." + (size - 1));
+        }
+
+        return getView(i);
+    }
+
+    private Token getView(int index) {
+        if (views == null) {
+            views = new Token[size];
+        }
+
+        Token view = views[index];
+        if (view == null) {
+            view = createToken(index);
+            views[index] = view;
+        }
+
+        return view;
+    }
+
+    /**
+     * Creates the token returned by this stream for index {@code index}. This
+     * method is called at most once for each index. The default
+     * implementation returns a view of the buffer; derived streams may return
+     * a token which copies the values of that view.
+     */
+    @NonNull
+    protected Token createToken(int index) {
+        return new TokenView(index);
+    }
+
+    @Override
+    public int mark() {
+        return -1;
+    }
+
+    @Override
+    public void release(int marker) {
+    }
+
+    @Override
+    public int index() {
+        return p;
+    }
+
+    @Override
+    public void seek(int index) {
+        p = nextTokenOnChannel(Math.max(0, index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public TokenSource getTokenSource() {
+        return this;
+    }
+
+    @Override
+    public String getText() {
+        return getText(Interval.of(0, size - 1));
+    }
+
+    @Override
+    public String getText(Interval interval) {
+        int start = interval.a;
+        int stop = Math.min(interval.b, size - 1);
+        if (start < 0 || stop < 0) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = start; i <= stop; i++) {
+            int bufferIndex = getBufferIndex(i);
+            if (buffer.getType(bufferIndex) == Token.EOF) {
+                break;
+            }
+
+            builder.append(snapshot.subSequence(buffer.getStartIndex(bufferIndex), buffer.getStopIndex(bufferIndex) + 1));
+        }
+
+        return builder.toString();
+    }
+
+    @Override
+    public String getText(RuleContext ctx) {
+        return getText(ctx.getSourceInterval());
+    }
+
+    @Override
+    public String getText(Object start, Object stop) {
+        if (start instanceof Token && stop instanceof Token) {
+            return getText(Interval.of(((Token)start).getTokenIndex(), ((Token)stop).getTokenIndex()));
+        }
+
+        return "";
+    }
+
+    @Override
+    public Token nextToken() {
+        Token token = getView(nextTokenIndex);
+        if (buffer.getType(getBufferIndex(nextTokenIndex)) != Token.EOF) {
+            nextTokenIndex++;
+        }
+
+        return token;
+    }
+
+    @Override
+    public int getLine() {
+        if (nextTokenIndex == size - 1) {
+            return eofLine;
+        }
+
+        return buffer.getLine(getBufferIndex(nextTokenIndex));
+    }
+
+    @Override
+    public int getCharPositionInLine() {
+        if (nextTokenIndex == size - 1) {
+            return eofCharPositionInLine;
+        }
+
+        return buffer.getCharPositionInLine(getBufferIndex(nextTokenIndex));
+    }
+
+    @Override
+    public CharStream getInputStream() {
+        if (input == null) {
+            input = new DocumentSnapshotCharStream(snapshot);
+        }
+
+        return input;
+    }
+
+    @Override
+    public String getSourceName() {
+        FileObject fileObject = snapshot.getVersionedDocument().getFileObject();
+        if (fileObject == null) {
+            return "Unknown Source File";
+        }
+
+        return fileObject.toURL().getFile();
+    }
+
+    @Override
+    public TokenFactory getTokenFactory() {
+        return tokenFactory;
+    }
+
+    @Override
+    public void setTokenFactory(TokenFactory tokenFactory) {
+        Parameters.notNull("tokenFactory", tokenFactory);
+        this.tokenFactory = tokenFactory;
+    }
+
+    private final class TokenView implements Token {
+        private final int index;
+        private final int bufferIndex;
+        private final boolean eof;
+
+        public TokenView(int index) {
+            this.index = index;
+            this.bufferIndex = getBufferIndex(index);
+            this.eof = index == size - 1;
+        }
+
+        @Override
+        public String getText() {
+            return buffer.getText(bufferIndex);
+        }
+
+        @Override
+        public int getType() {
+            return buffer.getType(bufferIndex);
+        }
+
+        @Override
+        public int getLine() {
+            if (eof) {
+                return eofLine;
+            }
+
+            return buffer.getLine(bufferIndex);
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            if (eof) {
+                return eofCharPositionInLine;
+            }
+
+            return buffer.getCharPositionInLine(bufferIndex);
+        }
+
+        @Override
+        public int getChannel() {
+            return buffer.getChannel(bufferIndex);
+        }
+
+        @Override
+        public int getTokenIndex() {
+            return index;
+        }
+
+        @Override
+        public int getStartIndex() {
+            if (eof) {
+                return eofStartIndex;
+            }
+
+            return buffer.getStartIndex(bufferIndex);
+        }
+
+        @Override
+        public int getStopIndex() {
+            if (eof) {
+                return eofStartIndex - 1;
+            }
+
+            return buffer.getStopIndex(bufferIndex);
+        }
+
+        @Override
+        public TokenSource getTokenSource() {
+            return TaggerTokenStream.this;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return TaggerTokenStream.this.getInputStream();
+        }
+
+        @Override
+        public String toString() {
+            String text = getText().replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t");
+            return String.format("[@%d,%d:%d='%s',<%d>%s,%d:%d]",
+                index, getStartIndex(), getStopIndex(), text, getType(),
+                getChannel() > 0 ? ",channel=" + getChannel() : "",
+                getLine(), getCharPositionInLine());
+        }
+    }
+}
@@ -89,6 +89,22 @@ public abstract class AbstractCompletionParserATNSimulator extends ParserATNSimu
         }
     }
 
+    /**
+     * Clears the state of the previous parse, so a pooled parser does not
+     * keep its tokens or decisions reachable.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        caretTransitions = null;
+        caretToken = null;
+        decisionPoints = null;
+        selections = null;
+        _firstDecisionIndex = Integer.MAX_VALUE;
+        _input = null;
+        _outerContext = null;
+    }
+
     @Override
     public int adaptivePredict(TokenStream input, int decision, ParserRuleContext outerContext) {
         _input = input;
@@ -12,14 +12,26 @@ import java.util.ArrayList;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.antlr.v4.runtime.BufferedTokenStream;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.FailedPredicateException;
 import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.atn.ATNConfig;
 import org.antlr.v4.runtime.atn.ATNState;
 import org.antlr.v4.runtime.atn.DecisionState;
@@ -29,6 +41,10 @@ import org.antlr.v4.runtime.atn.StarLoopEntryState;
 import org.antlr.v4.runtime.atn.StarLoopbackState;
 import org.antlr.v4.runtime.misc.IntegerList;
 import org.antlr.v4.runtime.misc.IntervalSet;
+import org.antlr.v4.runtime.misc.Tuple;
+import org.netbeans.api.annotations.common.CheckForNull;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
 
 /**
  *
@@ -39,19 +55,39 @@ public abstract class AbstractForestParser<TParser extends CodeCompletionParser>
     // -J-Dorg.antlr.works.editor.antlr4.completion.AbstractForestParser.level=FINE
     protected static final Logger LOGGER = Logger.getLogger(AbstractForestParser.class.getName());
 
+    // -J-Dorg.antlr.works.editor.antlr4.completion.AbstractForestParser.maxPaths=2048
+    private static final int MAX_PATHS = Integer.getInteger(AbstractForestParser.class.getName() + ".maxPaths", 2048);
+    // -J-Dorg.antlr.works.editor.antlr4.completion.AbstractForestParser.timeout=2000
+    private static final long TIMEOUT_MILLIS = Long.getLong(AbstractForestParser.class.getName() + ".timeout", 2000);
+
     @Override
     public Map<RuleContext, CaretReachedException> getParseTrees(TParser parser) {
         List<MultipleDecisionData> potentialAlternatives = new ArrayList<>();
         IntegerList currentPath = new IntegerList();
         Map<RuleContext, CaretReachedException> results = new IdentityHashMap<>();
+        ForestBudget budget = new ForestBudget(MAX_PATHS, TIMEOUT_MILLIS);
         // make sure the token stream is initialized before getting the index
         parser.getInputStream().LA(1);
         int initialToken = parser.getInputStream().index();
-        while (true) {
-            parser.getInputStream().seek(initialToken);
-            tryParse(parser, potentialAlternatives, currentPath, results);
-            if (!incrementCurrentPath(potentialAlternatives, currentPath)) {
-                break;
+
+        // the first parse finds the first decision which is ambiguous at the caret
+        budget.tryAcquire();
+        parser.getInputStream().seek(initialToken);
+        tryParse(parser, potentialAlternatives, currentPath, results);
+        if (incrementCurrentPath(potentialAlternatives, currentPath)) {
+            List<TParser> parsers = createBranchParsers(parser, potentialAlternatives.get(0).alternatives.length);
+            if (parsers != null) {
+                exploreBranches(parsers, initialToken, potentialAlternatives.get(0), results, budget);
+            } else {
+                explore(parser, initialToken, potentialAlternatives, currentPath, 0, results, budget);
+            }
+        }
+
+        if (budget.isExhausted()) {
+            if (budget.isTimedOut()) {
+                LOGGER.log(Level.WARNING, "The forest parser timed out after {0} ms and {1} paths, so some completion results may be missing. The limit is set with -J-D{2}.timeout.", new Object[] { TIMEOUT_MILLIS, budget.getUsedPaths(), AbstractForestParser.class.getName() });
+            } else {
+                LOGGER.log(Level.WARNING, "The forest parser stopped after the maximum of {0} paths, so some completion results may be missing. The limit is set with -J-D{1}.maxPaths.", new Object[] { MAX_PATHS, AbstractForestParser.class.getName() });
             }
         }
 
@@ -66,8 +102,37 @@ public abstract class AbstractForestParser<TParser extends CodeCompletionParser>
         return results;
     }
 
+    /**
+     * Creates a parser which behaves like {@code parser} but reads from
+     * {@code input}. When this method is implemented, the branches of the
+     * first ambiguous decision are explored in parallel, each with its own
+     * parser.
+     *
+     * @return A new parser, or {@code null} to explore the forest with
+     * {@code parser} alone.
+     */
+    @CheckForNull
+    protected TParser createParser(@NonNull TParser parser, @NonNull TokenStream input) {
+        return null;
+    }
+
+    /**
+     * Releases a parser created by {@link #createParser} once its branch of
+     * the forest has been explored.
+     */
+    protected void releaseParser(@NonNull TParser parser) {
+    }
+
     protected boolean incrementCurrentPath(List<MultipleDecisionData> potentialAlternatives, IntegerList currentPath) {
-        for (int i = currentPath.size() - 1; i >= 0; i--) {
+        return incrementCurrentPath(potentialAlternatives, currentPath, 0);
+    }
+
+    /**
+     * Moves to the next path through the decisions at index {@code minDepth}
+     * and beyond, leaving the selections for earlier decisions unchanged.
+     */
+    protected boolean incrementCurrentPath(List<MultipleDecisionData> potentialAlternatives, IntegerList currentPath, int minDepth) {
+        for (int i = currentPath.size() - 1; i >= minDepth; i--) {
             if (currentPath.get(i) < potentialAlternatives.get(i).alternatives.length - 1) {
                 currentPath.set(i, currentPath.get(i) + 1);
                 return true;
@@ -80,6 +145,109 @@ public abstract class AbstractForestParser<TParser extends CodeCompletionParser>
         return false;
     }
 
+    private void explore(TParser parser, int initialToken, List<MultipleDecisionData> potentialAlternatives, IntegerList currentPath, int minDepth, Map<RuleContext, CaretReachedException> results, ForestBudget budget) {
+        do {
+            if (!budget.tryAcquire()) {
+                return;
+            }
+
+            parser.getInputStream().seek(initialToken);
+            tryParse(parser, potentialAlternatives, currentPath, results);
+        } while (incrementCurrentPath(potentialAlternatives, currentPath, minDepth));
+    }
+
+    /**
+     * Creates one parser for each branch of the first ambiguous decision. The
+     * first branch uses {@code parser} itself, and the others read from copies
+     * of the tokens which {@code parser} has already buffered.
+     */
+    @CheckForNull
+    private List<TParser> createBranchParsers(TParser parser, int branchCount) {
+        if (branchCount < 2 || !(parser.getInputStream() instanceof BufferedTokenStream)) {
+            return null;
+        }
+
+        BufferedTokenStream input = (BufferedTokenStream)parser.getInputStream();
+        TokenSource source = input.getTokenSource();
+        List<Token> tokens = new ArrayList<>(input.getTokens());
+        CharStream charStream = source.getInputStream();
+        String sourceName = source.getSourceName();
+
+        List<TParser> parsers = new ArrayList<>(branchCount);
+        parsers.add(parser);
+        for (int i = 1; i < branchCount; i++) {
+            TParser branchParser = createParser(parser, new CommonTokenStream(new TokenListSource(tokens, charStream, sourceName)));
+            if (branchParser == null) {
+                releaseBranchParsers(parsers);
+                return null;
+            }
+
+            parsers.add(branchParser);
+        }
+
+        return parsers;
+    }
+
+    private void exploreBranches(List<TParser> parsers, final int initialToken, final MultipleDecisionData decision, Map<RuleContext, CaretReachedException> results, final ForestBudget budget) {
+        // the pool only lives for this forest, so no threads remain when code completion is idle
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parsers.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            exploreBranches(pool, parsers, initialToken, decision, results, budget);
+        } finally {
+            pool.shutdown();
+            releaseBranchParsers(parsers);
+        }
+    }
+
+    /**
+     * Releases the parsers created for the branches, which are all but the
+     * first parser in {@code parsers}.
+     */
+    private void releaseBranchParsers(List<TParser> parsers) {
+        for (int i = 1; i < parsers.size(); i++) {
+            releaseParser(parsers.get(i));
+        }
+    }
+
+    private void exploreBranches(ForkJoinPool pool, List<TParser> parsers, final int initialToken, final MultipleDecisionData decision, Map<RuleContext, CaretReachedException> results, final ForestBudget budget) {
+        List<ForkJoinTask<Map<RuleContext, CaretReachedException>>> tasks = new ArrayList<>();
+        for (int i = 0; i < parsers.size(); i++) {
+            final TParser branchParser = parsers.get(i);
+            final int alternative = i;
+            Callable<Map<RuleContext, CaretReachedException>> callable = new Callable<Map<RuleContext, CaretReachedException>>() {
+                @Override
+                public Map<RuleContext, CaretReachedException> call() {
+                    List<MultipleDecisionData> potentialAlternatives = new ArrayList<>();
+                    potentialAlternatives.add(decision);
+                    IntegerList currentPath = new IntegerList();
+                    currentPath.add(alternative);
+
+                    Map<RuleContext, CaretReachedException> branchResults = new IdentityHashMap<>();
+                    explore(branchParser, initialToken, potentialAlternatives, currentPath, 1, branchResults, budget);
+                    return branchResults;
+                }
+            };
+
+            tasks.add(pool.submit(callable));
+        }
+
+        RuntimeException failure = null;
+        for (ForkJoinTask<Map<RuleContext, CaretReachedException>> task : tasks) {
+            try {
+                results.putAll(task.join());
+            } catch (RuntimeException ex) {
+                // wait for the other branches before their parsers are released
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     protected void tryParse(TParser parser, List<MultipleDecisionData> potentialAlternatives, IntegerList currentPath, Map<RuleContext, CaretReachedException> results) {
         RuleContext parseTree;
         try {
@@ -167,4 +335,146 @@ public abstract class AbstractForestParser<TParser extends CodeCompletionParser>
 
     protected abstract RuleContext parseImpl(TParser parser);
 
+    /**
+     * Limits the number of paths and the total time spent exploring a forest.
+     */
+    private static final class ForestBudget {
+        private final int maxPaths;
+        private final long deadline;
+        private final AtomicInteger usedPaths = new AtomicInteger();
+        private volatile boolean exhausted;
+        private volatile boolean timedOut;
+
+        public ForestBudget(int maxPaths, long timeoutMillis) {
+            this.maxPaths = maxPaths;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        }
+
+        public boolean isExhausted() {
+            return exhausted;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public int getUsedPaths() {
+            return Math.min(usedPaths.get(), maxPaths);
+        }
+
+        public boolean tryAcquire() {
+            if (exhausted) {
+                return false;
+            }
+
+            if (System.nanoTime() - deadline > 0) {
+                timedOut = true;
+                exhausted = true;
+                return false;
+            }
+
+            if (usedPaths.incrementAndGet() > maxPaths) {
+                exhausted = true;
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * Replays a fixed list of tokens, such as the tokens a parser buffered
+     * before reaching the caret. After the last token, the source returns
+     * EOF.
+     */
+    private static final class TokenListSource implements TokenSource {
+        private final List<Token> tokens;
+        private final CharStream inputStream;
+        private final String sourceName;
+        private TokenFactory tokenFactory = CommonTokenFactory.DEFAULT;
+        private int index;
+        private Token eof;
+
+        public TokenListSource(@NonNull List<Token> tokens, CharStream inputStream, String sourceName) {
+            Parameters.notNull("tokens", tokens);
+            this.tokens = tokens;
+            this.inputStream = inputStream;
+            this.sourceName = sourceName;
+        }
+
+        @Override
+        public Token nextToken() {
+            if (index < tokens.size()) {
+                return tokens.get(index++);
+            }
+
+            return getEof();
+        }
+
+        @Override
+        public int getLine() {
+            return index < tokens.size() ? tokens.get(index).getLine() : getEof().getLine();
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return index < tokens.size() ? tokens.get(index).getCharPositionInLine() : getEof().getCharPositionInLine();
+        }
+
+        @NonNull
+        private Token getEof() {
+            if (eof != null) {
+                return eof;
+            }
+
+            Token last = tokens.isEmpty() ? null : tokens.get(tokens.size() - 1);
+            if (last != null && last.getType() == Token.EOF) {
+                eof = last;
+                return eof;
+            }
+
+            int start = 0;
+            int line = 1;
+            int charPositionInLine = 0;
+            if (last != null) {
+                start = last.getStopIndex() + 1;
+                line = last.getLine();
+                charPositionInLine = last.getCharPositionInLine();
+                String text = last.getText();
+                for (int i = 0; text != null && i < text.length(); i++) {
+                    if (text.charAt(i) == '\n') {
+                        line++;
+                        charPositionInLine = 0;
+                    } else {
+                        charPositionInLine++;
+                    }
+                }
+            }
+
+            eof = tokenFactory.create(Tuple.create(this, inputStream), Token.EOF, null, Token.DEFAULT_CHANNEL, start, start - 1, line, charPositionInLine);
+            return eof;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return inputStream;
+        }
+
+        @Override
+        public String getSourceName() {
+            return sourceName;
+        }
+
+        @Override
+        public TokenFactory getTokenFactory() {
+            return tokenFactory;
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory tokenFactory) {
+            Parameters.notNull("tokenFactory", tokenFactory);
+            this.tokenFactory = tokenFactory;
+        }
+    }
+
 }
@@ -8,45 +8,117 @@
  */
 package org.antlr.works.editor.antlr4.completion;
 
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.antlr.v4.runtime.Parser;
 import org.antlr.v4.runtime.TokenStream;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
 
 /**
+ * A bounded pool of reusable parsers.
+ *
+ * <p>Up to {@link #getCapacity()} idle parsers are held strongly, so a parser
+ * along with its ATN simulator survives garbage collection and the prediction
+ * state it has built up remains available to the next request. The pool is
+ * lock-free; parsers returned while the pool is full are discarded and counted
+ * as evictions. Hits, misses, and evictions are logged at {@link Level#FINE}
+ * whenever a parser is created or discarded.</p>
  *
  * @author Sam Harwell
  * @param <T>
  */
 public abstract class AbstractParserCache<T extends Parser> {
+    // -J-Dorg.antlr.works.editor.antlr4.completion.AbstractParserCache.level=FINE
+    private static final Logger LOGGER = Logger.getLogger(AbstractParserCache.class.getName());
 
-    private final Deque<Reference<T>> parsers = new ArrayDeque<>();
+    // -J-Dorg.antlr.works.editor.antlr4.completion.AbstractParserCache.capacity=4
+    private static final int DEFAULT_CAPACITY =
+        Integer.getInteger(AbstractParserCache.class.getName() + ".capacity", Runtime.getRuntime().availableProcessors());
 
-    public T getParser(TokenStream input) {
-        T parser = null;
-        synchronized (parsers) {
-            while (parser == null && !parsers.isEmpty()) {
-                parser = parsers.poll().get();
-            }
+    private final AtomicReferenceArray<T> parsers;
+    private final ParserCacheStatistics statistics = new ParserCacheStatistics();
+
+    protected AbstractParserCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    protected AbstractParserCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity cannot be negative");
         }
 
+        this.parsers = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int getCapacity() {
+        return parsers.length();
+    }
+
+    public T getParser(TokenStream input) {
+        T parser = poll();
         if (parser != null) {
+            statistics.hit();
             parser.setInputStream(input);
         } else {
+            statistics.miss();
             parser = createParser(input);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Created parser {0} ({1}).", new Object[] { parser.getClass().getName(), statistics });
+            }
         }
 
         return parser;
     }
 
-    public void putParser(T parser) {
-        synchronized (parsers) {
-            parsers.add(new SoftReference<>(parser));
+    /**
+     * Returns {@code parser} to the pool. The parser releases its input stream
+     * so an idle parser does not keep a document snapshot alive.
+     */
+    public void putParser(@NonNull T parser) {
+        Parameters.notNull("parser", parser);
+        parser.setInputStream(null);
+        if (!offer(parser)) {
+            statistics.evicted();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Discarded parser {0} ({1}).", new Object[] { parser.getClass().getName(), statistics });
+            }
+        }
+    }
+
+    /**
+     * Discards all idle parsers.
+     */
+    public void clear() {
+        for (int i = 0; i < parsers.length(); i++) {
+            parsers.set(i, null);
         }
     }
 
     protected abstract T createParser(TokenStream input);
 
+    private T poll() {
+        for (int i = 0; i < parsers.length(); i++) {
+            if (parsers.get(i) != null) {
+                T parser = parsers.getAndSet(i, null);
+                if (parser != null) {
+                    return parser;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private boolean offer(T parser) {
+        for (int i = 0; i < parsers.length(); i++) {
+            if (parsers.get(i) == null && parsers.compareAndSet(i, null, parser)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
 }
@@ -0,0 +1,61 @@
+/*
+ *  Copyright (c) 2012 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.completion;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters describing the use of an {@link AbstractParserCache}.
+ *
+ * @author Sam Harwell
+ */
+class ParserCacheStatistics {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Gets the number of requests which were served by an idle parser.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of requests which required a new parser.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of parsers which were discarded because the pool was
+     * full when they were returned.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void evicted() {
+        evictions.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d", getHitCount(), getMissCount(), getEvictionCount());
+    }
+}
@@ -38,7 +38,9 @@ import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.misc.Tuple2;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenBuffer;
 import org.antlr.works.editor.antlr4.classification.TaggerTokenSource;
+import org.antlr.works.editor.antlr4.classification.TaggerTokenStream;
 import org.antlr.works.editor.antlr4.completion.CaretReachedException;
 import org.antlr.works.editor.antlr4.completion.CaretToken;
 import org.antlr.works.editor.antlr4.completion.CodeCompletionTokenSource;
@@ -121,8 +123,9 @@ public abstract class AbstractIndentTask implements IndentTask {
         ReferenceAnchors anchors = findNearestAnchors(getTaskManager(), getSnapshot(), endPosition.getOffset());
         final Anchor previous = anchors.getPrevious();
 
-        Tagger<TokenTag<Token>> tagger = getTagger();
-        if (tagger == null) {
+        TaggerTokenBuffer tokenBuffer = getTokenBuffer();
+        Tagger<TokenTag<Token>> tagger = tokenBuffer == null ? getTagger() : null;
+        if (tokenBuffer == null && tagger == null) {
             return false;
         }
 
@@ -140,7 +143,13 @@ public abstract class AbstractIndentTask implements IndentTask {
 
         LOGGER.log(Level.FINE, "Reindent from anchor region: {0}.", region);
 
-        TaggerTokenSource taggerTokenSource = new TaggerTokenSource(tagger, new SnapshotPositionRegion(getSnapshot(), region));
+        TokenSource taggerTokenSource;
+        if (tokenBuffer != null) {
+            taggerTokenSource = new TaggerTokenStream(tokenBuffer, region);
+        } else {
+            taggerTokenSource = new TaggerTokenSource(tagger, new SnapshotPositionRegion(getSnapshot(), region));
+        }
+
         TokenSource tokenSource = new CodeCompletionTokenSource(endPosition.getOffset(), taggerTokenSource);
         CommonTokenStream tokens = new CommonTokenStream(tokenSource);
 
@@ -282,6 +291,16 @@ public abstract class AbstractIndentTask implements IndentTask {
 
     protected abstract Tagger<TokenTag<Token>> getTagger();
 
+    /**
+     * Gets a buffer holding the tokens of the current snapshot, if one is
+     * available. When this method returns {@code null}, the tokens are read
+     * from {@link #getTagger}.
+     */
+    @CheckForNull
+    protected TaggerTokenBuffer getTokenBuffer() {
+        return null;
+    }
+
     protected abstract CodeStyle getCodeStyle();
 
     protected abstract Map<RuleContext, CaretReachedException> getParseTrees(CommonTokenStream tokens, ReferenceAnchors anchors);
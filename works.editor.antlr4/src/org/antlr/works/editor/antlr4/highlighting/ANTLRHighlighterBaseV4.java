@@ -9,7 +9,6 @@
 package org.antlr.works.editor.antlr4.highlighting;
 
 import java.util.ArrayDeque;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
@@ -57,7 +56,7 @@ public abstract class ANTLRHighlighterBaseV4<TState extends LineStateInfo<TState
     private final Object lock = new Object();
     private final StyledDocument document;
     private final DocumentListenerImpl documentListener;
-    private final ArrayList<TState> lineStates = new ArrayList<>();
+    private final LineStateStore<TState> lineStates = new LineStateStore<>();
     private final boolean propagateChangedImmediately;
 
     private Integer firstDirtyLine;
@@ -86,10 +85,7 @@ public abstract class ANTLRHighlighterBaseV4<TState extends LineStateInfo<TState
     public void initialize() {
         TState dirtyState = getStartState().createDirtyState();
         int lineCount = NbDocument.findLineRootElement(this.document).getElementCount();
-        this.lineStates.ensureCapacity(lineCount);
-        for (int i = 0; i < lineCount; i++) {
-            this.lineStates.add(dirtyState);
-        }
+        this.lineStates.insert(0, lineCount, dirtyState);
 
         subscribeEvents();
         firstDirtyLine = 0;
@@ -584,10 +580,8 @@ public abstract class ANTLRHighlighterBaseV4<TState extends LineStateInfo<TState
                 throw new IllegalStateException();
             }
 
-            for (int i = 0; i < lineStates.size(); i++) {
-                if (lineStates.get(i).getIsDirty()) {
-                    throw new IllegalStateException();
-                }
+            if (lineStates.getDirtyLineCount() != 0) {
+                throw new IllegalStateException();
             }
 
             return;
@@ -597,16 +591,10 @@ public abstract class ANTLRHighlighterBaseV4<TState extends LineStateInfo<TState
             throw new IllegalStateException();
         }
 
-        for (int i = 0; i < firstDirtyLine; i++) {
-            if (lineStates.get(i).getIsDirty()) {
-                throw new IllegalStateException();
-            }
-        }
-
-        for (int i = lastDirtyLine + 1; i < lineStates.size(); i++) {
-            if (lineStates.get(i).getIsDirty()) {
-                throw new IllegalStateException();
-            }
+        // every dirty line must fall within [firstDirtyLine, lastDirtyLine]
+        int lastLine = Math.min(lastDirtyLine, lineStates.size() - 1);
+        if (lineStates.countDirtyLines(firstDirtyLine, lastLine) != lineStates.getDirtyLineCount()) {
+            throw new IllegalStateException();
         }
     }
 
@@ -813,14 +801,10 @@ public abstract class ANTLRHighlighterBaseV4<TState extends LineStateInfo<TState
                 int lineNumberFromPosition = NbDocument.findLineNumber(document, newOffset);
                 int num2 = NbDocument.findLineNumber(document, newOffset + newLength);
                 if (lineCountDelta < 0) {
-                    lineStates.subList(lineNumberFromPosition, lineNumberFromPosition + Math.abs(lineCountDelta)).clear();
+                    lineStates.remove(lineNumberFromPosition, Math.abs(lineCountDelta));
                 } else if (lineCountDelta > 0) {
                     TState endLineState = lineStates.get(lineNumberFromPosition);
-                    List<TState> insertedElements = new ArrayList<>();
-                    for (int i = 0; i < lineCountDelta; i++) {
-                        insertedElements.add(endLineState);
-                    }
-                    lineStates.addAll(lineNumberFromPosition, insertedElements);
+                    lineStates.insert(lineNumberFromPosition, lineCountDelta, endLineState);
                 }
 
                 if (lastDirtyLine != null && lastDirtyLine > lineNumberFromPosition) {
@@ -831,10 +815,7 @@ public abstract class ANTLRHighlighterBaseV4<TState extends LineStateInfo<TState
                     lastChangedLine += lineCountDelta;
                 }
 
-                for (int i = lineNumberFromPosition; i <= num2; i++) {
-                    TState state = lineStates.get(i);
-                    lineStates.set(i, state.createDirtyState());
-                }
+                lineStates.markDirty(lineNumberFromPosition, num2);
 
                 firstDirtyLine = firstDirtyLine != null ? Math.min(firstDirtyLine, lineNumberFromPosition) : lineNumberFromPosition;
                 lastDirtyLine = lastDirtyLine != null ? Math.max(lastDirtyLine, num2) : num2;
@@ -11,12 +11,12 @@ package org.antlr.works.editor.antlr4.highlighting;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
 import javax.swing.text.StyledDocument;
 import org.antlr.netbeans.editor.text.OffsetRegion;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.Interval;
-import org.openide.text.NbDocument;
 
 /**
  *
@@ -26,11 +26,28 @@ public class DocumentCharStreamV4 implements CharStream {
     // -J-Dorg.antlr.works.editor.antlr4.highlighting.DocumentCharStreamV4.level=FINE
     private static final Logger LOGGER = Logger.getLogger(DocumentCharStreamV4.class.getName());
 
+    /**
+     * The number of characters read from the document at a time.
+     */
+    private static final int BLOCK_SIZE = 4096;
+
     private boolean explicitCache;
 
-    private int currentSnapshotLineStartIndex;
+    /**
+     * The text read from the document, which is owned by this stream so later
+     * edits to the document cannot change characters which were not read yet.
+     */
+    private char[] buffer = new char[0];
+
+    private int bufferCount;
 
-    private String currentSnapshotLine;
+    private int bufferStartIndex;
+
+    /**
+     * Receives the text of {@link #readBlock}, which may refer to the internal
+     * storage of the document, before it is copied into {@link #buffer}.
+     */
+    private final Segment segment = new Segment();
 
     private final StyledDocument document;
 
@@ -38,25 +55,24 @@ public class DocumentCharStreamV4 implements CharStream {
 
     public DocumentCharStreamV4(StyledDocument document) {
         this.document = document;
-        //updateCachedLine();
     }
 
     public DocumentCharStreamV4(StyledDocument document, OffsetRegion cachedSpan) throws BadLocationException {
-        this.document = document;
+        this(document);
         this.explicitCache = true;
-        this.currentSnapshotLineStartIndex = cachedSpan.getStart();
-        this.currentSnapshotLine = document.getText(cachedSpan.getStart(), cachedSpan.getLength()).toString();
+        this.bufferStartIndex = cachedSpan.getStart();
+        this.buffer = document.getText(cachedSpan.getStart(), cachedSpan.getLength()).toCharArray();
+        this.bufferCount = buffer.length;
     }
 
     @Override
     public String getText(Interval interval) {
         int startIndex = interval.a;
         int endIndexInclusive = interval.b;
-        if (currentSnapshotLine != null) {
-            if (startIndex >= currentSnapshotLineStartIndex && (endIndexInclusive + 1) <= currentSnapshotLineStartIndex + currentSnapshotLine.length()) {
-                return currentSnapshotLine.substring(startIndex - currentSnapshotLineStartIndex, endIndexInclusive - currentSnapshotLineStartIndex + 1);
-            }
+        if (startIndex >= bufferStartIndex && (endIndexInclusive + 1) <= bufferStartIndex + bufferCount && endIndexInclusive >= startIndex) {
+            return new String(buffer, startIndex - bufferStartIndex, endIndexInclusive - startIndex + 1);
         }
+
         try {
             return document.getText(startIndex, endIndexInclusive - startIndex + 1).toString();
         } catch (BadLocationException ex) {
@@ -72,7 +88,6 @@ public class DocumentCharStreamV4 implements CharStream {
             return;
 
         index++;
-        updateCachedLine();
     }
 
     @Override
@@ -96,13 +111,18 @@ public class DocumentCharStreamV4 implements CharStream {
         }
 
         int actualIndex = index() + i - 1;
-        if (currentSnapshotLine != null
-            && actualIndex >= currentSnapshotLineStartIndex
-            && actualIndex < currentSnapshotLineStartIndex + currentSnapshotLine.length()) {
-            return currentSnapshotLine.charAt(actualIndex - currentSnapshotLineStartIndex);
+        int bufferIndex = actualIndex - bufferStartIndex;
+        if (bufferIndex >= 0 && bufferIndex < bufferCount) {
+            return buffer[bufferIndex];
         }
+
         try {
-            return document.getText(actualIndex, 1).charAt(0);
+            if (explicitCache) {
+                return document.getText(actualIndex, 1).charAt(0);
+            }
+
+            readBlock(actualIndex);
+            return buffer[actualIndex - bufferStartIndex];
         } catch (BadLocationException ex) {
             LOGGER.log(Level.WARNING, ex.getMessage(), ex);
             return Token.EOF;
@@ -130,7 +150,6 @@ public class DocumentCharStreamV4 implements CharStream {
         }
 
         this.index = index;
-        updateCachedLine();
     }
 
     @Override
@@ -143,27 +162,33 @@ public class DocumentCharStreamV4 implements CharStream {
         return "NbEditor";
     }
 
-    private void updateCachedLine() {
-        if (explicitCache)
-            return;
+    /**
+     * Reads a block of text containing {@code index} from the document. When
+     * the stream moves backwards, the block is positioned so text on both
+     * sides of {@code index} is available.
+     */
+    private void readBlock(int index) throws BadLocationException {
+        int size = size();
+        int start = index;
+        if (index < bufferStartIndex) {
+            start = Math.max(0, index - BLOCK_SIZE / 2);
+        }
 
-        if (currentSnapshotLine == null
-            || index() < currentSnapshotLineStartIndex
-            || index() >= currentSnapshotLineStartIndex + currentSnapshotLine.length()) {
-            if (index() >= 0 && index() < size()) {
-                int currentLine = NbDocument.findLineNumber(document, index());
-                currentSnapshotLineStartIndex = NbDocument.findLineOffset(document, currentLine);
-                int endIndex = (currentLine < NbDocument.findLineRootElement(document).getElementCount() - 1) ? NbDocument.findLineOffset(document, currentLine + 1) : document.getLength();
-                try {
-                    currentSnapshotLine = document.getText(currentSnapshotLineStartIndex, endIndex - currentSnapshotLineStartIndex).toString();
-                } catch (BadLocationException ex) {
-                    LOGGER.log(Level.WARNING, ex.getMessage(), ex);
-                }
-            } else {
-                currentSnapshotLine = null;
-                currentSnapshotLineStartIndex = 0;
-            }
+        start = Math.max(0, Math.min(start, size - BLOCK_SIZE));
+        int length = Math.min(BLOCK_SIZE, size - start);
 
+        // reset the buffer first so a failed read doesn't leave stale text
+        bufferCount = 0;
+        document.getText(start, length, segment);
+        if (buffer.length < segment.count) {
+            buffer = new char[BLOCK_SIZE];
         }
+
+        System.arraycopy(segment.array, segment.offset, buffer, 0, segment.count);
+        bufferCount = segment.count;
+        bufferStartIndex = start;
+
+        // don't hold on to the storage of the document
+        segment.array = null;
     }
 }
@@ -0,0 +1,289 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.highlighting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.antlr.netbeans.editor.highlighting.LineStateInfo;
+import org.netbeans.api.annotations.common.NonNull;
+import org.openide.util.Parameters;
+
+/**
+ * Stores the lexer state at the end of each line of a document.
+ * <p>
+ * Equal states are interned to small integer IDs, and the IDs are held in a
+ * gap buffer so inserting or removing lines near the previous edit does not
+ * shift the states of every following line. States which are no longer used
+ * by any line are dropped from the intern table when it grows well past the
+ * number of states in use, or when every line is removed. The number of dirty lines is
+ * tracked as lines are updated so the dirty line bounds can be validated
+ * without scanning the whole document.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Sam Harwell
+ * @param <TState>
+ */
+final class LineStateStore<TState extends LineStateInfo<TState>> {
+    private static final int MIN_GAP = 16;
+    private static final int NO_STATE = -1;
+    private static final int MIN_COMPACT_THRESHOLD = 64;
+
+    private final Map<TState, Integer> stateIds = new HashMap<>();
+    private final List<TState> states = new ArrayList<>();
+    /**
+     * For each state ID, the ID of the state returned by
+     * {@link LineStateInfo#createDirtyState}, or {@link #NO_STATE} if it was
+     * not computed yet.
+     */
+    private int[] dirtyStateIds = new int[8];
+
+    private int[] lines = new int[MIN_GAP];
+    private int gapStart;
+    private int gapEnd = MIN_GAP;
+    private int dirtyLineCount;
+    /**
+     * The size of the intern table at which unused states are removed.
+     */
+    private int compactThreshold = MIN_COMPACT_THRESHOLD;
+
+    public LineStateStore() {
+        Arrays.fill(dirtyStateIds, NO_STATE);
+    }
+
+    public int size() {
+        return lines.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * Gets the number of lines whose state is dirty.
+     */
+    public int getDirtyLineCount() {
+        return dirtyLineCount;
+    }
+
+    /**
+     * Gets the number of states in the intern table, including states which
+     * are no longer used by any line.
+     */
+    int getInternedStateCount() {
+        return states.size();
+    }
+
+    @NonNull
+    public TState get(int line) {
+        return states.get(lines[getPhysicalIndex(line)]);
+    }
+
+    /**
+     * Sets the state of a line.
+     *
+     * @return The previous state of the line.
+     */
+    @NonNull
+    public TState set(int line, @NonNull TState state) {
+        Parameters.notNull("state", state);
+        return setId(line, intern(state));
+    }
+
+    /**
+     * Replaces the state of each line in {@code [startLine, endLineInclusive]}
+     * with its {@link LineStateInfo#createDirtyState dirty state}.
+     */
+    public void markDirty(int startLine, int endLineInclusive) {
+        for (int i = startLine; i <= endLineInclusive; i++) {
+            int index = getPhysicalIndex(i);
+            int dirtyId = dirtyStateIds[lines[index]];
+            if (dirtyId == NO_STATE) {
+                dirtyId = intern(states.get(lines[index]).createDirtyState());
+                // interning may renumber the states, so the ID of the line is read again
+                dirtyStateIds[lines[index]] = dirtyId;
+            }
+
+            setId(i, dirtyId);
+        }
+    }
+
+    /**
+     * Inserts {@code count} lines with the state {@code state} before
+     * {@code line}.
+     */
+    public void insert(int line, int count, @NonNull TState state) {
+        Parameters.notNull("state", state);
+        if (line < 0 || line > size()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (count <= 0) {
+            return;
+        }
+
+        int id = intern(state);
+        ensureGap(count);
+        moveGap(line);
+        Arrays.fill(lines, gapStart, gapStart + count, id);
+        gapStart += count;
+        if (state.getIsDirty()) {
+            dirtyLineCount += count;
+        }
+    }
+
+    /**
+     * Removes the {@code count} lines starting at {@code line}.
+     */
+    public void remove(int line, int count) {
+        if (line < 0 || count < 0 || line + count > size()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (count == 0) {
+            return;
+        }
+
+        moveGap(line);
+        for (int i = gapEnd; i < gapEnd + count; i++) {
+            if (states.get(lines[i]).getIsDirty()) {
+                dirtyLineCount--;
+            }
+        }
+
+        gapEnd += count;
+        if (size() == 0) {
+            stateIds.clear();
+            states.clear();
+            dirtyStateIds = new int[8];
+            Arrays.fill(dirtyStateIds, NO_STATE);
+            compactThreshold = MIN_COMPACT_THRESHOLD;
+        }
+    }
+
+    /**
+     * Counts the lines in {@code [startLine, endLineInclusive]} whose state is
+     * dirty.
+     */
+    public int countDirtyLines(int startLine, int endLineInclusive) {
+        int count = 0;
+        for (int i = startLine; i <= endLineInclusive; i++) {
+            if (get(i).getIsDirty()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private TState setId(int line, int id) {
+        int index = getPhysicalIndex(line);
+        TState previous = states.get(lines[index]);
+        TState state = states.get(id);
+        lines[index] = id;
+        if (previous.getIsDirty() != state.getIsDirty()) {
+            dirtyLineCount += state.getIsDirty() ? 1 : -1;
+        }
+
+        return previous;
+    }
+
+    private int intern(TState state) {
+        Integer id = stateIds.get(state);
+        if (id != null) {
+            return id;
+        }
+
+        if (states.size() >= compactThreshold) {
+            compact();
+        }
+
+        id = states.size();
+        states.add(state);
+        stateIds.put(state, id);
+        if (id >= dirtyStateIds.length) {
+            int oldLength = dirtyStateIds.length;
+            dirtyStateIds = Arrays.copyOf(dirtyStateIds, oldLength * 2);
+            Arrays.fill(dirtyStateIds, oldLength, dirtyStateIds.length, NO_STATE);
+        }
+
+        return id;
+    }
+
+    /**
+     * Removes the states which are not used by any line from the intern
+     * table, renumbering the remaining states. The next compaction happens
+     * once the table doubles, or grows by an eighth of the line count, so the
+     * cost of scanning the lines is amortized over the states interned since.
+     */
+    private void compact() {
+        int[] newIds = new int[states.size()];
+        Arrays.fill(newIds, NO_STATE);
+        List<TState> usedStates = new ArrayList<>();
+        stateIds.clear();
+        int size = size();
+        for (int line = 0; line < size; line++) {
+            int index = getPhysicalIndex(line);
+            int id = lines[index];
+            int newId = newIds[id];
+            if (newId == NO_STATE) {
+                newId = usedStates.size();
+                newIds[id] = newId;
+                TState state = states.get(id);
+                usedStates.add(state);
+                stateIds.put(state, newId);
+            }
+
+            lines[index] = newId;
+        }
+
+        states.clear();
+        states.addAll(usedStates);
+        dirtyStateIds = new int[Math.max(8, states.size() * 2)];
+        Arrays.fill(dirtyStateIds, NO_STATE);
+        compactThreshold = Math.max(MIN_COMPACT_THRESHOLD, Math.max(states.size() * 2, size / 8));
+    }
+
+    private int getPhysicalIndex(int line) {
+        if (line < 0 || line >= size()) {
+            throw new IndexOutOfBoundsException("line: " + line + ", size: " + size());
+        }
+
+        return line < gapStart ? line : line + (gapEnd - gapStart);
+    }
+
+    private void moveGap(int line) {
+        if (line < gapStart) {
+            int count = gapStart - line;
+            System.arraycopy(lines, line, lines, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (line > gapStart) {
+            int count = line - gapStart;
+            System.arraycopy(lines, gapEnd, lines, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    private void ensureGap(int required) {
+        int gapLength = gapEnd - gapStart;
+        if (gapLength >= required) {
+            return;
+        }
+
+        int size = size();
+        int newLength = Math.max(lines.length * 2, size + required + MIN_GAP);
+        int[] newLines = new int[newLength];
+        int tailLength = lines.length - gapEnd;
+        System.arraycopy(lines, 0, newLines, 0, gapStart);
+        System.arraycopy(lines, gapEnd, newLines, newLength - tailLength, tailLength);
+        lines = newLines;
+        gapEnd = newLength - tailLength;
+    }
+}
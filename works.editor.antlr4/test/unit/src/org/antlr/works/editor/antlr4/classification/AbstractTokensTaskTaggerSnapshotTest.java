@@ -0,0 +1,508 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.classification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.highlighting.LineStateInfo;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.DocumentSnapshotLine;
+import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.misc.Tuple;
+import org.antlr.works.editor.antlr4.highlighting.TokenSourceWithStateV4;
+import org.junit.Test;
+import org.netbeans.api.annotations.common.NonNull;
+import org.netbeans.editor.BaseDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class AbstractTokensTaskTaggerSnapshotTest {
+    private static final int WORD = 1;
+    private static final int CODE = 2;
+    private static final int SEPARATOR = 3;
+    private static final int COMMENT = 4;
+    private static final int PUNCTUATION = 5;
+
+    @Test
+    public void testFullDocument() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(createText(200, new Random(0)));
+        TestTaggerSnapshot tagger = new TestTaggerSnapshot(snapshot);
+        tagger.initialize();
+
+        List<String> expected = lex(snapshot);
+        assertEquals(expected, describe(tagger.getHighlights(0, snapshot.length())));
+
+        // the second request is answered from the cached tokens
+        assertEquals(expected, describe(tagger.getHighlights(0, snapshot.length())));
+    }
+
+    @Test
+    public void testRandomRegions() throws BadLocationException {
+        Random random = new Random(1);
+        DocumentSnapshot snapshot = createSnapshot(createText(200, random));
+        TestTaggerSnapshot tagger = new TestTaggerSnapshot(snapshot);
+        tagger.initialize();
+
+        List<String> expected = lex(snapshot);
+        for (int i = 0; i < 500; i++) {
+            assertRegion(tagger, expected, random);
+        }
+    }
+
+    @Test
+    public void testConcurrentHighlights() throws Exception {
+        final DocumentSnapshot snapshot = createSnapshot(createText(1000, new Random(2)));
+        final List<String> expected = lex(snapshot);
+        final int threadCount = 4;
+
+        for (int round = 0; round < 20; round++) {
+            final TestTaggerSnapshot tagger = new TestTaggerSnapshot(snapshot);
+            tagger.initialize();
+
+            final CyclicBarrier barrier = new CyclicBarrier(threadCount);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                final Random random = new Random(round * threadCount + i);
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                            for (int j = 0; j < 50; j++) {
+                                assertRegion(tagger, expected, random);
+                            }
+                        } catch (Throwable ex) {
+                            failure.compareAndSet(null, ex);
+                        }
+                    }
+                });
+
+                thread.start();
+                threads.add(thread);
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            if (failure.get() != null) {
+                throw new AssertionError("round " + round, failure.get());
+            }
+
+            // the states committed by the concurrent requests match a single-threaded lex
+            assertEquals(expected, describe(tagger.getHighlights(0, snapshot.length())));
+        }
+    }
+
+    @Test
+    public void testStartStateChangedDuringLex() throws BadLocationException {
+        String text = "first\nsecond\nthird\nfourth\n";
+        DocumentSnapshot snapshot = createSnapshot(text);
+        final TestTaggerSnapshot tagger = new TestTaggerSnapshot(snapshot);
+        tagger.initialize();
+        tagger.getHighlights(0, snapshot.length());
+
+        // the next lex starts from the state at the end of line 1
+        tagger.forceRehighlightLines(2, 2);
+        tagger.setLexerCreatedHook(new Runnable() {
+            @Override
+            public void run() {
+                // another request stores a new state for line 1 while the lexer runs
+                tagger.setLexerCreatedHook(null);
+                tagger.setLineState(1, State.CODE);
+            }
+        });
+
+        int start = text.indexOf("third");
+        List<String> tokens = describe(tagger.getHighlights(start, start + "third".length()));
+
+        // the results of the first lex were discarded, so the token reflects the new state
+        assertEquals(Collections.singletonList(CODE + ":" + start + ":" + (start + 4)), tokens);
+    }
+
+    @Test
+    public void testEditInvalidatesLineTokens() throws BadLocationException {
+        Random random = new Random(3);
+        DocumentSnapshot snapshot = createSnapshot(createText(200, random));
+        AbstractTokensTaskTaggerSnapshot<State> tagger = new TestTaggerSnapshot(snapshot);
+        tagger.initialize();
+        assertEquals(lex(snapshot), describe(tagger.getHighlights(0, snapshot.length())));
+
+        // split a word
+        int offset = snapshot.getText().indexOf("word10") + 2;
+        snapshot = edit(snapshot, offset, 0, " ");
+        tagger = assertTranslated(tagger, snapshot, random);
+
+        // switch the mode of every following line
+        offset = snapshot.findLineFromLineNumber(20).getStart().getOffset();
+        snapshot = edit(snapshot, offset, 0, "%%\n");
+        tagger = assertTranslated(tagger, snapshot, random);
+
+        // open a comment which extends over the following lines
+        offset = snapshot.findLineFromLineNumber(40).getStart().getOffset();
+        snapshot = edit(snapshot, offset, 0, "/* ");
+        tagger = assertTranslated(tagger, snapshot, random);
+
+        // remove several lines, including the line which switched the mode
+        offset = snapshot.findLineFromLineNumber(18).getStart().getOffset();
+        int end = snapshot.findLineFromLineNumber(25).getStart().getOffset();
+        snapshot = edit(snapshot, offset, end - offset, "");
+        assertTranslated(tagger, snapshot, random);
+    }
+
+    @Test
+    public void testTranslatedTokensKeepOffsets() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(createText(200, new Random(4)));
+        AbstractTokensTaskTaggerSnapshot<State> tagger = new TestTaggerSnapshot(snapshot);
+        tagger.initialize();
+        tagger.getHighlights(0, snapshot.length());
+
+        // two versions which move the following lines by a line and by a few characters
+        snapshot = edit(snapshot, 0, 0, "inserted line\n");
+        snapshot = edit(snapshot, snapshot.findLineFromLineNumber(5).getStart().getOffset(), 0, "x ");
+        tagger = tagger.translateTo(snapshot);
+
+        int start = snapshot.findLineFromLineNumber(100).getStart().getOffset();
+        int end = snapshot.findLineFromLineNumber(120).getStart().getOffset();
+        List<TaggedPositionRegion<TokenTag<Token>>> tags = tagger.getHighlights(start, end);
+
+        List<String> expected = new ArrayList<>();
+        for (String token : lex(snapshot)) {
+            if (getStopIndex(token) >= start && getStartIndex(token) < end) {
+                expected.add(token);
+            }
+        }
+
+        assertEquals(expected, describe(tags));
+        for (TaggedPositionRegion<TokenTag<Token>> tag : tags) {
+            Token token = tag.getTag().getToken();
+
+            // the lexer stopped once it reached the cached tokens of the unchanged lines
+            assertFalse(token.getTokenSource() instanceof TestLexer);
+
+            assertSame(snapshot, ((DocumentSnapshotToken)token).getSnapshot());
+            assertSame(snapshot, tag.getRegion().getSnapshot());
+            assertEquals(token.getStartIndex(), tag.getRegion().getStart().getOffset());
+            assertEquals(snapshot.subSequence(token.getStartIndex(), token.getStopIndex() + 1).toString(), token.getText());
+
+            DocumentSnapshotLine line = snapshot.findLineFromOffset(token.getStartIndex());
+            assertEquals(line.getLineNumber() + 1, token.getLine());
+            assertEquals(token.getStartIndex() - line.getStart().getOffset(), token.getCharPositionInLine());
+        }
+    }
+
+    private static AbstractTokensTaskTaggerSnapshot<State> assertTranslated(AbstractTokensTaskTaggerSnapshot<State> tagger, DocumentSnapshot snapshot, Random random) {
+        AbstractTokensTaskTaggerSnapshot<State> translated = tagger.translateTo(snapshot);
+        List<String> expected = lex(snapshot);
+        for (int i = 0; i < 20; i++) {
+            assertRegion(translated, snapshot, expected, random);
+        }
+
+        assertEquals(expected, describe(translated.getHighlights(0, snapshot.length())));
+        return translated;
+    }
+
+    private static void assertRegion(TestTaggerSnapshot tagger, List<String> expected, Random random) {
+        assertRegion(tagger, tagger.getSnapshot(), expected, random);
+    }
+
+    private static void assertRegion(AbstractTokensTaskTaggerSnapshot<State> tagger, DocumentSnapshot snapshot, List<String> expected, Random random) {
+        int length = snapshot.length();
+        int start = random.nextInt(length);
+        int end = Math.min(length, start + 1 + random.nextInt(2000));
+        List<String> expectedRegion = new ArrayList<>();
+        for (String token : expected) {
+            int tokenStart = getStartIndex(token);
+            int tokenStop = getStopIndex(token);
+            if (tokenStop >= start && tokenStart < end) {
+                expectedRegion.add(token);
+            }
+        }
+
+        assertEquals("region " + start + ".." + end, expectedRegion, describe(tagger.getHighlights(start, end)));
+    }
+
+    static String createText(int lineCount, Random random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < lineCount; i++) {
+            switch (random.nextInt(10)) {
+            case 0:
+                // switches the lexer mode for the following lines
+                builder.append("%%");
+                break;
+
+            case 1:
+                builder.append("word").append(i).append(" /* comment\n    continued */ x;");
+                break;
+
+            case 2:
+                // an empty line
+                break;
+
+            default:
+                builder.append("    word").append(i).append(' ').append(random.nextInt(100)).append(" + other;");
+                break;
+            }
+
+            builder.append('\n');
+        }
+
+        return builder.toString();
+    }
+
+    static DocumentSnapshot createSnapshot(String text) throws BadLocationException {
+        BaseDocument document = new BaseDocument(false, "text/plain");
+        document.insertString(0, text, null);
+        return VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
+    }
+
+    static DocumentSnapshot edit(DocumentSnapshot snapshot, int offset, int length, String text) throws BadLocationException {
+        Document document = snapshot.getVersionedDocument().getDocument();
+        if (length > 0) {
+            document.remove(offset, length);
+        }
+
+        if (!text.isEmpty()) {
+            document.insertString(offset, text, null);
+        }
+
+        return snapshot.getVersionedDocument().getCurrentSnapshot();
+    }
+
+    /**
+     * Lexes {@code snapshot} from start to end with a single lexer.
+     */
+    static List<String> lex(DocumentSnapshot snapshot) {
+        List<String> result = new ArrayList<>();
+        TestLexer lexer = new TestLexer(new DocumentSnapshotCharStream(snapshot), State.INITIAL);
+        for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+            result.add(describe(token));
+        }
+
+        return result;
+    }
+
+    static List<String> describe(List<TaggedPositionRegion<TokenTag<Token>>> tags) {
+        List<String> result = new ArrayList<>(tags.size());
+        for (TaggedPositionRegion<TokenTag<Token>> tag : tags) {
+            result.add(describe(tag.getTag().getToken()));
+        }
+
+        return result;
+    }
+
+    static String describe(Token token) {
+        return token.getType() + ":" + token.getStartIndex() + ":" + token.getStopIndex();
+    }
+
+    private static int getStartIndex(String token) {
+        return Integer.parseInt(token.split(":")[1]);
+    }
+
+    private static int getStopIndex(String token) {
+        return Integer.parseInt(token.split(":")[2]);
+    }
+
+    static final class TestTaggerSnapshot extends AbstractTokensTaskTaggerSnapshot<State> {
+        private final DocumentSnapshot snapshot;
+        private volatile Runnable lexerCreatedHook;
+
+        public TestTaggerSnapshot(@NonNull DocumentSnapshot snapshot) {
+            super(snapshot);
+            this.snapshot = snapshot;
+        }
+
+        private TestTaggerSnapshot(@NonNull TestTaggerSnapshot reference, @NonNull DocumentSnapshot snapshot) {
+            super(reference, snapshot);
+            this.snapshot = snapshot;
+        }
+
+        public DocumentSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public void setLexerCreatedHook(Runnable lexerCreatedHook) {
+            this.lexerCreatedHook = lexerCreatedHook;
+        }
+
+        @Override
+        protected State getStartState() {
+            return State.INITIAL;
+        }
+
+        @Override
+        protected TokenSourceWithStateV4<State> createLexer(CharStream input, State startState) {
+            Runnable hook = lexerCreatedHook;
+            if (hook != null) {
+                hook.run();
+            }
+
+            return new TestLexer(input, startState);
+        }
+
+        @Override
+        protected TestTaggerSnapshot translateToImpl(@NonNull DocumentSnapshot targetSnapshot) {
+            return new TestTaggerSnapshot(this, targetSnapshot);
+        }
+    }
+
+    /**
+     * A lexer for words and punctuation. Line breaks are skipped, a line
+     * containing {@code %%} switches between the {@link #WORD} and
+     * {@link #CODE} modes, and block comments may span lines.
+     */
+    static final class TestLexer implements TokenSourceWithStateV4<State> {
+        private final CharStream input;
+        private int mode;
+        private TokenFactory tokenFactory = CommonTokenFactory.DEFAULT;
+
+        public TestLexer(CharStream input, State startState) {
+            this.input = input;
+            this.mode = startState.mode;
+        }
+
+        @Override
+        public Token nextToken() {
+            while (input.LA(1) == '\n' || input.LA(1) == ' ') {
+                input.consume();
+            }
+
+            int start = input.index();
+            int c = input.LA(1);
+            int type;
+            if (c == IntStream.EOF) {
+                type = Token.EOF;
+            } else if (c == '/' && input.LA(2) == '*') {
+                type = COMMENT;
+                input.consume();
+                input.consume();
+                while (input.LA(1) != IntStream.EOF && (input.LA(1) != '*' || input.LA(2) != '/')) {
+                    input.consume();
+                }
+
+                if (input.LA(1) != IntStream.EOF) {
+                    input.consume();
+                    input.consume();
+                }
+            } else if (c == '%' && input.LA(2) == '%') {
+                type = SEPARATOR;
+                mode = 1 - mode;
+                input.consume();
+                input.consume();
+            } else if (Character.isLetterOrDigit(c)) {
+                type = mode == 0 ? WORD : CODE;
+                while (Character.isLetterOrDigit(input.LA(1))) {
+                    input.consume();
+                }
+            } else {
+                type = PUNCTUATION;
+                input.consume();
+            }
+
+            return tokenFactory.create(Tuple.create(this, input), type, null, Token.DEFAULT_CHANNEL, start, input.index() - 1, 0, 0);
+        }
+
+        @Override
+        public State getCurrentState() {
+            return mode == 0 ? State.INITIAL : State.CODE;
+        }
+
+        @Override
+        public int getLine() {
+            return 0;
+        }
+
+        @Override
+        public int getCharPositionInLine() {
+            return 0;
+        }
+
+        @Override
+        public CharStream getInputStream() {
+            return input;
+        }
+
+        @Override
+        public String getSourceName() {
+            return input.getSourceName();
+        }
+
+        @Override
+        public TokenFactory getTokenFactory() {
+            return tokenFactory;
+        }
+
+        @Override
+        public void setTokenFactory(TokenFactory tokenFactory) {
+            this.tokenFactory = tokenFactory;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static final class State implements LineStateInfo<State> {
+        public static final State INITIAL = new State(0);
+        public static final State CODE = new State(1);
+        public static final State DIRTY = new State(-1);
+        public static final State MULTILINE = new State(-2);
+
+        private final int mode;
+
+        private State(int mode) {
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean getIsDirty() {
+            return this == DIRTY;
+        }
+
+        @Override
+        public boolean getIsMultiLineToken() {
+            return this == MULTILINE;
+        }
+
+        @Override
+        public State createDirtyState() {
+            return DIRTY;
+        }
+
+        @Override
+        public State createMultiLineState() {
+            return MULTILINE;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(mode);
+        }
+    }
+}
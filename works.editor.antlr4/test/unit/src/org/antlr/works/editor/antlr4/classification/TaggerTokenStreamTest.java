@@ -0,0 +1,231 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.classification;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.text.BadLocationException;
+import org.antlr.netbeans.editor.classification.TokenTag;
+import org.antlr.netbeans.editor.tagging.BaseTaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.SnapshotPositionRegionEventListener;
+import org.antlr.netbeans.editor.tagging.TaggedPositionRegion;
+import org.antlr.netbeans.editor.tagging.Tagger;
+import org.antlr.netbeans.editor.text.DocumentSnapshot;
+import org.antlr.netbeans.editor.text.NormalizedSnapshotPositionRegionCollection;
+import org.antlr.netbeans.editor.text.OffsetRegion;
+import org.antlr.netbeans.editor.text.SnapshotPositionRegion;
+import org.antlr.netbeans.editor.text.VersionedDocumentUtilities;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.junit.Test;
+import org.netbeans.editor.BaseDocument;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class TaggerTokenStreamTest {
+    private static final int WORD = 1;
+    private static final int WS = 2;
+
+    private static final String TEXT = "first line\nsecond line\nthird line";
+
+    @Test
+    public void testFullStream() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        TaggerTokenStream stream = new TaggerTokenStream(new WordTagger(), snapshot);
+
+        // 6 words, 5 whitespace tokens, and EOF
+        assertEquals(12, stream.size());
+        assertToken(stream.get(0), 0, WORD, "first", 1, 0);
+        assertToken(stream.get(6), 6, WORD, "line", 2, 7);
+        assertEof(stream.get(11), 11, TEXT.length(), 3, 10);
+        assertEquals(TEXT, stream.getText());
+    }
+
+    @Test
+    public void testRegionSlice() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        TaggerTokenBuffer buffer = new TaggerTokenBuffer(new WordTagger(), snapshot);
+
+        // "second line\n"
+        int start = TEXT.indexOf("second");
+        int end = TEXT.indexOf("third");
+        TaggerTokenStream stream = new TaggerTokenStream(buffer, OffsetRegion.fromBounds(start, end));
+        assertEquals(5, stream.size());
+        assertToken(stream.get(0), 0, WORD, "second", 2, 0);
+        assertToken(stream.get(2), 2, WORD, "line", 2, 7);
+        assertEquals("second line\n", stream.getText());
+
+        // EOF is at the end of the region, not at the end of the document
+        assertEof(stream.get(4), 4, end, 3, 0);
+
+        assertToken(stream.LT(1), 0, WORD, "second", 2, 0);
+        stream.consume();
+        assertToken(stream.LT(1), 2, WORD, "line", 2, 7);
+        stream.consume();
+        assertEquals(Token.EOF, stream.LA(1));
+        assertSame(stream.get(4), stream.LT(1));
+    }
+
+    @Test
+    public void testRegionSliceInsideToken() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        TaggerTokenBuffer buffer = new TaggerTokenBuffer(new WordTagger(), snapshot);
+
+        // the region ends in the middle of "second", so EOF follows the whole word
+        int start = TEXT.indexOf("line");
+        int end = TEXT.indexOf("second") + 3;
+        TaggerTokenStream stream = new TaggerTokenStream(buffer, OffsetRegion.fromBounds(start, end));
+        assertEquals(4, stream.size());
+        assertToken(stream.get(0), 0, WORD, "line", 1, 6);
+        assertToken(stream.get(2), 2, WORD, "second", 2, 0);
+        assertEof(stream.get(3), 3, TEXT.indexOf(" line", end), 2, 6);
+    }
+
+    @Test
+    public void testRegionSliceAtEnd() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        TaggerTokenBuffer buffer = new TaggerTokenBuffer(new WordTagger(), snapshot);
+
+        int start = TEXT.indexOf("third");
+        TaggerTokenStream stream = new TaggerTokenStream(buffer, OffsetRegion.fromBounds(start, TEXT.length()));
+        assertEquals(4, stream.size());
+        assertToken(stream.get(0), 0, WORD, "third", 3, 0);
+        assertEof(stream.get(3), 3, TEXT.length(), 3, 10);
+    }
+
+    @Test
+    public void testEmptyRegion() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        TaggerTokenBuffer buffer = new TaggerTokenBuffer(new WordTagger(), snapshot);
+
+        int offset = TEXT.indexOf("second");
+        TaggerTokenStream stream = new TaggerTokenStream(buffer, OffsetRegion.fromBounds(offset, offset));
+        assertEquals(1, stream.size());
+        assertEof(stream.LT(1), 0, offset, 2, 0);
+    }
+
+    @Test
+    public void testRegionBuffer() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        int end = TEXT.indexOf("third");
+        TaggerTokenBuffer buffer = new TaggerTokenBuffer(new WordTagger(), new SnapshotPositionRegion(snapshot, 0, end));
+        assertEquals(9, buffer.size());
+        assertEquals(Token.EOF, buffer.getType(8));
+        assertEquals(end, buffer.getStartIndex(8));
+        assertEquals(3, buffer.getLine(8));
+        assertEquals(0, buffer.getCharPositionInLine(8));
+    }
+
+    @Test
+    public void testTokenIdentity() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        TaggerTokenStream stream = new TaggerTokenStream(new WordTagger(), snapshot);
+        Token first = stream.LT(1);
+        assertSame(first, stream.get(0));
+        assertSame(first, stream.nextToken());
+        assertSame(stream.get(1), stream.nextToken());
+    }
+
+    @Test
+    public void testCreateTokenOncePerIndex() throws BadLocationException {
+        DocumentSnapshot snapshot = createSnapshot(TEXT);
+        final int[] created = new int[1];
+        TaggerTokenStream stream = new TaggerTokenStream(new TaggerTokenBuffer(new WordTagger(), snapshot)) {
+            @Override
+            protected Token createToken(int index) {
+                created[0]++;
+                return super.createToken(index);
+            }
+        };
+
+        Token first = stream.LT(1);
+        assertSame(first, stream.get(0));
+        assertSame(first, stream.nextToken());
+        assertEquals(1, created[0]);
+
+        // hidden tokens are only created when they are read
+        stream.consume();
+        assertToken(stream.LT(1), 2, WORD, "line", 1, 6);
+        assertEquals(2, created[0]);
+    }
+
+    private static void assertToken(Token token, int index, int type, String text, int line, int column) {
+        assertEquals(index, token.getTokenIndex());
+        assertEquals(type, token.getType());
+        assertEquals(text, token.getText());
+        assertEquals(text.length(), token.getStopIndex() - token.getStartIndex() + 1);
+        assertEquals(line, token.getLine());
+        assertEquals(column, token.getCharPositionInLine());
+    }
+
+    private static void assertEof(Token token, int index, int offset, int line, int column) {
+        assertEquals(index, token.getTokenIndex());
+        assertEquals(Token.EOF, token.getType());
+        assertEquals(offset, token.getStartIndex());
+        assertEquals(offset - 1, token.getStopIndex());
+        assertEquals(line, token.getLine());
+        assertEquals(column, token.getCharPositionInLine());
+    }
+
+    private static DocumentSnapshot createSnapshot(String text) throws BadLocationException {
+        BaseDocument document = new BaseDocument(false, "text/plain");
+        document.insertString(0, text, null);
+        return VersionedDocumentUtilities.getVersionedDocument(document).getCurrentSnapshot();
+    }
+
+    /**
+     * A tagger which returns words on the default channel and whitespace on
+     * the hidden channel, for the tokens which intersect the requested
+     * regions.
+     */
+    private static final class WordTagger implements Tagger<TokenTag<Token>> {
+
+        @Override
+        public Iterable<TaggedPositionRegion<TokenTag<Token>>> getTags(NormalizedSnapshotPositionRegionCollection regions) {
+            List<TaggedPositionRegion<TokenTag<Token>>> tags = new ArrayList<>();
+            for (SnapshotPositionRegion region : regions) {
+                DocumentSnapshot snapshot = region.getSnapshot();
+                String text = snapshot.getText();
+                int start = 0;
+                while (start < text.length()) {
+                    boolean whitespace = Character.isWhitespace(text.charAt(start));
+                    int stop = start;
+                    while (stop + 1 < text.length() && Character.isWhitespace(text.charAt(stop + 1)) == whitespace) {
+                        stop++;
+                    }
+
+                    if (stop >= region.getStart().getOffset() && start < region.getEnd().getOffset()) {
+                        CommonToken token = new CommonToken(whitespace ? WS : WORD, text.substring(start, stop + 1));
+                        token.setStartIndex(start);
+                        token.setStopIndex(stop);
+                        token.setChannel(whitespace ? Token.HIDDEN_CHANNEL : Token.DEFAULT_CHANNEL);
+                        tags.add(new BaseTaggedPositionRegion<>(new SnapshotPositionRegion(snapshot, start, stop - start + 1), new TokenTag<Token>(token)));
+                    }
+
+                    start = stop + 1;
+                }
+            }
+
+            return tags;
+        }
+
+        @Override
+        public void addTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+
+        @Override
+        public void removeTagsChangeListener(SnapshotPositionRegionEventListener listener) {
+        }
+    }
+}
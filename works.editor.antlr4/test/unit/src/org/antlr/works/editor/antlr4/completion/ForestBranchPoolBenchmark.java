@@ -0,0 +1,129 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.completion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Measures the cost of running the branches of a forest the way
+ * {@link AbstractForestParser} runs them, in a {@link ForkJoinPool} created
+ * for each forest and shut down afterwards, compared with a single pool shared
+ * by every forest and with running the branches on the calling thread.
+ * <p>
+ * Each branch performs a fixed amount of work in place of a parse, so the
+ * difference between the modes is the cost of the pool itself. Unlike
+ * {@code GrammarForestParserBenchmark}, this benchmark only needs the JDK.
+ * <p>
+ * Usage: {@code ForestBranchPoolBenchmark [branches] [branchMicros] [forests]}
+ *
+ * @author Sam Harwell
+ */
+public final class ForestBranchPoolBenchmark {
+
+    private static final ForkJoinPool SHARED_POOL = new ForkJoinPool();
+
+    /**
+     * Holds the result of the branch work so it is not optimized away.
+     */
+    private static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        int branches = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int branchMicros = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int forests = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+        long iterationsPerMicro = calibrate();
+        System.out.format("%d branches, %d us per branch, %d forests, %d processors%n", branches, branchMicros, forests, Runtime.getRuntime().availableProcessors());
+        for (int i = 0; i < 2; i++) {
+            measure("sequential", null, false, branches, branchMicros * iterationsPerMicro, forests);
+            measure("shared pool", SHARED_POOL, false, branches, branchMicros * iterationsPerMicro, forests);
+            measure("per-forest pool", null, true, branches, branchMicros * iterationsPerMicro, forests);
+        }
+    }
+
+    private static void measure(String name, ForkJoinPool sharedPool, boolean poolPerForest, int branches, long branchIterations, int forests) throws Exception {
+        long[] times = new long[forests];
+        long total = 0;
+        for (int i = 0; i < forests; i++) {
+            long startTime = System.nanoTime();
+            if (sharedPool != null) {
+                total += runBranches(sharedPool, branches, branchIterations);
+            } else if (poolPerForest) {
+                ForkJoinPool pool = new ForkJoinPool(Math.min(branches, Runtime.getRuntime().availableProcessors()));
+                try {
+                    total += runBranches(pool, branches, branchIterations);
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                for (int j = 0; j < branches; j++) {
+                    total += work(branchIterations);
+                }
+            }
+
+            times[i] = System.nanoTime() - startTime;
+        }
+
+        sink += total;
+        Arrays.sort(times);
+        System.out.format("%-16s min %8.3fms  median %8.3fms  max %8.3fms%n", name, times[0] / 1e6, times[forests / 2] / 1e6, times[forests - 1] / 1e6);
+    }
+
+    private static long runBranches(ForkJoinPool pool, int branches, final long branchIterations) {
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>(branches);
+        for (int i = 0; i < branches; i++) {
+            tasks.add(pool.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return work(branchIterations);
+                }
+            }));
+        }
+
+        long total = 0;
+        for (ForkJoinTask<Long> task : tasks) {
+            total += task.join();
+        }
+
+        return total;
+    }
+
+    private static long work(long iterations) {
+        long value = iterations;
+        for (long i = 0; i < iterations; i++) {
+            value = value * 6364136223846793005L + 1442695040888963407L;
+        }
+
+        return value;
+    }
+
+    /**
+     * Finds the number of iterations of {@link #work} which take about one
+     * microsecond.
+     */
+    private static long calibrate() {
+        long iterations = 1000000;
+        for (int i = 0; i < 5; i++) {
+            sink += work(iterations);
+        }
+
+        long startTime = System.nanoTime();
+        sink += work(iterations * 10);
+        long elapsedMicros = Math.max(1, (System.nanoTime() - startTime) / 1000);
+        return Math.max(1, iterations * 10 / elapsedMicros);
+    }
+
+    private ForestBranchPoolBenchmark() {
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright (c) 2014 Sam Harwell, Tunnel Vision Laboratories LLC
+ *  All rights reserved.
+ *
+ *  The source code of this document is proprietary work, and is not licensed for
+ *  distribution. For information about licensing, contact Sam Harwell at:
+ *      sam@tunnelvisionlabs.com
+ */
+package org.antlr.works.editor.antlr4.highlighting;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.antlr.netbeans.editor.highlighting.LineStateInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Sam Harwell
+ */
+public class LineStateStoreTest {
+
+    @Test
+    public void testInsertRemove() {
+        LineStateStore<State> store = new LineStateStore<>();
+        List<State> expected = new ArrayList<>();
+
+        insert(store, expected, 0, 10, State.of(1));
+        insert(store, expected, 5, 3, State.of(2));
+        insert(store, expected, 13, 2, State.DIRTY);
+        assertLines(expected, store);
+
+        remove(store, expected, 4, 5);
+        assertLines(expected, store);
+
+        remove(store, expected, 0, 1);
+        insert(store, expected, store.size(), 4, State.of(3));
+        assertLines(expected, store);
+    }
+
+    @Test
+    public void testSetAndMarkDirty() {
+        LineStateStore<State> store = new LineStateStore<>();
+        List<State> expected = new ArrayList<>();
+        insert(store, expected, 0, 20, State.of(1));
+
+        assertEquals(State.of(1), store.set(3, State.of(7)));
+        expected.set(3, State.of(7));
+        assertLines(expected, store);
+
+        store.markDirty(2, 6);
+        for (int i = 2; i <= 6; i++) {
+            expected.set(i, State.DIRTY);
+        }
+
+        assertLines(expected, store);
+
+        store.set(4, State.of(2));
+        expected.set(4, State.of(2));
+        assertLines(expected, store);
+    }
+
+    @Test
+    public void testRandomEdits() {
+        Random random = new Random(0);
+        LineStateStore<State> store = new LineStateStore<>();
+        List<State> expected = new ArrayList<>();
+        insert(store, expected, 0, 100, State.of(0));
+
+        for (int i = 0; i < 5000; i++) {
+            int line = random.nextInt(store.size());
+            switch (random.nextInt(4)) {
+            case 0:
+                insert(store, expected, line, 1 + random.nextInt(5), State.of(random.nextInt(1000)));
+                break;
+
+            case 1:
+                if (store.size() > 10) {
+                    remove(store, expected, line, Math.min(1 + random.nextInt(5), store.size() - line));
+                }
+
+                break;
+
+            case 2:
+                State state = State.of(random.nextInt(1000));
+                store.set(line, state);
+                expected.set(line, state);
+                break;
+
+            default:
+                int end = Math.min(store.size() - 1, line + random.nextInt(5));
+                store.markDirty(line, end);
+                for (int j = line; j <= end; j++) {
+                    expected.set(j, expected.get(j).createDirtyState());
+                }
+
+                break;
+            }
+
+            if (i % 250 == 0) {
+                assertLines(expected, store);
+            }
+        }
+
+        assertLines(expected, store);
+    }
+
+    @Test
+    public void testUnusedStatesAreDropped() {
+        LineStateStore<State> store = new LineStateStore<>();
+        store.insert(0, 1000, State.of(0));
+
+        // a long editing session sets many states which are later replaced
+        for (int i = 0; i < 100000; i++) {
+            store.set(i % 1000, State.of(i));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            store.set(i, State.of(i % 3));
+        }
+
+        store.set(0, State.of(5));
+        assertTrue("interned states: " + store.getInternedStateCount(), store.getInternedStateCount() <= 2 * 1000);
+        assertEquals(State.of(5), store.get(0));
+        assertEquals(State.of(1), store.get(1));
+    }
+
+    @Test
+    public void testRemoveAllResetsStates() {
+        LineStateStore<State> store = new LineStateStore<>();
+        for (int i = 0; i < 50; i++) {
+            store.insert(0, 1, State.of(i));
+        }
+
+        store.remove(0, store.size());
+        assertEquals(0, store.getInternedStateCount());
+        assertEquals(0, store.getDirtyLineCount());
+
+        store.insert(0, 3, State.DIRTY);
+        assertEquals(3, store.getDirtyLineCount());
+        assertEquals(1, store.getInternedStateCount());
+    }
+
+    private static void insert(LineStateStore<State> store, List<State> expected, int line, int count, State state) {
+        store.insert(line, count, state);
+        expected.addAll(line, Collections.nCopies(count, state));
+    }
+
+    private static void remove(LineStateStore<State> store, List<State> expected, int line, int count) {
+        store.remove(line, count);
+        expected.subList(line, line + count).clear();
+    }
+
+    private static void assertLines(List<State> expected, LineStateStore<State> store) {
+        assertEquals(expected.size(), store.size());
+        int dirtyCount = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("line " + i, expected.get(i), store.get(i));
+            if (expected.get(i).getIsDirty()) {
+                dirtyCount++;
+            }
+        }
+
+        assertEquals(dirtyCount, store.getDirtyLineCount());
+        if (!expected.isEmpty()) {
+            assertEquals(dirtyCount, store.countDirtyLines(0, expected.size() - 1));
+        }
+    }
+
+    private static final class State implements LineStateInfo<State> {
+        public static final State DIRTY = new State(-1);
+        public static final State MULTILINE = new State(-2);
+
+        private final int value;
+
+        private State(int value) {
+            this.value = value;
+        }
+
+        public static State of(int value) {
+            return new State(value);
+        }
+
+        @Override
+        public boolean getIsDirty() {
+            return value == -1;
+        }
+
+        @Override
+        public boolean getIsMultiLineToken() {
+            return value == -2;
+        }
+
+        @Override
+        public State createDirtyState() {
+            return DIRTY;
+        }
+
+        @Override
+        public State createMultiLineState() {
+            return MULTILINE;
+        }
+
+        @Override
+        public int hashCode() {
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof State && ((State)obj).value == value;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(value);
+        }
+    }
+}